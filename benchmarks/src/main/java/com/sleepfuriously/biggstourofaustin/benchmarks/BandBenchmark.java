@@ -0,0 +1,137 @@
+package com.sleepfuriously.biggstourofaustin.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sleepfuriously.biggstourofaustin.BandTracker;
+import com.sleepfuriously.biggstourofaustin.GeoPoint;
+import com.sleepfuriously.biggstourofaustin.HotColdBands;
+import com.sleepfuriously.biggstourofaustin.HotColdDistance;
+import com.sleepfuriously.biggstourofaustin.TargetStateMachine;
+
+
+/**
+ * Hot/cold band classification: the table lookup HotColdBands does
+ * (which HotColdDistance's slop checks are built on), the
+ * BandTracker that skips it while we stay in one ring, and the
+ * TargetStateMachine that runs on every fix.
+ *<p>
+ * The distances are a walk toward the target, so most fixes stay in
+ * the same band (like they do for real).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BandBenchmark {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** How many distances to go through (a power of 2). */
+	private final static int NUM_DISTANCES = 4096;
+
+	private final static float SLOP = 5f;
+
+	/** The walk starts this far away (meters). */
+	private final static float START_DISTANCE = 20000f;
+
+	/** The target, for the position benchmarks. */
+	private final static double TARGET_LAT = 30.2672, TARGET_LON = -97.7431;
+
+	/** Meters per degree of latitude (near enough). */
+	private final static double METERS_PER_DEGREE = 111195.0;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final float[] m_walk = new float[NUM_DISTANCES];
+
+	private final HotColdBands m_bands = new HotColdBands(SLOP);
+
+	private final BandTracker m_tracker = new BandTracker(null);
+
+	private final HotColdDistance m_hotcold =
+			new HotColdDistance(SLOP, new GeoPoint(TARGET_LAT, TARGET_LON));
+
+	/** The same walk, as positions due south of the target. */
+	private final GeoPoint[] m_positions = new GeoPoint[NUM_DISTANCES];
+
+	private final TargetStateMachine m_state = new TargetStateMachine();
+
+	private int m_next = 0;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	@Setup
+	public void setup() {
+		// Getting closer, with some jitter, all the way in.
+		Random rand = new Random(7);
+		float step = START_DISTANCE / NUM_DISTANCES;
+		for (int i = 0; i < NUM_DISTANCES; i++) {
+			float dist = START_DISTANCE - (i * step) + (float) (rand.nextGaussian() * 5.0);
+			m_walk[i] = Math.max(0f, dist);
+			m_positions[i] = new GeoPoint(TARGET_LAT - (m_walk[i] / METERS_PER_DEGREE),
+										TARGET_LON);
+		}
+		m_tracker.set_bands(m_bands);
+	} // setup()
+
+	private int next() {
+		m_next = (m_next + 1) & (NUM_DISTANCES - 1);
+		return m_next;
+	}
+
+
+	@Benchmark
+	public int classify() {
+		return m_bands.classify(m_walk[next()]);
+	}
+
+	@Benchmark
+	public int classify_static() {
+		return HotColdBands.classify(m_walk[next()], SLOP);
+	}
+
+	@Benchmark
+	public boolean within_slop() {
+		return m_hotcold.within_slop(m_walk[next()]);
+	}
+
+	/** Distance (haversine) and band for a position. */
+	@Benchmark
+	public int band_of_position() {
+		return m_hotcold.get_band(m_positions[next()]);
+	}
+
+	@Benchmark
+	public int state_update() {
+		return m_state.update(true, m_walk[next()], SLOP);
+	}
+
+	@Benchmark
+	public int tracker_update() {
+		m_tracker.update(m_walk[next()]);
+		return m_tracker.get_band();
+	}
+
+}
@@ -0,0 +1,27 @@
+package com.sleepfuriously.biggstourofaustin.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs the benchmarks (the usual JMH command line works), always
+ * with the GC profiler, so every result comes with its allocation
+ * rate (gc.alloc.rate.norm is bytes per operation).  The hot paths
+ * (GeoBenchmark, BandBenchmark, NearestBenchmark.spatial_index)
+ * should be at 0.
+ */
+public class BenchmarkMain {
+
+	public static void main (String[] args) throws Exception {
+		Options opts = new OptionsBuilder()
+			.parent(new CommandLineOptions(args))
+			.addProfiler(GCProfiler.class)
+			.build();
+		new Runner(opts).run();
+	}
+
+}
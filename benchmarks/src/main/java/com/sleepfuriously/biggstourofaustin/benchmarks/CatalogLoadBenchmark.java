@@ -0,0 +1,124 @@
+package com.sleepfuriously.biggstourofaustin.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.sleepfuriously.biggstourofaustin.DestinationCatalog;
+import com.sleepfuriously.biggstourofaustin.DestinationJsonCatalog;
+import com.sleepfuriously.biggstourofaustin.DestinationRegistry;
+import com.sleepfuriously.biggstourofaustin.DestinationSource;
+
+
+/**
+ * Loading destinations out of each kind of catalog that runs off
+ * the device: the packed one (DestinationCatalog, mapped in the
+ * app, a plain buffer here) and the json one.  The resource-file
+ * source needs Android, so it isn't here.
+ *<p>
+ * open_headers is what starting the app costs: open the catalog,
+ * build the registry, and read every title and hint (what
+ * DestinationData.load_headers() does).  load_one is what showing a
+ * single destination costs once the catalog is open: its numbers
+ * and all its strings (what a full DestinationData load reads).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CatalogLoadBenchmark {
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	@Param({ "packed", "json" })
+	public String m_format;
+
+	@Param({ "1000", "100000" })
+	public int m_size;
+
+	private byte[] m_bytes;
+
+	/** Opened once, for load_one. */
+	private DestinationSource m_source;
+
+	private int m_next = 0;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		SyntheticTour tour = new SyntheticTour(m_size, m_size);
+		m_bytes = "json".equals(m_format) ? tour.to_json() : tour.to_catalog();
+		m_source = open();
+	} // setup()
+
+
+	/***************************
+	 * Opens the catalog in m_bytes (the json one is read all the
+	 * way through).
+	 */
+	private DestinationSource open() throws IOException {
+		if ("json".equals(m_format)) {
+			DestinationJsonCatalog catalog = new DestinationJsonCatalog(
+					new DestinationJsonCatalog.ByteSource() {
+						@Override
+						public InputStream open() {
+							return new ByteArrayInputStream(m_bytes);
+						}
+					});
+			catalog.load(null);
+			return catalog;
+		}
+		return new DestinationCatalog(ByteBuffer.wrap(m_bytes));
+	} // open()
+
+
+	@Benchmark
+	public void open_headers (Blackhole bh) throws IOException {
+		DestinationSource source = open();
+		DestinationRegistry registry = new DestinationRegistry(source);
+		for (int i = 0; i < registry.get_count(); i++) {
+			bh.consume(source.get_string(i, DestinationSource.FIELD_TITLE));
+			bh.consume(source.get_string(i, DestinationSource.FIELD_HINT));
+		}
+	} // open_headers (bh)
+
+
+	@Benchmark
+	public void load_one (Blackhole bh) {
+		int index = m_next;
+		m_next = (m_next + 7919) % m_size;		// (jump around)
+
+		bh.consume(m_source.get_latitude(index));
+		bh.consume(m_source.get_longitude(index));
+		bh.consume(m_source.get_slop(index));
+		bh.consume(m_source.get_rating(index));
+		for (int field = 0; field < DestinationSource.NUM_STRING_FIELDS; field++) {
+			bh.consume(m_source.get_string(index, field));
+		}
+	} // load_one (bh)
+
+}
@@ -0,0 +1,299 @@
+package com.sleepfuriously.biggstourofaustin.benchmarks;
+
+import java.lang.management.ManagementFactory;
+
+import com.sleepfuriously.biggstourofaustin.BandTracker;
+import com.sleepfuriously.biggstourofaustin.BatchEvaluator;
+import com.sleepfuriously.biggstourofaustin.DestinationRegistry;
+import com.sleepfuriously.biggstourofaustin.DestinationSpatialIndex;
+import com.sleepfuriously.biggstourofaustin.GeoKernel;
+import com.sleepfuriously.biggstourofaustin.GeoMath;
+import com.sleepfuriously.biggstourofaustin.GeoPoint;
+import com.sleepfuriously.biggstourofaustin.HotColdBands;
+import com.sleepfuriously.biggstourofaustin.HotColdDistance;
+import com.sleepfuriously.biggstourofaustin.TargetStateMachine;
+import com.sleepfuriously.biggstourofaustin.TextBuffer;
+
+
+/**
+ * Checks that the per-fix path doesn't allocate anything.  It does
+ * what MainActivity does with each fix (handle_fix(), show_fix(),
+ * and then on_frame() for the frame it asks for) with everything
+ * but the Android parts: the debug text, GeoKernel, the
+ * TargetStateMachine, the BandTracker, the nearby destinations
+ * (DestinationSpatialIndex and BatchEvaluator), and the distance
+ * text with HotColdDistance.
+ *<p>
+ * The fixes walk in from twice the LUKE_WARM edge to the target and
+ * back out again, so they cross all the bands from COOL in, and
+ * find the target and leave it.  The walk is done once first (so anything
+ * lazy gets done and the buffers grow to size), then again counting
+ * this thread's allocated bytes, which has to come out 0.  That's
+ * right after the warm-up, before the JIT could optimize any
+ * allocations away.
+ *<p>
+ * MainActivity.check_fix_allocations() does the same on a device,
+ * with the real views.  Run by the build (see pom.xml); it throws if
+ * anything's wrong, which fails the build.
+ */
+public class FixAllocationCheck {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** Destinations in the tour (enough that some are nearby). */
+	private final static int NUM_DESTINATIONS = 50000;
+
+	/** How many fixes in the walk (in and back out). */
+	private final static int NUM_FIXES = 1000;
+
+	/** The walk starts and ends this many LUKE_WARM edges away. */
+	private final static float WALK_START = 2f;
+
+	// The same as MainActivity's.
+	private final static double NEARBY_RADIUS = 500.0;
+	private final static int MAX_NEARBY = 64;
+	private final static int DISTANCE_DECIMALS = 1;
+	private final static String DISTANCE_SUFFIX = " meters";
+	private final static String DEBUG_FIX_PREFIX = "onLocationChanged() call #";
+	private final static String
+		NEARBY_PREFIX = "Also nearby: ",
+		NEARBY_CLOSEST = " (closest: ",
+		NEARBY_END = ")";
+
+	/** Stands in for BandMessages (which needs a Context). */
+	private final static String[] BAND_MSGS = {
+		"Yay!", "Burning up!", "Very hot!", "Hot!", "Warmer", "Warm",
+		"Luke warm", "Cool", "Cold", "Very cold!", "Freezing!"
+	};
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final DestinationRegistry m_registry;
+	private final DestinationSpatialIndex m_spatial_index;
+	private final BatchEvaluator m_batch_evaluator;
+	private BatchEvaluator.Results m_batch_results = null;
+	private final int[] m_nearby = new int[MAX_NEARBY];
+
+	private final GeoPoint m_target;
+	private final HotColdDistance m_hotcold;
+	private final GeoKernel m_geo = new GeoKernel();
+	private final TargetStateMachine m_target_state = new TargetStateMachine();
+	private final BandTracker m_band_tracker;
+	private final GeoPoint m_position_point = new GeoPoint();
+
+	/** From the last update_snapshot() */
+	private float m_target_distance, m_target_bearing;
+
+	/** What the band message TextView would be showing. */
+	private String m_band_msg;
+
+	private final TextBuffer m_distance_text = new TextBuffer(),
+		m_debug_text = new TextBuffer(),
+		m_nearby_text = new TextBuffer();
+
+	private long m_shown_distance = Long.MIN_VALUE;
+	private int m_shown_band = BandTracker.BAND_UNKNOWN;
+	private int m_shown_nearby_count = -1;
+	private int m_shown_nearby_band = BandTracker.BAND_UNKNOWN;
+	private int m_fix_count = 1;
+
+	/** The walk */
+	private final double[] m_lats = new double[NUM_FIXES],
+		m_lons = new double[NUM_FIXES];
+
+	/** So the walk can be checked for doing what it should. */
+	private int m_band_changes, m_transitions, m_nearby_seen;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	public static void main (String[] args) {
+		FixAllocationCheck check = new FixAllocationCheck();
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long id = Thread.currentThread().getId();
+		check(threads.isThreadAllocatedMemorySupported(),
+				"this JVM can't count allocated bytes");
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		check.walk();
+		check(check.m_transitions >= 3, "the walk only had " + check.m_transitions
+				+ " state changes");
+		check(check.m_band_changes >= HotColdBands.NUM_BANDS, "the walk only had "
+				+ check.m_band_changes + " band changes");
+		check(check.m_nearby_seen > 0, "the walk never had anything nearby");
+
+		// What asking costs by itself.
+		long before = threads.getThreadAllocatedBytes(id);
+		long overhead = threads.getThreadAllocatedBytes(id) - before;
+
+		before = threads.getThreadAllocatedBytes(id);
+		check.walk();
+		long bytes = threads.getThreadAllocatedBytes(id) - before - overhead;
+
+		check(bytes <= 0, bytes + " bytes allocated in " + NUM_FIXES + " fixes");
+		System.out.println("FixAllocationCheck: passed (" + NUM_FIXES + " fixes, "
+				+ check.m_band_changes + " band changes, " + check.m_transitions
+				+ " state changes, " + check.m_nearby_seen + " nearby)");
+	} // main (args)
+
+
+	/***************************
+	 * Constructor.  Makes the tour, aims at its first destination,
+	 * and works out the walk (due north of the target, so the
+	 * distance is just the difference in latitude).
+	 */
+	private FixAllocationCheck() {
+		m_registry = new DestinationRegistry(new SyntheticTour(NUM_DESTINATIONS, NUM_DESTINATIONS));
+		m_spatial_index = new DestinationSpatialIndex(m_registry);
+		m_batch_evaluator = new BatchEvaluator(m_registry);
+
+		m_target = new GeoPoint(m_registry.get_latitudes()[0], m_registry.get_longitudes()[0]);
+		m_hotcold = new HotColdDistance(m_registry.get_slops()[0], m_target);
+		m_band_tracker = new BandTracker(new BandTracker.BandListener() {
+			@Override
+			public void on_band_changed (int old_band, int new_band) {
+				m_band_changes++;
+			}
+		});
+
+		double far = m_hotcold.get_bands().get_outer_edge(HotColdBands.BAND_LUKE_WARM) * WALK_START;
+		int half = NUM_FIXES / 2;
+		for (int i = 0; i < NUM_FIXES; i++) {
+			double t = Math.abs(i - half) / (double) half;		// 1 .. 0 .. 1
+			m_lats[i] = m_target.get_latitude() + (far * t) / GeoMath.METERS_PER_DEGREE;
+			m_lons[i] = m_target.get_longitude();
+		}
+	} // constructor
+
+
+	/***************************
+	 * All the fixes, in and back out.  The target is forgotten
+	 * first, so each walk starts the same.
+	 */
+	private void walk() {
+		m_target_state.retarget(false);
+		m_band_changes = 0;
+		m_transitions = 0;
+		m_nearby_seen = 0;
+		for (int i = 0; i < NUM_FIXES; i++) {
+			fix(m_lats[i], m_lons[i]);
+			frame();
+		}
+	} // walk()
+
+
+	/***************************
+	 * handle_fix() and show_fix()
+	 */
+	private void fix (double lat, double lon) {
+		m_debug_text.clear().append(DEBUG_FIX_PREFIX).append(m_fix_count++);
+
+		m_position_point.set(lat, lon);
+
+		// update_display_state()
+		float slop = m_hotcold.get_slop();
+		m_geo.set_target(m_target.get_latitude(), m_target.get_longitude(), slop);
+		float dist = m_geo.compute(lat, lon);
+		if (m_target_state.update(true, dist, slop) != TargetStateMachine.TRANSITION_NONE) {
+			m_transitions++;
+		}
+
+		// update_snapshot()
+		m_target_distance = m_geo.compute(lat, lon);
+		m_target_bearing = m_geo.get_bearing();
+		m_band_tracker.set_bands(m_hotcold.get_bands());
+		m_band_tracker.update(m_target_distance);
+
+		update_nearby();
+	} // fix (lat, lon)
+
+
+	/***************************
+	 * MainActivity.update_nearby()
+	 */
+	private void update_nearby() {
+		double lat = m_position_point.get_latitude();
+		double lon = m_position_point.get_longitude();
+		int count = Math.min(MAX_NEARBY, m_spatial_index.find_within(lat, lon,
+												NEARBY_RADIUS, true, m_nearby));
+		m_batch_results = m_batch_evaluator.evaluate(lat, lon, m_nearby, count,
+												m_batch_results);
+
+		int others = 0;
+		int closest_band = BandTracker.BAND_UNKNOWN;
+		float closest_dist = Float.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			if (m_batch_results.get_index(i) == 0) {
+				continue;		// the target
+			}
+			others++;
+			if (m_batch_results.get_distance(i) < closest_dist) {
+				closest_dist = m_batch_results.get_distance(i);
+				closest_band = m_batch_results.get_band(i);
+			}
+		}
+		m_nearby_seen += others;
+
+		if ((others == m_shown_nearby_count) && (closest_band == m_shown_nearby_band)) {
+			return;
+		}
+		m_shown_nearby_count = others;
+		m_shown_nearby_band = closest_band;
+		if (others > 0) {
+			m_nearby_text.clear().append(NEARBY_PREFIX).append(others)
+				.append(NEARBY_CLOSEST).append(BAND_MSGS[closest_band])
+				.append(NEARBY_END);
+		}
+	} // update_nearby()
+
+
+	/***************************
+	 * on_frame(): update_hidden_ui() and display_distance()
+	 */
+	private void frame() {
+		switch (m_target_state.get_state()) {
+			case TargetStateMachine.STATE_SEARCHING:
+			case TargetStateMachine.STATE_FOUND_OFF_TARGET:
+				break;
+			default:
+				return;		// no distance shown
+		}
+		float dist = m_target_distance;
+		if (Float.isNaN(m_target_bearing)) {
+			throw new AssertionError("FixAllocationCheck: no bearing");
+		}
+
+		long shown = TextBuffer.round(dist, DISTANCE_DECIMALS);
+		if (shown != m_shown_distance) {
+			m_shown_distance = shown;
+			m_distance_text.clear().append_decimal(dist, DISTANCE_DECIMALS)
+				.append(DISTANCE_SUFFIX);
+		}
+
+		int band = m_band_tracker.get_band();
+		if (band == BandTracker.BAND_UNKNOWN) {
+			band = m_hotcold.get_band(dist);
+		}
+		if (band != m_shown_band) {
+			m_shown_band = band;
+			m_band_msg = BAND_MSGS[band];
+		}
+	} // frame()
+
+
+	/***************************/
+	private static void check (boolean ok, String msg) {
+		if (ok == false) {
+			throw new AssertionError("FixAllocationCheck: " + msg);
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package com.sleepfuriously.biggstourofaustin.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sleepfuriously.biggstourofaustin.GeoKernel;
+import com.sleepfuriously.biggstourofaustin.GeoMath;
+
+
+/**
+ * Distance and bearing to a target: the GeoKernel (what the app
+ * uses on every fix), against haversine and Vincenty.  The kernel
+ * is tried with positions near the target (where it does the exact
+ * math) and far (where it uses its approximation).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoBenchmark {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** How many positions to go through (a power of 2). */
+	private final static int NUM_POINTS = 1024;
+
+	/** The target's slop (meters). */
+	private final static float SLOP = 5f;
+
+	/** Meters per degree of latitude, near enough. */
+	private final static double METERS_PER_DEGREE = 111000.0;
+
+	/** The near positions are within this of the target (meters). */
+	private final static double NEAR_RANGE = 100.0;
+
+	/** The far positions are within this (meters). */
+	private final static double FAR_RANGE = 50000.0;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final double m_target_lat = SyntheticTour.CENTER_LAT,
+		m_target_lon = SyntheticTour.CENTER_LON;
+
+	private final double[] m_near_lats = new double[NUM_POINTS],
+		m_near_lons = new double[NUM_POINTS],
+		m_far_lats = new double[NUM_POINTS],
+		m_far_lons = new double[NUM_POINTS];
+
+	private final GeoKernel m_kernel = new GeoKernel();
+
+	private final float[] m_results = new float[2];
+
+	private int m_next = 0;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	@Setup
+	public void setup() {
+		Random rand = new Random(42);
+		for (int i = 0; i < NUM_POINTS; i++) {
+			m_near_lats[i] = m_target_lat + offset(rand, NEAR_RANGE);
+			m_near_lons[i] = m_target_lon + offset(rand, NEAR_RANGE);
+			m_far_lats[i] = m_target_lat + offset(rand, FAR_RANGE);
+			m_far_lons[i] = m_target_lon + offset(rand, FAR_RANGE);
+		}
+		m_kernel.set_target(m_target_lat, m_target_lon, SLOP);
+	} // setup()
+
+
+	/** @return	A random offset up to range meters (in degrees). */
+	private static double offset (Random rand, double range) {
+		return (rand.nextDouble() * 2 - 1) * range / METERS_PER_DEGREE;
+	}
+
+	private int next() {
+		m_next = (m_next + 1) & (NUM_POINTS - 1);
+		return m_next;
+	}
+
+
+	@Benchmark
+	public float kernel_near() {
+		int i = next();
+		return m_kernel.compute(m_near_lats[i], m_near_lons[i]) + m_kernel.get_bearing();
+	}
+
+	@Benchmark
+	public float kernel_far() {
+		int i = next();
+		return m_kernel.compute(m_far_lats[i], m_far_lons[i]) + m_kernel.get_bearing();
+	}
+
+	@Benchmark
+	public double haversine() {
+		int i = next();
+		return GeoMath.haversine(m_far_lats[i], m_far_lons[i], m_target_lat, m_target_lon);
+	}
+
+	@Benchmark
+	public float vincenty() {
+		int i = next();
+		GeoMath.vincenty(m_far_lats[i], m_far_lons[i], m_target_lat, m_target_lon, m_results);
+		return m_results[0] + m_results[1];
+	}
+
+}
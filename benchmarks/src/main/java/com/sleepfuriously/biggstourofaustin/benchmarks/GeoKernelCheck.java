@@ -0,0 +1,170 @@
+package com.sleepfuriously.biggstourofaustin.benchmarks;
+
+import java.util.Random;
+
+import com.sleepfuriously.biggstourofaustin.GeoKernel;
+import com.sleepfuriously.biggstourofaustin.GeoMath;
+
+
+/**
+ * Checks GeoKernel against GeoMath.vincenty() (the same calculation
+ * Location does), holding it to the error bounds in GeoKernel's doc:
+ *<ul>
+ *	<li>distance: under 0.001% out to 10 km, under 0.01% out to
+ *		MAX_APPROX_DISTANCE (100 km).
+ *	<li>bearing: under 0.001 degrees out to 10 km, under 0.005
+ *		degrees out to 100 km.
+ *	<li>inside the exact radius, exactly the same as vincenty().
+ *</ul>
+ * Targets are at latitudes 0-60, with positions all around them.
+ * Run by the build (see pom.xml); it throws if anything's wrong,
+ * which fails the build.
+ */
+public class GeoKernelCheck {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** Target latitudes are 0 up to this, every LAT_STEP degrees. */
+	private final static int MAX_LAT = 60;
+	private final static int LAT_STEP = 5;
+
+	/** Positions tried around each target */
+	private final static int POINTS_PER_TARGET = 20000;
+
+	/**
+	 * The slop for the targets (meters).  Small, so nearly all the
+	 * positions are done the approximate way.
+	 */
+	private final static float SLOP = 1f;
+
+	/** The inner range (meters) and its bounds... */
+	private final static double NEAR_RANGE = 10000.0;
+	private final static double NEAR_MAX_DIST_ERROR = 0.00001;	// 0.001%
+	private final static double NEAR_MAX_BEARING_ERROR = 0.001;	// degrees
+
+	/** ...and the outer range, out to GeoKernel.MAX_APPROX_DISTANCE. */
+	private final static double FAR_MAX_DIST_ERROR = 0.0001;	// 0.01%
+	private final static double FAR_MAX_BEARING_ERROR = 0.005;	// degrees
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final Random m_rand = new Random(42);
+
+	private final GeoKernel m_kernel = new GeoKernel();
+
+	private final float[] m_results = new float[2];
+
+	/** The worst errors seen, for the report. */
+	private double m_worst_near_dist, m_worst_near_bearing;
+	private double m_worst_far_dist, m_worst_far_bearing;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	public static void main (String[] args) {
+		GeoKernelCheck check = new GeoKernelCheck();
+		for (int lat = 0; lat <= MAX_LAT; lat += LAT_STEP) {
+			check.check_target(lat, -97.0 + lat);
+			check.check_exact(lat, -97.0 + lat);
+		}
+		System.out.println("GeoKernelCheck: passed (worst to 10 km: "
+				+ (check.m_worst_near_dist * 100.0) + "%, "
+				+ check.m_worst_near_bearing + " deg; to 100 km: "
+				+ (check.m_worst_far_dist * 100.0) + "%, "
+				+ check.m_worst_far_bearing + " deg)");
+	} // main (args)
+
+
+	/***************************
+	 * Tries POINTS_PER_TARGET positions around one target, from just
+	 * outside the exact radius out to MAX_APPROX_DISTANCE (log scale,
+	 * so the close ones get tried too), in every direction.
+	 */
+	private void check_target (double target_lat, double target_lon) {
+		m_kernel.set_target(target_lat, target_lon, SLOP);
+		double min_dist = SLOP * GeoKernel.EXACT_SLOP_MULTIPLE * 2.0;
+		double log_range = Math.log(GeoKernel.MAX_APPROX_DISTANCE * 0.99 / min_dist);
+
+		for (int i = 0; i < POINTS_PER_TARGET; i++) {
+			double dist = min_dist * Math.exp(m_rand.nextDouble() * log_range);
+			double angle = m_rand.nextDouble() * 2.0 * Math.PI;
+			double lat = target_lat + (dist * Math.cos(angle)) / GeoMath.METERS_PER_DEGREE;
+			double lon = target_lon + (dist * Math.sin(angle)) /
+					(GeoMath.METERS_PER_DEGREE * Math.cos(Math.toRadians(target_lat)));
+
+			float kernel_dist = m_kernel.compute(lat, lon);
+			GeoMath.vincenty(lat, lon, target_lat, target_lon, m_results);
+			if (m_results[0] > GeoKernel.MAX_APPROX_DISTANCE) {
+				continue;	// done exactly anyway
+			}
+			check(m_kernel.was_exact() == false, "exact at " + m_results[0]
+					+ " m from " + target_lat + "," + target_lon);
+
+			double dist_error = Math.abs(kernel_dist - m_results[0]) / m_results[0];
+			double bearing_error = Math.abs(m_kernel.get_bearing() - m_results[1]);
+			if (bearing_error > 180.0) {
+				bearing_error = 360.0 - bearing_error;
+			}
+
+			String where = " at " + lat + "," + lon + " (" + m_results[0]
+					+ " m from " + target_lat + "," + target_lon + ")";
+			if (m_results[0] <= NEAR_RANGE) {
+				check(dist_error < NEAR_MAX_DIST_ERROR, "distance off by "
+						+ (dist_error * 100.0) + "%" + where);
+				check(bearing_error < NEAR_MAX_BEARING_ERROR, "bearing off by "
+						+ bearing_error + " deg" + where);
+				m_worst_near_dist = Math.max(m_worst_near_dist, dist_error);
+				m_worst_near_bearing = Math.max(m_worst_near_bearing, bearing_error);
+			}
+			else {
+				check(dist_error < FAR_MAX_DIST_ERROR, "distance off by "
+						+ (dist_error * 100.0) + "%" + where);
+				check(bearing_error < FAR_MAX_BEARING_ERROR, "bearing off by "
+						+ bearing_error + " deg" + where);
+				m_worst_far_dist = Math.max(m_worst_far_dist, dist_error);
+				m_worst_far_bearing = Math.max(m_worst_far_bearing, bearing_error);
+			}
+		}
+	} // check_target (target_lat, target_lon)
+
+
+	/***************************
+	 * Inside the exact radius the answers have to be exactly
+	 * vincenty()'s, so the on-target decisions match Location's.
+	 */
+	private void check_exact (double target_lat, double target_lon) {
+		float slop = 20f;
+		m_kernel.set_target(target_lat, target_lon, slop);
+		double max_dist = slop * GeoKernel.EXACT_SLOP_MULTIPLE * 0.9;
+
+		for (int i = 0; i < POINTS_PER_TARGET / 10; i++) {
+			double dist = m_rand.nextDouble() * max_dist;
+			double angle = m_rand.nextDouble() * 2.0 * Math.PI;
+			double lat = target_lat + (dist * Math.cos(angle)) / GeoMath.METERS_PER_DEGREE;
+			double lon = target_lon + (dist * Math.sin(angle)) /
+					(GeoMath.METERS_PER_DEGREE * Math.cos(Math.toRadians(target_lat)));
+
+			float kernel_dist = m_kernel.compute(lat, lon);
+			GeoMath.vincenty(lat, lon, target_lat, target_lon, m_results);
+			check(m_kernel.was_exact(), "not exact at " + m_results[0] + " m");
+			check((kernel_dist == m_results[0]) && (m_kernel.get_bearing() == m_results[1]),
+					"exact answer differs from vincenty() at " + lat + "," + lon);
+		}
+	} // check_exact (target_lat, target_lon)
+
+
+	/***************************/
+	private static void check (boolean ok, String msg) {
+		if (ok == false) {
+			throw new AssertionError("GeoKernelCheck: " + msg);
+		}
+	}
+
+}
@@ -0,0 +1,281 @@
+package com.sleepfuriously.biggstourofaustin.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sleepfuriously.biggstourofaustin.HttpImageFetcher;
+import com.sleepfuriously.biggstourofaustin.ImageDiskCache;
+import com.sleepfuriously.biggstourofaustin.ImageFileLoader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Checks ImageFileLoader and ImageDiskCache against a stand-in
+ * image server (com.sun.net.httpserver, on localhost), with the
+ * real HttpImageFetcher in between:
+ *<ul>
+ *	<li>lots of threads asking for the same image at once fetch it
+ *		exactly once, and all get the same file.
+ *	<li>fetching more than the disk cache holds throws out the
+ *		oldest files and never goes over the byte budget.
+ *</ul>
+ * Run by the build (see pom.xml); it throws if anything's wrong,
+ * which fails the build.
+ */
+public class ImageLoaderCheck {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** How big each made-up image is (bytes). */
+	private final static int IMAGE_BYTES = 10 * 1024;
+
+	/** How many threads ask for the same image. */
+	private final static int NUM_THREADS = 8;
+
+	/**
+	 * How long the server takes to answer (ms), so the threads are
+	 * all waiting on the same fetch.
+	 */
+	private final static long SERVER_DELAY_MS = 200;
+
+	/** The disk cache holds this many images... */
+	private final static int CACHE_IMAGES = 5;
+
+	/** ...and this many are fetched. */
+	private final static int NUM_IMAGES = 20;
+
+	private final static String PATH = "/images/";
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	/** How many times the server was asked for each path. */
+	private final ConcurrentHashMap<String, AtomicInteger> m_hits =
+			new ConcurrentHashMap<String, AtomicInteger>();
+
+	private HttpServer m_server;
+
+	/** The server's threads. */
+	private ExecutorService m_server_threads;
+
+	private String m_base_url;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	public static void main (String[] args) throws Exception {
+		ImageLoaderCheck check = new ImageLoaderCheck();
+		check.start_server();
+		try {
+			check.check_dedup();
+			check.check_eviction();
+		}
+		finally {
+			check.stop_server();
+		}
+		System.out.println("ImageLoaderCheck: passed");
+	} // main (args)
+
+
+	/***************************
+	 * Starts the stand-in server.  Every image is IMAGE_BYTES of the
+	 * same made-up bytes, after SERVER_DELAY_MS.
+	 */
+	private void start_server() throws IOException {
+		m_server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		m_server.createContext(PATH, new HttpHandler() {
+			@Override
+			public void handle (HttpExchange exchange) throws IOException {
+				String path = exchange.getRequestURI().getPath();
+				AtomicInteger hits = m_hits.get(path);
+				if (hits == null) {
+					m_hits.putIfAbsent(path, new AtomicInteger());
+					hits = m_hits.get(path);
+				}
+				hits.incrementAndGet();
+
+				try {
+					Thread.sleep(SERVER_DELAY_MS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+
+				byte[] body = new byte[IMAGE_BYTES];
+				for (int i = 0; i < body.length; i++) {
+					body[i] = (byte) (i * 31 + path.length());
+				}
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				try {
+					out.write(body);
+				}
+				finally {
+					out.close();
+				}
+			}
+		});
+		// Enough threads that the requests really could overlap.
+		m_server_threads = Executors.newFixedThreadPool(NUM_THREADS);
+		m_server.setExecutor(m_server_threads);
+		m_server.start();
+		m_base_url = "http://" + m_server.getAddress().getHostString() + ":"
+					+ m_server.getAddress().getPort() + PATH;
+	} // start_server()
+
+
+	/***************************
+	 * Stops the server and its threads (the build waits for them).
+	 */
+	private void stop_server() {
+		m_server.stop(0);
+		m_server_threads.shutdownNow();
+	}
+
+
+	/***************************
+	 * NUM_THREADS threads ask for one URL at the same moment.
+	 */
+	private void check_dedup() throws Exception {
+		File dir = Files.createTempDirectory("image_dedup").toFile();
+		try {
+			final ImageFileLoader loader = new ImageFileLoader(
+					new ImageDiskCache(dir, (long) IMAGE_BYTES * CACHE_IMAGES),
+					new HttpImageFetcher());
+			final String url = m_base_url + "same.jpg";
+			final CountDownLatch go = new CountDownLatch(1);
+			final File[] files = new File[NUM_THREADS];
+			final Exception[] errors = new Exception[NUM_THREADS];
+
+			Thread[] threads = new Thread[NUM_THREADS];
+			for (int i = 0; i < NUM_THREADS; i++) {
+				final int n = i;
+				threads[i] = new Thread("dedup-" + i) {
+					@Override
+					public void run() {
+						try {
+							go.await();
+							files[n] = loader.get_file(url);
+						}
+						catch (Exception e) {
+							errors[n] = e;
+						}
+					}
+				};
+				threads[i].start();
+			}
+			go.countDown();
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			for (int i = 0; i < NUM_THREADS; i++) {
+				if (errors[i] != null) {
+					throw new AssertionError("Thread " + i + " failed: " + errors[i], errors[i]);
+				}
+				check(files[i].equals(files[0]), "thread " + i + " got a different file");
+				check(files[i].length() == IMAGE_BYTES, "thread " + i + " got "
+						+ files[i].length() + " bytes");
+			}
+			check(loader.get_fetch_count() == 1, "get_fetch_count() is "
+					+ loader.get_fetch_count() + " for " + NUM_THREADS + " requests of one URL");
+			check(hits(url) == 1, "the server was asked " + hits(url) + " times");
+
+			// And it's cached now.
+			loader.get_file(url);
+			check(loader.get_fetch_count() == 1, "a cached image was fetched again");
+		}
+		finally {
+			delete_dir(dir);
+		}
+	} // check_dedup()
+
+
+	/***************************
+	 * Fetches NUM_IMAGES images into a cache that only holds
+	 * CACHE_IMAGES of them.
+	 */
+	private void check_eviction() throws Exception {
+		File dir = Files.createTempDirectory("image_evict").toFile();
+		try {
+			long budget = (long) IMAGE_BYTES * CACHE_IMAGES;
+			ImageDiskCache cache = new ImageDiskCache(dir, budget);
+			ImageFileLoader loader = new ImageFileLoader(cache, new HttpImageFetcher());
+
+			for (int i = 0; i < NUM_IMAGES; i++) {
+				loader.get_file(m_base_url + "evict_" + i + ".jpg");
+				check(cache.get_total_bytes() <= budget, "the cache has "
+						+ cache.get_total_bytes() + " bytes, over the budget of " + budget);
+				check(dir_bytes(dir) <= budget, "the cache directory has "
+						+ dir_bytes(dir) + " bytes, over the budget of " + budget);
+			}
+			check(loader.get_fetch_count() == NUM_IMAGES, "fetched "
+					+ loader.get_fetch_count() + " times for " + NUM_IMAGES + " images");
+			check(cache.get_count() == CACHE_IMAGES, "the cache holds "
+					+ cache.get_count() + " images, not " + CACHE_IMAGES);
+
+			// The oldest ones went first.
+			check(cache.get(m_base_url + "evict_0.jpg") == null, "the oldest image is still cached");
+			check(cache.get(m_base_url + "evict_" + (NUM_IMAGES - 1) + ".jpg") != null,
+					"the newest image isn't cached");
+		}
+		finally {
+			delete_dir(dir);
+		}
+	} // check_eviction()
+
+
+	/***************************/
+	private int hits (String url) {
+		AtomicInteger hits = m_hits.get(url.substring(url.indexOf(PATH)));
+		return (hits == null) ? 0 : hits.get();
+	}
+
+	/***************************/
+	private static long dir_bytes (File dir) {
+		long total = 0;
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				total += file.length();
+			}
+		}
+		return total;
+	}
+
+	/***************************/
+	private static void delete_dir (File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	/***************************/
+	private static void check (boolean ok, String msg) {
+		if (ok == false) {
+			throw new AssertionError("ImageLoaderCheck: " + msg);
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package com.sleepfuriously.biggstourofaustin.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sleepfuriously.biggstourofaustin.DestinationRegistry;
+import com.sleepfuriously.biggstourofaustin.DestinationSpatialIndex;
+import com.sleepfuriously.biggstourofaustin.GeoMath;
+
+
+/**
+ * Finding the nearest unfound destination: the grid in
+ * DestinationSpatialIndex, against looking at every one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class NearestBenchmark {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** How many positions to look up from (a power of 2). */
+	private final static int NUM_QUERIES = 256;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	@Param({ "10", "1000", "100000", "1000000" })
+	public int m_size;
+
+	private DestinationRegistry m_registry;
+
+	private DestinationSpatialIndex m_index;
+
+	private final double[] m_query_lats = new double[NUM_QUERIES],
+		m_query_lons = new double[NUM_QUERIES];
+
+	private int m_next = 0;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	@Setup
+	public void setup() {
+		m_registry = new DestinationRegistry(new SyntheticTour(m_size, m_size));
+		m_index = new DestinationSpatialIndex(m_registry);
+
+		Random rand = new Random(99);
+		for (int i = 0; i < NUM_QUERIES; i++) {
+			m_query_lats[i] = SyntheticTour.random_lat(rand);
+			m_query_lons[i] = SyntheticTour.random_lon(rand);
+		}
+	} // setup()
+
+	private int next() {
+		m_next = (m_next + 1) & (NUM_QUERIES - 1);
+		return m_next;
+	}
+
+
+	@Benchmark
+	public int spatial_index() {
+		int i = next();
+		return m_index.find_nearest_unfound(m_query_lats[i], m_query_lons[i]);
+	}
+
+
+	@Benchmark
+	public int linear_scan() {
+		int q = next();
+		double lat = m_query_lats[q], lon = m_query_lons[q];
+		double[] lats = m_registry.get_latitudes();
+		double[] lons = m_registry.get_longitudes();
+
+		int best = -1;
+		double best_dist = Double.MAX_VALUE;
+		for (int i = 0; i < m_registry.get_count(); i++) {
+			if (m_registry.is_found(i)) {
+				continue;
+			}
+			double dist = GeoMath.haversine(lat, lon, lats[i], lons[i]);
+			if (dist < best_dist) {
+				best_dist = dist;
+				best = i;
+			}
+		}
+		return best;
+	} // linear_scan()
+
+}
@@ -0,0 +1,162 @@
+package com.sleepfuriously.biggstourofaustin.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import com.sleepfuriously.biggstourofaustin.DestinationCatalogPacker;
+import com.sleepfuriously.biggstourofaustin.DestinationSource;
+
+
+/**
+ * Made-up destinations scattered randomly around Austin, for the
+ * benchmarks.  The same size and seed always give the same tour.
+ */
+public class SyntheticTour implements DestinationSource {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** The destinations are spread around here. */
+	public final static double
+		CENTER_LAT = 30.27,
+		CENTER_LON = -97.74,
+		SPREAD_DEGREES = 1.0;
+
+	/** Roughly how long the stories are (chars). */
+	private final static int STORY_LENGTH = 400;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final double[] m_lats, m_lons;
+
+	private final float[] m_slops;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor
+	 */
+	public SyntheticTour (int count, long seed) {
+		Random rand = new Random(seed);
+		m_lats = new double[count];
+		m_lons = new double[count];
+		m_slops = new float[count];
+		for (int i = 0; i < count; i++) {
+			m_lats[i] = random_lat(rand);
+			m_lons[i] = random_lon(rand);
+			m_slops[i] = 3f + rand.nextInt(20);
+		}
+	} // constructor
+
+
+	/***************************
+	 * @return	A latitude somewhere in the tour's area.
+	 */
+	public static double random_lat (Random rand) {
+		return CENTER_LAT + (rand.nextDouble() - 0.5) * SPREAD_DEGREES;
+	}
+
+	/***************************
+	 * @return	A longitude somewhere in the tour's area.
+	 */
+	public static double random_lon (Random rand) {
+		return CENTER_LON + (rand.nextDouble() - 0.5) * SPREAD_DEGREES;
+	}
+
+
+	@Override
+	public int get_count() {
+		return m_lats.length;
+	}
+
+	@Override
+	public double get_latitude (int index) {
+		return m_lats[index];
+	}
+
+	@Override
+	public double get_longitude (int index) {
+		return m_lons[index];
+	}
+
+	@Override
+	public float get_slop (int index) {
+		return m_slops[index];
+	}
+
+	@Override
+	public float get_rating (int index) {
+		return (index % 5) + 1;
+	}
+
+	@Override
+	public String get_string (int index, int field) {
+		switch (field) {
+			case FIELD_TITLE:
+				return "Destination " + index;
+			case FIELD_ADDRESS:
+				return index + " Congress Ave, Austin TX";
+			case FIELD_SUBTITLE:
+				return "The subtitle of destination " + index;
+			case FIELD_STORY:
+				StringBuilder story = new StringBuilder(STORY_LENGTH + 32);
+				while (story.length() < STORY_LENGTH) {
+					story.append("Once upon a time at destination ").append(index).append(". ");
+				}
+				return story.toString();
+			case FIELD_HINT:
+				return "Look for the thing near " + index;
+			case FIELD_FILENAME:
+				return "dest_" + index + ".html";
+			default:
+				return null;
+		}
+	} // get_string (index, field)
+
+
+	/***************************
+	 * Fills a packer with all of these destinations.
+	 */
+	private DestinationCatalogPacker pack() {
+		DestinationCatalogPacker packer = new DestinationCatalogPacker();
+		String[] strings = new String[NUM_STRING_FIELDS];
+		for (int i = 0; i < get_count(); i++) {
+			for (int field = 0; field < NUM_STRING_FIELDS; field++) {
+				strings[field] = get_string(i, field);
+			}
+			packer.add(m_lats[i], m_lons[i], m_slops[i], get_rating(i), strings);
+		}
+		return packer;
+	} // pack()
+
+
+	/***************************
+	 * @return	These destinations as a packed catalog (the format
+	 * 			DestinationCatalog reads).
+	 */
+	public byte[] to_catalog() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		pack().write(out);
+		return out.toByteArray();
+	}
+
+
+	/***************************
+	 * @return	These destinations as a json tour file (the format
+	 * 			DestinationJsonCatalog reads).
+	 */
+	public byte[] to_json() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		pack().write_json(out);
+		return out.toByteArray();
+	}
+
+}
@@ -0,0 +1,76 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.util.Locale;
+
+import android.content.Context;
+
+/**
+ * The messages we show the user for each hot/cold band ("Burning!",
+ * "Cold", etc.).  They're looked up once (per locale) and kept, so
+ * asking for one doesn't allocate anything.
+ *
+ * This is the Android side of HotColdDistance (which works out the
+ * bands themselves without needing a Context).
+ */
+public class BandMessages {
+
+	//-----------------------------
+	//	Constants
+	//-----------------------------
+
+	/** The message for each band, indexed by HotColdBands.BAND_* */
+	private final static int[] BAND_MSG_IDS = {
+		R.string.yay,
+		R.string.burning,
+		R.string.very_hot,
+		R.string.hot,
+		R.string.warmer,
+		R.string.warm,
+		R.string.luke_warm,
+		R.string.cool,
+		R.string.cold,
+		R.string.very_cold,
+		R.string.freezing
+	};
+
+
+	//-----------------------------
+	//	Class Data
+	//-----------------------------
+
+	/**
+	 * The messages for each band.  Filled in by get() whenever the
+	 * locale changes.
+	 */
+	private final static String[] s_band_msgs = new String[HotColdBands.NUM_BANDS];
+
+	/** The locale that s_band_msgs were looked up for. */
+	private static Locale s_band_msgs_locale = null;
+
+
+	//-----------------------------
+	//	Methods
+	//-----------------------------
+
+	/******************************
+	 * Gets the message to show the user for a band.  The strings
+	 * are only looked up the first time (and again if the locale
+	 * changes).
+	 *
+	 * @param ctx	The context so this can access resources.
+	 *
+	 * @param band	One of the HotColdBands.BAND_* constants.
+	 */
+	public static String get (Context ctx, int band) {
+		Locale locale = ctx.getResources().getConfiguration().locale;
+		if ((locale != s_band_msgs_locale) &&
+			((locale == null) || (locale.equals(s_band_msgs_locale) == false))) {
+			for (int i = 0; i < BAND_MSG_IDS.length; i++) {
+				s_band_msgs[i] = ctx.getString(BAND_MSG_IDS[i]);
+			}
+			s_band_msgs_locale = locale;
+		}
+		return s_band_msgs[band];
+	} // get (ctx, band)
+
+}
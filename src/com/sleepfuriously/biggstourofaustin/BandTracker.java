@@ -0,0 +1,160 @@
+package com.sleepfuriously.biggstourofaustin;
+
+
+/**
+ * Keeps track of which hot/cold band we're in and only speaks up
+ * when that changes.
+ *<p>
+ * The bands are rings (annuli) around the target.  Once we know
+ * which ring we're in, we also know its inner and outer edges, so
+ * as long as the next distance is still between them there's
+ * nothing to classify at all.  Only crossing an edge costs a
+ * lookup, and only that gets reported to the BandListener.
+ *<p>
+ * GPS fixes jitter, so standing right at an edge would flip
+ * between two bands on every fix.  To keep that from happening,
+ * leaving a ring takes going HYSTERESIS past its edge.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class BandTracker {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** get_band() returns this until there's been an update(). */
+	public final static int BAND_UNKNOWN = -1;
+
+	/**
+	 * How far past an edge we have to go to leave a ring, as a
+	 * fraction of the edge's distance.
+	 */
+	public final static float HYSTERESIS = 0.1f;
+
+
+	//-------------------------
+	//	Interfaces
+	//-------------------------
+
+	/**
+	 * Hears about ring crossings.
+	 */
+	public interface BandListener {
+		/**
+		 * @param old_band	The band we left (BAND_UNKNOWN for the
+		 * 					first one after a new target).
+		 *
+		 * @param new_band	The band we're in now.
+		 */
+		public void on_band_changed (int old_band, int new_band);
+	}
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final BandListener m_listener;
+
+	private HotColdBands m_bands = null;
+
+	/** The slop m_bands had when we last classified. */
+	private float m_slop;
+
+	private int m_band = BAND_UNKNOWN;
+
+	/**
+	 * The current ring: we stay in it while the distance is more
+	 * than m_inner and no more than m_outer (meters).  These are
+	 * the band's edges, pushed out by HYSTERESIS.
+	 */
+	private float m_inner, m_outer;
+
+	/** How many updates were answered without classifying, and with. */
+	private long m_skipped_count = 0, m_classified_count = 0;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor
+	 *
+	 * @param listener	Who to tell about crossings.  May be null.
+	 */
+	public BandTracker (BandListener listener) {
+		m_listener = listener;
+	}
+
+
+	/***************************
+	 * Sets the rings to track against (the target's bands).  If
+	 * they're different from before, we forget which band we're in.
+	 */
+	public void set_bands (HotColdBands bands) {
+		if ((bands == m_bands) && (bands.get_slop() == m_slop)) {
+			return;
+		}
+		m_bands = bands;
+		m_slop = bands.get_slop();
+		m_band = BAND_UNKNOWN;
+	} // set_bands (bands)
+
+
+	/***************************
+	 * Takes a new distance to the target.
+	 *
+	 * @param dist	Meters from the target.
+	 *
+	 * @return	True iff we crossed into a different band.
+	 */
+	public boolean update (float dist) {
+		if ((m_band != BAND_UNKNOWN) && (dist > m_inner) && (dist <= m_outer)) {
+			// Still in the same ring.
+			m_skipped_count++;
+			return false;
+		}
+
+		int band = m_bands.classify(dist);
+		m_classified_count++;
+		m_inner = m_bands.get_inner_edge(band) * (1f - HYSTERESIS);
+		m_outer = m_bands.get_outer_edge(band) * (1f + HYSTERESIS);
+		if (band == m_band) {
+			return false;
+		}
+
+		int old_band = m_band;
+		m_band = band;
+		if (m_listener != null) {
+			m_listener.on_band_changed(old_band, band);
+		}
+		return true;
+	} // update (dist)
+
+
+	/***************************
+	 * @return	The band we're in (HotColdBands.BAND_*), or
+	 * 			BAND_UNKNOWN.  Near an edge this may be the band we
+	 * 			were just in, rather than what classify() says.
+	 */
+	public int get_band() {
+		return m_band;
+	}
+
+	/***************************
+	 * @return	How many update()s didn't need to classify anything.
+	 */
+	public long get_skipped_count() {
+		return m_skipped_count;
+	}
+
+	/***************************
+	 * @return	How many update()s did.
+	 */
+	public long get_classified_count() {
+		return m_classified_count;
+	}
+
+}
@@ -0,0 +1,380 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Works out the distance, bearing, and hot/cold band from one
+ * position to lots of destinations at once (the whole catalog, or
+ * just the ones the spatial index says are nearby).  It's one tight
+ * loop over the DestinationRegistry's arrays, using the same
+ * flattened-Earth math as GeoKernel (exact Vincenty up close and
+ * far away), so doing every destination on every fix costs
+ * next to nothing.
+ *<p>
+ * Big batches (PARALLEL_THRESHOLD and up) are split into chunks
+ * and spread over all the cores.  The answers go into a Results,
+ * which can be handed back in for the next fix so nothing new has
+ * to be allocated.
+ *<p>
+ * Call evaluate...() from one thread at a time.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class BatchEvaluator {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** Batches smaller than this are done on the calling thread. */
+	public final static int PARALLEL_THRESHOLD = 4096;
+
+	private final static double RADIANS_PER_DEGREE = Math.PI / 180.0;
+
+
+	//-------------------------
+	//	Classes
+	//-------------------------
+
+	/**
+	 * What evaluate...() figured out.  Slot i is for the i'th
+	 * destination in the batch (see get_index()).
+	 */
+	public static class Results {
+		private float[] m_distances = new float[0];
+		private float[] m_bearings = new float[0];
+		private byte[] m_bands = new byte[0];
+
+		/** Which destination each slot is, or null if slot i is destination i. */
+		private int[] m_indices;
+
+		private int m_count;
+
+		/** How many destinations landed in each band */
+		private final int[] m_band_counts = new int[HotColdBands.NUM_BANDS];
+
+		/** Makes sure there's room for count slots. */
+		void ensure_capacity (int count) {
+			if (m_distances.length < count) {
+				m_distances = new float[count];
+				m_bearings = new float[count];
+				m_bands = new byte[count];
+			}
+		}
+
+		/** How many destinations are in here. */
+		public int get_count() {
+			return m_count;
+		}
+
+		/** Which destination (registry index) slot i is. */
+		public int get_index (int i) {
+			return (m_indices == null) ? i : m_indices[i];
+		}
+
+		/** Meters to the destination in slot i. */
+		public float get_distance (int i) {
+			return m_distances[i];
+		}
+
+		/** Bearing (degrees, -180 to 180) to the destination in slot i. */
+		public float get_bearing (int i) {
+			return m_bearings[i];
+		}
+
+		/** Hot/cold band (HotColdBands.BAND_*) of the destination in slot i. */
+		public int get_band (int i) {
+			return m_bands[i];
+		}
+
+		/** How many destinations are in the given band. */
+		public int get_band_count (int band) {
+			return m_band_counts[band];
+		}
+
+		/** How many destinations are in the given band or closer. */
+		public int get_count_within (int band) {
+			int total = 0;
+			for (int b = 0; b <= band; b++) {
+				total += m_band_counts[b];
+			}
+			return total;
+		}
+	} // class Results
+
+
+	/**
+	 * One piece of a batch.  These are made once and reused.
+	 */
+	private class Chunk implements Runnable {
+		int m_start, m_end;
+		final int[] m_band_counts = new int[HotColdBands.NUM_BANDS];
+		final float[] m_vincenty_results = new float[2];
+
+		@Override
+		public void run() {
+			try {
+				evaluate_range(this);
+			}
+			finally {
+				chunk_done();
+			}
+		}
+	} // class Chunk
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final DestinationRegistry m_registry;
+
+	private final int m_num_threads;
+
+	/** Made the first time a batch is big enough to need it. */
+	private ExecutorService m_executor = null;
+
+	private final Chunk[] m_chunks;
+
+	/** How many chunks are still running. */
+	private int m_remaining;
+
+	//
+	//	The current batch, set up by evaluate...() for the chunks.
+	//
+	private double m_lat, m_lon;
+	private double m_meters_per_rad_north, m_meters_per_rad_east;
+	private double m_cos_lat, m_sin_lat;
+	private boolean m_always_exact;
+	private int[] m_batch_indices;
+	private Results m_results;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor
+	 */
+	public BatchEvaluator (DestinationRegistry registry) {
+		m_registry = registry;
+		m_num_threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+		m_chunks = new Chunk[m_num_threads];
+		for (int i = 0; i < m_num_threads; i++) {
+			m_chunks[i] = new Chunk();
+		}
+	} // constructor
+
+
+	/***************************
+	 * Does every destination in the registry.
+	 *
+	 * @param results	The Results from last time, to reuse.  May be null.
+	 *
+	 * @return	The Results (results if it wasn't null).
+	 */
+	public Results evaluate_all (double lat, double lon, Results results) {
+		return evaluate(lat, lon, null, m_registry.get_count(), results);
+	}
+
+
+	/***************************
+	 * Does just some of the destinations (like the ones that
+	 * DestinationSpatialIndex.find_within() found).
+	 *
+	 * @param indices	Which destinations, by registry index.  Null
+	 * 					means the first count destinations.
+	 *
+	 * @param count		How many of indices to use.
+	 *
+	 * @param results	The Results from last time, to reuse.  May be null.
+	 *
+	 * @return	The Results (results if it wasn't null).
+	 */
+	public Results evaluate (double lat, double lon,
+							int[] indices, int count, Results results) {
+		if (results == null) {
+			results = new Results();
+		}
+		results.ensure_capacity(count);
+		results.m_indices = indices;
+		results.m_count = count;
+
+		// All the stuff that only depends on the position.
+		m_lat = lat;
+		m_lon = lon;
+		double phi = lat * RADIANS_PER_DEGREE;
+		m_cos_lat = Math.cos(phi);
+		m_sin_lat = Math.sin(phi);
+		double w = 1.0 - GeoMath.WGS84_E2 * m_sin_lat * m_sin_lat;
+		m_meters_per_rad_east = GeoMath.WGS84_A / Math.sqrt(w);
+		m_meters_per_rad_north = GeoMath.WGS84_A * (1.0 - GeoMath.WGS84_E2) / (w * Math.sqrt(w));
+		m_always_exact = Math.abs(lat) > GeoKernel.POLAR_LIMIT;
+		m_batch_indices = indices;
+		m_results = results;
+
+		int num_chunks = (count >= PARALLEL_THRESHOLD) ? m_num_threads : 1;
+		int per_chunk = (count + num_chunks - 1) / num_chunks;
+		for (int i = 0; i < num_chunks; i++) {
+			m_chunks[i].m_start = Math.min(count, i * per_chunk);
+			m_chunks[i].m_end = Math.min(count, (i + 1) * per_chunk);
+		}
+
+		if (num_chunks == 1) {
+			evaluate_range(m_chunks[0]);
+		}
+		else {
+			run_parallel(num_chunks);
+		}
+
+		// Add up the band counts.
+		int[] totals = results.m_band_counts;
+		for (int b = 0; b < totals.length; b++) {
+			int total = 0;
+			for (int i = 0; i < num_chunks; i++) {
+				total += m_chunks[i].m_band_counts[b];
+			}
+			totals[b] = total;
+		}
+
+		m_batch_indices = null;
+		m_results = null;
+		return results;
+	} // evaluate (lat, lon, indices, count, results)
+
+
+	/***************************
+	 * Hands chunks 1 and up to the executor, does chunk 0 here, and
+	 * waits for the rest.
+	 */
+	private void run_parallel (int num_chunks) {
+		if (m_executor == null) {
+			m_executor = Executors.newFixedThreadPool(m_num_threads - 1, new ThreadFactory() {
+				@Override
+				public Thread newThread (Runnable r) {
+					Thread t = new Thread(r, "BatchEvaluator");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+
+		synchronized (this) {
+			m_remaining = num_chunks - 1;
+		}
+		for (int i = 1; i < num_chunks; i++) {
+			m_executor.execute(m_chunks[i]);
+		}
+
+		evaluate_range(m_chunks[0]);
+
+		boolean interrupted = false;
+		synchronized (this) {
+			while (m_remaining > 0) {
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	} // run_parallel (num_chunks)
+
+
+	/***************************/
+	private synchronized void chunk_done() {
+		m_remaining--;
+		if (m_remaining <= 0) {
+			notifyAll();
+		}
+	}
+
+
+	/***************************
+	 * The actual loop, for one chunk of the batch.
+	 */
+	private void evaluate_range (Chunk chunk) {
+		double[] lats = m_registry.get_latitudes();
+		double[] lons = m_registry.get_longitudes();
+		float[] slops = m_registry.get_slops();
+		int[] indices = m_batch_indices;
+		float[] distances = m_results.m_distances;
+		float[] bearings = m_results.m_bearings;
+		byte[] bands = m_results.m_bands;
+		int[] band_counts = chunk.m_band_counts;
+
+		for (int b = 0; b < band_counts.length; b++) {
+			band_counts[b] = 0;
+		}
+
+		for (int i = chunk.m_start; i < chunk.m_end; i++) {
+			int dest = (indices == null) ? i : indices[i];
+			double dest_lat = lats[dest];
+			double dest_lon = lons[dest];
+			float slop = slops[dest];
+
+			double dlat = (dest_lat - m_lat) * RADIANS_PER_DEGREE;
+			double dlon = dest_lon - m_lon;
+			if (dlon > 180.0) {
+				dlon -= 360.0;
+			}
+			else if (dlon < -180.0) {
+				dlon += 360.0;
+			}
+			dlon *= RADIANS_PER_DEGREE;
+
+			double half_dlat = dlat * 0.5;
+			double north = dlat * m_meters_per_rad_north;
+			double east = dlon * m_meters_per_rad_east * (m_cos_lat - m_sin_lat * half_dlat);
+			double dist = Math.sqrt(north * north + east * east);
+
+			float distance, bearing;
+			if (m_always_exact || (dist < slop * GeoKernel.EXACT_SLOP_MULTIPLE) ||
+				(dist > GeoKernel.MAX_APPROX_DISTANCE)) {
+				GeoMath.vincenty(m_lat, m_lon, dest_lat, dest_lon, chunk.m_vincenty_results);
+				distance = chunk.m_vincenty_results[0];
+				bearing = chunk.m_vincenty_results[1];
+			}
+			else {
+				double sin_mid = m_sin_lat + m_cos_lat * half_dlat;
+				double b = GeoMath.fast_atan2(east, north) - (dlon * 0.5 * sin_mid);
+				b /= RADIANS_PER_DEGREE;
+				if (b > 180.0) {
+					b -= 360.0;
+				}
+				else if (b < -180.0) {
+					b += 360.0;
+				}
+				distance = (float) dist;
+				bearing = (float) b;
+			}
+
+			int band = HotColdBands.classify(distance, slop);
+			distances[i] = distance;
+			bearings[i] = bearing;
+			bands[i] = (byte) band;
+			band_counts[band]++;
+		}
+	} // evaluate_range (chunk)
+
+
+	/***************************
+	 * Stops the worker threads (if there are any).  This can still
+	 * be used afterwards; new threads are made if needed.
+	 */
+	public void shutdown() {
+		if (m_executor != null) {
+			m_executor.shutdown();
+			m_executor = null;
+		}
+	}
+
+}
@@ -0,0 +1,276 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.View;
+
+
+/**
+ * Draws the compass ring, the arrow pointing at the target, and
+ * the on-target image, all in one View.  This replaces three
+ * stacked ImageViews that were each spun with a new RotateAnimation
+ * on every sensor event.
+ *<p>
+ * The angles glide towards where they're supposed to be, always
+ * going the short way around (so 359 to 1 is a 2 degree turn, not
+ * 358).  While they're still moving this redraws every frame.
+ * Nothing is allocated while drawing; there's just the one Matrix
+ * that gets reused.
+ */
+public class CompassView extends View {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/**
+	 * How quickly the angles catch up, in milliseconds.  After this
+	 * long they're about 2/3 of the way there.
+	 */
+	private final static float SMOOTHING_MS = 60f;
+
+	/** Closer than this (degrees) and we just jump the rest of the way. */
+	private final static float SNAP_DEGREES = 0.05f;
+
+	/** Time between frames when postInvalidateOnAnimation() isn't around */
+	private final static long FALLBACK_FRAME_MS = 16;
+
+	/**
+	 * The longest step (ms) the smoothing takes in one frame.  A
+	 * frame that comes later than this (a hiccup) moves as if it
+	 * were this long, instead of jumping most of the way.
+	 */
+	private final static long MAX_FRAME_MS = 100;
+
+
+	//-------------------------
+	//	Classes
+	//-------------------------
+
+	/**
+	 * Keeps postInvalidateOnAnimation() away from older phones.
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	private static class Animator {
+		static void next_frame (View view) {
+			view.postInvalidateOnAnimation();
+		}
+	} // class Animator
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final Bitmap m_ring_bm, m_arrow_bm, m_on_target_bm;
+
+	/** Used for every bitmap, every frame. */
+	private final Matrix m_matrix = new Matrix();
+
+	private final Paint m_paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+
+	/** Where the ring and arrow are drawn now (degrees, 0 to 360). */
+	private float m_ring_angle = 0f, m_arrow_angle = 0f;
+
+	/** Where they're headed (degrees, 0 to 360). */
+	private float m_ring_target = 0f, m_arrow_target = 0f;
+
+	/** When true, the on-target image is shown instead of the arrow. */
+	private boolean m_on_target = false;
+
+	/** When we last drew (uptime millis), for the smoothing.  0 = never. */
+	private long m_last_draw_time = 0;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructors
+	 */
+	public CompassView (Context ctx) {
+		this(ctx, null);
+	}
+
+	public CompassView (Context ctx, AttributeSet attrs) {
+		this(ctx, attrs, 0);
+	}
+
+	public CompassView (Context ctx, AttributeSet attrs, int def_style) {
+		super(ctx, attrs, def_style);
+		m_ring_bm = BitmapFactory.decodeResource(getResources(), R.drawable.compass_ring);
+		m_arrow_bm = BitmapFactory.decodeResource(getResources(), R.drawable.direction_arrow);
+		m_on_target_bm = BitmapFactory.decodeResource(getResources(), R.drawable.on_target);
+	} // constructor
+
+
+	/***************************
+	 * Turns the ring so that north on it points to north in the
+	 * real world.
+	 *
+	 * @param heading	The direction the top of the phone is pointing
+	 * 					(degrees).
+	 */
+	public void set_heading (float heading) {
+		float target = normalize(-heading);
+		if (target != m_ring_target) {
+			m_ring_target = target;
+			invalidate();
+		}
+	}
+
+	/***************************
+	 * Turns the arrow.
+	 *
+	 * @param angle	Where the arrow should point, in degrees
+	 * 				clockwise from the top of the phone.
+	 */
+	public void set_arrow_angle (float angle) {
+		float target = normalize(angle);
+		if (target != m_arrow_target) {
+			m_arrow_target = target;
+			invalidate();
+		}
+	}
+
+	/***************************
+	 * @param on_target	True shows the on-target image instead of
+	 * 					the arrow.
+	 */
+	public void set_on_target (boolean on_target) {
+		if (on_target != m_on_target) {
+			m_on_target = on_target;
+			invalidate();
+		}
+	}
+
+
+	/***************************
+	 * Big enough for the largest image (they're all centered).
+	 */
+	@Override
+	protected void onMeasure (int width_spec, int height_spec) {
+		int w = Math.max(m_ring_bm.getWidth(),
+						Math.max(m_arrow_bm.getWidth(), m_on_target_bm.getWidth()));
+		int h = Math.max(m_ring_bm.getHeight(),
+						Math.max(m_arrow_bm.getHeight(), m_on_target_bm.getHeight()));
+		w += getPaddingLeft() + getPaddingRight();
+		h += getPaddingTop() + getPaddingBottom();
+		setMeasuredDimension(resolveSize(w, width_spec), resolveSize(h, height_spec));
+	} // onMeasure (width_spec, height_spec)
+
+
+	/***************************
+	 * Moves the angles along and draws everything.
+	 */
+	@Override
+	protected void onDraw (Canvas canvas) {
+		// The first frame after settling has no previous frame to
+		// measure from, so it counts as one ordinary frame.
+		long now = SystemClock.uptimeMillis();
+		long dt = FALLBACK_FRAME_MS;
+		if (m_last_draw_time != 0) {
+			dt = Math.min(Math.max(now - m_last_draw_time, 0), MAX_FRAME_MS);
+		}
+		m_last_draw_time = now;
+		float fraction = 1f - (float) Math.exp(-dt / SMOOTHING_MS);
+
+		m_ring_angle = step_towards(m_ring_angle, m_ring_target, fraction);
+		m_arrow_angle = step_towards(m_arrow_angle, m_arrow_target, fraction);
+
+		float cx = getPaddingLeft() +
+				(getWidth() - getPaddingLeft() - getPaddingRight()) * 0.5f;
+		float cy = getPaddingTop() +
+				(getHeight() - getPaddingTop() - getPaddingBottom()) * 0.5f;
+
+		draw_rotated(canvas, m_ring_bm, m_ring_angle, cx, cy);
+		if (m_on_target) {
+			draw_rotated(canvas, m_on_target_bm, 0f, cx, cy);
+		}
+		else {
+			draw_rotated(canvas, m_arrow_bm, m_arrow_angle, cx, cy);
+		}
+
+		if ((m_ring_angle != m_ring_target) ||
+			((m_on_target == false) && (m_arrow_angle != m_arrow_target))) {
+			// Still turning, so do another frame.
+			next_frame();
+		}
+		else {
+			// Start fresh next time, so a long pause isn't
+			// taken as one giant step.
+			m_last_draw_time = 0;
+		}
+	} // onDraw (canvas)
+
+
+	/***************************
+	 * Draws a bitmap centered at (cx, cy) and turned clockwise by
+	 * the given angle.
+	 */
+	private void draw_rotated (Canvas canvas, Bitmap bm,
+								float angle, float cx, float cy) {
+		m_matrix.setRotate(angle, bm.getWidth() * 0.5f, bm.getHeight() * 0.5f);
+		m_matrix.postTranslate(cx - bm.getWidth() * 0.5f, cy - bm.getHeight() * 0.5f);
+		canvas.drawBitmap(bm, m_matrix, m_paint);
+	}
+
+
+	/***************************
+	 * Asks for another onDraw() on the next frame.
+	 */
+	private void next_frame() {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			Animator.next_frame(this);
+		}
+		else {
+			postInvalidateDelayed(FALLBACK_FRAME_MS);
+		}
+	}
+
+
+	/***************************
+	 * Moves an angle part of the way to its target, taking the
+	 * shortest way around.
+	 *
+	 * @param fraction	How much of the way to go (0 to 1).
+	 *
+	 * @return	The new angle, 0 to 360.
+	 */
+	private static float step_towards (float angle, float target, float fraction) {
+		float diff = target - angle;
+		if (diff > 180f) {
+			diff -= 360f;
+		}
+		else if (diff < -180f) {
+			diff += 360f;
+		}
+
+		if (Math.abs(diff) <= SNAP_DEGREES) {
+			return target;
+		}
+		return normalize(angle + diff * fraction);
+	} // step_towards (angle, target, fraction)
+
+
+	/***************************
+	 * @return	The same angle, but between 0 (inclusive) and 360.
+	 */
+	private static float normalize (float angle) {
+		angle %= 360f;
+		if (angle < 0f) {
+			angle += 360f;
+		}
+		return angle;
+	}
+
+}
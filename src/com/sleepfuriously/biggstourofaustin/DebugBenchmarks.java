@@ -0,0 +1,385 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.util.Random;
+
+import android.location.Location;
+import android.os.SystemClock;
+import android.util.Log;
+
+
+/**
+ * Timing tests that need a real device (they compare against
+ * android.location.Location).  Results go to the log under TAG.
+ *<p>
+ * These take a while, so DON'T call them from the UI thread.
+ * MainActivity runs them when the test button is long-pressed.
+ */
+public class DebugBenchmarks {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static String TAG = "DebugBenchmarks";
+
+	/** The synthetic destinations are spread around here. */
+	private final static double
+		CENTER_LAT = 30.27,
+		CENTER_LON = -97.74,
+		SPREAD_DEGREES = 1.0;
+
+	/** How many positions to look up for each test */
+	private final static int NUM_QUERIES = 200;
+
+	/** The radius for the "what's near me" tests, in meters */
+	private final static double NEARBY_RADIUS = 500.0;
+
+	/** Catalog sizes for the spatial index tests */
+	private final static int[] INDEX_SIZES = { 10000, 100000 };
+
+	/** How many positions to try for the GeoKernel tests */
+	private final static int NUM_GEO_POINTS = 20000;
+
+	/**
+	 * The GeoKernel test positions are this far (meters) from the
+	 * target, at most.
+	 */
+	private final static double GEO_MAX_RANGE = 50000.0;
+
+
+	//-------------------------
+	//	Classes
+	//-------------------------
+
+	/**
+	 * A made-up catalog of destinations scattered randomly
+	 * around Austin.
+	 */
+	static class RandomDestinationSource implements DestinationSource {
+		private final double[] m_lats, m_lons;
+
+		RandomDestinationSource (int count, long seed) {
+			Random rand = new Random(seed);
+			m_lats = new double[count];
+			m_lons = new double[count];
+			for (int i = 0; i < count; i++) {
+				m_lats[i] = CENTER_LAT + (rand.nextDouble() - 0.5) * SPREAD_DEGREES;
+				m_lons[i] = CENTER_LON + (rand.nextDouble() - 0.5) * SPREAD_DEGREES;
+			}
+		}
+
+		@Override
+		public int get_count() {
+			return m_lats.length;
+		}
+
+		@Override
+		public double get_latitude (int index) {
+			return m_lats[index];
+		}
+
+		@Override
+		public double get_longitude (int index) {
+			return m_lons[index];
+		}
+
+		@Override
+		public float get_slop (int index) {
+			return 3f;
+		}
+
+		@Override
+		public float get_rating (int index) {
+			return 3f;
+		}
+
+		/** Made up on the spot, like decoding them out of a catalog. */
+		@Override
+		public String get_string (int index, int field) {
+			return "destination " + index + ", field " + field;
+		}
+	} // class RandomDestinationSource
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Runs everything.
+	 */
+	public static void run_all() {
+		bench_geo_kernel();
+		for (int size : INDEX_SIZES) {
+			bench_spatial_index(size);
+			bench_batch_evaluator(size);
+		}
+		bench_destination_headers(INDEX_SIZES[0]);
+	}
+
+
+	/***************************
+	 * Compares making DestinationDatas for a whole catalog with
+	 * everything read (the way load() used to) against
+	 * load_headers(): time, and roughly how much heap each holds.
+	 *
+	 * @param size	The number of destinations.
+	 */
+	public static void bench_destination_headers (int size) {
+		DestinationRegistry registry = new DestinationRegistry(
+										new RandomDestinationSource(size, size));
+		Runtime rt = Runtime.getRuntime();
+
+		System.gc();
+		long before = rt.totalMemory() - rt.freeMemory();
+		long start = System.nanoTime();
+		DestinationData[] full = new DestinationData[size];
+		for (int i = 0; i < size; i++) {
+			full[i] = new DestinationData(registry, i);
+			for (int field = 0; field < DestinationSource.NUM_STRING_FIELDS; field++) {
+				full[i].get_string(field);
+			}
+			full[i].get_rating();
+			full[i].get_hotcold();
+		}
+		long full_us = (System.nanoTime() - start) / 1000;
+		System.gc();
+		long full_bytes = rt.totalMemory() - rt.freeMemory() - before;
+
+		before = rt.totalMemory() - rt.freeMemory();
+		start = System.nanoTime();
+		DestinationData[] headers = DestinationData.load_headers(registry, 0, size);
+		long header_us = (System.nanoTime() - start) / 1000;
+		System.gc();
+		long header_bytes = rt.totalMemory() - rt.freeMemory() - before;
+
+		Log.i(TAG, "destination data, " + size + " destinations:"
+				+ "  everything " + full_us + " us, ~" + (full_bytes / size) + " bytes each"
+				+ ";  headers " + header_us + " us, ~" + (header_bytes / size) + " bytes each"
+				+ "  [" + full[size - 1].get_title() + headers[size - 1].get_title() + "]");
+	} // bench_destination_headers (size)
+
+
+	/***************************
+	 * Times BatchEvaluator doing the whole catalog against a loop of
+	 * Location.distanceTo() and bearingTo(), and counts how many
+	 * bands come out different (only possible right at a band edge).
+	 *
+	 * @param size	The number of destinations.
+	 */
+	public static void bench_batch_evaluator (int size) {
+		Random rand = new Random(size);
+
+		DestinationRegistry registry = new DestinationRegistry(
+										new RandomDestinationSource(size, size));
+		Location[] locs = new Location[size];
+		for (int i = 0; i < size; i++) {
+			locs[i] = new Location("bench");
+			locs[i].setLatitude(registry.get_latitude(i));
+			locs[i].setLongitude(registry.get_longitude(i));
+		}
+		Location position = new Location("bench");
+		position.setLatitude(CENTER_LAT + (rand.nextDouble() - 0.5) * SPREAD_DEGREES);
+		position.setLongitude(CENTER_LON + (rand.nextDouble() - 0.5) * SPREAD_DEGREES);
+
+		BatchEvaluator evaluator = new BatchEvaluator(registry);
+		BatchEvaluator.Results results = null;
+
+		// once to warm up (and start the threads)
+		results = evaluator.evaluate_all(position.getLatitude(), position.getLongitude(), results);
+
+		long start = System.nanoTime();
+		results = evaluator.evaluate_all(position.getLatitude(), position.getLongitude(), results);
+		long batch_us = (System.nanoTime() - start) / 1000;
+
+		int band_differences = 0;
+		float sum = 0f;
+		start = System.nanoTime();
+		for (int i = 0; i < size; i++) {
+			float dist = position.distanceTo(locs[i]);
+			sum += position.bearingTo(locs[i]);
+			if (HotColdBands.classify(dist, registry.get_slop(i)) != results.get_band(i)) {
+				band_differences++;
+			}
+		}
+		long location_us = (System.nanoTime() - start) / 1000;
+
+		evaluator.shutdown();
+
+		Log.i(TAG, "batch evaluator, " + size + " destinations ("
+				+ Runtime.getRuntime().availableProcessors() + " cores):"
+				+ "  " + batch_us + " us (Location " + location_us + " us)"
+				+ ", " + band_differences + " bands differ  [" + sum + "]");
+	} // bench_batch_evaluator (size)
+
+
+	/***************************
+	 * Checks GeoKernel against Location.distanceTo() and bearingTo()
+	 * (worst distance error in percent, worst bearing error in
+	 * degrees) and times them both.  The positions are scattered
+	 * from right on top of the target out to GEO_MAX_RANGE, so
+	 * both the exact and the quick paths get used.
+	 */
+	public static void bench_geo_kernel() {
+		Random rand = new Random(42);
+
+		Location target = new Location("bench");
+		target.setLatitude(CENTER_LAT);
+		target.setLongitude(CENTER_LON);
+		float slop = 3f;
+
+		Location[] positions = new Location[NUM_GEO_POINTS];
+		double[] lats = new double[NUM_GEO_POINTS];
+		double[] lons = new double[NUM_GEO_POINTS];
+		for (int i = 0; i < NUM_GEO_POINTS; i++) {
+			// log scale, so the close ones get tried too
+			double dist = Math.pow(GEO_MAX_RANGE, rand.nextDouble());
+			double angle = rand.nextDouble() * 2.0 * Math.PI;
+			lats[i] = CENTER_LAT + (dist * Math.cos(angle)) / GeoMath.METERS_PER_DEGREE;
+			lons[i] = CENTER_LON + (dist * Math.sin(angle)) /
+					(GeoMath.METERS_PER_DEGREE * Math.cos(Math.toRadians(CENTER_LAT)));
+			positions[i] = new Location("bench");
+			positions[i].setLatitude(lats[i]);
+			positions[i].setLongitude(lons[i]);
+		}
+
+		GeoKernel kernel = new GeoKernel();
+		kernel.set_target(CENTER_LAT, CENTER_LON, slop);
+
+		// accuracy
+		double worst_dist = 0.0, worst_bearing = 0.0;
+		int num_exact = 0;
+		for (int i = 0; i < NUM_GEO_POINTS; i++) {
+			float dist = kernel.compute(lats[i], lons[i]);
+			if (kernel.was_exact()) {
+				num_exact++;
+			}
+			float loc_dist = positions[i].distanceTo(target);
+			worst_dist = Math.max(worst_dist, Math.abs(dist - loc_dist) / loc_dist);
+
+			double bearing_diff = Math.abs(kernel.get_bearing() - positions[i].bearingTo(target));
+			if (bearing_diff > 180.0) {
+				bearing_diff = 360.0 - bearing_diff;
+			}
+			worst_bearing = Math.max(worst_bearing, bearing_diff);
+		}
+
+		// speed (the sum keeps the loops from being optimized away)
+		float sum = 0f;
+		long start = System.nanoTime();
+		for (int i = 0; i < NUM_GEO_POINTS; i++) {
+			sum += kernel.compute(lats[i], lons[i]) + kernel.get_bearing();
+		}
+		long kernel_ns = (System.nanoTime() - start) / NUM_GEO_POINTS;
+
+		start = System.nanoTime();
+		for (int i = 0; i < NUM_GEO_POINTS; i++) {
+			sum += positions[i].distanceTo(target) + positions[i].bearingTo(target);
+		}
+		long location_ns = (System.nanoTime() - start) / NUM_GEO_POINTS;
+
+		Log.i(TAG, "geo kernel, " + NUM_GEO_POINTS + " positions (" + num_exact + " exact):"
+				+ "  worst distance error " + (worst_dist * 100.0) + "%"
+				+ ", worst bearing error " + worst_bearing + " deg"
+				+ ", kernel " + kernel_ns + " ns (Location " + location_ns + " ns)"
+				+ "  [" + sum + "]");
+	} // bench_geo_kernel()
+
+
+	/***************************
+	 * Compares DestinationSpatialIndex with the obvious way (checking
+	 * every destination with Location.distanceTo()) for finding the
+	 * nearest unfound destination and everything within
+	 * NEARBY_RADIUS.  Half the destinations are marked found.
+	 *
+	 * @param size	The number of destinations.
+	 */
+	public static void bench_spatial_index (int size) {
+		Random rand = new Random(size);
+
+		DestinationRegistry registry = new DestinationRegistry(
+										new RandomDestinationSource(size, size));
+		Location[] locs = new Location[size];
+		for (int i = 0; i < size; i++) {
+			registry.set_found(i, rand.nextBoolean());
+			locs[i] = new Location("bench");
+			locs[i].setLatitude(registry.get_latitude(i));
+			locs[i].setLongitude(registry.get_longitude(i));
+		}
+
+		long start = SystemClock.elapsedRealtime();
+		DestinationSpatialIndex index = new DestinationSpatialIndex(registry);
+		long build_ms = SystemClock.elapsedRealtime() - start;
+
+		Location[] queries = new Location[NUM_QUERIES];
+		for (int q = 0; q < NUM_QUERIES; q++) {
+			queries[q] = new Location("bench");
+			queries[q].setLatitude(CENTER_LAT + (rand.nextDouble() - 0.5) * SPREAD_DEGREES);
+			queries[q].setLongitude(CENTER_LON + (rand.nextDouble() - 0.5) * SPREAD_DEGREES);
+		}
+
+		int[] results = new int[size];
+		int disagreements = 0;
+
+		// nearest, the index way
+		int[] index_nearest = new int[NUM_QUERIES];
+		start = System.nanoTime();
+		for (int q = 0; q < NUM_QUERIES; q++) {
+			index_nearest[q] = index.find_nearest_unfound(queries[q].getLatitude(),
+														queries[q].getLongitude());
+		}
+		long index_nearest_ns = (System.nanoTime() - start) / NUM_QUERIES;
+
+		// nearest, the linear way
+		start = System.nanoTime();
+		for (int q = 0; q < NUM_QUERIES; q++) {
+			int best = -1;
+			float best_dist = Float.MAX_VALUE;
+			for (int i = 0; i < size; i++) {
+				if (registry.is_found(i)) {
+					continue;
+				}
+				float dist = queries[q].distanceTo(locs[i]);
+				if (dist < best_dist) {
+					best_dist = dist;
+					best = i;
+				}
+			}
+			if (best != index_nearest[q]) {
+				// Can happen for near-ties (sphere vs. ellipsoid).
+				disagreements++;
+			}
+		}
+		long linear_nearest_ns = (System.nanoTime() - start) / NUM_QUERIES;
+
+		// within the radius, the index way
+		start = System.nanoTime();
+		for (int q = 0; q < NUM_QUERIES; q++) {
+			index.find_within(queries[q].getLatitude(), queries[q].getLongitude(),
+							NEARBY_RADIUS, false, results);
+		}
+		long index_within_ns = (System.nanoTime() - start) / NUM_QUERIES;
+
+		// within the radius, the linear way
+		start = System.nanoTime();
+		for (int q = 0; q < NUM_QUERIES; q++) {
+			int found = 0;
+			for (int i = 0; i < size; i++) {
+				if (queries[q].distanceTo(locs[i]) <= NEARBY_RADIUS) {
+					results[found++] = i;
+				}
+			}
+		}
+		long linear_within_ns = (System.nanoTime() - start) / NUM_QUERIES;
+
+		index.detach();
+
+		Log.i(TAG, "spatial index, " + size + " destinations:"
+				+ "  build " + build_ms + " ms"
+				+ ", nearest " + index_nearest_ns / 1000 + " us (linear "
+					+ linear_nearest_ns / 1000 + " us, " + disagreements + " disagree)"
+				+ ", within " + (int) NEARBY_RADIUS + "m " + index_within_ns / 1000
+					+ " us (linear " + linear_within_ns / 1000 + " us)");
+	} // bench_spatial_index (size)
+
+}
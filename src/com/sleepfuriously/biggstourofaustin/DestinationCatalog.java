@@ -0,0 +1,276 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Read-only access to a packed binary catalog of all the
+ * destinations (see DestinationCatalogPacker for how these
+ * are made).
+ *<p>
+ * The whole file is memory-mapped, so finding destination N is
+ * just a little arithmetic--no parsing and no loading of
+ * the entire catalog to get at one item.
+ *<p>
+ * File layout (all numbers are big-endian):
+ *<pre>
+ *	Header (HEADER_SIZE bytes)
+ *		int		MAGIC
+ *		short	VERSION
+ *		short	RECORD_SIZE
+ *		int		number of records
+ *		int		offset of the first record
+ *		int		offset of the string table
+ *		int		length of the string table
+ *		(padding to HEADER_SIZE)
+ *
+ *	Records (RECORD_SIZE bytes each)
+ *		int		latitude in microdegrees
+ *		int		longitude in microdegrees
+ *		float	slop (meters)
+ *		float	rating
+ *		int		string offset for each of DestinationSource's
+ *				FIELD_* items, in FIELD_* order.  -1 means null.
+ *
+ *	String table
+ *		int		length in bytes
+ *		byte[]	UTF-8 text
+ *</pre>
+ *
+ * This class has no Android dependencies.
+ */
+public class DestinationCatalog implements DestinationSource {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** Identifies the file.  Spells "AUST" in ascii. */
+	public final static int MAGIC = 0x41555354;
+
+	/** Change this whenever the layout changes. */
+	public final static short VERSION = 1;
+
+	public final static int HEADER_SIZE = 32;
+
+	/** Offsets within a record */
+	final static int
+		REC_LATITUDE = 0,
+		REC_LONGITUDE = 4,
+		REC_SLOP = 8,
+		REC_RATING = 12,
+		REC_STRINGS = 16;
+
+	public final static int RECORD_SIZE = REC_STRINGS + (4 * NUM_STRING_FIELDS);
+
+	/** Microdegrees in one degree */
+	public final static double MICRODEGREES = 1000000.0;
+
+	/** Offsets within the header */
+	final static int
+		HDR_MAGIC = 0,
+		HDR_VERSION = 4,
+		HDR_RECORD_SIZE = 6,
+		HDR_COUNT = 8,
+		HDR_RECORDS_OFFSET = 12,
+		HDR_STRINGS_OFFSET = 16,
+		HDR_STRINGS_LENGTH = 20;
+
+	private final static String ENCODING = "UTF-8";
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	/** The entire file.  Only absolute gets are used, so never moves. */
+	private final ByteBuffer m_buf;
+
+	private final int
+		m_count,
+		m_records_offset,
+		m_strings_offset,
+		m_strings_length;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor
+	 *
+	 * @param buf	Holds the entire catalog.  It's NOT copied,
+	 * 				so don't go changing it afterwards.
+	 *
+	 * @throws IOException	If the buffer doesn't look like
+	 * 						a catalog.
+	 */
+	public DestinationCatalog (ByteBuffer buf) throws IOException {
+		m_buf = buf.duplicate();
+		m_buf.order(ByteOrder.BIG_ENDIAN);
+
+		if (m_buf.limit() < HEADER_SIZE) {
+			throw new IOException("Catalog too short to have a header");
+		}
+		if (m_buf.getInt(HDR_MAGIC) != MAGIC) {
+			throw new IOException("Not a destination catalog (bad magic number)");
+		}
+		if (m_buf.getShort(HDR_VERSION) != VERSION) {
+			throw new IOException("Unknown catalog version " + m_buf.getShort(HDR_VERSION));
+		}
+		if (m_buf.getShort(HDR_RECORD_SIZE) != RECORD_SIZE) {
+			throw new IOException("Unexpected catalog record size " + m_buf.getShort(HDR_RECORD_SIZE));
+		}
+
+		m_count = m_buf.getInt(HDR_COUNT);
+		m_records_offset = m_buf.getInt(HDR_RECORDS_OFFSET);
+		m_strings_offset = m_buf.getInt(HDR_STRINGS_OFFSET);
+		m_strings_length = m_buf.getInt(HDR_STRINGS_LENGTH);
+
+		if ((m_count < 0) ||
+			((long) m_records_offset + (long) m_count * RECORD_SIZE > m_buf.limit()) ||
+			((long) m_strings_offset + m_strings_length > m_buf.limit())) {
+			throw new IOException("Catalog is truncated");
+		}
+	} // constructor
+
+
+	/***************************
+	 * Memory-maps the given file and wraps it in a catalog.
+	 * The mapping stays valid after the file is closed.
+	 *
+	 * @param file		A catalog file.
+	 *
+	 * @param offset		Where the catalog starts within the file
+	 * 					(usually 0, but uncompressed assets live
+	 * 					inside the apk).
+	 *
+	 * @param length		Number of bytes in the catalog.  Use -1
+	 * 					for "the rest of the file."
+	 */
+	public static DestinationCatalog map (File file, long offset, long length)
+			throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			if (length < 0) {
+				length = channel.size() - offset;
+			}
+			return new DestinationCatalog(
+					channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+		}
+		finally {
+			in.close();
+		}
+	} // map (file, offset, length)
+
+
+	/***************************
+	 * @return	The number of destinations in this catalog.
+	 */
+	@Override
+	public int get_count() {
+		return m_count;
+	}
+
+	/***************************
+	 * Where the record for the given destination starts.
+	 */
+	private int record_offset (int index) {
+		if ((index < 0) || (index >= m_count)) {
+			throw new IndexOutOfBoundsException("destination " + index + " of " + m_count);
+		}
+		return m_records_offset + (index * RECORD_SIZE);
+	}
+
+	/***************************/
+	public int get_latitude_e6 (int index) {
+		return m_buf.getInt(record_offset(index) + REC_LATITUDE);
+	}
+
+	/***************************/
+	public int get_longitude_e6 (int index) {
+		return m_buf.getInt(record_offset(index) + REC_LONGITUDE);
+	}
+
+	/***************************/
+	@Override
+	public double get_latitude (int index) {
+		return get_latitude_e6(index) / MICRODEGREES;
+	}
+
+	/***************************/
+	@Override
+	public double get_longitude (int index) {
+		return get_longitude_e6(index) / MICRODEGREES;
+	}
+
+	/***************************
+	 * @return	How close (in meters) the user needs to be to this
+	 * 			destination to be "on target."
+	 */
+	@Override
+	public float get_slop (int index) {
+		return m_buf.getFloat(record_offset(index) + REC_SLOP);
+	}
+
+	/***************************/
+	@Override
+	public float get_rating (int index) {
+		return m_buf.getFloat(record_offset(index) + REC_RATING);
+	}
+
+
+	/***************************
+	 * Reads one of the strings for a destination.  This is the
+	 * only part of the catalog that allocates anything.
+	 *
+	 * @param index		Which destination.
+	 *
+	 * @param field		One of the FIELD_* constants.
+	 *
+	 * @return	The string, or null if this destination doesn't
+	 * 			have one.
+	 */
+	@Override
+	public String get_string (int index, int field) {
+		if ((field < 0) || (field >= NUM_STRING_FIELDS)) {
+			throw new IllegalArgumentException("Unknown string field " + field);
+		}
+		int offset = m_buf.getInt(record_offset(index) + REC_STRINGS + (4 * field));
+		if (offset < 0) {
+			return null;
+		}
+		if (offset + 4 > m_strings_length) {
+			throw new IndexOutOfBoundsException("Bad string offset " + offset);
+		}
+
+		int start = m_strings_offset + offset;
+		int len = m_buf.getInt(start);
+		if ((len < 0) || (offset + 4 + len > m_strings_length)) {
+			throw new IndexOutOfBoundsException("Bad string length " + len);
+		}
+
+		byte[] bytes = new byte[len];
+		start += 4;
+		for (int i = 0; i < len; i++) {
+			bytes[i] = m_buf.get(start + i);
+		}
+
+		try {
+			return new String(bytes, ENCODING);
+		}
+		catch (UnsupportedEncodingException e) {
+			// Every JVM has UTF-8, so this can't happen.
+			throw new RuntimeException(e);
+		}
+	} // get_string (index, field)
+
+}
@@ -0,0 +1,449 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+
+/**
+ * Builds the binary catalog read by DestinationCatalog.
+ *<p>
+ * This is a build-time tool, run on the desktop whenever the
+ * destination resources change:
+ *<pre>
+ *	java -cp bin/classes com.sleepfuriously.biggstourofaustin.DestinationCatalogPacker \
+ *		res/values assets/destinations.pack
+ *</pre>
+ * It reads the string-arrays in arrays.xml (resolving any
+ * &#64;string references from the other files in the same
+ * directory) and writes out the packed file.
+ *<p>
+ * If the output file ends in ".json" a json tour file (the
+ * kind DestinationJsonCatalog reads) is written instead.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class DestinationCatalogPacker {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/**
+	 * The names of the string-arrays in arrays.xml, one for each
+	 * of DestinationSource's FIELD_* constants (in that order).
+	 */
+	private final static String[] STRING_ARRAY_NAMES = {
+		"titles",
+		"addresses",
+		"subtitles",
+		"stories",
+		"hints",
+		"location_filenames"
+	};
+
+	private final static String
+		LATITUDE_ARRAY = "latitudes",
+		LONGITUDE_ARRAY = "longitudes",
+		SLOP_ARRAY = "distances",
+		RATING_ARRAY = "ratings";
+
+	private final static String STRING_REF_PREFIX = "@string/";
+
+	/** The json names of each of the FIELD_* strings */
+	private final static String[] JSON_FIELD_NAMES = {
+		"title",
+		"address",
+		"subtitle",
+		"story",
+		"hint",
+		"filename"
+	};
+
+	private final static String JSON_SUFFIX = ".json";
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final ArrayList<int[]> m_coords = new ArrayList<int[]>();
+	private final ArrayList<float[]> m_values = new ArrayList<float[]>();
+	private final ArrayList<String[]> m_strings = new ArrayList<String[]>();
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Adds a destination to the end of the catalog.
+	 *
+	 * @param strings	One for each FIELD_* (nulls are fine).
+	 */
+	public void add (double latitude, double longitude,
+					float slop, float rating, String[] strings) {
+		if (strings.length != DestinationCatalog.NUM_STRING_FIELDS) {
+			throw new IllegalArgumentException("Need " + DestinationCatalog.NUM_STRING_FIELDS
+					+ " strings, got " + strings.length);
+		}
+		m_coords.add(new int[] { to_e6(latitude), to_e6(longitude) });
+		m_values.add(new float[] { slop, rating });
+		m_strings.add(strings.clone());
+	} // add (...)
+
+
+	/***************************/
+	public int get_count() {
+		return m_coords.size();
+	}
+
+
+	/***************************/
+	public static int to_e6 (double degrees) {
+		return (int) Math.round(degrees * DestinationCatalog.MICRODEGREES);
+	}
+
+
+	/***************************
+	 * Writes out everything that's been added so far.
+	 */
+	public void write (OutputStream out) throws IOException {
+		int count = m_coords.size();
+
+		// Build the string table first so we know all the offsets.
+		// Identical strings are only stored once.
+		ByteArrayOutputStream table_bytes = new ByteArrayOutputStream();
+		DataOutputStream table = new DataOutputStream(table_bytes);
+		HashMap<String, Integer> offsets = new HashMap<String, Integer>();
+		int[][] string_offsets = new int[count][DestinationCatalog.NUM_STRING_FIELDS];
+
+		for (int i = 0; i < count; i++) {
+			String[] strings = m_strings.get(i);
+			for (int field = 0; field < strings.length; field++) {
+				String str = strings[field];
+				if (str == null) {
+					string_offsets[i][field] = -1;
+					continue;
+				}
+				Integer offset = offsets.get(str);
+				if (offset == null) {
+					offset = table.size();
+					byte[] utf8 = str.getBytes("UTF-8");
+					table.writeInt(utf8.length);
+					table.write(utf8);
+					offsets.put(str, offset);
+				}
+				string_offsets[i][field] = offset;
+			}
+		}
+		table.flush();
+
+		int records_offset = DestinationCatalog.HEADER_SIZE;
+		int strings_offset = records_offset + (count * DestinationCatalog.RECORD_SIZE);
+
+		DataOutputStream data = new DataOutputStream(out);
+
+		// header
+		data.writeInt(DestinationCatalog.MAGIC);
+		data.writeShort(DestinationCatalog.VERSION);
+		data.writeShort(DestinationCatalog.RECORD_SIZE);
+		data.writeInt(count);
+		data.writeInt(records_offset);
+		data.writeInt(strings_offset);
+		data.writeInt(table_bytes.size());
+		while (data.size() < DestinationCatalog.HEADER_SIZE) {
+			data.writeByte(0);
+		}
+
+		// records
+		for (int i = 0; i < count; i++) {
+			data.writeInt(m_coords.get(i)[0]);
+			data.writeInt(m_coords.get(i)[1]);
+			data.writeFloat(m_values.get(i)[0]);
+			data.writeFloat(m_values.get(i)[1]);
+			for (int field = 0; field < DestinationCatalog.NUM_STRING_FIELDS; field++) {
+				data.writeInt(string_offsets[i][field]);
+			}
+		}
+
+		// strings
+		table_bytes.writeTo(data);
+		data.flush();
+	} // write (out)
+
+
+	/***************************
+	 * Writes out everything that's been added so far as a json
+	 * tour file.
+	 */
+	public void write_json (OutputStream out) throws IOException {
+		Writer w = new OutputStreamWriter(out, "UTF-8");
+		w.write("{ \"destinations\" : [\n");
+
+		for (int i = 0; i < m_coords.size(); i++) {
+			w.write("\t{");
+			w.write(" \"latitude\" : " + (m_coords.get(i)[0] / DestinationCatalog.MICRODEGREES));
+			w.write(", \"longitude\" : " + (m_coords.get(i)[1] / DestinationCatalog.MICRODEGREES));
+			w.write(", \"slop\" : " + m_values.get(i)[0]);
+			w.write(", \"rating\" : " + m_values.get(i)[1]);
+
+			String[] strings = m_strings.get(i);
+			for (int field = 0; field < strings.length; field++) {
+				if (strings[field] == null) {
+					continue;
+				}
+				w.write(",\n\t\t\"" + JSON_FIELD_NAMES[field] + "\" : ");
+				write_json_string(w, strings[field]);
+			}
+			w.write((i + 1 < m_coords.size()) ? " },\n" : " }\n");
+		}
+
+		w.write("] }\n");
+		w.flush();
+	} // write_json (out)
+
+
+	/***************************
+	 * Writes a quoted and escaped json string.
+	 */
+	private static void write_json_string (Writer w, String str) throws IOException {
+		w.write('"');
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			switch (c) {
+				case '"':	w.write("\\\"");	break;
+				case '\\':	w.write("\\\\");	break;
+				case '\n':	w.write("\\n");	break;
+				case '\t':	w.write("\\t");	break;
+				case '\r':	w.write("\\r");	break;
+				default:
+					if (c < 0x20) {
+						w.write(String.format("\\u%04x", (int) c));
+					}
+					else {
+						w.write(c);
+					}
+					break;
+			}
+		}
+		w.write('"');
+	} // write_json_string (w, str)
+
+
+	/***************************
+	 * Fills this packer with all the destinations described by
+	 * the resource files in the given directory (normally
+	 * res/values).
+	 */
+	public void add_from_resources (File values_dir) throws Exception {
+		Map<String, String> strings = new HashMap<String, String>();
+		Map<String, List<String>> arrays = new HashMap<String, List<String>>();
+		read_values_dir(values_dir, strings, arrays);
+
+		// Just like MainActivity, the titles decide how many
+		// destinations there are.
+		List<String> titles = arrays.get(STRING_ARRAY_NAMES[DestinationCatalog.FIELD_TITLE]);
+		if (titles == null) {
+			throw new IOException("No titles array in " + values_dir);
+		}
+
+		for (int i = 0; i < titles.size(); i++) {
+			String[] dest_strings = new String[DestinationCatalog.NUM_STRING_FIELDS];
+			for (int field = 0; field < dest_strings.length; field++) {
+				dest_strings[field] = resolve(get_item(arrays, STRING_ARRAY_NAMES[field], i, false),
+											strings);
+			}
+
+			add(Double.parseDouble(get_item(arrays, LATITUDE_ARRAY, i, true)),
+				Double.parseDouble(get_item(arrays, LONGITUDE_ARRAY, i, true)),
+				Float.parseFloat(get_item(arrays, SLOP_ARRAY, i, true)),
+				Float.parseFloat(get_item(arrays, RATING_ARRAY, i, true)),
+				dest_strings);
+		}
+	} // add_from_resources (values_dir)
+
+
+	/***************************
+	 * Reads every xml file in a resource values directory, sorting
+	 * its strings and string-arrays into the given maps.
+	 */
+	private static void read_values_dir (File values_dir,
+										Map<String, String> strings,
+										Map<String, List<String>> arrays)
+			throws Exception {
+		File[] files = values_dir.listFiles();
+		if (files == null) {
+			throw new IOException("Can't read directory " + values_dir);
+		}
+
+		DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		for (File file : files) {
+			if (file.getName().endsWith(".xml") == false) {
+				continue;
+			}
+			Document doc = builder.parse(file);
+
+			NodeList string_nodes = doc.getElementsByTagName("string");
+			for (int i = 0; i < string_nodes.getLength(); i++) {
+				Element el = (Element) string_nodes.item(i);
+				strings.put(el.getAttribute("name"), unescape(el.getTextContent()));
+			}
+
+			NodeList array_nodes = doc.getElementsByTagName("string-array");
+			for (int i = 0; i < array_nodes.getLength(); i++) {
+				Element el = (Element) array_nodes.item(i);
+				NodeList items = el.getElementsByTagName("item");
+				ArrayList<String> list = new ArrayList<String>();
+				for (int j = 0; j < items.getLength(); j++) {
+					list.add(unescape(items.item(j).getTextContent()));
+				}
+				arrays.put(el.getAttribute("name"), list);
+			}
+		}
+	} // read_values_dir (values_dir, strings, arrays)
+
+
+	/***************************
+	 * Gets one item from the named array.
+	 *
+	 * @param required	When TRUE a missing item is an error.
+	 * 					Otherwise it's just null.
+	 */
+	private static String get_item (Map<String, List<String>> arrays,
+									String name, int index, boolean required)
+			throws IOException {
+		List<String> list = arrays.get(name);
+		if ((list == null) || (index >= list.size())) {
+			if (required) {
+				throw new IOException("Array " + name + " has no item " + index);
+			}
+			return null;
+		}
+		String item = list.get(index);
+		if (item.length() == 0) {
+			return null;		// <item/> means null
+		}
+		return item;
+	} // get_item (arrays, name, index, required)
+
+
+	/***************************
+	 * Follows an @string reference, if that's what this is.
+	 */
+	private static String resolve (String item, Map<String, String> strings)
+			throws IOException {
+		if ((item == null) || (item.startsWith(STRING_REF_PREFIX) == false)) {
+			return item;
+		}
+		String name = item.substring(STRING_REF_PREFIX.length());
+		String str = strings.get(name);
+		if (str == null) {
+			throw new IOException("Unknown string resource " + item);
+		}
+		return str;
+	} // resolve (item, strings)
+
+
+	/***************************
+	 * Does what aapt does to the text of a string resource:
+	 * runs of whitespace become a single space (unless in double
+	 * quotes), and backslash escapes are processed.
+	 */
+	static String unescape (String raw) {
+		StringBuilder sb = new StringBuilder(raw.length());
+		boolean quoted = false;
+		boolean pending_space = false;
+
+		for (int i = 0; i < raw.length(); i++) {
+			char c = raw.charAt(i);
+
+			if (!quoted && Character.isWhitespace(c)) {
+				pending_space = true;
+				continue;
+			}
+			if (pending_space) {
+				if (sb.length() > 0) {
+					sb.append(' ');
+				}
+				pending_space = false;
+			}
+
+			if ((c == '\\') && (i + 1 < raw.length())) {
+				char next = raw.charAt(++i);
+				switch (next) {
+					case 'n':
+						sb.append('\n');
+						break;
+					case 't':
+						sb.append('\t');
+						break;
+					case 'u':
+						if (i + 4 < raw.length()) {
+							sb.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+							i += 4;
+						}
+						break;
+					default:
+						sb.append(next);		// \' \" \? \@ \\
+						break;
+				}
+			}
+			else if (c == '"') {
+				quoted = !quoted;
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		// Trailing whitespace is simply dropped.
+
+		return sb.toString();
+	} // unescape (raw)
+
+
+	/***************************
+	 * Usage:
+	 * 	DestinationCatalogPacker [values dir] [output file]
+	 */
+	public static void main (String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err.println("usage: DestinationCatalogPacker <res/values dir> <output file>");
+			System.exit(1);
+		}
+
+		DestinationCatalogPacker packer = new DestinationCatalogPacker();
+		packer.add_from_resources(new File(args[0]));
+
+		FileOutputStream out = new FileOutputStream(args[1]);
+		try {
+			if (args[1].endsWith(JSON_SUFFIX)) {
+				packer.write_json(out);
+			}
+			else {
+				packer.write(out);
+			}
+		}
+		finally {
+			out.close();
+		}
+		System.out.println("Wrote " + packer.get_count() + " destinations to " + args[1]);
+	} // main (args)
+
+}
@@ -1,13 +1,18 @@
 package com.sleepfuriously.biggstourofaustin;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.location.Location;
-import android.preference.PreferenceManager;
-import android.webkit.WebViewFragment;
-import android.widget.ImageView;
+import android.content.res.AssetFileDescriptor;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
 
 /**
@@ -20,43 +25,97 @@ public class DestinationData {
 	//	Constants
 	//-------------------------
 
+	private final static String TAG = "DestinationData";
+
 	/**
-	 * This is the prefix for all the SharedPreference keys that
-	 * relate to the found/not-found data (boolean) for all the
-	 * locations.
-	 *
-	 * To make a key for a specific location, concatenate this
-	 * prefix with the array number of the location in question.
-	 * For example, to find out if the location at array position
-	 * 2 has been found or not use this code:
-	 *
-	 * String key = PREF_KEY_FOUND_PREFIX + 2;
-	 * SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
-	 * boolean found = prefs.getBoolean(key);
+	 * The name of the assets file for our json data (read by
+	 * DestinationJsonCatalog).
 	 */
-	private final static String PREF_KEY_FOUND_PREFIX = "LocationData_fnd";
-
-	/** The name of the assets file for our json data. */
 	private final static String DESTINATION_DATA_FILENAME = "LocationData.json";
 
+	/**
+	 * The name of the assets file for the packed binary catalog
+	 * (made by DestinationCatalogPacker from arrays.xml).
+	 */
+	private final static String DESTINATION_CATALOG_FILENAME = "destinations.pack";
+
+	/** The m_loaded bit for m_rating (the string fields use the bits below it). */
+	private final static int RATING_LOADED = 1 << DestinationSource.NUM_STRING_FIELDS;
+
+	/** The fields that load_header() reads. */
+	private final static int[] HEADER_FIELDS = {
+		DestinationSource.FIELD_TITLE,
+		DestinationSource.FIELD_HINT
+	};
+
+
+	//-------------------------
+	//	Class Data
+	//-------------------------
+
+	/**
+	 * The packed catalog, shared by everyone.  Null if it
+	 * couldn't be opened (the resource arrays are used instead).
+	 */
+	private static DestinationCatalog s_catalog = null;
+
+	/** TRUE once we've tried to open s_catalog (whether it worked or not). */
+	private static boolean s_catalog_opened = false;
+
+	/**
+	 * Used when s_catalog can't be opened.  It keeps loading in the
+	 * background after get_source() returns it.  Null if it couldn't
+	 * be read either (or had nothing in it).
+	 */
+	private static DestinationJsonCatalog s_json_catalog = null;
+
+	/** TRUE once we've tried to open s_json_catalog. */
+	private static boolean s_json_opened = false;
+
+	/** Waiting for s_json_catalog to finish (see when_source_loaded()). */
+	private final static ArrayList<Runnable> s_json_waiters = new ArrayList<Runnable>();
+
+	/**
+	 * TRUE once s_json_catalog has its first destination (or is
+	 * done trying).  Until then, when_source_ready() waits.
+	 */
+	private static boolean s_json_started = false;
+
+	/** Waiting for s_json_started (see when_source_ready()). */
+	private final static ArrayList<Runnable> s_json_first_waiters = new ArrayList<Runnable>();
+
+	/** Used when neither catalog can be opened.  Made as needed. */
+	private static ResourceDestinationSource s_resource_source = null;
+
 
 	//-------------------------
 	//	Member Data
 	//-------------------------
 
 	/** The all-important location! */
-	public Location m_loc;
+	public final GeoPoint m_loc = new GeoPoint();
+
+	/**
+	 * Where the strings and rating come from.  They're only read
+	 * the first time they're asked for (see get_string()).
+	 */
+	private DestinationSource m_source = null;
 
-	/** The Strings for the UI.  Null if not used. */
-	public String
-		m_title,
-		m_address,
-		m_subtitle,
-		m_story,
-		m_hint;		// Displayed at the top of the main screen.
+	/**
+	 * The Strings for the UI, by DestinationSource.FIELD_*.  A slot
+	 * is only good if its bit is set in m_loaded (it may be null
+	 * even then, if this destination doesn't have one).
+	 */
+	private final String[] m_strings = new String[DestinationSource.NUM_STRING_FIELDS];
+
+	/** How cool this attraction is.  Good if RATING_LOADED is set. */
+	private float m_rating = 0f;
 
-	/** How cool this attraction is */
-	public float m_rating = 0f;
+	/** Bit n is set once field n has been read.  See RATING_LOADED. */
+	private int m_loaded = 0;
+
+	/** How many meters off we can be (see get_slop()). */
+	private float m_slop = 0f;
 
 	/**
 	 * This is the distance you have to be from the actual location
@@ -66,25 +125,20 @@ public class DestinationData {
 //	public float m_on_target_distance = 3f;
 
 	/**
-	 * Holds the images.  Possible that there won't be any.
-	 *
-	 *  todo
-	 *  Change this to URLs so I can download them as needed--don't
-	 *  want to waste too much space with this app.
+	 * Tells if the use has found this location or not.  Only used
+	 * when this isn't a view onto a registry (see is_found()).
 	 */
-	public ArrayList<ImageView> m_images;
-
-	/** Tells if the use has found this location or not */
-	public boolean m_found = false;
-
-	/** Used to gather our hot/cold messages */
-	public HotColdDistance m_hotcold = null;
+	private boolean m_found = false;
 
 	/**
-	 * The html version of this Location (to be shown when the
-	 * location has been found).
+	 * When this is a view of one destination in a registry, these
+	 * say which.  Otherwise m_registry is null.
 	 */
-	WebViewFragment m_webview = null;
+	private DestinationRegistry m_registry = null;
+	private int m_index = -1;
+
+	/** Used to gather our hot/cold messages.  Made as needed (see get_hotcold()). */
+	private HotColdDistance m_hotcold = null;
 
 
 	//-------------------------
@@ -95,19 +149,40 @@ public class DestinationData {
 	 * Constructor
 	 */
 	public DestinationData() {
-		m_loc = new Location("LocationData Class");
-		m_images = new ArrayList<ImageView>();
 	}
 
 
+	/***************************
+	 * Constructor.  Makes this a view onto one of the destinations
+	 * in a registry.  The numbers come from the registry, the strings
+	 * from the registry's source, and the found flag is the
+	 * registry's (so changing it here changes it there).
+	 *
+	 * @param registry	Holds all the destinations.
+	 *
+	 * @param index		Which destination this is.
+	 */
+	public DestinationData (DestinationRegistry registry, int index) {
+		this();
+		m_registry = registry;
+		m_index = index;
+
+		m_source = registry.get_source();
+
+		m_loc.set(registry.get_latitude(index), registry.get_longitude(index));
+		m_slop = registry.get_slop(index);
+	} // constructor (registry, index)
+
+
 	/***************************
 	 * Load up the data for the specified location into this class.
 	 * Please use this routine instead of writing to the data
 	 * directly.
 	 *
-	 * Currently all the data is stored in Resource Files.  This may
-	 * change in the future, so it's best that these changes stay
-	 * localized in this method.
+	 * The data comes from the packed catalog in the assets.  If
+	 * that's not around for some reason, the Resource Files are
+	 * used instead.  This may change in the future, so it's best
+	 * that these changes stay localized in this method.
 	 *
 	 * side effects:
 	 * 		m_location_data		Filled with info about the location.
@@ -120,53 +195,476 @@ public class DestinationData {
 	 */
 	public void load (Context ctx, int loc_num) {
 
-		// the location (latitude & longitude)
-		double latitude, longitude;
-		String[] array = ctx.getResources().getStringArray(R.array.latitudes);
-		latitude = Double.parseDouble(array[loc_num]);
-		array = ctx.getResources().getStringArray(R.array.longitudes);
-		longitude = Double.parseDouble(array[loc_num]);
-		m_loc.setLatitude(latitude);
-		m_loc.setLongitude(longitude);
-
-		// hint
-		String[] hints = ctx.getResources().getStringArray(R.array.hints);
-		m_hint = hints[loc_num];
-
-		// title
-		String[] titles = ctx.getResources().getStringArray(R.array.titles);
-		m_title = titles[loc_num];
+		load(get_source(ctx), loc_num);
 
-		// address
-		String[] addresses = ctx.getResources().getStringArray(R.array.addresses);
-		m_address = addresses[loc_num];
+		// And whether it's been found.
+		m_found = DiscoveryStore.get_instance(ctx).is_discovered(loc_num);
 
-		// subtitle
-		String[] subtitles = ctx.getResources().getStringArray(R.array.subtitles);
-		m_subtitle = subtitles[loc_num];
+	} // load_location_data (loc_num)
 
-		// story
-		String[] stories = ctx.getResources().getStringArray(R.array.stories);
-		m_story = stories[loc_num];
 
-		// rating
-		String[] ratings = ctx.getResources().getStringArray(R.array.ratings);
-		m_rating = Float.parseFloat(ratings[loc_num]);
+	/***************************
+	 * Loads the data for a location straight out of a
+	 * DestinationSource (like the packed catalog or the json
+	 * catalog).  Only the given destination is touched.
+	 *
+	 * Does NOT read the DiscoveryStore (so m_found is unchanged).
+	 *
+	 * @param catalog		The source to read.
+	 *
+	 * @param loc_num		The position in the source to load up.
+	 */
+	public void load (DestinationSource catalog, int loc_num) {
+		m_registry = null;
+		m_source = catalog;
+		m_index = loc_num;
+		m_loaded = 0;
+		m_hotcold = null;
 
-		// on target distance
-		String[] distances = ctx.getResources().getStringArray(R.array.distances);
-		float slop = Float.parseFloat(distances[loc_num]);
-		m_hotcold = new HotColdDistance(slop, m_loc);
+		m_loc.set(catalog.get_latitude(loc_num), catalog.get_longitude(loc_num));
+		m_slop = catalog.get_slop(loc_num);
 
 		// todo
 		// images
+	} // load (source, loc_num)
 
-		// Get the data stored in the preferences (which is
-		// primarily what locations have been found).
-		SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(ctx);
-		m_found = prefs.getBoolean(PREF_KEY_FOUND_PREFIX + loc_num, false);
 
-	} // load_location_data (loc_num)
+	/***************************
+	 * Makes headers for a bunch of destinations at once, for lists
+	 * and such.  A header is just the position, slop, title, and
+	 * hint; anything else is read if and when it's asked for.
+	 *
+	 * @param first		The first destination (registry index).
+	 *
+	 * @param count		How many.
+	 */
+	public static DestinationData[] load_headers (DestinationRegistry registry,
+												int first, int count) {
+		DestinationData[] headers = new DestinationData[count];
+		for (int i = 0; i < count; i++) {
+			headers[i] = new DestinationData(registry, first + i);
+			headers[i].load_header();
+		}
+		return headers;
+	} // load_headers (registry, first, count)
+
+
+	/***************************
+	 * Reads the header strings (HEADER_FIELDS) now rather than
+	 * later.
+	 */
+	public void load_header() {
+		for (int i = 0; i < HEADER_FIELDS.length; i++) {
+			get_string(HEADER_FIELDS[i]);
+		}
+	} // load_header()
+
+
+	/***************************
+	 * Gets one of the Strings, reading it from the source the first
+	 * time.
+	 *
+	 * @param field	A DestinationSource.FIELD_*.
+	 *
+	 * @return	The string, or null if there isn't one (or nothing's
+	 * 			been loaded).
+	 */
+	public String get_string (int field) {
+		int bit = 1 << field;
+		if ((m_loaded & bit) == 0) {
+			if (m_source == null) {
+				return null;
+			}
+			m_strings[field] = m_source.get_string(m_index, field);
+			m_loaded |= bit;
+		}
+		return m_strings[field];
+	} // get_string (field)
+
+	/** @return	The hint, displayed at the top of the main screen. */
+	public String get_hint() {
+		return get_string(DestinationSource.FIELD_HINT);
+	}
+
+	public String get_title() {
+		return get_string(DestinationSource.FIELD_TITLE);
+	}
+
+	public String get_address() {
+		return get_string(DestinationSource.FIELD_ADDRESS);
+	}
+
+	public String get_subtitle() {
+		return get_string(DestinationSource.FIELD_SUBTITLE);
+	}
+
+	/** @return	The story text (only needed once it's been found). */
+	public String get_story() {
+		return get_string(DestinationSource.FIELD_STORY);
+	}
+
+
+	/***************************
+	 * @return	How cool this attraction is (out of 5).
+	 */
+	public float get_rating() {
+		if ((m_loaded & RATING_LOADED) == 0) {
+			if (m_source == null) {
+				return 0f;
+			}
+			m_rating = (m_registry != null) ? m_registry.get_rating(m_index)
+											: m_source.get_rating(m_index);
+			m_loaded |= RATING_LOADED;
+		}
+		return m_rating;
+	} // get_rating()
+
+
+	/***************************
+	 * @return	The hot/cold messages for this destination (made the
+	 * 			first time).  Null if nothing's been loaded.
+	 */
+	public HotColdDistance get_hotcold() {
+		if ((m_hotcold == null) && (m_index >= 0)) {
+			m_hotcold = new HotColdDistance(m_slop, m_loc);
+		}
+		return m_hotcold;
+	} // get_hotcold()
+
+
+	/***************************
+	 * @return	Which destination this is (its position in the
+	 * 			location arrays).  -1 if nothing's been loaded.
+	 */
+	public int get_index() {
+		return m_index;
+	}
+
+
+	/***************************
+	 * Tells if the user has found this location.
+	 */
+	public boolean is_found() {
+		if (m_registry != null) {
+			return m_registry.is_found(m_index);
+		}
+		return m_found;
+	}
+
+	/***************************
+	 * Marks this location as found (or not).  Views pass this
+	 * along to their registry, which saves it if load_found_flags()
+	 * was used on it.  Otherwise nothing is saved.
+	 */
+	public void set_found (boolean found) {
+		if (m_registry != null) {
+			m_registry.set_found(m_index, found);
+		}
+		else {
+			m_found = found;
+		}
+	}
+
+
+	/***************************
+	 * Reads the found flags for every destination in the registry
+	 * from the DiscoveryStore.  From then on, anything marked found
+	 * in the registry is saved there too.
+	 */
+	public static void load_found_flags (Context ctx, DestinationRegistry registry) {
+		DiscoveryStore.get_instance(ctx).attach(registry);
+	} // load_found_flags (ctx, registry)
+
+
+	/***************************
+	 * How many destinations are there?
+	 *
+	 * @return	The number of destinations, or 0 if something
+	 * 			went wrong reading them.  If the json catalog is
+	 * 			still loading, it's how many there are so far.
+	 */
+	public static int get_num_destinations (Context ctx) {
+		return get_source(ctx).get_count();
+	} // get_num_destinations (ctx)
+
+
+	/***************************
+	 * Returns where all the destinations come from: the packed
+	 * catalog if it can be opened, otherwise the json catalog,
+	 * otherwise the Resource Files.
+	 *
+	 * The json catalog is returned right away, while it's still
+	 * loading (so it may not have any destinations yet).  Use
+	 * when_source_ready() to find out when there's something in it,
+	 * and when_source_loaded() for when they're all there.
+	 */
+	public static synchronized DestinationSource get_source (Context ctx) {
+		DestinationCatalog catalog = get_catalog(ctx);
+		if (catalog != null) {
+			return catalog;
+		}
+
+		DestinationJsonCatalog json = get_json_catalog(ctx);
+		if (json != null) {
+			return json;
+		}
+
+		if (s_resource_source == null) {
+			s_resource_source = new ResourceDestinationSource(
+									ctx.getApplicationContext().getResources());
+		}
+		return s_resource_source;
+	} // get_source (ctx)
+
+
+	/***************************
+	 * Returns the packed catalog, opening it the first time
+	 * this is called.
+	 *
+	 * If the asset was stored uncompressed it's mapped right out
+	 * of the apk.  Otherwise it's copied into our files directory
+	 * (once per install) and mapped from there.
+	 *
+	 * @return	The catalog, or null if it can't be opened (use
+	 * 			the Resources instead).
+	 */
+	public static synchronized DestinationCatalog get_catalog (Context ctx) {
+		if (s_catalog_opened) {
+			return s_catalog;
+		}
+		s_catalog_opened = true;
+
+		try {
+			s_catalog = map_asset_catalog(ctx);
+		}
+		catch (IOException e) {
+			// Compressed assets can't be mapped directly.
+			try {
+				s_catalog = DestinationCatalog.map(copy_asset_catalog(ctx), 0, -1);
+			}
+			catch (IOException e2) {
+				Log.e(TAG, "Unable to open " + DESTINATION_CATALOG_FILENAME
+						+ ", using the resource arrays instead.", e2);
+				s_catalog = null;
+			}
+		}
+
+		return s_catalog;
+	} // get_catalog (ctx)
+
+
+	/***************************
+	 * Starts loading the json catalog in the background (the first
+	 * time this is called).  Doesn't wait for any of it: this is
+	 * called from the UI thread, holding the class lock.
+	 *
+	 * If the catalog turns out to be empty, s_json_catalog goes
+	 * back to null, so get_source() falls back on the resources
+	 * from then on.
+	 *
+	 * @return	The catalog (maybe still empty), or null if it
+	 * 			couldn't be read.
+	 */
+	private static synchronized DestinationJsonCatalog get_json_catalog (Context ctx) {
+		if (s_json_opened) {
+			return s_json_catalog;
+		}
+		s_json_opened = true;
+
+		final Handler ui_handler = new Handler(Looper.getMainLooper());
+		s_json_catalog = open_json_catalog(ctx);
+		s_json_catalog.load_in_background(new DestinationJsonCatalog.Listener() {
+			@Override
+			public void on_destination_loaded (DestinationJsonCatalog catalog, int index) {
+				if (index == 0) {
+					json_started(ui_handler);
+				}
+			}
+
+			@Override
+			public void on_load_finished (DestinationJsonCatalog catalog, IOException error) {
+				if (error != null) {
+					Log.e(TAG, "Problem reading " + DESTINATION_DATA_FILENAME
+							+ " (" + catalog.get_count() + " destinations read)", error);
+				}
+				if (catalog.get_count() == 0) {
+					Log.e(TAG, "Nothing in " + DESTINATION_DATA_FILENAME
+							+ ", using the resource arrays instead.");
+					synchronized (DestinationData.class) {
+						s_json_catalog = null;
+					}
+				}
+				json_started(ui_handler);
+				ui_handler.post(new Runnable() {
+					@Override
+					public void run() {
+						run_json_waiters();
+					}
+				});
+			}
+		});
+
+		return s_json_catalog;
+	} // get_json_catalog (ctx)
+
+
+	/***************************
+	 * The json catalog has its first destination, or has given up.
+	 * Lets the when_source_ready() waiters go (on the UI thread),
+	 * the first time only.  Called on the loading thread.
+	 */
+	private static void json_started (Handler ui_handler) {
+		synchronized (DestinationData.class) {
+			if (s_json_started) {
+				return;
+			}
+			s_json_started = true;
+		}
+		ui_handler.post(new Runnable() {
+			@Override
+			public void run() {
+				Runnable[] waiters;
+				synchronized (DestinationData.class) {
+					waiters = s_json_first_waiters.toArray(new Runnable[s_json_first_waiters.size()]);
+					s_json_first_waiters.clear();
+				}
+				for (Runnable waiter : waiters) {
+					waiter.run();
+				}
+			}
+		});
+	} // json_started (ui_handler)
+
+
+	/***************************
+	 * Runs the given Runnable (on the UI thread) once get_source()
+	 * has at least one destination, or never will.  That's right
+	 * now, unless it's the json catalog and it hasn't got going
+	 * yet.  Call get_source() again from the Runnable: if the json
+	 * catalog came up empty, it's the resources now.
+	 *
+	 * Call this from the UI thread.
+	 */
+	public static void when_source_ready (Context ctx, Runnable runnable) {
+		synchronized (DestinationData.class) {
+			get_source(ctx);		// (gets the json catalog going, if it comes to that)
+			if ((s_json_catalog != null) && (s_json_started == false)) {
+				s_json_first_waiters.add(runnable);
+				return;
+			}
+		}
+		runnable.run();
+	} // when_source_ready (ctx, runnable)
+
+
+	/***************************
+	 * Runs the given Runnable (on the UI thread) once all of
+	 * get_source()'s destinations are there.  That's right now,
+	 * unless it's the json catalog and it's still loading.
+	 *
+	 * Call this from the UI thread.
+	 */
+	public static void when_source_loaded (Runnable runnable) {
+		synchronized (DestinationData.class) {
+			if ((s_json_catalog != null) && (s_json_catalog.is_finished() == false)) {
+				s_json_waiters.add(runnable);
+				return;
+			}
+		}
+		runnable.run();
+	} // when_source_loaded (runnable)
+
+
+	/***************************/
+	private static void run_json_waiters() {
+		Runnable[] waiters;
+		synchronized (DestinationData.class) {
+			waiters = s_json_waiters.toArray(new Runnable[s_json_waiters.size()]);
+			s_json_waiters.clear();
+		}
+		for (Runnable waiter : waiters) {
+			waiter.run();
+		}
+	} // run_json_waiters()
+
+
+	/***************************
+	 * Makes a catalog for the json asset file.  Nothing is read
+	 * yet; call load() or load_in_background() on the result.  The
+	 * listener can start showing destinations as soon as the first
+	 * one arrives.  This is what get_source() falls back on.
+	 *
+	 * @param ctx	Any Context will do (the application's is used).
+	 */
+	public static DestinationJsonCatalog open_json_catalog (Context ctx) {
+		final Context app_ctx = ctx.getApplicationContext();
+		return new DestinationJsonCatalog(new DestinationJsonCatalog.ByteSource() {
+			@Override
+			public InputStream open() throws IOException {
+				return app_ctx.getAssets().open(DESTINATION_DATA_FILENAME);
+			}
+		});
+	} // open_json_catalog (ctx)
+
+
+	/***************************
+	 * Maps the catalog directly from the apk.  Only works if the
+	 * asset wasn't compressed.
+	 */
+	private static DestinationCatalog map_asset_catalog (Context ctx) throws IOException {
+		AssetFileDescriptor afd = ctx.getAssets().openFd(DESTINATION_CATALOG_FILENAME);
+		try {
+			FileInputStream in = afd.createInputStream();
+			try {
+				return new DestinationCatalog(in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+												afd.getStartOffset(),
+												afd.getDeclaredLength()));
+			}
+			finally {
+				in.close();
+			}
+		}
+		finally {
+			afd.close();
+		}
+	} // map_asset_catalog (ctx)
+
+
+	/***************************
+	 * Makes sure there's a current copy of the catalog asset
+	 * in our files directory.
+	 *
+	 * @return	The copy.
+	 */
+	private static File copy_asset_catalog (Context ctx) throws IOException {
+		File copy = new File(ctx.getFilesDir(), DESTINATION_CATALOG_FILENAME);
+
+		// Only copy if the apk is newer than our copy.
+		File apk = new File(ctx.getApplicationInfo().sourceDir);
+		if (copy.exists() && (copy.lastModified() >= apk.lastModified())) {
+			return copy;
+		}
+
+		Log.i(TAG, "Copying " + DESTINATION_CATALOG_FILENAME + " out of the assets.");
+		InputStream in = ctx.getAssets().open(DESTINATION_CATALOG_FILENAME);
+		try {
+			FileOutputStream out = new FileOutputStream(copy);
+			try {
+				byte[] buf = new byte[8192];
+				int len;
+				while ((len = in.read(buf)) > 0) {
+					out.write(buf, 0, len);
+				}
+			}
+			finally {
+				out.close();
+			}
+		}
+		finally {
+			in.close();
+		}
+		return copy;
+	} // copy_asset_catalog (ctx)
 
 
 
@@ -175,30 +673,22 @@ public class DestinationData {
 	 * that's suitable for human eyes?  This'll do ya!
 	 */
 	public String get_latitude_str() {
-		return Location.convert(m_loc.getLatitude(), Location.FORMAT_SECONDS);
+		return GeoPoint.to_seconds_string(m_loc.get_latitude());
 	}
 
 	public String get_longitude_str() {
-		return Location.convert(m_loc.getLongitude(), Location.FORMAT_SECONDS);
+		return GeoPoint.to_seconds_string(m_loc.get_longitude());
 	}
 
 	/***************************
 	 * Returns how close we can be (in meters, of course) and still
 	 * be "on target."
 	 *
-	 * preconditions:
-	 * 		m_hotcold		Should be set (which is done when
-	 * 						load_location_data() is called).
-	 *
 	 * @return	The distance allowable for "on target."
 	 * 			0 if not data has been loaded.
 	 */
 	public float get_slop() {
-		if (m_hotcold == null) {
-			return 0f;
-		}
-
-		return m_hotcold.get_slop();
+		return m_slop;
 	} // get_slop()
 
 
@@ -0,0 +1,456 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * The destinations described by a json tour file, read as a stream.
+ * The file looks like this:
+ *<pre>
+ *	{ "destinations" : [
+ *		{	"title" : "My Mailbox",
+ *			"hint" : "1. Close to Home",
+ *			"latitude" : 30.310878,
+ *			"longitude" : -97.676342,
+ *			"slop" : 3,
+ *			"rating" : 1,
+ *			"address" : "...",
+ *			"subtitle" : "...",
+ *			"story" : "...",
+ *			"filename" : "home.html" },
+ *		...
+ *	] }
+ *</pre>
+ * The small stuff (numbers, title, hint, filename) is kept in
+ * memory.  The big stuff (address, subtitle, and especially the
+ * story) is skipped during the load; only its offset in the file is
+ * remembered.  It's read from the file when someone asks for it.
+ *<p>
+ * Destinations can be used as soon as they're loaded; there's
+ * no need to wait for the whole file (see Listener).  It's fine to
+ * read from one thread while load() runs on another.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class DestinationJsonCatalog implements DestinationSource {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** The json names for each of the FIELD_* strings, in FIELD_* order. */
+	private final static String[] FIELD_NAMES = {
+		"title",
+		"address",
+		"subtitle",
+		"story",
+		"hint",
+		"filename"
+	};
+
+	private final static String
+		NAME_DESTINATIONS = "destinations",
+		NAME_LATITUDE = "latitude",
+		NAME_LONGITUDE = "longitude",
+		NAME_SLOP = "slop",
+		NAME_RATING = "rating";
+
+	/** How many destinations to make room for to start with. */
+	private final static int INITIAL_CAPACITY = 64;
+
+
+	//-------------------------
+	//	Interfaces
+	//-------------------------
+
+	/**
+	 * Where the json comes from.  Needs to be able to provide
+	 * a fresh stream more than once (the deferred strings are
+	 * read from new streams).
+	 */
+	public interface ByteSource {
+		public InputStream open() throws IOException;
+	}
+
+	/**
+	 * Hears about the load as it goes.  These are called on
+	 * the loading thread.
+	 */
+	public interface Listener {
+		/** Destination index has been loaded and is ready to use. */
+		public void on_destination_loaded (DestinationJsonCatalog catalog, int index);
+
+		/**
+		 * The load is over.
+		 *
+		 * @param error	Null if everything went fine.
+		 */
+		public void on_load_finished (DestinationJsonCatalog catalog, IOException error);
+	}
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final ByteSource m_source;
+
+	/**
+	 * Number of destinations ready to use.  Everything below
+	 * is written before this is bumped, so readers that check it
+	 * first are safe.
+	 */
+	private volatile int m_count = 0;
+
+	private volatile boolean m_finished = false;
+
+	private double[] m_latitudes = new double[INITIAL_CAPACITY];
+	private double[] m_longitudes = new double[INITIAL_CAPACITY];
+	private float[] m_slops = new float[INITIAL_CAPACITY];
+	private float[] m_ratings = new float[INITIAL_CAPACITY];
+
+	/**
+	 * The strings that are kept in memory, indexed by [field][index].
+	 * Null for the deferred fields.
+	 */
+	private final String[][] m_strings = new String[NUM_STRING_FIELDS][];
+
+	/**
+	 * File offsets for the deferred strings, indexed by [field][index].
+	 * -1 means null.  Null for the fields that are kept in memory.
+	 */
+	private final long[][] m_offsets = new long[NUM_STRING_FIELDS][];
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor.  Nothing is read until load() is called.
+	 */
+	public DestinationJsonCatalog (ByteSource source) {
+		m_source = source;
+		for (int field = 0; field < NUM_STRING_FIELDS; field++) {
+			if (is_deferred(field)) {
+				m_offsets[field] = new long[INITIAL_CAPACITY];
+			}
+			else {
+				m_strings[field] = new String[INITIAL_CAPACITY];
+			}
+		}
+	} // constructor
+
+
+	/***************************
+	 * Tells which string fields are left in the file until
+	 * they're asked for.
+	 */
+	public static boolean is_deferred (int field) {
+		return (field == FIELD_ADDRESS) ||
+				(field == FIELD_SUBTITLE) ||
+				(field == FIELD_STORY);
+	}
+
+
+	/***************************
+	 * Reads through the whole file.  Blocks, so don't call it from
+	 * the UI thread (see load_in_background()).
+	 *
+	 * @param listener	Told about each destination as soon as
+	 * 					it's ready.  May be null.
+	 */
+	public void load (Listener listener) throws IOException {
+		IOException error = null;
+		InputStream in;
+		try {
+			in = m_source.open();
+		}
+		catch (IOException e) {
+			// The listener still has to hear that we're done.
+			m_finished = true;
+			if (listener != null) {
+				listener.on_load_finished(this, e);
+			}
+			throw e;
+		}
+
+		try {
+			JsonStreamReader reader = new JsonStreamReader(in);
+
+			// Either the array by itself or inside an object.
+			if (reader.is_next_object()) {
+				reader.begin_object();
+				while (reader.has_next()) {
+					String name = reader.next_name();
+					if (NAME_DESTINATIONS.equals(name)) {
+						read_destinations(reader, listener);
+					}
+					else {
+						reader.skip_value();
+					}
+				}
+				reader.end_object();
+			}
+			else {
+				read_destinations(reader, listener);
+			}
+		}
+		catch (IOException e) {
+			error = e;
+			throw e;
+		}
+		finally {
+			in.close();
+			m_finished = true;
+			if (listener != null) {
+				listener.on_load_finished(this, error);
+			}
+		}
+	} // load (listener)
+
+
+	/***************************
+	 * Starts load() on a new thread and returns right away.
+	 */
+	public Thread load_in_background (final Listener listener) {
+		Thread thread = new Thread("DestinationJsonCatalog") {
+			@Override
+			public void run() {
+				try {
+					load(listener);
+				}
+				catch (IOException e) {
+					// Already reported to the listener.
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	} // load_in_background (listener)
+
+
+	/***************************
+	 * @return	TRUE once the whole file has been read (or the
+	 * 			load failed).
+	 */
+	public boolean is_finished() {
+		return m_finished;
+	}
+
+
+	/***************************
+	 * Reads the array of destinations.
+	 */
+	private void read_destinations (JsonStreamReader reader, Listener listener)
+			throws IOException {
+		reader.begin_array();
+		while (reader.has_next()) {
+			int index = m_count;
+			make_room(index + 1);
+			read_destination(reader, index);
+
+			m_count = index + 1;		// publish it
+			if (listener != null) {
+				listener.on_destination_loaded(this, index);
+			}
+		}
+		reader.end_array();
+	} // read_destinations (reader, listener)
+
+
+	/***************************
+	 * Reads one destination object into the given slot.
+	 */
+	private void read_destination (JsonStreamReader reader, int index)
+			throws IOException {
+		m_latitudes[index] = Double.NaN;
+		m_longitudes[index] = Double.NaN;
+		m_slops[index] = 0f;
+		m_ratings[index] = 0f;
+		for (int field = 0; field < NUM_STRING_FIELDS; field++) {
+			if (is_deferred(field)) {
+				m_offsets[field][index] = -1;
+			}
+			else {
+				m_strings[field][index] = null;
+			}
+		}
+
+		reader.begin_object();
+		while (reader.has_next()) {
+			String name = reader.next_name();
+
+			if (NAME_LATITUDE.equals(name)) {
+				m_latitudes[index] = reader.next_double();
+			}
+			else if (NAME_LONGITUDE.equals(name)) {
+				m_longitudes[index] = reader.next_double();
+			}
+			else if (NAME_SLOP.equals(name)) {
+				m_slops[index] = (float) reader.next_double();
+			}
+			else if (NAME_RATING.equals(name)) {
+				m_ratings[index] = (float) reader.next_double();
+			}
+			else {
+				int field = find_field(name);
+				if (field < 0) {
+					reader.skip_value();
+				}
+				else if (is_deferred(field)) {
+					m_offsets[field][index] = reader.skip_string();
+				}
+				else {
+					m_strings[field][index] = reader.next_string();
+				}
+			}
+		}
+		reader.end_object();
+
+		if (Double.isNaN(m_latitudes[index]) || Double.isNaN(m_longitudes[index])) {
+			throw new IOException("Destination " + index + " is missing its coordinates");
+		}
+	} // read_destination (reader, index)
+
+
+	/***************************
+	 * @return	The FIELD_* for the given json name, or -1.
+	 */
+	private static int find_field (String name) {
+		for (int field = 0; field < FIELD_NAMES.length; field++) {
+			if (FIELD_NAMES[field].equals(name)) {
+				return field;
+			}
+		}
+		return -1;
+	}
+
+
+	/***************************
+	 * Grows all the arrays (if needed) to hold at least the
+	 * given number of destinations.
+	 */
+	private void make_room (int needed) {
+		int capacity = m_latitudes.length;
+		if (needed <= capacity) {
+			return;
+		}
+		capacity *= 2;
+
+		m_latitudes = grow(m_latitudes, capacity);
+		m_longitudes = grow(m_longitudes, capacity);
+		m_slops = grow(m_slops, capacity);
+		m_ratings = grow(m_ratings, capacity);
+		for (int field = 0; field < NUM_STRING_FIELDS; field++) {
+			if (is_deferred(field)) {
+				long[] bigger = new long[capacity];
+				System.arraycopy(m_offsets[field], 0, bigger, 0, m_count);
+				m_offsets[field] = bigger;
+			}
+			else {
+				String[] bigger = new String[capacity];
+				System.arraycopy(m_strings[field], 0, bigger, 0, m_count);
+				m_strings[field] = bigger;
+			}
+		}
+	} // make_room (needed)
+
+	/***************************/
+	private static double[] grow (double[] array, int capacity) {
+		double[] bigger = new double[capacity];
+		System.arraycopy(array, 0, bigger, 0, array.length);
+		return bigger;
+	}
+
+	/***************************/
+	private static float[] grow (float[] array, int capacity) {
+		float[] bigger = new float[capacity];
+		System.arraycopy(array, 0, bigger, 0, array.length);
+		return bigger;
+	}
+
+
+	/***************************/
+	private void check_index (int index) {
+		if ((index < 0) || (index >= m_count)) {
+			throw new IndexOutOfBoundsException("destination " + index + " of " + m_count);
+		}
+	}
+
+	/***************************
+	 * @return	The number of destinations loaded so far.
+	 */
+	@Override
+	public int get_count() {
+		return m_count;
+	}
+
+	/***************************/
+	@Override
+	public double get_latitude (int index) {
+		check_index(index);
+		return m_latitudes[index];
+	}
+
+	/***************************/
+	@Override
+	public double get_longitude (int index) {
+		check_index(index);
+		return m_longitudes[index];
+	}
+
+	/***************************/
+	@Override
+	public float get_slop (int index) {
+		check_index(index);
+		return m_slops[index];
+	}
+
+	/***************************/
+	@Override
+	public float get_rating (int index) {
+		check_index(index);
+		return m_ratings[index];
+	}
+
+
+	/***************************
+	 * Gets a string for a destination.  The deferred ones are
+	 * read from the file right now, so they may block for a
+	 * little while.
+	 *
+	 * @return	The string, or null if there isn't one (or it
+	 * 			couldn't be read).
+	 */
+	@Override
+	public String get_string (int index, int field) {
+		check_index(index);
+		if ((field < 0) || (field >= NUM_STRING_FIELDS)) {
+			throw new IllegalArgumentException("Unknown string field " + field);
+		}
+
+		if (is_deferred(field) == false) {
+			return m_strings[field][index];
+		}
+
+		long offset = m_offsets[field][index];
+		if (offset < 0) {
+			return null;
+		}
+		try {
+			InputStream in = m_source.open();
+			try {
+				return JsonStreamReader.read_string_at(in, offset);
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			return null;
+		}
+	} // get_string (index, field)
+
+}
@@ -0,0 +1,219 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+
+/**
+ * Holds the numbers for EVERY destination, packed into parallel
+ * arrays of primitives (one slot per destination index).  This is
+ * far smaller than a DestinationData for each, and looping through
+ * all of them is fast.
+ *<p>
+ * The strings aren't copied; they stay in the DestinationSource
+ * until a DestinationData view asks for them.
+ *<p>
+ * Not thread-safe--use it from the UI thread.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class DestinationRegistry {
+
+	//-------------------------
+	//	Interfaces
+	//-------------------------
+
+	/**
+	 * Hears about destinations being found (or un-found).
+	 */
+	public interface FoundListener {
+		/** Only called when the flag actually changes. */
+		public void on_found_changed (int index, boolean found);
+	}
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	/** Where the destinations came from (still used for the strings). */
+	private final DestinationSource m_source;
+
+	private int m_count = 0;
+
+	private double[] m_latitudes;
+	private double[] m_longitudes;
+	private float[] m_slops;
+	private float[] m_ratings;
+
+	/** A bit is set iff the user has found that destination. */
+	private final BitSet m_found = new BitSet();
+
+	private final ArrayList<FoundListener> m_found_listeners = new ArrayList<FoundListener>();
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor.  Copies all the numbers from the source.
+	 */
+	public DestinationRegistry (DestinationSource source) {
+		m_source = source;
+
+		int capacity = source.get_count();
+		m_latitudes = new double[capacity];
+		m_longitudes = new double[capacity];
+		m_slops = new float[capacity];
+		m_ratings = new float[capacity];
+
+		update_from_source();
+	} // constructor
+
+
+	/***************************
+	 * Copies in any destinations that the source has gained
+	 * since last time (for sources that are still loading, like
+	 * a DestinationJsonCatalog).
+	 *
+	 * @return	The number of destinations added.
+	 */
+	public int update_from_source() {
+		int new_count = m_source.get_count();
+		if (new_count <= m_count) {
+			return 0;
+		}
+
+		if (new_count > m_latitudes.length) {
+			int capacity = Math.max(new_count, m_latitudes.length * 2);
+			m_latitudes = grow(m_latitudes, capacity);
+			m_longitudes = grow(m_longitudes, capacity);
+			m_slops = grow(m_slops, capacity);
+			m_ratings = grow(m_ratings, capacity);
+		}
+
+		for (int i = m_count; i < new_count; i++) {
+			m_latitudes[i] = m_source.get_latitude(i);
+			m_longitudes[i] = m_source.get_longitude(i);
+			m_slops[i] = m_source.get_slop(i);
+			m_ratings[i] = m_source.get_rating(i);
+		}
+
+		int added = new_count - m_count;
+		m_count = new_count;
+		return added;
+	} // update_from_source()
+
+
+	/***************************/
+	private static double[] grow (double[] array, int capacity) {
+		double[] bigger = new double[capacity];
+		System.arraycopy(array, 0, bigger, 0, array.length);
+		return bigger;
+	}
+
+	/***************************/
+	private static float[] grow (float[] array, int capacity) {
+		float[] bigger = new float[capacity];
+		System.arraycopy(array, 0, bigger, 0, array.length);
+		return bigger;
+	}
+
+
+	/***************************/
+	public DestinationSource get_source() {
+		return m_source;
+	}
+
+	/***************************/
+	public int get_count() {
+		return m_count;
+	}
+
+	/***************************/
+	public double get_latitude (int index) {
+		return m_latitudes[index];
+	}
+
+	/***************************/
+	public double get_longitude (int index) {
+		return m_longitudes[index];
+	}
+
+	/***************************/
+	public float get_slop (int index) {
+		return m_slops[index];
+	}
+
+	/***************************/
+	public float get_rating (int index) {
+		return m_ratings[index];
+	}
+
+
+	/***************************
+	 * These return the actual arrays, for tight loops over the
+	 * whole catalog.  Only the first get_count() items mean anything.
+	 * DON'T write to them!  And don't hang on to them, they're
+	 * replaced when the registry grows.
+	 */
+	public double[] get_latitudes() {
+		return m_latitudes;
+	}
+
+	public double[] get_longitudes() {
+		return m_longitudes;
+	}
+
+	public float[] get_slops() {
+		return m_slops;
+	}
+
+
+	/***************************/
+	public boolean is_found (int index) {
+		return m_found.get(index);
+	}
+
+	/***************************
+	 * Changes the found flag for a destination.  The FoundListeners
+	 * are told iff it's actually different.
+	 */
+	public void set_found (int index, boolean found) {
+		if (m_found.get(index) == found) {
+			return;
+		}
+		m_found.set(index, found);
+		for (int i = 0; i < m_found_listeners.size(); i++) {
+			m_found_listeners.get(i).on_found_changed(index, found);
+		}
+	} // set_found (index, found)
+
+	/***************************/
+	public void add_found_listener (FoundListener listener) {
+		m_found_listeners.add(listener);
+	}
+
+	/***************************/
+	public void remove_found_listener (FoundListener listener) {
+		m_found_listeners.remove(listener);
+	}
+
+	/***************************
+	 * @return	How many destinations the user has found.
+	 */
+	public int get_found_count() {
+		return m_found.cardinality();
+	}
+
+	/***************************
+	 * @return	The lowest index that hasn't been found yet,
+	 * 			or -1 if they've all been found.
+	 */
+	public int get_first_unfound() {
+		int index = m_found.nextClearBit(0);
+		return (index < m_count) ? index : -1;
+	}
+
+}
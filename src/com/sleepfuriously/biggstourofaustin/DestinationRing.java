@@ -0,0 +1,288 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+
+/**
+ * The destinations around the one being shown (RADIUS on each side),
+ * ready to go, so the next and prev buttons never have to wait.
+ *<p>
+ * The slots are a ring buffer: moving one step just slides the
+ * center over, and the slot that fell off the far side is reused
+ * for the new destination coming up on the other side.  That one is
+ * filled in on a background thread (its strings read and its
+ * hot/cold messages made) while the user is looking at the current
+ * one.  Moving off the end of the destinations wraps around.
+ *<p>
+ * The DestinationDatas themselves are made on the UI thread (they
+ * only copy numbers out of the registry) and only handed to the
+ * loader thread to be filled in.  They aren't put in a slot until
+ * that's done, so nobody else touches them in the meantime.
+ *<p>
+ * Use it from the UI thread, and call destroy() when done.
+ */
+public class DestinationRing {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static String TAG = "DestinationRing";
+
+	/** How many destinations are kept ready on each side of the current one. */
+	public final static int RADIUS = 2;
+
+	private final static int SIZE = (RADIUS * 2) + 1;
+
+
+	//-------------------------
+	//	Interfaces
+	//-------------------------
+
+	/**
+	 * Hears when a neighbor has been loaded.
+	 */
+	public interface RingListener {
+		/**
+		 * Called on the UI thread.
+		 *
+		 * @param offset	Where it is from the current one (-RADIUS to
+		 * 					RADIUS, never 0).
+		 */
+		public void on_neighbor_ready (int offset, DestinationData destdata);
+	}
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final DestinationRegistry m_registry;
+
+	/** The slots.  Null means it's still being loaded. */
+	private final DestinationData[] m_slots = new DestinationData[SIZE];
+
+	/**
+	 * Bumped every time a slot is given a new destination, so a load
+	 * that finishes after its slot has moved on is thrown out.
+	 */
+	private final int[] m_generations = new int[SIZE];
+
+	/** Where in m_slots the current destination is. */
+	private int m_center = 0;
+
+	/** The current destination (registry index). */
+	private int m_index = 0;
+
+	private RingListener m_listener = null;
+
+	/** How many moves found their destination wasn't ready yet. */
+	private int m_miss_count = 0;
+
+	private final Handler m_ui_handler;
+
+	private final HandlerThread m_loader_thread;
+	private final Handler m_loader_handler;
+
+	private boolean m_destroyed = false;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor.  Starts with the current destination loaded (right
+	 * now) and the neighbors on their way.
+	 *
+	 * @param registry	All the destinations.  Must have at least one.
+	 *
+	 * @param first		The destination to start with.
+	 */
+	public DestinationRing (DestinationRegistry registry, int first) {
+		m_registry = registry;
+		m_ui_handler = new Handler(Looper.getMainLooper());
+
+		m_loader_thread = new HandlerThread(TAG);
+		m_loader_thread.start();
+		m_loader_handler = new Handler(m_loader_thread.getLooper());
+
+		jump_to(first);
+	} // constructor
+
+
+	/***************************
+	 * @param listener	Told as the neighbors get loaded.  May be null.
+	 */
+	public void set_listener (RingListener listener) {
+		m_listener = listener;
+	}
+
+
+	/***************************
+	 * @return	The current destination.  Always loaded.
+	 */
+	public DestinationData get_current() {
+		return m_slots[m_center];
+	}
+
+
+	/***************************
+	 * @param offset	-RADIUS to RADIUS.
+	 *
+	 * @return	That destination, or null if it's not ready yet.
+	 */
+	public DestinationData get (int offset) {
+		if ((offset < -RADIUS) || (offset > RADIUS)) {
+			throw new IllegalArgumentException("Offset " + offset + " is outside the ring");
+		}
+		return m_slots[slot(offset)];
+	}
+
+
+	/***************************
+	 * Moves to the next (step 1) or previous (step -1) destination.
+	 * The neighbor on the far side starts loading.
+	 *
+	 * @return	The new current destination.  If it wasn't loaded
+	 * 			yet (the buttons were pushed faster than we could
+	 * 			keep up), it's loaded now.
+	 */
+	public DestinationData move (int step) {
+		if ((step != 1) && (step != -1)) {
+			throw new IllegalArgumentException("Can only move one step, not " + step);
+		}
+		m_center = slot(step);
+		m_index = wrap(m_index + step);
+
+		if (m_slots[m_center] == null) {
+			m_miss_count++;
+			Log.d(TAG, "destination " + m_index + " wasn't ready");
+			m_generations[m_center]++;		// (drop the load that's on its way)
+			DestinationData destdata = new DestinationData(m_registry, m_index);
+			fill(destdata);
+			m_slots[m_center] = destdata;
+		}
+
+		// What was just past the far edge is now at the edge.
+		int edge = step * RADIUS;
+		start_load(edge, wrap(m_index + edge));
+		return m_slots[m_center];
+	} // move (step)
+
+
+	/***************************
+	 * Makes the given destination the current one, with all new
+	 * neighbors.
+	 */
+	public void jump_to (int index) {
+		m_index = wrap(index);
+		m_center = 0;
+
+		m_generations[m_center]++;
+		DestinationData destdata = new DestinationData(m_registry, m_index);
+		fill(destdata);
+		m_slots[m_center] = destdata;
+
+		// Closest first, so they're ready in the order they're needed.
+		for (int i = 1; i <= RADIUS; i++) {
+			start_load(i, wrap(m_index + i));
+			start_load(-i, wrap(m_index - i));
+		}
+	} // jump_to (index)
+
+
+	/***************************
+	 * @return	How many moves had to load their destination on the
+	 * 			spot.
+	 */
+	public int get_miss_count() {
+		return m_miss_count;
+	}
+
+
+	/***************************
+	 * Stops the loader thread.  Anything still loading is dropped.
+	 */
+	public void destroy() {
+		m_destroyed = true;
+		m_loader_thread.quit();
+	}
+
+
+	/***************************
+	 * Gives a slot a new destination and loads it in the
+	 * background.  The slot is empty until then.
+	 *
+	 * @param offset	Which slot (from the current one).
+	 *
+	 * @param index		The destination to put there.
+	 */
+	private void start_load (int offset, int index) {
+		final int s = slot(offset);
+		m_slots[s] = null;
+		final int generation = ++m_generations[s];
+
+		final DestinationData destdata = new DestinationData(m_registry, index);
+		m_loader_handler.post(new Runnable() {
+			@Override
+			public void run() {
+				fill(destdata);
+				m_ui_handler.post(new Runnable() {
+					@Override
+					public void run() {
+						if (m_destroyed || (m_generations[s] != generation)) {
+							return;		// Its slot has moved on.
+						}
+						m_slots[s] = destdata;
+						if (m_listener != null) {
+							m_listener.on_neighbor_ready(offset_of(s), destdata);
+						}
+					}
+				});
+			}
+		});
+	} // start_load (offset, index)
+
+
+	/***************************
+	 * Reads everything the screens will want out of the source, so
+	 * none of it happens when the destination is shown.  Touches
+	 * only the source, never the registry (which isn't thread-safe).
+	 */
+	private static void fill (DestinationData destdata) {
+		destdata.load_header();
+		destdata.get_subtitle();
+		destdata.get_address();
+		destdata.get_story();
+		destdata.get_hotcold();
+	} // fill (destdata)
+
+
+	/***************************
+	 * @return	The place in m_slots for the given offset from the
+	 * 			current one.
+	 */
+	private int slot (int offset) {
+		return (m_center + offset + SIZE) % SIZE;
+	}
+
+	/** The opposite of slot(). */
+	private int offset_of (int s) {
+		int offset = (s - m_center + SIZE) % SIZE;
+		return (offset > RADIUS) ? (offset - SIZE) : offset;
+	}
+
+
+	/***************************
+	 * @return	index wrapped around into the registry's range.
+	 */
+	private int wrap (int index) {
+		int count = m_registry.get_count();
+		return ((index % count) + count) % count;
+	}
+
+}
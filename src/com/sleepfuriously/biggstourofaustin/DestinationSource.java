@@ -0,0 +1,48 @@
+package com.sleepfuriously.biggstourofaustin;
+
+
+/**
+ * Anything that can supply the raw data for destinations,
+ * one index at a time.  DestinationData.load() reads from these.
+ *<p>
+ * This interface has no Android dependencies.
+ */
+public interface DestinationSource {
+
+	/**
+	 * The string fields for each destination, for use
+	 * with get_string().
+	 */
+	public final static int
+		FIELD_TITLE = 0,
+		FIELD_ADDRESS = 1,
+		FIELD_SUBTITLE = 2,
+		FIELD_STORY = 3,
+		FIELD_HINT = 4,
+		FIELD_FILENAME = 5,
+		NUM_STRING_FIELDS = 6;
+
+
+	/** @return	How many destinations are available right now. */
+	public int get_count();
+
+	/** @return	Latitude of the destination, in degrees. */
+	public double get_latitude (int index);
+
+	/** @return	Longitude of the destination, in degrees. */
+	public double get_longitude (int index);
+
+	/** @return	How close (in meters) you need to be to be "on target." */
+	public float get_slop (int index);
+
+	/** @return	How cool this destination is (out of 5). */
+	public float get_rating (int index);
+
+	/**
+	 * @param field	One of the FIELD_* constants.
+	 *
+	 * @return	The string, or null if this destination doesn't have one.
+	 */
+	public String get_string (int index, int field);
+
+}
@@ -0,0 +1,557 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.util.Arrays;
+
+
+/**
+ * A grid over all the destinations in a registry, so that questions
+ * like "what's the closest destination I haven't found yet?" and
+ * "what's within 500 meters of me?" don't have to look at every
+ * single destination.
+ *<p>
+ * The world is cut into cells of the same number of degrees on
+ * each side.  Only the cells that actually hold destinations are
+ * stored (sorted, so finding one is a binary search).  Each cell
+ * also keeps a count of how many of its destinations haven't been
+ * found, so cells with nothing left to find are skipped.  These
+ * counts are kept up to date as the registry's found flags change.
+ *<p>
+ * Doesn't handle the 180th meridian (not a big problem in Austin).
+ *<p>
+ * Not thread-safe--use it from the UI thread.  The queries don't
+ * allocate anything.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class DestinationSpatialIndex implements DestinationRegistry.FoundListener {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/**
+	 * Limits on the cell size picked by auto_cell_degrees().
+	 * 0.0005 degrees is about 55 m north-south.
+	 */
+	private final static double
+		MIN_CELL_DEGREES = 0.0005,
+		MAX_CELL_DEGREES = 1.0;
+
+	/** auto_cell_degrees() aims for about this many destinations per cell. */
+	private final static double TARGET_PER_CELL = 4.0;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final DestinationRegistry m_registry;
+
+	/** The size of each side of a cell, in degrees. */
+	private final double m_cell_degrees;
+
+	/** Number of destinations that were indexed. */
+	private int m_count;
+
+	/** The keys of all the non-empty cells, sorted.  See cell_key(). */
+	private long[] m_cell_keys;
+
+	/**
+	 * The destinations in cell c are m_cell_items[m_cell_start[c]]
+	 * up to (but not including) m_cell_items[m_cell_start[c + 1]].
+	 */
+	private int[] m_cell_start;
+	private int[] m_cell_items;
+
+	/** How many destinations in each cell haven't been found */
+	private int[] m_unfound_counts;
+
+	/** How many indexed destinations haven't been found. */
+	private int m_unfound_total;
+
+	/** The cell of each destination */
+	private int[] m_item_cell;
+
+	/** The range of rows and columns that have cells. */
+	private int m_min_row, m_max_row, m_min_col, m_max_col;
+
+	/** Scratch space for the nearest-search (saves allocating). */
+	private int m_best;
+	private double m_best_dist;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor.  Indexes everything in the registry and starts
+	 * listening for found-flag changes.  The cell size is picked
+	 * to suit the destinations.
+	 */
+	public DestinationSpatialIndex (DestinationRegistry registry) {
+		this(registry, auto_cell_degrees(registry));
+	}
+
+	/***************************
+	 * Constructor.
+	 *
+	 * @param cell_degrees	The size of the grid cells.  Should be
+	 * 						around the distance between nearby
+	 * 						destinations.
+	 */
+	public DestinationSpatialIndex (DestinationRegistry registry, double cell_degrees) {
+		m_registry = registry;
+		m_cell_degrees = cell_degrees;
+		rebuild();
+		registry.add_found_listener(this);
+	} // constructor
+
+
+	/***************************
+	 * Picks a cell size so that the cells hold a few destinations
+	 * each (assuming they're spread out evenly).
+	 */
+	public static double auto_cell_degrees (DestinationRegistry registry) {
+		int count = registry.get_count();
+		if (count == 0) {
+			return MAX_CELL_DEGREES;
+		}
+
+		double[] lats = registry.get_latitudes();
+		double[] lons = registry.get_longitudes();
+		double min_lat = lats[0], max_lat = lats[0], min_lon = lons[0], max_lon = lons[0];
+		for (int i = 1; i < count; i++) {
+			min_lat = Math.min(min_lat, lats[i]);
+			max_lat = Math.max(max_lat, lats[i]);
+			min_lon = Math.min(min_lon, lons[i]);
+			max_lon = Math.max(max_lon, lons[i]);
+		}
+
+		double area = (max_lat - min_lat) * (max_lon - min_lon);
+		double cell = Math.sqrt(area * TARGET_PER_CELL / count);
+		return Math.max(MIN_CELL_DEGREES, Math.min(MAX_CELL_DEGREES, cell));
+	} // auto_cell_degrees (registry)
+
+
+	/***************************
+	 * Stop listening to the registry.  Call this when you're done
+	 * with the index.
+	 */
+	public void detach() {
+		m_registry.remove_found_listener(this);
+	}
+
+
+	/***************************
+	 * Re-indexes the whole registry.  Needed after the registry
+	 * grows (found flags are tracked automatically).
+	 */
+	public void rebuild() {
+		int count = m_registry.get_count();
+		double[] lats = m_registry.get_latitudes();
+		double[] lons = m_registry.get_longitudes();
+
+		// Figure out every destination's cell key, then which keys
+		// are actually used.
+		long[] item_keys = new long[count];
+		for (int i = 0; i < count; i++) {
+			item_keys[i] = cell_key(row_of(lats[i]), col_of(lons[i]));
+		}
+		long[] sorted = item_keys.clone();
+		Arrays.sort(sorted);
+
+		int num_cells = 0;
+		for (int i = 0; i < count; i++) {
+			if ((i == 0) || (sorted[i] != sorted[i - 1])) {
+				sorted[num_cells++] = sorted[i];
+			}
+		}
+		m_cell_keys = new long[num_cells];
+		System.arraycopy(sorted, 0, m_cell_keys, 0, num_cells);
+
+		// Group the destinations by cell (a counting sort).
+		m_item_cell = new int[count];
+		m_cell_start = new int[num_cells + 1];
+		m_unfound_counts = new int[num_cells];
+		m_unfound_total = 0;
+		for (int i = 0; i < count; i++) {
+			int cell = Arrays.binarySearch(m_cell_keys, item_keys[i]);
+			m_item_cell[i] = cell;
+			m_cell_start[cell + 1]++;
+			if (m_registry.is_found(i) == false) {
+				m_unfound_counts[cell]++;
+				m_unfound_total++;
+			}
+		}
+		for (int c = 0; c < num_cells; c++) {
+			m_cell_start[c + 1] += m_cell_start[c];
+		}
+
+		m_cell_items = new int[count];
+		int[] next = new int[num_cells];
+		System.arraycopy(m_cell_start, 0, next, 0, num_cells);
+		for (int i = 0; i < count; i++) {
+			m_cell_items[next[m_item_cell[i]]++] = i;
+		}
+
+		m_min_row = m_min_col = Integer.MAX_VALUE;
+		m_max_row = m_max_col = Integer.MIN_VALUE;
+		for (int c = 0; c < num_cells; c++) {
+			int row = key_row(m_cell_keys[c]);
+			int col = key_col(m_cell_keys[c]);
+			m_min_row = Math.min(m_min_row, row);
+			m_max_row = Math.max(m_max_row, row);
+			m_min_col = Math.min(m_min_col, col);
+			m_max_col = Math.max(m_max_col, col);
+		}
+
+		m_count = count;
+	} // rebuild()
+
+
+	/***************************
+	 * Keeps the unfound counts current.  Called by the registry.
+	 */
+	@Override
+	public void on_found_changed (int index, boolean found) {
+		if (index >= m_count) {
+			return;		// not indexed yet
+		}
+		int delta = found ? -1 : 1;
+		m_unfound_counts[m_item_cell[index]] += delta;
+		m_unfound_total += delta;
+	} // on_found_changed (index, found)
+
+
+	/***************************
+	 * Finds the closest destination that hasn't been found yet.
+	 *
+	 * Starting with the cell holding the given position, this works
+	 * outwards one ring of cells at a time, and stops as soon as
+	 * nothing in the next ring could possibly be closer than the
+	 * best so far.
+	 *
+	 * @return	The index of the destination, or -1 if they've all
+	 * 			been found.
+	 */
+	public int find_nearest_unfound (double lat, double lon) {
+		m_best = -1;
+		m_best_dist = Double.MAX_VALUE;
+		if (m_unfound_total == 0) {
+			return -1;
+		}
+
+		int row0 = row_of(lat);
+		int col0 = col_of(lon);
+
+		// Rings that don't reach the area with cells are empty, and
+		// there's no point going past the farthest cell.
+		int min_ring = Math.max(Math.max(m_min_row - row0, row0 - m_max_row),
+								Math.max(m_min_col - col0, col0 - m_max_col));
+		min_ring = Math.max(0, min_ring);
+		int max_ring = Math.max(Math.max(Math.abs(row0 - m_min_row), Math.abs(row0 - m_max_row)),
+								Math.max(Math.abs(col0 - m_min_col), Math.abs(col0 - m_max_col)));
+
+		// Each lookup is a binary search.  Once we've done about as
+		// many as there are cells, it's quicker to just go through
+		// the rest of the cells.
+		int lookups_left = m_cell_keys.length;
+
+		for (int ring = min_ring; ring <= max_ring; ring++) {
+			lookups_left -= count_ring_cells(row0, col0, ring);
+			if (lookups_left < 0) {
+				search_remaining_cells(lat, lon, row0, col0, ring);
+				break;
+			}
+			search_ring(lat, lon, row0, col0, ring);
+
+			if ((m_best >= 0) && (m_best_dist <= outside_distance(lat, ring))) {
+				break;
+			}
+		}
+
+		return m_best;
+	} // find_nearest_unfound (lat, lon)
+
+
+	/***************************
+	 * @return	The distance (meters) from the position to the
+	 * 			destination last returned by find_nearest_unfound().
+	 */
+	public double get_nearest_distance() {
+		return m_best_dist;
+	}
+
+
+	/***************************
+	 * Searches the cells that are exactly ring cells away from
+	 * (row0, col0), skipping any outside the area that has cells.
+	 */
+	private void search_ring (double lat, double lon, int row0, int col0, int ring) {
+		if (ring == 0) {
+			search_cell(lat, lon, row0, col0);
+			return;
+		}
+
+		int first_col = Math.max(col0 - ring, m_min_col);
+		int last_col = Math.min(col0 + ring, m_max_col);
+		int first_row = Math.max(row0 - ring + 1, m_min_row);
+		int last_row = Math.min(row0 + ring - 1, m_max_row);
+
+		// top and bottom edges
+		for (int col = first_col; col <= last_col; col++) {
+			if (row0 - ring >= m_min_row) {
+				search_cell(lat, lon, row0 - ring, col);
+			}
+			if (row0 + ring <= m_max_row) {
+				search_cell(lat, lon, row0 + ring, col);
+			}
+		}
+
+		// left and right edges
+		for (int row = first_row; row <= last_row; row++) {
+			if (col0 - ring >= m_min_col) {
+				search_cell(lat, lon, row, col0 - ring);
+			}
+			if (col0 + ring <= m_max_col) {
+				search_cell(lat, lon, row, col0 + ring);
+			}
+		}
+	} // search_ring (lat, lon, row0, col0, ring)
+
+
+	/***************************
+	 * How many lookups search_ring() will do for the given ring.
+	 */
+	private int count_ring_cells (int row0, int col0, int ring) {
+		if (ring == 0) {
+			return 1;
+		}
+		int cols = Math.max(0, Math.min(col0 + ring, m_max_col) - Math.max(col0 - ring, m_min_col) + 1);
+		int rows = Math.max(0, Math.min(row0 + ring - 1, m_max_row) - Math.max(row0 - ring + 1, m_min_row) + 1);
+
+		int count = 0;
+		if (row0 - ring >= m_min_row)
+			count += cols;
+		if (row0 + ring <= m_max_row)
+			count += cols;
+		if (col0 - ring >= m_min_col)
+			count += rows;
+		if (col0 + ring <= m_max_col)
+			count += rows;
+		return count;
+	} // count_ring_cells (row0, col0, ring)
+
+
+	/***************************
+	 * The rest of find_nearest_unfound(): goes through every cell
+	 * from the given ring outwards.
+	 */
+	private void search_remaining_cells (double lat, double lon,
+										int row0, int col0, int first_ring) {
+		for (int c = 0; c < m_cell_keys.length; c++) {
+			if (m_unfound_counts[c] == 0) {
+				continue;
+			}
+			int row = key_row(m_cell_keys[c]);
+			int col = key_col(m_cell_keys[c]);
+			int ring = Math.max(Math.abs(row - row0), Math.abs(col - col0));
+			if (ring < first_ring) {
+				continue;		// already done
+			}
+			if ((m_best >= 0) && (m_best_dist <= outside_distance(lat, ring - 1))) {
+				continue;		// too far to matter
+			}
+			search_items(lat, lon, c);
+		}
+	} // search_remaining_cells (...)
+
+
+	/***************************
+	 * Looks for a better unfound destination in the given cell.
+	 */
+	private void search_cell (double lat, double lon, int row, int col) {
+		int cell = find_cell(row, col);
+		if ((cell >= 0) && (m_unfound_counts[cell] > 0)) {
+			search_items(lat, lon, cell);
+		}
+	}
+
+	/***************************/
+	private void search_items (double lat, double lon, int cell) {
+		double[] lats = m_registry.get_latitudes();
+		double[] lons = m_registry.get_longitudes();
+
+		for (int i = m_cell_start[cell]; i < m_cell_start[cell + 1]; i++) {
+			int index = m_cell_items[i];
+			if (m_registry.is_found(index)) {
+				continue;
+			}
+			double dist = GeoMath.haversine(lat, lon, lats[index], lons[index]);
+			if (dist < m_best_dist) {
+				m_best_dist = dist;
+				m_best = index;
+			}
+		}
+	} // search_items (lat, lon, cell)
+
+
+	/***************************
+	 * Finds all the destinations within a given distance.
+	 *
+	 * @param radius			In meters.
+	 *
+	 * @param unfound_only	When TRUE, destinations that have been
+	 * 						found are skipped.
+	 *
+	 * @param results		Filled with the indices of the destinations
+	 * 						(in no particular order).  If it's too small
+	 * 						the extras are left out.
+	 *
+	 * @return	How many destinations are within the radius (which may
+	 * 			be more than fit in results).
+	 */
+	public int find_within (double lat, double lon, double radius,
+							boolean unfound_only, int[] results) {
+		// The rows and columns that could hold anything within
+		// the radius.  The columns are based on the narrowest
+		// point (closest to a pole).
+		double dlat = radius / GeoMath.METERS_PER_DEGREE;
+		int min_row = Math.max(row_of(lat - dlat), m_min_row);
+		int max_row = Math.min(row_of(lat + dlat), m_max_row);
+
+		int min_col, max_col;
+		double cos_lat = Math.cos(Math.toRadians(Math.min(90.0, Math.abs(lat) + dlat)));
+		double dlon = (cos_lat > 1e-9) ? (dlat / cos_lat) : 360.0;
+		if (dlon >= 180.0) {
+			min_col = m_min_col;
+			max_col = m_max_col;
+		}
+		else {
+			min_col = Math.max(col_of(lon - dlon), m_min_col);
+			max_col = Math.min(col_of(lon + dlon), m_max_col);
+		}
+
+		int found = 0;
+		if ((min_row > max_row) || (min_col > max_col)) {
+			return found;
+		}
+		long span = (long) (max_row - min_row + 1) * (long) (max_col - min_col + 1);
+
+		if (span > m_cell_keys.length) {
+			// Quicker to just go through all the cells.
+			for (int c = 0; c < m_cell_keys.length; c++) {
+				int row = key_row(m_cell_keys[c]);
+				int col = key_col(m_cell_keys[c]);
+				if ((row >= min_row) && (row <= max_row) &&
+					(col >= min_col) && (col <= max_col)) {
+					found = collect_within(lat, lon, radius, unfound_only, c, results, found);
+				}
+			}
+		}
+		else {
+			for (int row = min_row; row <= max_row; row++) {
+				for (int col = min_col; col <= max_col; col++) {
+					int cell = find_cell(row, col);
+					if (cell >= 0) {
+						found = collect_within(lat, lon, radius, unfound_only, cell, results, found);
+					}
+				}
+			}
+		}
+
+		return found;
+	} // find_within (lat, lon, radius, unfound_only, results)
+
+
+	/***************************
+	 * Adds everything in a cell that's within the radius to results.
+	 *
+	 * @return	The new number found.
+	 */
+	private int collect_within (double lat, double lon, double radius,
+								boolean unfound_only, int cell,
+								int[] results, int found) {
+		if (unfound_only && (m_unfound_counts[cell] == 0)) {
+			return found;
+		}
+
+		double[] lats = m_registry.get_latitudes();
+		double[] lons = m_registry.get_longitudes();
+
+		for (int i = m_cell_start[cell]; i < m_cell_start[cell + 1]; i++) {
+			int index = m_cell_items[i];
+			if (unfound_only && m_registry.is_found(index)) {
+				continue;
+			}
+			if (GeoMath.haversine(lat, lon, lats[index], lons[index]) <= radius) {
+				if (found < results.length) {
+					results[found] = index;
+				}
+				found++;
+			}
+		}
+		return found;
+	} // collect_within (...)
+
+
+	/***************************
+	 * The closest anything outside the rings 0 through ring (around
+	 * the cell holding the given latitude) could possibly be.
+	 *
+	 * @return	A lower bound, in meters.
+	 */
+	private double outside_distance (double lat, int ring) {
+		if (ring < 0) {
+			return 0.0;
+		}
+		double degrees = ring * m_cell_degrees;
+
+		// North or south
+		double north_south = degrees * GeoMath.METERS_PER_DEGREE;
+
+		// East or west: the narrowest the band could be.
+		double max_lat = Math.min(90.0, Math.abs(lat) + (ring + 1) * m_cell_degrees);
+		double sin = Math.cos(Math.toRadians(max_lat)) * Math.sin(Math.toRadians(degrees) * 0.5);
+		double east_west = 2.0 * GeoMath.EARTH_RADIUS * Math.asin(Math.min(1.0, sin));
+
+		return Math.min(north_south, east_west);
+	} // outside_distance (lat, ring)
+
+
+	/***************************/
+	private int row_of (double lat) {
+		return (int) Math.floor(lat / m_cell_degrees);
+	}
+
+	/***************************/
+	private int col_of (double lon) {
+		return (int) Math.floor(lon / m_cell_degrees);
+	}
+
+	/***************************/
+	private static long cell_key (int row, int col) {
+		return ((long) row << 32) | (col & 0xFFFFFFFFL);
+	}
+
+	/***************************/
+	private static int key_row (long key) {
+		return (int) (key >> 32);
+	}
+
+	/***************************/
+	private static int key_col (long key) {
+		return (int) key;
+	}
+
+	/***************************
+	 * @return	The cell number for the given row and column, or -1
+	 * 			if there's nothing there.
+	 */
+	private int find_cell (int row, int col) {
+		int cell = Arrays.binarySearch(m_cell_keys, cell_key(row, col));
+		return (cell >= 0) ? cell : -1;
+	}
+
+}
@@ -0,0 +1,702 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+
+/**
+ * An append-only log of what happened out there: every discovery
+ * and every hot/cold band change, with when, where, and how good
+ * the GPS fix was.  The DiscoveryStore only knows *that* something
+ * was found; this is the audit trail.
+ *<p>
+ * Each record is RECORD_SIZE bytes with a CRC32 at the end, so a
+ * bad record is easy to spot.  replay() skips those and keeps
+ * going; only junk at the very end (a record that was only half
+ * written when we died) is chopped off.
+ *<p>
+ * log_...() just copies the record into a buffer.  The writer
+ * thread writes the buffer out and fsyncs it as a group: after
+ * GROUP_COMMIT_EVENTS records or GROUP_COMMIT_MS, whichever is
+ * first.  So a crash can lose at most that much, and the UI thread
+ * never waits on the disk.  A group that can't be written is
+ * tried again (see MAX_PENDING_RECORDS).
+ *<p>
+ * Band changes happen all the time, so the file doesn't keep all
+ * of them: replay() compacts it down to the discoveries and the
+ * last MAX_BAND_RECORDS band changes once there are twice that
+ * many.
+ *<p>
+ * Call replay() once at startup.  Use it from the UI thread.
+ */
+public class DiscoveryJournal {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static String TAG = "DiscoveryJournal";
+
+	/** The file in our files directory */
+	public final static String JOURNAL_FILENAME = "discoveries.journal";
+
+	/** The record types */
+	public final static int
+		TYPE_DISCOVERY = 1,
+		TYPE_BAND_CHANGE = 2;
+
+	/**
+	 * The layout of a record (big-endian):
+	 *<pre>
+	 *	 0	byte	type (TYPE_*)
+	 *	 1	byte	old band (band changes only)
+	 *	 2	byte	new band (band changes only)
+	 *	 3	byte	RECORD_VERSION
+	 *	 4	int		destination index
+	 *	 8	long	time (System.currentTimeMillis())
+	 *	16	double	latitude
+	 *	24	double	longitude
+	 *	32	float	accuracy (meters, NO_ACCURACY if unknown)
+	 *	36	int		CRC32 of bytes 0 - 35
+	 *</pre>
+	 */
+	public final static int RECORD_SIZE = 40;
+
+	private final static int CRC_OFFSET = 36;
+
+	private final static int RECORD_VERSION = 1;
+
+	/** Accuracy of a fix that didn't say. */
+	public final static float NO_ACCURACY = -1f;
+
+	/** Write and fsync after this many records... */
+	private final static int GROUP_COMMIT_EVENTS = 8;
+
+	/** ...or this long after the first one (ms), whichever is sooner. */
+	private final static long GROUP_COMMIT_MS = 1000;
+
+	/** After a failed write, try again this much later (ms). */
+	private final static long RETRY_MS = 5000;
+
+	/**
+	 * If we still can't write when this many records are waiting,
+	 * the oldest are given up on (and logged as lost).
+	 */
+	private final static int MAX_PENDING_RECORDS = 1024;
+
+	/**
+	 * Compacting keeps this many of the newest band changes (all
+	 * the discoveries are kept).  It happens when there are twice
+	 * this many.
+	 */
+	public final static int MAX_BAND_RECORDS = 500;
+
+	/** Compacting writes here first, then renames it. */
+	private final static String COMPACT_SUFFIX = ".tmp";
+
+
+	//-------------------------
+	//	Interfaces
+	//-------------------------
+
+	/**
+	 * Gets the records, oldest first, from replay().  Called on the
+	 * UI thread.
+	 */
+	public interface ReplayListener {
+		/**
+		 * @param record	Only good during this call (it's reused).
+		 */
+		public void on_record (Record record);
+	}
+
+
+	//-------------------------
+	//	Classes
+	//-------------------------
+
+	/**
+	 * One record, decoded.
+	 */
+	public static class Record {
+		private int m_type, m_index, m_old_band, m_new_band;
+		private long m_time;
+		private double m_lat, m_lon;
+		private float m_accuracy;
+
+		public int get_type()			{ return m_type; }
+		public int get_index()			{ return m_index; }
+		public int get_old_band()		{ return m_old_band; }
+		public int get_new_band()		{ return m_new_band; }
+		public long get_time()			{ return m_time; }
+		public double get_latitude()	{ return m_lat; }
+		public double get_longitude()	{ return m_lon; }
+		public float get_accuracy()		{ return m_accuracy; }
+	} // class Record
+
+
+	//-------------------------
+	//	Class Data
+	//-------------------------
+
+	private static DiscoveryJournal s_instance = null;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final File m_file;
+
+	private final Handler m_write_handler;
+
+	/** Only touched by the writer thread. */
+	private FileOutputStream m_out = null;
+
+	/**
+	 * Has the file been checked (and any torn record removed)?
+	 * Only touched by the writer thread.
+	 */
+	private boolean m_recovered = false;
+
+	/**
+	 * Records waiting to be written.  The UI thread fills
+	 * m_pending; the writer swaps it with m_writing and writes
+	 * that.  Both grow as needed and are reused.
+	 */
+	private byte[] m_pending = new byte[GROUP_COMMIT_EVENTS * RECORD_SIZE];
+	private byte[] m_writing = new byte[GROUP_COMMIT_EVENTS * RECORD_SIZE];
+	private int m_pending_count = 0;
+
+	private boolean m_commit_scheduled = false;
+
+	/**
+	 * True while waiting to retry a failed write, so a full group
+	 * doesn't hammer the disk with commits.
+	 */
+	private boolean m_retrying = false;
+
+	/** For the CRCs of records being logged (under the lock). */
+	private final CRC32 m_log_crc = new CRC32();
+
+	private final Runnable m_commit_runnable = new Runnable() {
+		@Override
+		public void run() {
+			commit();
+		}
+	};
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Gets the journal.
+	 */
+	public static synchronized DiscoveryJournal get_instance (Context ctx) {
+		if (s_instance == null) {
+			File file = new File(ctx.getApplicationContext().getFilesDir(), JOURNAL_FILENAME);
+			s_instance = new DiscoveryJournal(file);
+		}
+		return s_instance;
+	} // get_instance (ctx)
+
+
+	/***************************
+	 * Constructor.  Doesn't touch the file.
+	 */
+	private DiscoveryJournal (File file) {
+		m_file = file;
+		HandlerThread thread = new HandlerThread(TAG);
+		thread.start();
+		m_write_handler = new Handler(thread.getLooper());
+	} // constructor
+
+
+	/***************************
+	 * Checks (and if need be compacts) the journal on the writer
+	 * thread, then hands the good records to the listener back on
+	 * the UI thread.  Doesn't wait for any of that.  Anything
+	 * logged in the meantime goes in after the check, and isn't
+	 * part of the replay.
+	 *
+	 * @param listener	May be null (then this just checks the file).
+	 */
+	public void replay (final ReplayListener listener) {
+		final Handler ui_handler = new Handler(Looper.getMainLooper());
+		m_write_handler.post(new Runnable() {
+			@Override
+			public void run() {
+				final byte[] records = recover();
+				if (listener == null) {
+					return;
+				}
+				ui_handler.post(new Runnable() {
+					@Override
+					public void run() {
+						CRC32 crc = new CRC32();
+						Record record = new Record();
+						for (int offset = 0; offset < records.length; offset += RECORD_SIZE) {
+							decode(records, offset, crc, record);
+							listener.on_record(record);
+						}
+					}
+				});
+			}
+		});
+	} // replay (listener)
+
+
+	/***************************
+	 * Reads through the journal a record at a time, skipping bad
+	 * ones.  Junk after the last good record is cut off, so new
+	 * records go right after it.  If there are too many band
+	 * changes, the file is rewritten without the oldest ones.
+	 * Runs on the writer thread.
+	 *
+	 * @return	The good records that are left, oldest first.
+	 */
+	private byte[] recover() {
+		m_recovered = true;
+		close_quietly();
+
+		// Only discoveries and the newest band changes are kept,
+		// so this stays small however big the file is.
+		byte[] kept = new byte[GROUP_COMMIT_EVENTS * RECORD_SIZE];
+		int kept_len = 0;
+		int kept_bands = 0;
+		int good = 0, bad = 0, dropped_bands = 0;
+		long good_end = 0;		// where the last good record ends
+		long length = 0;
+
+		if (m_file.exists()) {
+			CRC32 crc = new CRC32();
+			Record record = new Record();
+			byte[] one = new byte[RECORD_SIZE];
+			try {
+				InputStream in = new BufferedInputStream(new FileInputStream(m_file));
+				try {
+					int n;
+					while ((n = read_record(in, one)) > 0) {
+						length += n;
+						if ((n < RECORD_SIZE) || (decode(one, 0, crc, record) == false)) {
+							bad++;
+							continue;
+						}
+						good++;
+						good_end = length;
+
+						if (kept_len + RECORD_SIZE > kept.length) {
+							byte[] bigger = new byte[kept.length * 2];
+							System.arraycopy(kept, 0, bigger, 0, kept_len);
+							kept = bigger;
+						}
+						System.arraycopy(one, 0, kept, kept_len, RECORD_SIZE);
+						kept_len += RECORD_SIZE;
+
+						if (record.get_type() == TYPE_BAND_CHANGE) {
+							kept_bands++;
+							if (kept_bands >= MAX_BAND_RECORDS * 2) {
+								int drop = kept_bands - MAX_BAND_RECORDS;
+								kept_len = drop_band_changes(kept, kept_len, drop);
+								kept_bands -= drop;
+								dropped_bands += drop;
+							}
+						}
+					}
+				}
+				finally {
+					in.close();
+				}
+			}
+			catch (IOException e) {
+				Log.e(TAG, "Unable to read " + JOURNAL_FILENAME, e);
+			}
+		}
+
+		if (dropped_bands > 0) {
+			Log.i(TAG, "Compacting the journal:  dropping " + dropped_bands
+					+ " old band changes and " + bad + " bad records.");
+			if (rewrite(kept, kept_len) == false) {
+				truncate(good_end);
+			}
+		}
+		else if (length > good_end) {
+			Log.w(TAG, "Dropping " + (length - good_end) + " bad bytes at the end of the journal.");
+			truncate(good_end);
+		}
+		if (bad > 0) {
+			Log.w(TAG, "Skipped " + bad + " bad journal records.");
+		}
+		Log.d(TAG, "Replayed " + good + " records (" + (kept_len / RECORD_SIZE) + " kept).");
+
+		byte[] records = new byte[kept_len];
+		System.arraycopy(kept, 0, records, 0, kept_len);
+		return records;
+	} // recover()
+
+
+	/***************************
+	 * Removes the oldest band changes from a buffer of records,
+	 * sliding the rest down.
+	 *
+	 * @param drop	How many band changes to remove.
+	 *
+	 * @return	The new length of the buffer.
+	 */
+	private static int drop_band_changes (byte[] buf, int len, int drop) {
+		int to = 0;
+		for (int from = 0; from < len; from += RECORD_SIZE) {
+			if ((drop > 0) && (buf[from] == TYPE_BAND_CHANGE)) {
+				drop--;
+				continue;
+			}
+			if (to != from) {
+				System.arraycopy(buf, from, buf, to, RECORD_SIZE);
+			}
+			to += RECORD_SIZE;
+		}
+		return to;
+	} // drop_band_changes (buf, len, drop)
+
+
+	/***************************
+	 * Replaces the journal with the given records: they're written
+	 * to a temp file first, which is then renamed over it, so a
+	 * crash leaves one or the other.
+	 *
+	 * @return	True iff it worked.
+	 */
+	private boolean rewrite (byte[] buf, int len) {
+		File tmp = new File(m_file.getPath() + COMPACT_SUFFIX);
+		try {
+			FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				out.write(buf, 0, len);
+				out.getFD().sync();
+			}
+			finally {
+				out.close();
+			}
+			if (tmp.renameTo(m_file)) {
+				return true;
+			}
+			Log.e(TAG, "Unable to rename the compacted journal.");
+		}
+		catch (IOException e) {
+			Log.e(TAG, "Unable to compact " + JOURNAL_FILENAME, e);
+		}
+		tmp.delete();
+		return false;
+	} // rewrite (buf, len)
+
+
+	/***************************
+	 * Logs a discovery.
+	 *
+	 * @param index	Which destination.
+	 *
+	 * @param pos	Where the user was.  May be null.
+	 */
+	public void log_discovery (int index, Location pos) {
+		log(TYPE_DISCOVERY, index, 0, 0, pos);
+	}
+
+	/***************************
+	 * Logs a hot/cold band change.
+	 *
+	 * @param index	The destination we were looking for.
+	 *
+	 * @param pos	Where the user was.  May be null.
+	 */
+	public void log_band_change (int index, int old_band, int new_band, Location pos) {
+		log(TYPE_BAND_CHANGE, index, old_band, new_band, pos);
+	}
+
+
+	/***************************
+	 * Writes out (and fsyncs) anything that's waiting, without
+	 * waiting for the group to fill.  Good for onPause().
+	 */
+	public void flush() {
+		synchronized (this) {
+			if (m_pending_count == 0) {
+				return;
+			}
+			m_commit_scheduled = true;
+		}
+		m_write_handler.removeCallbacks(m_commit_runnable);
+		m_write_handler.post(m_commit_runnable);
+	} // flush()
+
+
+	/***************************
+	 * Adds a record to the pending buffer and makes sure a commit
+	 * is coming.
+	 */
+	private void log (int type, int index, int old_band, int new_band, Location pos) {
+		double lat = 0, lon = 0;
+		float accuracy = NO_ACCURACY;
+		if (pos != null) {
+			lat = pos.getLatitude();
+			lon = pos.getLongitude();
+			if (pos.hasAccuracy()) {
+				accuracy = pos.getAccuracy();
+			}
+		}
+
+		boolean commit_now, schedule;
+		synchronized (this) {
+			int offset = m_pending_count * RECORD_SIZE;
+			if (offset + RECORD_SIZE > m_pending.length) {
+				byte[] bigger = new byte[m_pending.length * 2];
+				System.arraycopy(m_pending, 0, bigger, 0, offset);
+				m_pending = bigger;
+			}
+			encode(m_pending, offset, m_log_crc, type, index, old_band, new_band,
+					System.currentTimeMillis(), lat, lon, accuracy);
+			m_pending_count++;
+
+			commit_now = (m_pending_count >= GROUP_COMMIT_EVENTS) && (m_retrying == false);
+			schedule = (m_commit_scheduled == false);
+			m_commit_scheduled = true;
+		}
+
+		if (commit_now) {
+			m_write_handler.removeCallbacks(m_commit_runnable);
+			m_write_handler.post(m_commit_runnable);
+		}
+		else if (schedule) {
+			m_write_handler.postDelayed(m_commit_runnable, GROUP_COMMIT_MS);
+		}
+	} // log (type, index, old_band, new_band, pos)
+
+
+	/***************************
+	 * Writes the pending records and fsyncs.  Runs on the writer
+	 * thread.
+	 */
+	private void commit() {
+		byte[] buf;
+		int len;
+		synchronized (this) {
+			buf = m_pending;
+			len = m_pending_count * RECORD_SIZE;
+			m_pending = m_writing;
+			m_writing = buf;
+			m_pending_count = 0;
+			m_commit_scheduled = false;
+			m_retrying = false;
+		}
+		if (len == 0) {
+			return;
+		}
+		if (m_recovered == false) {
+			recover();
+		}
+
+		long good_length = m_file.length();
+		try {
+			if (m_out == null) {
+				m_out = new FileOutputStream(m_file, true);
+			}
+			m_out.write(buf, 0, len);
+			m_out.getFD().sync();
+		}
+		catch (IOException e) {
+			Log.e(TAG, "Unable to write " + (len / RECORD_SIZE) + " journal records.", e);
+			close_quietly();
+
+			// Part of the group may have made it.  It's all going
+			// again, so cut that off.  If even that doesn't work,
+			// the next commit checks the file before appending, so
+			// good records never end up after a torn one.
+			if (truncate(good_length) == false) {
+				m_recovered = false;
+			}
+			requeue(buf, len);
+		}
+	} // commit()
+
+
+	/***************************
+	 * Puts a group that couldn't be written back at the front of
+	 * the pending records and tries again in RETRY_MS.  If there
+	 * are more than MAX_PENDING_RECORDS, the oldest are lost.
+	 * Runs on the writer thread.
+	 */
+	private void requeue (byte[] buf, int len) {
+		int lost = 0;
+		synchronized (this) {
+			int pending_len = m_pending_count * RECORD_SIZE;
+			byte[] merged = new byte[Math.max(len + pending_len, m_pending.length)];
+			System.arraycopy(buf, 0, merged, 0, len);
+			System.arraycopy(m_pending, 0, merged, len, pending_len);
+
+			int count = (len + pending_len) / RECORD_SIZE;
+			if (count > MAX_PENDING_RECORDS) {
+				lost = count - MAX_PENDING_RECORDS;
+				count = MAX_PENDING_RECORDS;
+				System.arraycopy(merged, lost * RECORD_SIZE, merged, 0, count * RECORD_SIZE);
+			}
+			m_pending = merged;
+			m_pending_count = count;
+			m_commit_scheduled = true;
+			m_retrying = true;
+		}
+		if (lost > 0) {
+			Log.e(TAG, "Still can't write the journal:  " + lost + " records are lost.");
+		}
+		m_write_handler.removeCallbacks(m_commit_runnable);
+		m_write_handler.postDelayed(m_commit_runnable, RETRY_MS);
+	} // requeue (buf, len)
+
+
+	/***************************/
+	private void close_quietly() {
+		if (m_out != null) {
+			try {
+				m_out.close();
+			}
+			catch (IOException e) {
+				// Nothing more to do.
+			}
+			m_out = null;
+		}
+	}
+
+
+	/***************************
+	 * Cuts the file down to the given length.
+	 *
+	 * @return	True iff it worked.
+	 */
+	private boolean truncate (long length) {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(m_file, "rw");
+			try {
+				raf.setLength(length);
+			}
+			finally {
+				raf.close();
+			}
+			return true;
+		}
+		catch (IOException e) {
+			Log.e(TAG, "Unable to truncate " + JOURNAL_FILENAME, e);
+			return false;
+		}
+	} // truncate (length)
+
+
+	/***************************
+	 * Reads the next record's worth of bytes.
+	 *
+	 * @return	How many bytes were read: RECORD_SIZE, less at the
+	 * 			end of the file, and 0 once there's nothing left.
+	 */
+	private static int read_record (InputStream in, byte[] buf) throws IOException {
+		int len = 0;
+		while (len < RECORD_SIZE) {
+			int n = in.read(buf, len, RECORD_SIZE - len);
+			if (n < 0) {
+				break;
+			}
+			len += n;
+		}
+		return len;
+	} // read_record (in, buf)
+
+
+	/***************************
+	 * Puts a record into buf at offset, CRC and all.
+	 */
+	static void encode (byte[] buf, int offset, CRC32 crc,
+						int type, int index, int old_band, int new_band,
+						long time, double lat, double lon, float accuracy) {
+		buf[offset] = (byte) type;
+		buf[offset + 1] = (byte) old_band;
+		buf[offset + 2] = (byte) new_band;
+		buf[offset + 3] = (byte) RECORD_VERSION;
+		put_int(buf, offset + 4, index);
+		put_long(buf, offset + 8, time);
+		put_long(buf, offset + 16, Double.doubleToRawLongBits(lat));
+		put_long(buf, offset + 24, Double.doubleToRawLongBits(lon));
+		put_int(buf, offset + 32, Float.floatToRawIntBits(accuracy));
+
+		crc.reset();
+		crc.update(buf, offset, CRC_OFFSET);
+		put_int(buf, offset + CRC_OFFSET, (int) crc.getValue());
+	} // encode (...)
+
+
+	/***************************
+	 * Reads the record at offset.
+	 *
+	 * @return	False if it's not a good record (bad CRC or unknown
+	 * 			version); record is garbage then.
+	 */
+	static boolean decode (byte[] buf, int offset, CRC32 crc, Record record) {
+		crc.reset();
+		crc.update(buf, offset, CRC_OFFSET);
+		if ((int) crc.getValue() != get_int(buf, offset + CRC_OFFSET)) {
+			return false;
+		}
+		if (buf[offset + 3] != RECORD_VERSION) {
+			return false;
+		}
+
+		record.m_type = buf[offset];
+		record.m_old_band = buf[offset + 1];
+		record.m_new_band = buf[offset + 2];
+		record.m_index = get_int(buf, offset + 4);
+		record.m_time = get_long(buf, offset + 8);
+		record.m_lat = Double.longBitsToDouble(get_long(buf, offset + 16));
+		record.m_lon = Double.longBitsToDouble(get_long(buf, offset + 24));
+		record.m_accuracy = Float.intBitsToFloat(get_int(buf, offset + 32));
+		return true;
+	} // decode (buf, offset, crc, record)
+
+
+	/***************************/
+	private static void put_int (byte[] buf, int offset, int val) {
+		buf[offset] = (byte) (val >>> 24);
+		buf[offset + 1] = (byte) (val >>> 16);
+		buf[offset + 2] = (byte) (val >>> 8);
+		buf[offset + 3] = (byte) val;
+	}
+
+	/***************************/
+	private static void put_long (byte[] buf, int offset, long val) {
+		put_int(buf, offset, (int) (val >>> 32));
+		put_int(buf, offset + 4, (int) val);
+	}
+
+	/***************************/
+	private static int get_int (byte[] buf, int offset) {
+		return ((buf[offset] & 0xff) << 24)
+				| ((buf[offset + 1] & 0xff) << 16)
+				| ((buf[offset + 2] & 0xff) << 8)
+				| (buf[offset + 3] & 0xff);
+	}
+
+	/***************************/
+	private static long get_long (byte[] buf, int offset) {
+		return ((long) get_int(buf, offset) << 32) | (get_int(buf, offset + 4) & 0xffffffffL);
+	}
+
+}
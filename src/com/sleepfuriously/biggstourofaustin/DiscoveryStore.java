@@ -0,0 +1,438 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Map;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.preference.PreferenceManager;
+import android.support.v4.util.AtomicFile;
+import android.util.Log;
+
+
+/**
+ * Remembers which destinations the user has discovered, and when.
+ *<p>
+ * Everything lives in memory (a BitSet of found flags and an array
+ * of timestamps), so asking is just a bit lookup.  It's read from
+ * DISCOVERY_FILENAME once, when the store is made.  Changes are
+ * written back on a background thread; a burst of changes only
+ * causes one write (WRITE_DELAY_MS after the first).
+ *<p>
+ * The found flags used to be SharedPreferences, under two
+ * different prefixes (LEGACY_FOUND_PREFIX and
+ * LEGACY_DISCOVERED_PREFIX).  The first time the store is made
+ * those are copied in and then removed.
+ *<p>
+ * Use it from the UI thread.
+ */
+public class DiscoveryStore implements DestinationRegistry.FoundListener {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static String TAG = "DiscoveryStore";
+
+	/** The file in our files directory */
+	public final static String DISCOVERY_FILENAME = "discoveries.dat";
+
+	/** Starts the file, so we know it's really ours. "DISC" */
+	private final static int MAGIC = 0x44495343;
+
+	private final static int VERSION = 1;
+
+	/** How long to wait for more changes before writing (ms) */
+	private final static long WRITE_DELAY_MS = 500;
+
+	/** Timestamp for discoveries whose time we don't know */
+	public final static long UNKNOWN_TIME = 0L;
+
+	/**
+	 * The old SharedPreference keys, one per destination (add the
+	 * destination's index).  Used by DestinationData and
+	 * MainActivity, respectively.
+	 */
+	private final static String
+		LEGACY_FOUND_PREFIX = "LocationData_fnd",
+		LEGACY_DISCOVERED_PREFIX = "prefs_discovered_";
+
+
+	//-------------------------
+	//	Class Data
+	//-------------------------
+
+	private static DiscoveryStore s_instance = null;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final AtomicFile m_file;
+
+	/** A bit is set iff that destination has been discovered. */
+	private final BitSet m_discovered = new BitSet();
+
+	/** When each was discovered (System.currentTimeMillis()) */
+	private long[] m_times = new long[16];
+
+	/** Does the writing, off the UI thread. */
+	private final Handler m_write_handler;
+
+	/** True while a write is scheduled. */
+	private boolean m_write_pending = false;
+
+	private final Runnable m_write_runnable = new Runnable() {
+		@Override
+		public void run() {
+			write();
+		}
+	};
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Gets the store, reading it (and migrating the old
+	 * preferences if need be) the first time.
+	 */
+	public static synchronized DiscoveryStore get_instance (Context ctx) {
+		if (s_instance == null) {
+			s_instance = new DiscoveryStore(ctx.getApplicationContext());
+		}
+		return s_instance;
+	} // get_instance (ctx)
+
+
+	/***************************
+	 * Constructor.  Reads the file, or if there isn't one yet,
+	 * the old preferences.
+	 */
+	private DiscoveryStore (Context app_ctx) {
+		m_file = new AtomicFile(new File(app_ctx.getFilesDir(), DISCOVERY_FILENAME));
+
+		HandlerThread thread = new HandlerThread(TAG);
+		thread.start();
+		m_write_handler = new Handler(thread.getLooper());
+
+		boolean loaded = false;
+		try {
+			loaded = read();
+		}
+		catch (IOException e) {
+			Log.e(TAG, "Unable to read " + DISCOVERY_FILENAME + ", starting over.", e);
+		}
+
+		if (loaded == false) {
+			migrate(app_ctx);
+		}
+	} // constructor
+
+
+	/***************************
+	 * @return	True iff the given destination has been discovered.
+	 */
+	public boolean is_discovered (int index) {
+		return m_discovered.get(index);
+	}
+
+	/***************************
+	 * @return	When the destination was discovered (millis, like
+	 * 			System.currentTimeMillis()), or UNKNOWN_TIME.
+	 */
+	public long get_discovery_time (int index) {
+		if ((index >= m_times.length) || (m_discovered.get(index) == false)) {
+			return UNKNOWN_TIME;
+		}
+		return m_times[index];
+	}
+
+	/***************************
+	 * @return	How many destinations have been discovered.
+	 */
+	public int get_discovered_count() {
+		return m_discovered.cardinality();
+	}
+
+
+	/***************************
+	 * Marks a destination as discovered (right now) or not, and
+	 * schedules a write.  Does nothing if it's already that way.
+	 */
+	public void set_discovered (int index, boolean discovered) {
+		synchronized (this) {
+			if (m_discovered.get(index) == discovered) {
+				return;
+			}
+			m_discovered.set(index, discovered);
+			ensure_time_capacity(index + 1);
+			m_times[index] = discovered ? System.currentTimeMillis() : UNKNOWN_TIME;
+		}
+		schedule_write(WRITE_DELAY_MS);
+	} // set_discovered (index, discovered)
+
+
+	/***************************
+	 * The DiscoveryJournal says this destination was discovered at
+	 * the given time.  Marks it (with that time, not now) if it
+	 * wasn't already, or fills in the time if we didn't know it.
+	 *
+	 * @return	True iff it wasn't marked discovered before.
+	 */
+	public boolean merge_discovery (int index, long time) {
+		boolean is_new;
+		synchronized (this) {
+			is_new = (m_discovered.get(index) == false);
+			if ((is_new == false) && (m_times[index] != UNKNOWN_TIME)) {
+				return false;
+			}
+			m_discovered.set(index);
+			ensure_time_capacity(index + 1);
+			m_times[index] = time;
+		}
+		schedule_write(WRITE_DELAY_MS);
+		return is_new;
+	} // merge_discovery (index, time)
+
+
+	/***************************
+	 * Copies our flags into a registry, then keeps listening to it
+	 * so that anything marked found there gets saved here.
+	 */
+	public void attach (DestinationRegistry registry) {
+		for (int i = 0; i < registry.get_count(); i++) {
+			registry.set_found(i, m_discovered.get(i));
+		}
+		registry.add_found_listener(this);
+	} // attach (registry)
+
+	/***************************
+	 * Stops listening to a registry.
+	 */
+	public void detach (DestinationRegistry registry) {
+		registry.remove_found_listener(this);
+	}
+
+	/***************************
+	 * A registry we're attached to changed a found flag.
+	 */
+	@Override
+	public void on_found_changed (int index, boolean found) {
+		set_discovered(index, found);
+	}
+
+
+	/***************************
+	 * If there are changes waiting to be written, write them now
+	 * (well, on the writer thread, but without waiting).  Good to
+	 * call in onPause().
+	 */
+	public void flush() {
+		synchronized (this) {
+			if (m_write_pending == false) {
+				return;
+			}
+		}
+		m_write_handler.removeCallbacks(m_write_runnable);
+		m_write_handler.post(m_write_runnable);
+	} // flush()
+
+
+	/***************************/
+	private void schedule_write (long delay) {
+		synchronized (this) {
+			if (m_write_pending) {
+				return;		// It'll pick up this change too.
+			}
+			m_write_pending = true;
+		}
+		m_write_handler.postDelayed(m_write_runnable, delay);
+	}
+
+	/***************************/
+	private void ensure_time_capacity (int capacity) {
+		if (capacity > m_times.length) {
+			long[] bigger = new long[Math.max(capacity, m_times.length * 2)];
+			System.arraycopy(m_times, 0, bigger, 0, m_times.length);
+			m_times = bigger;
+		}
+	}
+
+
+	/***************************
+	 * Reads the file into memory.
+	 *
+	 * @return	False iff there isn't a file.
+	 */
+	private boolean read() throws IOException {
+		FileInputStream fis;
+		try {
+			fis = m_file.openRead();
+		}
+		catch (FileNotFoundException e) {
+			return false;
+		}
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(fis));
+		try {
+			if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+				throw new IOException("Not a discovery file (or the wrong version).");
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				int index = in.readInt();
+				long time = in.readLong();
+				m_discovered.set(index);
+				ensure_time_capacity(index + 1);
+				m_times[index] = time;
+			}
+		}
+		finally {
+			in.close();
+		}
+		Log.d(TAG, "Read " + m_discovered.cardinality() + " discoveries.");
+		return true;
+	} // read()
+
+
+	/***************************
+	 * Writes everything out.  Runs on the writer thread.
+	 *
+	 * @return	True iff it's all safely in the file.
+	 */
+	private boolean write() {
+		// Grab a copy, so the UI thread can keep going.
+		int[] indices;
+		long[] times;
+		synchronized (this) {
+			m_write_pending = false;
+			indices = new int[m_discovered.cardinality()];
+			times = new long[indices.length];
+			int n = 0;
+			for (int i = m_discovered.nextSetBit(0); i >= 0; i = m_discovered.nextSetBit(i + 1)) {
+				indices[n] = i;
+				times[n] = m_times[i];
+				n++;
+			}
+		}
+
+		FileOutputStream fos = null;
+		try {
+			fos = m_file.startWrite();
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(indices.length);
+			for (int i = 0; i < indices.length; i++) {
+				out.writeInt(indices[i]);
+				out.writeLong(times[i]);
+			}
+			out.flush();
+			m_file.finishWrite(fos);
+			return true;
+		}
+		catch (IOException e) {
+			Log.e(TAG, "Unable to write " + DISCOVERY_FILENAME, e);
+			if (fos != null) {
+				m_file.failWrite(fos);
+			}
+			return false;
+		}
+	} // write()
+
+
+	/***************************
+	 * Copies the found flags out of the old preferences (either
+	 * prefix counts), writes them to our file, and removes the old
+	 * keys.  We don't know when those were found, so their times
+	 * are UNKNOWN_TIME.
+	 *
+	 * The old keys are only removed once the file has been written.
+	 * If that fails they stay, and since there's still no file, the
+	 * next start migrates them again.
+	 */
+	private void migrate (Context ctx) {
+		SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(ctx);
+		ArrayList<String> old_keys = new ArrayList<String>();
+
+		for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+			String key = entry.getKey();
+			int index = legacy_index(key);
+			if (index < 0) {
+				continue;
+			}
+			old_keys.add(key);
+			if (Boolean.TRUE.equals(entry.getValue())) {
+				m_discovered.set(index);
+				ensure_time_capacity(index + 1);
+				m_times[index] = UNKNOWN_TIME;
+			}
+		}
+		Log.i(TAG, "Migrated " + m_discovered.cardinality() + " discoveries from "
+				+ old_keys.size() + " old preferences.");
+
+		// Write our file first, so nothing is lost if we die in between.
+		final ArrayList<String> remove_keys = old_keys;
+		final SharedPreferences remove_prefs = prefs;
+		m_write_handler.post(new Runnable() {
+			@Override
+			public void run() {
+				if (write() == false) {
+					Log.w(TAG, "Keeping the old preferences until " + DISCOVERY_FILENAME
+							+ " can be written.");
+					return;
+				}
+				if (remove_keys.isEmpty()) {
+					return;
+				}
+				SharedPreferences.Editor editor = remove_prefs.edit();
+				for (int i = 0; i < remove_keys.size(); i++) {
+					editor.remove(remove_keys.get(i));
+				}
+				editor.commit();
+			}
+		});
+	} // migrate (ctx)
+
+
+	/***************************
+	 * @return	The destination index in an old preference key, or -1
+	 * 			if it's not one of those.
+	 */
+	private static int legacy_index (String key) {
+		String number;
+		if (key.startsWith(LEGACY_FOUND_PREFIX)) {
+			number = key.substring(LEGACY_FOUND_PREFIX.length());
+		}
+		else if (key.startsWith(LEGACY_DISCOVERED_PREFIX)) {
+			number = key.substring(LEGACY_DISCOVERED_PREFIX.length());
+		}
+		else {
+			return -1;
+		}
+
+		try {
+			int index = Integer.parseInt(number);
+			return (index >= 0) ? index : -1;
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	} // legacy_index (key)
+
+}
@@ -0,0 +1,119 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Remembers the last few thousand things that happened (each just a
+ * type, a number, and a time), for dumping when something looks
+ * wrong.  Once it's full, new events write over the oldest.
+ *<p>
+ * Adding is lock-free: each add() takes the next slot with one
+ * atomic increment and fills it in.  An event being written while
+ * the ring is read may come out half-written, which is fine for a
+ * debugging log.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class EventRing {
+
+	//-------------------------
+	//	Interfaces
+	//-------------------------
+
+	/**
+	 * Gets the events, oldest first (see read()).
+	 */
+	public interface EventVisitor {
+		public void on_event (long seq, int type, long value, long time);
+	}
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final int m_mask;
+
+	private final int[] m_types;
+	private final long[] m_values;
+	private final long[] m_times;
+
+	/** The sequence number of the next event (how many there have been). */
+	private final AtomicLong m_next = new AtomicLong();
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor
+	 *
+	 * @param capacity	How many events to keep.  Rounded up to a
+	 * 					power of 2.
+	 */
+	public EventRing (int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		m_mask = size - 1;
+		m_types = new int[size];
+		m_values = new long[size];
+		m_times = new long[size];
+	} // constructor
+
+
+	/***************************
+	 * Adds an event.
+	 *
+	 * @param type	What it was (up to the caller).
+	 *
+	 * @param value	Anything that goes with it.
+	 *
+	 * @param time	When (in whatever units the caller likes).
+	 */
+	public void add (int type, long value, long time) {
+		int i = (int) (m_next.getAndIncrement() & m_mask);
+		m_types[i] = type;
+		m_values[i] = value;
+		m_times[i] = time;
+	} // add (type, value, time)
+
+
+	/***************************
+	 * Goes through the events that are still in the ring, oldest
+	 * first.
+	 */
+	public void read (EventVisitor visitor) {
+		long end = m_next.get();
+		long start = Math.max(0, end - m_types.length);
+		for (long seq = start; seq < end; seq++) {
+			int i = (int) (seq & m_mask);
+			visitor.on_event(seq, m_types[i], m_values[i], m_times[i]);
+		}
+	} // read (visitor)
+
+
+	/***************************
+	 * @return	How many events there have been (including ones
+	 * 			that have been written over).
+	 */
+	public long get_total() {
+		return m_next.get();
+	}
+
+	/***************************
+	 * @return	The most events that are kept.
+	 */
+	public int get_capacity() {
+		return m_types.length;
+	}
+
+
+	/***************************
+	 * Forgets all the events.
+	 */
+	public void clear() {
+		m_next.set(0);
+	}
+
+}
@@ -0,0 +1,203 @@
+package com.sleepfuriously.biggstourofaustin;
+
+
+/**
+ * Quick distance and bearing to ONE target, for calling over and
+ * over (every fix, every frame).  Location.distanceTo() and
+ * bearingTo() run the whole iterative Vincenty calculation every
+ * time, which is a lot of trig for something that barely changes.
+ *<p>
+ * Instead, this flattens the Earth around the target (a local
+ * equirectangular projection on the WGS84 ellipsoid).  Everything
+ * that depends only on the target (cos(lat), the radii of
+ * curvature) is worked out once in set_target(), so each compute()
+ * is a few multiplies, a sqrt and a quick atan2.
+ *<p>
+ * When we're close (within EXACT_SLOP_MULTIPLE slops) the real
+ * Vincenty calculation is used instead, so the on-target decisions
+ * come out exactly the same as Location's.  Same thing when we're
+ * farther than MAX_APPROX_DISTANCE or the target is near a pole,
+ * where flattening doesn't work so well.
+ *<p>
+ * Error bounds, compared to Location (measured at lat 0-60 in
+ * every direction):
+ *<ul>
+ *	<li>distance: under 0.001% out to 10 km, under 0.01% out to
+ *		MAX_APPROX_DISTANCE (100 km).
+ *	<li>bearing: under 0.001 degrees out to 10 km (most of that is
+ *		GeoMath.fast_atan2()), under 0.005 degrees out to 100 km.
+ *</ul>
+ * The hot/cold bands are hundreds of percent apart, so this is way
+ * better than we need.  The benchmarks build holds us to these
+ * (GeoKernelCheck, against GeoMath.vincenty()), and
+ * DebugBenchmarks.bench_geo_kernel() checks them on a real device.
+ *<p>
+ * Not thread-safe: compute() stores its answers in the instance.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class GeoKernel {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/**
+	 * Closer than this many slops, we do it the exact way.  Keeps
+	 * "are we there yet?" consistent with Location.distanceTo().
+	 */
+	public final static float EXACT_SLOP_MULTIPLE = 5f;
+
+	/** Farther than this (meters) and we do it the exact way too. */
+	public final static double MAX_APPROX_DISTANCE = 100000.0;
+
+	/** Targets closer to a pole than this (degrees) are always exact. */
+	public final static double POLAR_LIMIT = 80.0;
+
+	private final static double RADIANS_PER_DEGREE = Math.PI / 180.0;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private double m_target_lat = Double.NaN;
+	private double m_target_lon = Double.NaN;
+	private float m_slop = Float.NaN;
+
+	/** Meters per radian going north, at the target */
+	private double m_meters_per_rad_north;
+
+	/**
+	 * Meters per radian going east at the equator (the prime
+	 * vertical radius of curvature).  Multiply by cos(lat).
+	 */
+	private double m_meters_per_rad_east;
+
+	/** cos and sin of the target's latitude */
+	private double m_cos_lat, m_sin_lat;
+
+	/** Closer than this (meters) and we use vincenty(). */
+	private double m_exact_radius;
+
+	/** True when the target is too near a pole for flattening. */
+	private boolean m_always_exact;
+
+	/** The answers from the last compute() */
+	private float m_distance, m_bearing;
+	private boolean m_exact;
+
+	/** So vincenty() doesn't need a new array every time. */
+	private final float[] m_vincenty_results = new float[2];
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Aims this kernel at a new target.  Does nothing if it's the
+	 * same target as before, so it's fine to call all the time.
+	 *
+	 * @param slop	The target's slop, in meters.
+	 */
+	public void set_target (double lat, double lon, float slop) {
+		if ((lat == m_target_lat) && (lon == m_target_lon) && (slop == m_slop)) {
+			return;
+		}
+		m_target_lat = lat;
+		m_target_lon = lon;
+		m_slop = slop;
+
+		double phi = lat * RADIANS_PER_DEGREE;
+		m_cos_lat = Math.cos(phi);
+		m_sin_lat = Math.sin(phi);
+
+		double w = 1.0 - GeoMath.WGS84_E2 * m_sin_lat * m_sin_lat;
+		m_meters_per_rad_east = GeoMath.WGS84_A / Math.sqrt(w);
+		m_meters_per_rad_north = GeoMath.WGS84_A * (1.0 - GeoMath.WGS84_E2) / (w * Math.sqrt(w));
+
+		m_exact_radius = slop * EXACT_SLOP_MULTIPLE;
+		m_always_exact = Math.abs(lat) > POLAR_LIMIT;
+	} // set_target (lat, lon, slop)
+
+
+	/***************************
+	 * Figures the distance and bearing from the given position to
+	 * the target.  The bearing is available from get_bearing()
+	 * afterwards.
+	 *
+	 * @return	The distance in meters.
+	 */
+	public float compute (double lat, double lon) {
+		double dlat = (m_target_lat - lat) * RADIANS_PER_DEGREE;
+		double dlon = m_target_lon - lon;
+		if (dlon > 180.0) {
+			dlon -= 360.0;
+		}
+		else if (dlon < -180.0) {
+			dlon += 360.0;
+		}
+		dlon *= RADIANS_PER_DEGREE;
+
+		// cos() of the latitude halfway between us and the target,
+		// from the target's cos and sin (first order is plenty).
+		double half_dlat = dlat * 0.5;
+		double cos_mid = m_cos_lat + m_sin_lat * half_dlat;
+
+		double north = dlat * m_meters_per_rad_north;
+		double east = dlon * m_meters_per_rad_east * cos_mid;
+		double dist = Math.sqrt(north * north + east * east);
+
+		if (m_always_exact || (dist < m_exact_radius) || (dist > MAX_APPROX_DISTANCE)) {
+			GeoMath.vincenty(lat, lon, m_target_lat, m_target_lon, m_vincenty_results);
+			m_distance = m_vincenty_results[0];
+			m_bearing = m_vincenty_results[1];
+			m_exact = true;
+			return m_distance;
+		}
+
+		// The atan2 gives the bearing halfway along.  At the start the
+		// meridians are tilted half the convergence away from that.
+		double sin_mid = m_sin_lat - m_cos_lat * half_dlat;
+		double bearing = GeoMath.fast_atan2(east, north) - (dlon * 0.5 * sin_mid);
+		bearing /= RADIANS_PER_DEGREE;
+		if (bearing > 180.0) {
+			bearing -= 360.0;
+		}
+		else if (bearing < -180.0) {
+			bearing += 360.0;
+		}
+
+		m_distance = (float) dist;
+		m_bearing = (float) bearing;
+		m_exact = false;
+		return m_distance;
+	} // compute (lat, lon)
+
+
+	/***************************
+	 * @return	The distance (meters) from the last compute().
+	 */
+	public float get_distance() {
+		return m_distance;
+	}
+
+	/***************************
+	 * @return	The bearing from the last compute(), in degrees east
+	 * 			of true north (-180 to 180), just like
+	 * 			Location.bearingTo().
+	 */
+	public float get_bearing() {
+		return m_bearing;
+	}
+
+	/***************************
+	 * @return	True iff the last compute() did the full Vincenty
+	 * 			calculation.
+	 */
+	public boolean was_exact() {
+		return m_exact;
+	}
+
+}
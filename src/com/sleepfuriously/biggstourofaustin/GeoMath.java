@@ -0,0 +1,189 @@
+package com.sleepfuriously.biggstourofaustin;
+
+
+/**
+ * Plain math on coordinates, using nothing but doubles.  No
+ * Location objects are needed (or made).
+ *<p>
+ * haversine() treats the Earth as a sphere, so the results can be
+ * off from Location.distanceTo() (which uses the WGS84 ellipsoid)
+ * by up to about 0.5%.  vincenty() is the same calculation that
+ * Location does, so it matches exactly (and is just as slow).
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class GeoMath {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** Mean radius of the Earth, in meters */
+	public final static double EARTH_RADIUS = 6371008.8;
+
+	/** The length of one degree of latitude (on our sphere), in meters */
+	public final static double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180.0;
+
+	/** The WGS84 ellipsoid: semi-major and semi-minor axes, in meters */
+	public final static double
+		WGS84_A = 6378137.0,
+		WGS84_B = 6356752.3142;
+
+	/** WGS84 flattening */
+	public final static double WGS84_F = (WGS84_A - WGS84_B) / WGS84_A;
+
+	/** WGS84 first eccentricity, squared */
+	public final static double WGS84_E2 = 1.0 - (WGS84_B * WGS84_B) / (WGS84_A * WGS84_A);
+
+	/** Vincenty gives up after this many tries (same as Location) */
+	private final static int VINCENTY_MAX_ITERS = 20;
+
+	/**
+	 * Polynomial for atan(x), 0 <= x <= 1.  From Abramowitz & Stegun
+	 * 4.4.49; the error is under 1e-5 radians (0.0006 degrees).
+	 */
+	private final static double
+		ATAN_A1 = 0.9998660,
+		ATAN_A3 = -0.3302995,
+		ATAN_A5 = 0.1801410,
+		ATAN_A7 = -0.0851330,
+		ATAN_A9 = 0.0208351;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * The great-circle distance between two coordinates, using the
+	 * haversine formula.
+	 *
+	 * @return	The distance in meters.
+	 */
+	public static double haversine (double lat1, double lon1,
+									double lat2, double lon2) {
+		double phi1 = Math.toRadians(lat1);
+		double phi2 = Math.toRadians(lat2);
+		double sin_dphi = Math.sin((phi2 - phi1) * 0.5);
+		double sin_dlambda = Math.sin(Math.toRadians(lon2 - lon1) * 0.5);
+
+		double a = (sin_dphi * sin_dphi) +
+					(Math.cos(phi1) * Math.cos(phi2) * sin_dlambda * sin_dlambda);
+		return 2.0 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+	} // haversine (lat1, lon1, lat2, lon2)
+
+
+	/***************************
+	 * A quick Math.atan2().  Off by no more than 1e-5 radians, which
+	 * is plenty for pointing an arrow, and several times faster.
+	 *
+	 * @return	The angle in radians, -PI to PI (0 if both are 0).
+	 */
+	public static double fast_atan2 (double y, double x) {
+		double abs_y = Math.abs(y);
+		double abs_x = Math.abs(x);
+		if (abs_x == 0.0 && abs_y == 0.0) {
+			return 0.0;
+		}
+
+		// Keep the ratio between 0 and 1 so the polynomial works.
+		boolean swapped = abs_y > abs_x;
+		double t = swapped ? (abs_x / abs_y) : (abs_y / abs_x);
+		double t_sq = t * t;
+		double angle = t * (ATAN_A1 + t_sq * (ATAN_A3 + t_sq *
+						(ATAN_A5 + t_sq * (ATAN_A7 + t_sq * ATAN_A9))));
+
+		if (swapped) {
+			angle = (Math.PI * 0.5) - angle;
+		}
+		if (x < 0.0) {
+			angle = Math.PI - angle;
+		}
+		return (y < 0.0) ? -angle : angle;
+	} // fast_atan2 (y, x)
+
+
+	/***************************
+	 * The distance and initial bearing between two coordinates on
+	 * the WGS84 ellipsoid, using Vincenty's inverse formula.  This
+	 * is the same as Location.distanceBetween(), but it doesn't
+	 * allocate anything.
+	 *
+	 * @param results	Gets the distance (meters) in [0] and, if
+	 * 					it's long enough, the initial bearing
+	 * 					(degrees, -180 to 180) in [1].
+	 */
+	public static void vincenty (double lat1, double lon1,
+								double lat2, double lon2,
+								float[] results) {
+		double a_sq_minus_b_sq_over_b_sq =
+				(WGS84_A * WGS84_A - WGS84_B * WGS84_B) / (WGS84_B * WGS84_B);
+
+		double big_l = Math.toRadians(lon2 - lon1);
+		double u1 = Math.atan((1.0 - WGS84_F) * Math.tan(Math.toRadians(lat1)));
+		double u2 = Math.atan((1.0 - WGS84_F) * Math.tan(Math.toRadians(lat2)));
+
+		double cos_u1 = Math.cos(u1);
+		double cos_u2 = Math.cos(u2);
+		double sin_u1 = Math.sin(u1);
+		double sin_u2 = Math.sin(u2);
+		double cos_u1_cos_u2 = cos_u1 * cos_u2;
+		double sin_u1_sin_u2 = sin_u1 * sin_u2;
+
+		double big_a = 0.0;
+		double sigma = 0.0;
+		double delta_sigma = 0.0;
+		double sin_sigma = 0.0;
+		double cos_lambda = 0.0;
+		double sin_lambda = 0.0;
+
+		double lambda = big_l;
+		for (int iter = 0; iter < VINCENTY_MAX_ITERS; iter++) {
+			double lambda_orig = lambda;
+			cos_lambda = Math.cos(lambda);
+			sin_lambda = Math.sin(lambda);
+			double t1 = cos_u2 * sin_lambda;
+			double t2 = cos_u1 * sin_u2 - sin_u1 * cos_u2 * cos_lambda;
+			sin_sigma = Math.sqrt(t1 * t1 + t2 * t2);
+			double cos_sigma = sin_u1_sin_u2 + cos_u1_cos_u2 * cos_lambda;
+			sigma = Math.atan2(sin_sigma, cos_sigma);
+
+			double sin_alpha = (sin_sigma == 0.0) ? 0.0 :
+								cos_u1_cos_u2 * sin_lambda / sin_sigma;
+			double cos_sq_alpha = 1.0 - sin_alpha * sin_alpha;
+			double cos_2sm = (cos_sq_alpha == 0.0) ? 0.0 :
+								cos_sigma - 2.0 * sin_u1_sin_u2 / cos_sq_alpha;
+
+			double u_sq = cos_sq_alpha * a_sq_minus_b_sq_over_b_sq;
+			big_a = 1 + (u_sq / 16384.0) *
+					(4096.0 + u_sq * (-768 + u_sq * (320.0 - 175.0 * u_sq)));
+			double big_b = (u_sq / 1024.0) *
+					(256.0 + u_sq * (-128.0 + u_sq * (74.0 - 47.0 * u_sq)));
+			double big_c = (WGS84_F / 16.0) * cos_sq_alpha *
+					(4.0 + WGS84_F * (4.0 - 3.0 * cos_sq_alpha));
+			double cos_2sm_sq = cos_2sm * cos_2sm;
+			delta_sigma = big_b * sin_sigma *
+					(cos_2sm + (big_b / 4.0) *
+						(cos_sigma * (-1.0 + 2.0 * cos_2sm_sq) -
+						(big_b / 6.0) * cos_2sm *
+						(-3.0 + 4.0 * sin_sigma * sin_sigma) *
+						(-3.0 + 4.0 * cos_2sm_sq)));
+
+			lambda = big_l + (1.0 - big_c) * WGS84_F * sin_alpha *
+					(sigma + big_c * sin_sigma *
+						(cos_2sm + big_c * cos_sigma * (-1.0 + 2.0 * cos_2sm_sq)));
+
+			if (Math.abs(lambda - lambda_orig) <= 1.0e-12 * Math.abs(lambda)) {
+				break;
+			}
+		}
+
+		results[0] = (float) (WGS84_B * big_a * (sigma - delta_sigma));
+		if (results.length > 1) {
+			double bearing = Math.atan2(cos_u2 * sin_lambda,
+							cos_u1 * sin_u2 - sin_u1 * cos_u2 * cos_lambda);
+			results[1] = (float) Math.toDegrees(bearing);
+		}
+	} // vincenty (lat1, lon1, lat2, lon2, results)
+
+}
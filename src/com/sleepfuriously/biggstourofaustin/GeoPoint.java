@@ -0,0 +1,160 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.text.DecimalFormat;
+
+
+/**
+ * A latitude and longitude (degrees), and nothing else.  This is
+ * what the rest of the app uses instead of android.location.Location
+ * (MainActivity copies the fixes into one of these as they come in).
+ *<p>
+ * They can be changed (set()), so one can be reused for every fix
+ * instead of making new ones.
+ *<p>
+ * For storing lots of them, a position can also be packed into a
+ * single long as two ints of microdegrees (the same units the
+ * packed catalog uses): see pack_e6().
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class GeoPoint {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** Microdegrees per degree */
+	public final static double MICRODEGREES = 1000000.0;
+
+	/** For to_seconds_string() (same as Location.convert()). */
+	private final static String SECONDS_FORMAT = "###.#####";
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private double m_lat, m_lon;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor.  Starts at 0, 0.
+	 */
+	public GeoPoint() {
+	}
+
+	/***************************
+	 * Constructor
+	 */
+	public GeoPoint (double lat, double lon) {
+		m_lat = lat;
+		m_lon = lon;
+	}
+
+
+	/***************************/
+	public GeoPoint set (double lat, double lon) {
+		m_lat = lat;
+		m_lon = lon;
+		return this;
+	}
+
+	/***************************/
+	public GeoPoint set (GeoPoint other) {
+		m_lat = other.m_lat;
+		m_lon = other.m_lon;
+		return this;
+	}
+
+	/***************************/
+	public GeoPoint set_packed_e6 (long packed) {
+		m_lat = unpack_latitude(packed);
+		m_lon = unpack_longitude(packed);
+		return this;
+	}
+
+
+	/** @return	Degrees north (negative is south). */
+	public double get_latitude() {
+		return m_lat;
+	}
+
+	/** @return	Degrees east (negative is west). */
+	public double get_longitude() {
+		return m_lon;
+	}
+
+	/** @return	This position packed into a long (see pack_e6()). */
+	public long get_packed_e6() {
+		return pack_e6(m_lat, m_lon);
+	}
+
+
+	/***************************
+	 * @return	Meters to another point (haversine, so it may be off
+	 * 			from Location.distanceTo() by a fraction of a
+	 * 			percent).  For lots of these to the same place, a
+	 * 			GeoKernel is faster.
+	 */
+	public double distance_to (GeoPoint other) {
+		return GeoMath.haversine(m_lat, m_lon, other.m_lat, other.m_lon);
+	}
+
+
+	/***************************
+	 * Packs a position into a long: the latitude in microdegrees in
+	 * the top 32 bits, the longitude in the bottom 32.
+	 */
+	public static long pack_e6 (double lat, double lon) {
+		return ((long) to_e6(lat) << 32) | (to_e6(lon) & 0xffffffffL);
+	}
+
+	/** @return	The latitude (degrees) out of a pack_e6(). */
+	public static double unpack_latitude (long packed) {
+		return (int) (packed >> 32) / MICRODEGREES;
+	}
+
+	/** @return	The longitude (degrees) out of a pack_e6(). */
+	public static double unpack_longitude (long packed) {
+		return (int) packed / MICRODEGREES;
+	}
+
+	/***************************/
+	public static int to_e6 (double degrees) {
+		return (int) Math.round(degrees * MICRODEGREES);
+	}
+
+
+	/***************************
+	 * Writes an angle as degrees, minutes, and seconds ("30:16:39.12").
+	 * This does the same as Location.convert() with FORMAT_SECONDS.
+	 * It allocates, so it's for showing the user, not for every fix.
+	 */
+	public static String to_seconds_string (double degrees) {
+		StringBuilder sb = new StringBuilder();
+		if (degrees < 0) {
+			sb.append('-');
+			degrees = -degrees;
+		}
+		int whole = (int) Math.floor(degrees);
+		double rest = (degrees - whole) * 60.0;
+		int minutes = (int) Math.floor(rest);
+		double seconds = (rest - minutes) * 60.0;
+
+		sb.append(whole).append(':').append(minutes).append(':');
+		sb.append(new DecimalFormat(SECONDS_FORMAT).format(seconds));
+		return sb.toString();
+	} // to_seconds_string (degrees)
+
+
+	/***************************/
+	@Override
+	public String toString() {
+		return m_lat + "," + m_lon;
+	}
+
+}
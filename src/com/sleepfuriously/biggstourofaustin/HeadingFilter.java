@@ -0,0 +1,210 @@
+package com.sleepfuriously.biggstourofaustin;
+
+
+/**
+ * Smooths out the compass.  Raw headings jitter by a degree or two
+ * even when the phone is sitting on a table, and every bit of that
+ * used to cause a redraw.
+ *<p>
+ * This is a low-pass filter done on the unit circle (the sin and
+ * cos of the heading are smoothed, not the angle), so going from
+ * 359 to 1 is treated as the 2 degrees it really is.  On top of
+ * that is a deadband: the output heading only changes when the
+ * filtered heading has moved at least that far, since smaller
+ * changes can't be seen anyway.
+ *<p>
+ * It also keeps track of whether the phone is sitting still, so
+ * the sensors can be slowed down.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class HeadingFilter {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/**
+	 * How quickly the filter follows a turn (milliseconds).  After
+	 * this long it's about 2/3 of the way there.
+	 */
+	public final static float DEFAULT_TIME_CONSTANT_MS = 120f;
+
+	/** Changes smaller than this (degrees) aren't passed along. */
+	public final static float DEFAULT_DEADBAND = 1f;
+
+	/**
+	 * If the filtered heading stays within this many degrees for
+	 * STATIONARY_MS, the phone is considered stationary.
+	 */
+	public final static float STATIONARY_DEGREES = 3f;
+	public final static long STATIONARY_MS = 2000;
+
+	private final static long NANOS_PER_MILLI = 1000000L;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private float m_time_constant_ms = DEFAULT_TIME_CONSTANT_MS;
+	private float m_deadband = DEFAULT_DEADBAND;
+
+	/** The smoothed heading, as a point on the unit circle. */
+	private double m_sin, m_cos;
+
+	/** The smoothed heading in degrees (0 to 360). */
+	private float m_filtered;
+
+	/** The last heading that made it through the deadband. */
+	private float m_output;
+
+	/** Time of the last sample (nanos), so we know how much to smooth. */
+	private long m_last_time;
+
+	/** False until the first sample. */
+	private boolean m_primed = false;
+
+	/** The heading (and when) we started checking for stillness. */
+	private float m_still_anchor;
+	private long m_still_since;
+	private boolean m_stationary = false;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Takes in a new raw heading.
+	 *
+	 * @param heading		Raw heading (degrees).
+	 *
+	 * @param time_nanos	When it was measured.  Any clock is fine as
+	 * 						long as it's always the same one (like
+	 * 						SensorEvent.timestamp).
+	 *
+	 * @return	True iff get_heading() changed (it moved past the
+	 * 			deadband), which means it's worth redrawing.
+	 */
+	public boolean add_sample (float heading, long time_nanos) {
+		double rad = Math.toRadians(heading);
+		double s = Math.sin(rad);
+		double c = Math.cos(rad);
+
+		if (m_primed == false) {
+			m_sin = s;
+			m_cos = c;
+			m_filtered = normalize(heading);
+			m_output = m_filtered;
+			m_last_time = time_nanos;
+			m_still_anchor = m_filtered;
+			m_still_since = time_nanos;
+			m_stationary = false;
+			m_primed = true;
+			return true;
+		}
+
+		long dt_nanos = time_nanos - m_last_time;
+		m_last_time = time_nanos;
+		double alpha = 1.0;
+		if ((dt_nanos > 0) && (m_time_constant_ms > 0f)) {
+			alpha = 1.0 - Math.exp(-(dt_nanos / (double) NANOS_PER_MILLI) / m_time_constant_ms);
+		}
+		m_sin += alpha * (s - m_sin);
+		m_cos += alpha * (c - m_cos);
+		m_filtered = normalize((float) Math.toDegrees(GeoMath.fast_atan2(m_sin, m_cos)));
+
+		// Sitting still?
+		if (Math.abs(difference(m_filtered, m_still_anchor)) > STATIONARY_DEGREES) {
+			m_still_anchor = m_filtered;
+			m_still_since = time_nanos;
+			m_stationary = false;
+		}
+		else if (time_nanos - m_still_since >= STATIONARY_MS * NANOS_PER_MILLI) {
+			m_stationary = true;
+		}
+
+		if (Math.abs(difference(m_filtered, m_output)) < m_deadband) {
+			return false;
+		}
+		m_output = m_filtered;
+		return true;
+	} // add_sample (heading, time_nanos)
+
+
+	/***************************
+	 * @return	The heading that last made it through the deadband
+	 * 			(degrees, 0 to 360).
+	 */
+	public float get_heading() {
+		return m_output;
+	}
+
+	/***************************
+	 * @return	The smoothed heading, deadband or not.
+	 */
+	public float get_filtered() {
+		return m_filtered;
+	}
+
+	/***************************
+	 * @return	True iff the heading has barely moved for a while.
+	 */
+	public boolean is_stationary() {
+		return m_stationary;
+	}
+
+
+	/***************************
+	 * @param ms	How quickly to follow turns (milliseconds).  0 means
+	 * 				no smoothing at all.
+	 */
+	public void set_time_constant (float ms) {
+		m_time_constant_ms = ms;
+	}
+
+	/***************************
+	 * @param degrees	Smallest change that gets passed along.  0
+	 * 					passes everything.
+	 */
+	public void set_deadband (float degrees) {
+		m_deadband = degrees;
+	}
+
+	/***************************
+	 * Forgets everything.  The next sample is taken as-is.
+	 */
+	public void reset() {
+		m_primed = false;
+		m_stationary = false;
+	}
+
+
+	/***************************
+	 * @return	How far it is from b to a, the short way around
+	 * 			(degrees, -180 to 180).
+	 */
+	private static float difference (float a, float b) {
+		float diff = a - b;
+		if (diff > 180f) {
+			diff -= 360f;
+		}
+		else if (diff < -180f) {
+			diff += 360f;
+		}
+		return diff;
+	}
+
+	/***************************
+	 * @return	The same angle, but between 0 (inclusive) and 360.
+	 */
+	private static float normalize (float angle) {
+		angle %= 360f;
+		if (angle < 0f) {
+			angle += 360f;
+		}
+		return angle;
+	}
+
+}
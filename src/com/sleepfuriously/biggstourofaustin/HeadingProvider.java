@@ -0,0 +1,412 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Build;
+import android.util.Log;
+
+
+/**
+ * Figures out which way the top of the phone is pointing and tells
+ * anyone who's interested.
+ *<p>
+ * Uses the rotation vector sensor if there is one (Gingerbread and
+ * up).  Otherwise it puts the accelerometer and magnetometer
+ * together itself.  Either way all the arrays are made once, up
+ * front, so nothing is allocated per sensor event.
+ *<p>
+ * The raw headings go through a HeadingFilter first.  Listeners
+ * only hear about a heading when it's moved past the filter's
+ * deadband, and when the phone is sitting still the sensors are
+ * slowed down to STATIONARY_SENSOR_DELAY.
+ *<p>
+ * There's only one of these (get_instance()), so everybody that
+ * wants the heading shares the same sensor registration.  The
+ * sensors are turned on when the first HeadingListener is added and
+ * turned off when the last one is removed.
+ *<p>
+ * Use it from the UI thread; that's where the listeners are called.
+ */
+public class HeadingProvider implements SensorEventListener {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static String TAG = "HeadingProvider";
+
+	/** Sensor readings are processed at this rate unless changed. */
+	public final static int DEFAULT_SENSOR_DELAY = SensorManager.SENSOR_DELAY_UI;
+
+	/** The rate to drop to when the phone isn't moving. */
+	public final static int STATIONARY_SENSOR_DELAY = SensorManager.SENSOR_DELAY_NORMAL;
+
+	/**
+	 * Some devices blow up when the rotation vector has more than 4
+	 * values, so only this many are passed along.
+	 */
+	private final static int ROTATION_VECTOR_LENGTH = 4;
+
+	/** Which sensors we ended up with */
+	public final static int
+		MODE_NONE = 0,
+		MODE_ROTATION_VECTOR = 1,
+		MODE_ACCEL_MAGNETIC = 2;
+
+
+	//-------------------------
+	//	Interfaces
+	//-------------------------
+
+	/**
+	 * Hears about new headings.
+	 */
+	public interface HeadingListener {
+		/**
+		 * @param heading	Degrees clockwise from magnetic north that
+		 * 					the top of the phone is pointing (0 to 360).
+		 */
+		public void on_heading_changed (float heading);
+	}
+
+
+	//-------------------------
+	//	Class Data
+	//-------------------------
+
+	private static HeadingProvider s_instance = null;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final SensorManager m_sensor_mgr;
+
+	/** One of the MODE_* constants. */
+	private final int m_mode;
+
+	private final Sensor m_rotation_sensor, m_accel_sensor, m_magnetic_sensor;
+
+	private final ArrayList<HeadingListener> m_listeners = new ArrayList<HeadingListener>();
+
+	/** The SensorManager.SENSOR_DELAY_* that we want when moving. */
+	private int m_sensor_delay = DEFAULT_SENSOR_DELAY;
+
+	/** The SensorManager.SENSOR_DELAY_* that we're registered with now. */
+	private int m_active_delay = DEFAULT_SENSOR_DELAY;
+
+	/** When true, slow down the sensors while stationary. */
+	private boolean m_adaptive_rate = true;
+
+	/** Smooths the headings and decides when they're worth sending. */
+	private final HeadingFilter m_filter = new HeadingFilter();
+
+	/**
+	 * How many headings came from the sensors, and how many of
+	 * those got through the filter to the listeners.
+	 */
+	private long m_delivered_count = 0, m_passed_count = 0;
+
+	/** True while we're registered with the sensors. */
+	private boolean m_registered = false;
+
+	/** The latest heading (degrees), NaN if we haven't had one. */
+	private float m_heading = Float.NaN;
+
+	//
+	//	All the scratch arrays.  Made once, used for every event.
+	//
+	private final float[] m_rotation_matrix = new float[9];
+	private final float[] m_orientation = new float[3];
+	private final float[] m_rotation_vector = new float[ROTATION_VECTOR_LENGTH];
+	private final float[] m_gravity = new float[3];
+	private final float[] m_geomagnetic = new float[3];
+	private boolean m_have_gravity = false, m_have_geomagnetic = false;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Gets the one and only HeadingProvider, making it if need be.
+	 */
+	public static synchronized HeadingProvider get_instance (Context ctx) {
+		if (s_instance == null) {
+			SensorManager mgr = (SensorManager) ctx.getApplicationContext()
+											.getSystemService(Context.SENSOR_SERVICE);
+			s_instance = new HeadingProvider(mgr);
+		}
+		return s_instance;
+	} // get_instance (ctx)
+
+
+	/***************************
+	 * Constructor.  Picks which sensors to use.
+	 */
+	private HeadingProvider (SensorManager sensor_mgr) {
+		m_sensor_mgr = sensor_mgr;
+
+		Sensor rotation = null;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+			rotation = sensor_mgr.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
+		}
+		Sensor accel = sensor_mgr.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+		Sensor magnetic = sensor_mgr.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
+
+		if (rotation != null) {
+			m_mode = MODE_ROTATION_VECTOR;
+			m_rotation_sensor = rotation;
+			m_accel_sensor = null;
+			m_magnetic_sensor = null;
+		}
+		else if ((accel != null) && (magnetic != null)) {
+			m_mode = MODE_ACCEL_MAGNETIC;
+			m_rotation_sensor = null;
+			m_accel_sensor = accel;
+			m_magnetic_sensor = magnetic;
+		}
+		else {
+			m_mode = MODE_NONE;
+			m_rotation_sensor = null;
+			m_accel_sensor = null;
+			m_magnetic_sensor = null;
+		}
+		Log.i(TAG, "Heading mode: " + m_mode);
+	} // constructor
+
+
+	/***************************
+	 * @return	True iff this device can tell which way it's pointing.
+	 */
+	public boolean has_sensors() {
+		return m_mode != MODE_NONE;
+	}
+
+	/***************************
+	 * @return	One of the MODE_* constants.
+	 */
+	public int get_mode() {
+		return m_mode;
+	}
+
+	/***************************
+	 * @return	The latest heading (degrees), or NaN if we don't
+	 * 			have one yet.
+	 */
+	public float get_heading() {
+		return m_heading;
+	}
+
+
+	/***************************
+	 * Starts telling a listener about the heading.  The sensors
+	 * are turned on if this is the first one.
+	 */
+	public void add_listener (HeadingListener listener) {
+		if (m_listeners.contains(listener)) {
+			return;
+		}
+		m_listeners.add(listener);
+		if (m_listeners.size() == 1) {
+			register();
+		}
+	} // add_listener (listener)
+
+	/***************************
+	 * Stops telling a listener about the heading.  The sensors
+	 * are turned off if this was the last one.
+	 */
+	public void remove_listener (HeadingListener listener) {
+		if (m_listeners.remove(listener) && m_listeners.isEmpty()) {
+			unregister();
+			m_filter.reset();
+			update_active_delay();
+		}
+	} // remove_listener (listener)
+
+
+	/***************************
+	 * Changes how often the sensors report (while moving).
+	 *
+	 * @param delay	One of the SensorManager.SENSOR_DELAY_* constants.
+	 */
+	public void set_sensor_delay (int delay) {
+		m_sensor_delay = delay;
+		update_active_delay();
+	}
+
+	/***************************
+	 * @param adaptive	When true (the default), the sensors slow down
+	 * 					to STATIONARY_SENSOR_DELAY while the phone
+	 * 					is sitting still.
+	 */
+	public void set_adaptive_rate (boolean adaptive) {
+		m_adaptive_rate = adaptive;
+		update_active_delay();
+	}
+
+	/***************************
+	 * Picks the sensor rate for how we're doing now, and re-registers
+	 * iff we're running and it's actually different.
+	 */
+	private void update_active_delay() {
+		int delay = m_sensor_delay;
+		if (m_adaptive_rate && m_filter.is_stationary()) {
+			delay = Math.max(delay, STATIONARY_SENSOR_DELAY);
+		}
+		if (delay == m_active_delay) {
+			return;
+		}
+		Log.d(TAG, "sensor delay " + m_active_delay + " -> " + delay);
+		m_active_delay = delay;
+		if (m_registered) {
+			unregister();
+			register();
+		}
+	} // update_active_delay()
+
+	/***************************/
+	public int get_sensor_delay() {
+		return m_sensor_delay;
+	}
+
+	/***************************
+	 * The filter, in case someone wants to adjust the smoothing or
+	 * the deadband.
+	 */
+	public HeadingFilter get_filter() {
+		return m_filter;
+	}
+
+	/***************************
+	 * @return	How many headings the sensors have produced.
+	 */
+	public long get_delivered_count() {
+		return m_delivered_count;
+	}
+
+	/***************************
+	 * @return	How many headings made it through the filter to
+	 * 			the listeners.
+	 */
+	public long get_passed_count() {
+		return m_passed_count;
+	}
+
+
+	/***************************/
+	private void register() {
+		switch (m_mode) {
+			case MODE_ROTATION_VECTOR:
+				m_sensor_mgr.registerListener(this, m_rotation_sensor, m_active_delay);
+				break;
+
+			case MODE_ACCEL_MAGNETIC:
+				m_have_gravity = false;
+				m_have_geomagnetic = false;
+				m_sensor_mgr.registerListener(this, m_accel_sensor, m_active_delay);
+				m_sensor_mgr.registerListener(this, m_magnetic_sensor, m_active_delay);
+				break;
+
+			default:
+				Log.w(TAG, "No heading sensors, nothing to register.");
+				return;
+		}
+		m_registered = true;
+	} // register()
+
+	/***************************/
+	private void unregister() {
+		if (m_registered) {
+			m_sensor_mgr.unregisterListener(this);
+			m_registered = false;
+		}
+	}
+
+
+	/***************************
+	 * Turns the latest sensor values into a heading, filters it,
+	 * and passes it along if it's changed enough.  (The work is in
+	 * handle_event(); this just times it.)
+	 */
+	@Override
+	public void onSensorChanged (SensorEvent event) {
+		long start = Metrics.begin(Metrics.STAGE_SENSOR);
+		Metrics.count(Metrics.COUNT_SENSOR_EVENTS);
+		handle_event(event);
+		Metrics.end(Metrics.STAGE_SENSOR, start);
+	} // onSensorChanged (event)
+
+
+	/***************************/
+	private void handle_event (SensorEvent event) {
+		switch (event.sensor.getType()) {
+			case Sensor.TYPE_ROTATION_VECTOR:
+				System.arraycopy(event.values, 0, m_rotation_vector, 0,
+						Math.min(event.values.length, ROTATION_VECTOR_LENGTH));
+				SensorManager.getRotationMatrixFromVector(m_rotation_matrix, m_rotation_vector);
+				break;
+
+			case Sensor.TYPE_ACCELEROMETER:
+				System.arraycopy(event.values, 0, m_gravity, 0, 3);
+				m_have_gravity = true;
+				if ((m_have_geomagnetic == false) ||
+					(SensorManager.getRotationMatrix(m_rotation_matrix, null,
+													m_gravity, m_geomagnetic) == false)) {
+					return;
+				}
+				break;
+
+			case Sensor.TYPE_MAGNETIC_FIELD:
+				System.arraycopy(event.values, 0, m_geomagnetic, 0, 3);
+				m_have_geomagnetic = true;
+				if ((m_have_gravity == false) ||
+					(SensorManager.getRotationMatrix(m_rotation_matrix, null,
+													m_gravity, m_geomagnetic) == false)) {
+					return;
+				}
+				break;
+
+			default:
+				return;
+		}
+
+		SensorManager.getOrientation(m_rotation_matrix, m_orientation);
+		float heading = (float) Math.toDegrees(m_orientation[0]);
+		if (heading < 0f) {
+			heading += 360f;
+		}
+		m_delivered_count++;
+
+		boolean changed = m_filter.add_sample(heading, event.timestamp);
+		if (m_adaptive_rate) {
+			update_active_delay();
+		}
+		if (changed == false) {
+			return;
+		}
+		heading = m_filter.get_heading();
+		m_heading = heading;
+		m_passed_count++;
+		Metrics.count(Metrics.COUNT_HEADINGS);
+
+		for (int i = 0; i < m_listeners.size(); i++) {
+			m_listeners.get(i).on_heading_changed(heading);
+		}
+	} // handle_event (event)
+
+
+	/***************************/
+	@Override
+	public void onAccuracyChanged (Sensor sensor, int accuracy) {
+		Log.d(TAG, "onAccuracyChanged(): " + accuracy);
+	}
+
+}
@@ -0,0 +1,194 @@
+package com.sleepfuriously.biggstourofaustin;
+
+
+/**
+ * Sorts distances into the hot/cold bands (BURNING, HOT, COLD,
+ * etc.).  The band edges are all multiples of the slop, so they're
+ * worked out once (when the slop is set) and kept in a little
+ * table.  After that, classifying a distance is a binary search of
+ * that table: no allocations, no multiplying.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class HotColdBands {
+
+	//-----------------------------
+	//	Constants
+	//-----------------------------
+
+	/**
+	 * The bands, from closest to farthest.  These are also the
+	 * positions in MULTIPLIERS.
+	 */
+	public final static int
+		BAND_ON_TARGET = 0,
+		BAND_BURNING = 1,
+		BAND_VERY_HOT = 2,
+		BAND_HOT = 3,
+		BAND_WARMER = 4,
+		BAND_WARM = 5,
+		BAND_LUKE_WARM = 6,
+		BAND_COOL = 7,
+		BAND_COLD = 8,
+		BAND_VERY_COLD = 9,
+		BAND_FREEZING = 10,
+		NUM_BANDS = 11;
+
+	/**
+	 * These distances tell the user how far they are from
+	 * the Target.  But instead of simple distances, these are
+	 * all relative to the slop value.  So this is simply a
+	 * list of slop multipliers that you can use to calculate
+	 * the described distance.
+	 *
+	 * 		slop * [this constant] = distance
+	 */
+	public final static float
+		ON_TARGET = 1f,
+		BURNING = 2f,
+		VERY_HOT = 3.3f,
+		HOT = 7f,
+		WARMER = 30f,
+		WARM = 130f,
+		LUKE_WARM = 800f,
+		COOL = 1600f,			// MILE (assuming default slop = 3
+		COLD = 3200f,
+		VERY_COLD = 16000f;
+
+	/**
+	 * The outer edge of each band (except FREEZING, which goes on
+	 * forever), as multiples of the slop.  Indexed by BAND_*.
+	 */
+	private final static float[] MULTIPLIERS = {
+		ON_TARGET,
+		BURNING,
+		VERY_HOT,
+		HOT,
+		WARMER,
+		WARM,
+		LUKE_WARM,
+		COOL,
+		COLD,
+		VERY_COLD
+	};
+
+
+	//-----------------------------
+	//	Data
+	//-----------------------------
+
+	private float m_slop;
+
+	/**
+	 * The outer edge of each band, in meters.  A distance is in
+	 * band b iff it's <= m_thresholds[b] and > m_thresholds[b - 1].
+	 */
+	private final float[] m_thresholds = new float[MULTIPLIERS.length];
+
+
+	//-----------------------------
+	//	Methods
+	//-----------------------------
+
+	/******************************
+	 * Constructor
+	 *
+	 * @param slop		How many meters off we can be
+	 * 					and still be "on target."
+	 */
+	public HotColdBands (float slop) {
+		set_slop(slop);
+	}
+
+
+	/******************************
+	 * Changes the slop and rebuilds the table.
+	 */
+	public void set_slop (float slop) {
+		m_slop = slop;
+		for (int i = 0; i < MULTIPLIERS.length; i++) {
+			m_thresholds[i] = slop * MULTIPLIERS[i];
+		}
+	}
+
+	/******************************/
+	public float get_slop() {
+		return m_slop;
+	}
+
+
+	/******************************
+	 * Figures out which band a distance falls in.
+	 *
+	 * @param dist	Meters from the target.
+	 *
+	 * @return	One of the BAND_* constants.
+	 */
+	public int classify (float dist) {
+		int lo = 0;
+		int hi = m_thresholds.length;		// FREEZING
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (dist <= m_thresholds[mid]) {
+				hi = mid;
+			}
+			else {
+				lo = mid + 1;
+			}
+		}
+		return lo;
+	} // classify (dist)
+
+
+	/******************************
+	 * Same as classify(), but for any slop, without needing a
+	 * HotColdBands.  Does the multiplying as it goes, so it's a bit
+	 * slower; it's meant for going through lots of destinations
+	 * that each have their own slop.
+	 *
+	 * @param dist	Meters from the target.
+	 *
+	 * @param slop	The target's slop.
+	 *
+	 * @return	One of the BAND_* constants.
+	 */
+	public static int classify (float dist, float slop) {
+		int lo = 0;
+		int hi = MULTIPLIERS.length;		// FREEZING
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (dist <= slop * MULTIPLIERS[mid]) {
+				hi = mid;
+			}
+			else {
+				lo = mid + 1;
+			}
+		}
+		return lo;
+	} // classify (dist, slop)
+
+
+	/******************************
+	 * @return	The farthest distance (meters) that's still in the
+	 * 			given band.  Infinity for FREEZING.
+	 */
+	public float get_outer_edge (int band) {
+		if (band >= m_thresholds.length) {
+			return Float.POSITIVE_INFINITY;
+		}
+		return m_thresholds[band];
+	}
+
+	/******************************
+	 * @return	The distance (meters) where the given band starts.
+	 * 			Distances have to be MORE than this to be in the
+	 * 			band.  0 for ON_TARGET.
+	 */
+	public float get_inner_edge (int band) {
+		if (band <= 0) {
+			return 0f;
+		}
+		return m_thresholds[band - 1];
+	}
+
+}
@@ -1,18 +1,18 @@
 package com.sleepfuriously.biggstourofaustin;
 
-import android.content.Context;
-import android.location.Location;
-
 /**
  * This class is used to control how far the device
  * is from a given Coordinates.  It does calculations
  * making the hot/cold distances relative to the accuracy
- * required for this the target.  And of course it
- * supplies messages when asked.
+ * required for this the target.
  *
  * This class doesn't really do that much, but it is
  * nice to encapsulate all this busy work.
  *
+ * The actual sorting into bands is done by HotColdBands.  The
+ * messages for each band are in BandMessages (they need a Context).
+ *
+ * This class has no Android dependencies.
  */
 public class HotColdDistance {
 
@@ -22,34 +22,11 @@ public class HotColdDistance {
 
 	private float DEFAULT_SLOP = 3f;
 
-	/**
-	 * These distances tell the user how far they are from
-	 * the Target.  But instead of simple distances, these are
-	 * all relative to the slop value.  So this is simply a
-	 * list of slop multipliers that you can use to calculate
-	 * the described distance.
-	 *
-	 * 		slop * [this constant] = distance
-	 */
-	private float
-		BURNING = 2f,
-		VERY_HOT = 3.3f,
-		HOT = 7f,
-		WARMER = 30f,
-		WARM = 130f,
-		LUKE_WARM = 800f,
-		COOL = 1600f,			// MILE (assuming default slop = 3
-		COLD = 3200f,
-		VERY_COLD = 16000f;
-
-
 
 	//-----------------------------
-	//	Class Data
+	//	Data
 	//-----------------------------
 
-	private final static String TAG = "HotColdDistance";
-
 	/**
 	 * How many meters from the exact target Coordinates
 	 * we can be and still considered, "there."  Used as
@@ -57,8 +34,11 @@ public class HotColdDistance {
 	 */
 	private float m_slop = DEFAULT_SLOP;
 
+	/** Does the band math (based on m_slop). */
+	private final HotColdBands m_bands;
+
 	/** Holds the target coordiantes */
-	private Location m_target = null;
+	private GeoPoint m_target = null;
 
 
 	//-----------------------------
@@ -73,6 +53,7 @@ public class HotColdDistance {
 	 */
 	public HotColdDistance (float slop) {
 		m_slop = slop;
+		m_bands = new HotColdBands(slop);
 	}
 
 	/******************************
@@ -83,24 +64,26 @@ public class HotColdDistance {
 	 *
 	 * @param target		The coordinates of the target.
 	 */
-	public HotColdDistance (float slop, Location target) {
+	public HotColdDistance (float slop, GeoPoint target) {
 		m_slop = slop;
+		m_bands = new HotColdBands(slop);
 		m_target = target;
 	}
 
 
 	/******************************/
-	public void set_target (Location target) {
+	public void set_target (GeoPoint target) {
 		m_target = target;
 	}
 
 	/******************************/
 	public void set_slop (float slop) {
 		m_slop = slop;
+		m_bands.set_slop(slop);
 	}
 
 	/******************************/
-	public Location get_target() {
+	public GeoPoint get_target() {
 		return m_target;
 	}
 
@@ -109,100 +92,55 @@ public class HotColdDistance {
 		return m_slop;
 	}
 
+	/******************************/
+	public HotColdBands get_bands() {
+		return m_bands;
+	}
+
 
 	/******************************
 	 * Simply tells if the target is within our slop.
 	 * Thus, it's "on target", right?  Duh.
 	 *
-	 * @param target		Location of the target.
+	 * @param position	Where the device is.
 	 *
 	 * @return	TRUE iff distance from position to m_target
-	 * 			is less than m_slop.
+	 * 			is no more than m_slop.
 	 */
-	public boolean within_slop (Location position) {
-		return within_slop (position, m_target);
+	public boolean within_slop (GeoPoint position) {
+		return within_slop((float) position.distance_to(m_target));
 	}
 
 	/******************************
-	 * Easy way to see if two coordinates are within
-	 * the slop distance.
-	 *
-	 * preconditions:
-	 * 		m_slop needs to be set.
-	 *
-	 * @param position	One coordinate.
-	 * @param target		The other coordinate.
+	 * Same, but for a distance that's already been figured out.
 	 *
-	 * @return	TRUE iff the two coords are within slop
-	 * 			distance from each other.
+	 * @param dist	Meters between the Position and the Target.
 	 */
-	public boolean within_slop (Location position,
-								Location target) {
-		float dist = position.distanceTo(target);
-		if (dist <= m_slop)
-			return true;
-
-		return false;
+	public boolean within_slop (float dist) {
+		return dist <= m_slop;
 	}
 
 
 	/******************************
-	 * This is the main thrust of this class.  Get a
-	 * string appropriate for the distance between our
-	 * Position and the Target.
-	 *
-	 * @param ctx	The context so this can access resources.
+	 * Figures out which hot/cold band a distance is in.
 	 *
-	 * @param position	The Position of the mobile device.
+	 * @param dist	Meters between the Position and the Target.
 	 *
-	 * @param target		The coordinates of where we're going.
-	 *
-	 * @return	A message for the user that'll help them know
-	 * 			how close they are to their Target.
+	 * @return	One of the HotColdBands.BAND_* constants.
 	 */
-	public String get_msg (Context ctx,
-						Location position, Location target) {
-		float dist = position.distanceTo(target);
-
-		if (dist <= m_slop)
-			return ctx.getString(R.string.yay);
-		if (dist <= m_slop * BURNING)
-			return ctx.getString(R.string.burning);
-		if (dist <= m_slop * VERY_HOT)
-			return ctx.getString(R.string.very_hot);
-		if (dist <= m_slop * HOT)
-			return ctx.getString(R.string.hot);
-		if (dist <= m_slop * WARMER)
-			return ctx.getString(R.string.warmer);
-		if (dist <= m_slop * WARM)
-			return ctx.getString(R.string.warm);
-		if (dist <= m_slop * LUKE_WARM)
-			return ctx.getString(R.string.luke_warm);
-		if (dist <= m_slop * COOL)
-			return ctx.getString(R.string.cool);
-		if (dist <= m_slop * COLD)
-			return ctx.getString(R.string.cold);
-		if (dist <= m_slop * VERY_COLD)
-			return ctx.getString(R.string.very_cold);
-
-		return ctx.getString(R.string.freezing);
-	} // get_msg (ctx, position, target)
-
+	public int get_band (float dist) {
+		return m_bands.classify(dist);
+	}
 
 	/******************************
-	 * This is the main thrust of this class.  Get a
-	 * string appropriate for the distance between our
-	 * Position and the target that this class has already
-	 * stored.
-	 *
-	 * @param ctx	The context so this can access resources.
+	 * Figures out which hot/cold band our Position is in.
 	 *
 	 * @param position	The Position of the mobile device.
 	 *
-	 * @return	A message for the user that'll help them know
-	 * 			how close they are to their Target.
+	 * @return	One of the HotColdBands.BAND_* constants.
 	 */
-	public String get_msg (Context ctx, Location position) {
-		return get_msg (ctx, position, m_target);
+	public int get_band (GeoPoint position) {
+		return m_bands.classify((float) position.distance_to(m_target));
 	}
+
 }
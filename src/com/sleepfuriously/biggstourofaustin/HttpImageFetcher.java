@@ -0,0 +1,61 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+
+/**
+ * The usual ImageFetcher: a plain HTTP GET.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class HttpImageFetcher implements ImageFetcher {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static int
+		CONNECT_TIMEOUT_MS = 10000,
+		READ_TIMEOUT_MS = 20000;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Copies the body of a GET of url into out.
+	 */
+	@Override
+	public void fetch (String url, OutputStream out) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+		try {
+			conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+			conn.setReadTimeout(READ_TIMEOUT_MS);
+			int code = conn.getResponseCode();
+			if (code != HttpURLConnection.HTTP_OK) {
+				throw new IOException("HTTP " + code + " for " + url);
+			}
+
+			InputStream in = conn.getInputStream();
+			try {
+				byte[] buf = new byte[8192];
+				int n;
+				while ((n = in.read(buf)) > 0) {
+					out.write(buf, 0, n);
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+		finally {
+			conn.disconnect();
+		}
+	} // fetch (url, out)
+
+}
@@ -0,0 +1,203 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A directory of downloaded image files, kept under a byte budget.
+ * When it's over, the files used longest ago are deleted.
+ *<p>
+ * Each file is named after a hash of its URL.  The use order is
+ * remembered through the files' modification times, so it lasts
+ * between runs.  New files are written as temp files (new_temp_file())
+ * and renamed into place (commit()), so a half-downloaded image
+ * never looks like a real one.
+ *<p>
+ * It's fine to use from several threads.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class ImageDiskCache {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static String TEMP_SUFFIX = ".tmp";
+
+	private final static char[] HEX = "0123456789abcdef".toCharArray();
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final File m_dir;
+
+	private final long m_max_bytes;
+
+	/** Filename -> size, least recently used first. */
+	private final LinkedHashMap<String, Long> m_entries =
+			new LinkedHashMap<String, Long>(64, 0.75f, true);
+
+	private long m_total_bytes = 0;
+
+	/** For naming temp files. */
+	private int m_temp_count = 0;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor.  Looks through what's already in the directory
+	 * (and throws out any leftover temp files).
+	 *
+	 * @param dir		Where to keep the files.  Made if need be.
+	 *
+	 * @param max_bytes	The most the files can add up to.
+	 */
+	public ImageDiskCache (File dir, long max_bytes) {
+		m_dir = dir;
+		m_max_bytes = max_bytes;
+		m_dir.mkdirs();
+
+		File[] files = m_dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare (File a, File b) {
+				long diff = a.lastModified() - b.lastModified();
+				return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+			}
+		});
+		for (File file : files) {
+			if (file.getName().endsWith(TEMP_SUFFIX)) {
+				file.delete();
+				continue;
+			}
+			m_entries.put(file.getName(), file.length());
+			m_total_bytes += file.length();
+		}
+		trim();
+	} // constructor
+
+
+	/***************************
+	 * @return	The cached file for url, or null if there isn't one.
+	 */
+	public synchronized File get (String url) {
+		String name = key_for(url);
+		if (m_entries.get(name) == null) {		// (marks it as used)
+			return null;
+		}
+		File file = new File(m_dir, name);
+		file.setLastModified(System.currentTimeMillis());
+		return file;
+	} // get (url)
+
+
+	/***************************
+	 * @return	A new, unused file to download into.  Hand it to
+	 * 			commit() when it's done, or delete it.
+	 */
+	public synchronized File new_temp_file() {
+		m_temp_count++;
+		return new File(m_dir, Thread.currentThread().getId() + "_" + m_temp_count + TEMP_SUFFIX);
+	}
+
+
+	/***************************
+	 * Makes a finished temp file the cached file for url, then
+	 * trims the cache if it's too big.
+	 *
+	 * @return	The cached file.
+	 */
+	public synchronized File commit (String url, File temp) throws IOException {
+		String name = key_for(url);
+		File file = new File(m_dir, name);
+
+		Long old_size = m_entries.remove(name);
+		if (old_size != null) {
+			m_total_bytes -= old_size;
+			file.delete();
+		}
+		if (temp.renameTo(file) == false) {
+			temp.delete();
+			throw new IOException("Unable to rename " + temp + " to " + file);
+		}
+
+		long size = file.length();
+		m_entries.put(name, size);
+		m_total_bytes += size;
+		trim();
+		return file;
+	} // commit (url, temp)
+
+
+	/***************************
+	 * @return	How many bytes the cached files add up to.
+	 */
+	public synchronized long get_total_bytes() {
+		return m_total_bytes;
+	}
+
+	/***************************
+	 * @return	How many files are cached.
+	 */
+	public synchronized int get_count() {
+		return m_entries.size();
+	}
+
+
+	/***************************
+	 * Deletes the least recently used files until we're within
+	 * budget.  The newest file is always kept, even if it's too
+	 * big all by itself.
+	 */
+	private void trim() {
+		Iterator<Map.Entry<String, Long>> it = m_entries.entrySet().iterator();
+		while ((m_total_bytes > m_max_bytes) && (m_entries.size() > 1) && it.hasNext()) {
+			Map.Entry<String, Long> entry = it.next();
+			new File(m_dir, entry.getKey()).delete();
+			m_total_bytes -= entry.getValue();
+			it.remove();
+		}
+	} // trim()
+
+
+	/***************************
+	 * @return	The filename to use for url (an MD5 in hex).
+	 */
+	static String key_for (String url) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+			char[] hex = new char[digest.length * 2];
+			for (int i = 0; i < digest.length; i++) {
+				hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+				hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+			}
+			return new String(hex);
+		}
+		catch (NoSuchAlgorithmException e) {
+			// Every Java has MD5, but just in case.
+			return Integer.toHexString(url.hashCode()) + "_" + url.length();
+		}
+		catch (UnsupportedEncodingException e) {
+			return Integer.toHexString(url.hashCode()) + "_" + url.length();
+		}
+	} // key_for (url)
+
+}
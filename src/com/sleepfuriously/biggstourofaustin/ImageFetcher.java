@@ -0,0 +1,25 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Gets the bytes of an image from wherever it lives.  The
+ * ImagePipeline uses an HttpImageFetcher normally; anything else
+ * (like a fake for testing) can be handed in instead.
+ *<p>
+ * This interface has no Android dependencies.
+ */
+public interface ImageFetcher {
+
+	/**
+	 * Copies the image at url into out.  Called on a background
+	 * thread, maybe several at once.
+	 *
+	 * @throws IOException	If the image couldn't be gotten.  Whatever
+	 * 						was written to out is thrown away.
+	 */
+	public void fetch (String url, OutputStream out) throws IOException;
+
+}
@@ -0,0 +1,155 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+
+
+/**
+ * Gets image files onto the disk: out of the ImageDiskCache if
+ * they're there, otherwise through the ImageFetcher (and into the
+ * cache).
+ *<p>
+ * If several threads ask for the same URL at once, only the first
+ * one fetches it; the others wait for that and get the same file.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class ImageFileLoader {
+
+	//-------------------------
+	//	Classes
+	//-------------------------
+
+	/**
+	 * One fetch that's going on, for anybody else who wants it.
+	 */
+	private static class Fetch {
+		final CountDownLatch m_done = new CountDownLatch(1);
+		File m_file = null;
+		IOException m_error = null;
+	}
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final ImageDiskCache m_cache;
+
+	private final ImageFetcher m_fetcher;
+
+	/** The fetches happening right now, by URL. */
+	private final HashMap<String, Fetch> m_in_flight = new HashMap<String, Fetch>();
+
+	/** How many times the fetcher has actually been used. */
+	private int m_fetch_count = 0;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor
+	 */
+	public ImageFileLoader (ImageDiskCache cache, ImageFetcher fetcher) {
+		m_cache = cache;
+		m_fetcher = fetcher;
+	}
+
+
+	/***************************
+	 * Gets the file for an image, fetching it if need be.  Blocks,
+	 * so don't call it on the UI thread.
+	 *
+	 * @throws IOException	If it couldn't be fetched.
+	 */
+	public File get_file (String url) throws IOException {
+		File file = m_cache.get(url);
+		if (file != null) {
+			return file;
+		}
+
+		Fetch fetch;
+		boolean mine = false;
+		synchronized (m_in_flight) {
+			fetch = m_in_flight.get(url);
+			if (fetch == null) {
+				// Check again; it may have just finished.
+				file = m_cache.get(url);
+				if (file != null) {
+					return file;
+				}
+				fetch = new Fetch();
+				m_in_flight.put(url, fetch);
+				m_fetch_count++;
+				mine = true;
+			}
+		}
+
+		if (mine) {
+			try {
+				fetch.m_file = fetch_into_cache(url);
+			}
+			catch (IOException e) {
+				fetch.m_error = e;
+			}
+			finally {
+				synchronized (m_in_flight) {
+					m_in_flight.remove(url);
+				}
+				fetch.m_done.countDown();
+			}
+		}
+		else {
+			try {
+				fetch.m_done.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted waiting for " + url);
+			}
+		}
+
+		if (fetch.m_error != null) {
+			throw fetch.m_error;
+		}
+		return fetch.m_file;
+	} // get_file (url)
+
+
+	/***************************
+	 * @return	How many times we've actually had to fetch.
+	 */
+	public int get_fetch_count() {
+		synchronized (m_in_flight) {
+			return m_fetch_count;
+		}
+	}
+
+
+	/***************************
+	 * Fetches into a temp file, then puts that in the cache.
+	 */
+	private File fetch_into_cache (String url) throws IOException {
+		File temp = m_cache.new_temp_file();
+		OutputStream out = new FileOutputStream(temp);
+		boolean ok = false;
+		try {
+			m_fetcher.fetch(url, out);
+			ok = true;
+		}
+		finally {
+			out.close();
+			if (ok == false) {
+				temp.delete();
+			}
+		}
+		return m_cache.commit(url, temp);
+	} // fetch_into_cache (url)
+
+}
@@ -0,0 +1,330 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.widget.ImageView;
+
+
+/**
+ * Loads destination photos (by URL) into Bitmaps that are no bigger
+ * than they need to be.
+ *<p>
+ * The steps:
+ *<ul>
+ *	<li>Bitmaps already decoded at that size come straight out of a
+ *		memory LruCache (MEMORY_FRACTION of the heap, by bytes).
+ *	<li>Otherwise the file comes from the disk cache, or is fetched
+ *		into it (see ImageFileLoader), on a background thread.
+ *	<li>It's decoded with inSampleSize so that it's no more than
+ *		about twice the size asked for.
+ *</ul>
+ * Asking for something that's already on its way doesn't start it
+ * again; everybody who asked hears when it's done.
+ *<p>
+ * URLs starting with ASSET_PREFIX are read out of the assets
+ * instead (no disk cache needed).
+ *<p>
+ * Use it from the UI thread.  Listeners are called on the UI
+ * thread.
+ */
+public class ImagePipeline {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static String TAG = "ImagePipeline";
+
+	/** URLs of images in our assets start with this. */
+	public final static String ASSET_PREFIX = "file:///android_asset/";
+
+	/** The memory cache gets 1/MEMORY_FRACTION of the heap. */
+	private final static int MEMORY_FRACTION = 8;
+
+	/** How big the disk cache can get (bytes) */
+	private final static long DISK_CACHE_BYTES = 10L * 1024 * 1024;
+
+	/** Under our cache directory */
+	private final static String DISK_CACHE_DIR = "images";
+
+	/** How many images are loaded at once */
+	private final static int NUM_THREADS = 2;
+
+
+	//-------------------------
+	//	Interfaces
+	//-------------------------
+
+	/**
+	 * Hears when an image is ready.
+	 */
+	public interface ImageListener {
+		/**
+		 * @param bm	The image, or null if it couldn't be loaded.
+		 */
+		public void on_image_loaded (String url, Bitmap bm);
+	}
+
+
+	//-------------------------
+	//	Classes
+	//-------------------------
+
+	/**
+	 * Loads one image, on the executor.
+	 */
+	private class LoadTask implements Runnable {
+		private final String m_url, m_key;
+		private final int m_width, m_height;
+
+		LoadTask (String url, int width, int height, String key) {
+			m_url = url;
+			m_width = width;
+			m_height = height;
+			m_key = key;
+		}
+
+		@Override
+		public void run() {
+			Bitmap bm = null;
+			try {
+				bm = decode(m_url, m_width, m_height);
+			}
+			catch (IOException e) {
+				Log.e(TAG, "Unable to load " + m_url, e);
+			}
+			catch (OutOfMemoryError e) {
+				Log.e(TAG, "Out of memory loading " + m_url);
+				m_memory.evictAll();
+			}
+
+			final Bitmap result = bm;
+			m_ui_handler.post(new Runnable() {
+				@Override
+				public void run() {
+					if (result != null) {
+						m_memory.put(m_key, result);
+					}
+					ArrayList<ImageListener> waiting = m_waiting.remove(m_key);
+					if (waiting != null) {
+						for (int i = 0; i < waiting.size(); i++) {
+							waiting.get(i).on_image_loaded(m_url, result);
+						}
+					}
+				}
+			});
+		} // run()
+	} // class LoadTask
+
+
+	//-------------------------
+	//	Class Data
+	//-------------------------
+
+	private static ImagePipeline s_instance = null;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final Context m_ctx;
+
+	private final ImageFileLoader m_files;
+
+	private final LruCache<String, Bitmap> m_memory;
+
+	/** Who's waiting for each load that's going on (by cache key). */
+	private final HashMap<String, ArrayList<ImageListener>> m_waiting =
+			new HashMap<String, ArrayList<ImageListener>>();
+
+	private final ExecutorService m_executor;
+
+	private final Handler m_ui_handler = new Handler(Looper.getMainLooper());
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Gets the pipeline that fetches over HTTP.
+	 */
+	public static synchronized ImagePipeline get_instance (Context ctx) {
+		if (s_instance == null) {
+			s_instance = new ImagePipeline(ctx, new HttpImageFetcher());
+		}
+		return s_instance;
+	} // get_instance (ctx)
+
+
+	/***************************
+	 * Constructor.  Normally get_instance() is used instead; this is
+	 * for using a different fetcher (like for testing).
+	 */
+	public ImagePipeline (Context ctx, ImageFetcher fetcher) {
+		m_ctx = ctx.getApplicationContext();
+
+		File dir = new File(m_ctx.getCacheDir(), DISK_CACHE_DIR);
+		m_files = new ImageFileLoader(new ImageDiskCache(dir, DISK_CACHE_BYTES), fetcher);
+
+		int max_bytes = (int) Math.min(Integer.MAX_VALUE,
+										Runtime.getRuntime().maxMemory() / MEMORY_FRACTION);
+		m_memory = new LruCache<String, Bitmap>(max_bytes) {
+			@Override
+			protected int sizeOf (String key, Bitmap bm) {
+				return bm.getRowBytes() * bm.getHeight();
+			}
+		};
+
+		m_executor = Executors.newFixedThreadPool(NUM_THREADS, new ThreadFactory() {
+			@Override
+			public Thread newThread (Runnable r) {
+				Thread t = new Thread(r, TAG);
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		});
+	} // constructor
+
+
+	/***************************
+	 * Loads an image at (about) the given size.
+	 *
+	 * @param width, height	How big it'll be shown (pixels).  The
+	 * 						Bitmap may be up to twice that.
+	 *
+	 * @param listener		Told when it's ready.  If it's already in
+	 * 						memory, that's right now.
+	 */
+	public void load (String url, int width, int height, ImageListener listener) {
+		String key = cache_key(url, width, height);
+		Bitmap bm = m_memory.get(key);
+		if (bm != null) {
+			listener.on_image_loaded(url, bm);
+			return;
+		}
+
+		ArrayList<ImageListener> waiting = m_waiting.get(key);
+		if (waiting != null) {
+			waiting.add(listener);		// It's already on its way.
+			return;
+		}
+		waiting = new ArrayList<ImageListener>(2);
+		waiting.add(listener);
+		m_waiting.put(key, waiting);
+		m_executor.execute(new LoadTask(url, width, height, key));
+	} // load (url, width, height, listener)
+
+
+	/***************************
+	 * Loads an image into an ImageView.  If the view is given a
+	 * different image before this one shows up, this one is
+	 * dropped.
+	 */
+	public void load (final String url, final ImageView view, int width, int height) {
+		view.setTag(url);
+		load(url, width, height, new ImageListener() {
+			@Override
+			public void on_image_loaded (String loaded_url, Bitmap bm) {
+				if ((bm != null) && url.equals(view.getTag())) {
+					view.setImageBitmap(bm);
+				}
+			}
+		});
+	} // load (url, view, width, height)
+
+
+	/***************************
+	 * Empties the memory cache (like when the system says memory
+	 * is low).
+	 */
+	public void clear_memory() {
+		m_memory.evictAll();
+	}
+
+
+	/***************************
+	 * Figures the inSampleSize for decoding: the biggest power of
+	 * 2 that still leaves the image at least as big as asked for.
+	 *
+	 * @param width, height		The image's real size.
+	 *
+	 * @param req_width, req_height	The size wanted.
+	 */
+	public static int calculate_in_sample_size (int width, int height,
+												int req_width, int req_height) {
+		int sample = 1;
+		if ((req_width <= 0) || (req_height <= 0)) {
+			return sample;
+		}
+		while ((width / (sample * 2) >= req_width) && (height / (sample * 2) >= req_height)) {
+			sample *= 2;
+		}
+		return sample;
+	} // calculate_in_sample_size (...)
+
+
+	/***************************/
+	private static String cache_key (String url, int width, int height) {
+		return url + '@' + width + 'x' + height;
+	}
+
+
+
+	/***************************
+	 * Gets the image (from the disk cache, the web, or the assets)
+	 * and decodes it, downsampled.  Runs on the executor.
+	 *
+	 * @return	Null if it's not an image.
+	 */
+	private Bitmap decode (String url, int width, int height) throws IOException {
+		BitmapFactory.Options opts = new BitmapFactory.Options();
+
+		if (url.startsWith(ASSET_PREFIX)) {
+			String path = url.substring(ASSET_PREFIX.length());
+			opts.inJustDecodeBounds = true;
+			decode_asset(path, opts);
+			opts.inSampleSize = calculate_in_sample_size(opts.outWidth, opts.outHeight,
+														width, height);
+			opts.inJustDecodeBounds = false;
+			return decode_asset(path, opts);
+		}
+
+		String path = m_files.get_file(url).getPath();
+		opts.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(path, opts);
+		opts.inSampleSize = calculate_in_sample_size(opts.outWidth, opts.outHeight,
+													width, height);
+		opts.inJustDecodeBounds = false;
+		return BitmapFactory.decodeFile(path, opts);
+	} // decode (url, width, height)
+
+
+	/***************************/
+	private Bitmap decode_asset (String path, BitmapFactory.Options opts) throws IOException {
+		InputStream in = m_ctx.getAssets().open(path);
+		try {
+			return BitmapFactory.decodeStream(in, null, opts);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+}
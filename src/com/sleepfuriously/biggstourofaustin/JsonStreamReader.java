@@ -0,0 +1,467 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * A tiny pull-style JSON reader that works one token at a time
+ * straight off a byte stream.  Nothing is kept except the token
+ * being read, so documents of any size can be read with the
+ * same small amount of memory.
+ *<p>
+ * The big trick: strings can be skipped instead of read, and
+ * the reader tells you the byte offset where they start.  Later
+ * read_string_at() can go fetch them.
+ *<p>
+ * android.util.JsonReader does most of this, but only from api 11
+ * and it can't report offsets.
+ *<p>
+ * It's a little lenient (it won't complain about a few misplaced
+ * commas), but it's only meant for our own data files.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class JsonStreamReader {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static int BUFFER_SIZE = 8192;
+
+	private final static int EOF = -1;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final InputStream m_in;
+
+	private final byte[] m_buf = new byte[BUFFER_SIZE];
+
+	/** Next byte to read in m_buf, and the number of valid bytes */
+	private int m_pos = 0, m_limit = 0;
+
+	/** The stream offset of m_buf[0] */
+	private long m_base = 0;
+
+	/** Reused for building strings and numbers */
+	private final StringBuilder m_sb = new StringBuilder();
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor
+	 *
+	 * @param in		Where the JSON comes from.  This class does
+	 * 				its own buffering, so don't bother with a
+	 * 				BufferedInputStream.
+	 */
+	public JsonStreamReader (InputStream in) {
+		m_in = in;
+	}
+
+
+	/***************************
+	 * @return	How many bytes of the stream have been used up.
+	 */
+	public long get_position() {
+		return m_base + m_pos;
+	}
+
+
+	/***************************/
+	public void begin_object() throws IOException {
+		expect('{');
+	}
+
+	/***************************/
+	public void end_object() throws IOException {
+		expect('}');
+	}
+
+	/***************************/
+	public void begin_array() throws IOException {
+		expect('[');
+	}
+
+	/***************************/
+	public void end_array() throws IOException {
+		expect(']');
+	}
+
+
+	/***************************
+	 * Tells if there's another item in the current array or
+	 * object.  Any separating comma is used up.
+	 */
+	public boolean has_next() throws IOException {
+		int c = peek();
+		if (c == ',') {
+			m_pos++;
+			c = peek();
+		}
+		return (c != '}') && (c != ']') && (c != EOF);
+	} // has_next()
+
+
+	/***************************
+	 * @return	TRUE iff the next value is a string.
+	 */
+	public boolean is_next_string() throws IOException {
+		return peek() == '"';
+	}
+
+	/***************************
+	 * @return	TRUE iff the next value is an object.
+	 */
+	public boolean is_next_object() throws IOException {
+		return peek() == '{';
+	}
+
+	/***************************
+	 * @return	TRUE iff the next value is an array.
+	 */
+	public boolean is_next_array() throws IOException {
+		return peek() == '[';
+	}
+
+
+	/***************************
+	 * Reads the name of the next object member (and the colon
+	 * after it).
+	 */
+	public String next_name() throws IOException {
+		String name = next_string();
+		expect(':');
+		return name;
+	}
+
+
+	/***************************
+	 * Reads a string value.
+	 *
+	 * @return	The string, or null if the value was null.
+	 */
+	public String next_string() throws IOException {
+		if (peek() == 'n') {
+			skip_literal();
+			return null;
+		}
+		expect('"');
+		return read_string_contents();
+	} // next_string()
+
+
+	/***************************
+	 * Skips over a string value without decoding it.
+	 *
+	 * @return	The stream offset of the string's opening quote
+	 * 			(use this with read_string_at()), or -1 if the
+	 * 			value was null.
+	 */
+	public long skip_string() throws IOException {
+		if (peek() == 'n') {
+			skip_literal();
+			return -1;
+		}
+		long offset = get_position();
+		expect('"');
+
+		int c;
+		while ((c = read()) != '"') {
+			if (c == EOF) {
+				throw new EOFException("Unterminated string at " + offset);
+			}
+			if (c == '\\') {
+				read();		// whatever it is, it's not the end
+			}
+		}
+		return offset;
+	} // skip_string()
+
+
+	/***************************
+	 * Reads a number value.  Nulls come back as NaN.
+	 */
+	public double next_double() throws IOException {
+		int c = peek();
+		if (c == 'n') {
+			skip_literal();
+			return Double.NaN;
+		}
+		if (c == '"') {
+			// Be nice to people who quote their numbers.
+			return Double.parseDouble(next_string().trim());
+		}
+
+		m_sb.setLength(0);
+		while (((c = peek_raw()) != EOF) &&
+				(((c >= '0') && (c <= '9')) || (c == '-') || (c == '+') ||
+				 (c == '.') || (c == 'e') || (c == 'E'))) {
+			m_sb.append((char) c);
+			m_pos++;
+		}
+		if (m_sb.length() == 0) {
+			throw new IOException("Expected a number at " + get_position());
+		}
+		return Double.parseDouble(m_sb.toString());
+	} // next_double()
+
+
+	/***************************
+	 * Skips whatever the next value is, no matter how big.
+	 */
+	public void skip_value() throws IOException {
+		int c = peek();
+		switch (c) {
+			case '"':
+				skip_string();
+				break;
+
+			case '{':
+			case '[':
+				int depth = 0;
+				do {
+					c = read();
+					if ((c == '{') || (c == '[')) {
+						depth++;
+					}
+					else if ((c == '}') || (c == ']')) {
+						depth--;
+					}
+					else if (c == '"') {
+						m_pos--;
+						skip_string();
+					}
+					else if (c == EOF) {
+						throw new EOFException("Unterminated object or array");
+					}
+				} while (depth > 0);
+				break;
+
+			default:
+				// number, true, false, null
+				skip_literal();
+				break;
+		}
+	} // skip_value()
+
+
+	/***************************
+	 * Reads the string whose opening quote is at the given offset
+	 * of a fresh stream (see skip_string()).
+	 *
+	 * @param in			A stream positioned at the start of the
+	 * 					document.  It's not closed.
+	 *
+	 * @param offset		From skip_string().
+	 */
+	public static String read_string_at (InputStream in, long offset) throws IOException {
+		long remaining = offset;
+		while (remaining > 0) {
+			long skipped = in.skip(remaining);
+			if (skipped <= 0) {
+				if (in.read() == EOF) {
+					throw new EOFException("String offset " + offset + " is past the end");
+				}
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
+		return new JsonStreamReader(in).next_string();
+	} // read_string_at (in, offset)
+
+
+	/***************************
+	 * Reads and decodes string characters up to (and including)
+	 * the closing quote.  The opening quote has already been read.
+	 */
+	private String read_string_contents() throws IOException {
+		m_sb.setLength(0);
+
+		while (true) {
+			int c = read();
+			if (c == '"') {
+				break;
+			}
+			if (c == EOF) {
+				throw new EOFException("Unterminated string");
+			}
+
+			if (c == '\\') {
+				c = read();
+				switch (c) {
+					case 'n':	m_sb.append('\n');	break;
+					case 't':	m_sb.append('\t');	break;
+					case 'r':	m_sb.append('\r');	break;
+					case 'b':	m_sb.append('\b');	break;
+					case 'f':	m_sb.append('\f');	break;
+					case 'u':
+						int code = 0;
+						for (int i = 0; i < 4; i++) {
+							code = (code << 4) | hex_value(read());
+						}
+						m_sb.append((char) code);
+						break;
+					case EOF:
+						throw new EOFException("Unterminated string");
+					default:
+						m_sb.append((char) c);		// \" \\ \/
+						break;
+				}
+			}
+			else if (c < 0x80) {
+				m_sb.append((char) c);
+			}
+			else {
+				decode_utf8(c);
+			}
+		}
+
+		return m_sb.toString();
+	} // read_string_contents()
+
+
+	/***************************
+	 * Decodes the rest of a multi-byte UTF-8 character whose
+	 * first byte is given.
+	 */
+	private void decode_utf8 (int first) throws IOException {
+		int extra;
+		int code;
+		if ((first & 0xE0) == 0xC0) {
+			extra = 1;
+			code = first & 0x1F;
+		}
+		else if ((first & 0xF0) == 0xE0) {
+			extra = 2;
+			code = first & 0x0F;
+		}
+		else if ((first & 0xF8) == 0xF0) {
+			extra = 3;
+			code = first & 0x07;
+		}
+		else {
+			throw new IOException("Bad UTF-8 at " + get_position());
+		}
+
+		for (int i = 0; i < extra; i++) {
+			int c = read();
+			if ((c & 0xC0) != 0x80) {
+				throw new IOException("Bad UTF-8 at " + get_position());
+			}
+			code = (code << 6) | (c & 0x3F);
+		}
+
+		if (code >= 0x10000) {
+			code -= 0x10000;
+			m_sb.append((char) (0xD800 + (code >> 10)));
+			m_sb.append((char) (0xDC00 + (code & 0x3FF)));
+		}
+		else {
+			m_sb.append((char) code);
+		}
+	} // decode_utf8 (first)
+
+
+	/***************************/
+	private static int hex_value (int c) throws IOException {
+		if ((c >= '0') && (c <= '9'))
+			return c - '0';
+		if ((c >= 'a') && (c <= 'f'))
+			return c - 'a' + 10;
+		if ((c >= 'A') && (c <= 'F'))
+			return c - 'A' + 10;
+		throw new IOException("Bad \\u escape");
+	}
+
+
+	/***************************
+	 * Skips a bare word or number (true, false, null, 3.14).
+	 */
+	private void skip_literal() throws IOException {
+		peek();
+		int c;
+		while (((c = peek_raw()) != EOF) &&
+				(c != ',') && (c != '}') && (c != ']') && (c != ':') &&
+				!is_whitespace(c)) {
+			m_pos++;
+		}
+	} // skip_literal()
+
+
+	/***************************/
+	private void expect (char expected) throws IOException {
+		int c = peek();
+		if (c != expected) {
+			throw new IOException("Expected '" + expected + "' but found "
+					+ ((c == EOF) ? "end of file" : "'" + (char) c + "'")
+					+ " at " + get_position());
+		}
+		m_pos++;
+	} // expect (expected)
+
+
+	/***************************
+	 * Skips whitespace, then returns the next byte without
+	 * using it up.
+	 */
+	private int peek() throws IOException {
+		int c;
+		while (((c = peek_raw()) != EOF) && is_whitespace(c)) {
+			m_pos++;
+		}
+		return c;
+	}
+
+	/***************************/
+	private static boolean is_whitespace (int c) {
+		return (c == ' ') || (c == '\n') || (c == '\r') || (c == '\t');
+	}
+
+	/***************************
+	 * Returns the next byte without using it up.
+	 */
+	private int peek_raw() throws IOException {
+		if ((m_pos >= m_limit) && (fill() == false)) {
+			return EOF;
+		}
+		return m_buf[m_pos] & 0xFF;
+	}
+
+	/***************************/
+	private int read() throws IOException {
+		if ((m_pos >= m_limit) && (fill() == false)) {
+			return EOF;
+		}
+		return m_buf[m_pos++] & 0xFF;
+	}
+
+	/***************************
+	 * Refills the buffer.
+	 *
+	 * @return	FALSE iff there's nothing left to read.
+	 */
+	private boolean fill() throws IOException {
+		m_base += m_limit;
+		m_pos = 0;
+		m_limit = 0;
+		int len;
+		while ((len = m_in.read(m_buf, 0, m_buf.length)) == 0) {
+			// keep trying
+		}
+		if (len < 0) {
+			return false;
+		}
+		m_limit = len;
+		return true;
+	} // fill()
+
+}
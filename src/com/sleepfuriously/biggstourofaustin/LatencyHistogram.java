@@ -0,0 +1,183 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Counts how many values (latencies, usually in microseconds) fall
+ * in each of a fixed set of buckets, HdrHistogram style: every
+ * power of 2 is split into SUB_BUCKETS equal pieces, so the buckets
+ * are never more than 1/SUB_BUCKETS of their value wide.  Values
+ * under SUB_BUCKETS get a bucket each.
+ *<p>
+ * Recording is lock-free (one atomic add, plus a compare-and-set
+ * for a new max), so any thread can record without blocking the
+ * others.  Reading while others are recording gives an answer
+ * that's close but maybe not exact.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class LatencyHistogram {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static int SUB_BUCKET_BITS = 3;
+
+	/** How many buckets each power of 2 is split into. */
+	public final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The biggest value that gets its own bucket is just under
+	 * 2^(MAX_BITS).  Anything bigger goes in the last bucket.
+	 */
+	private final static int MAX_BITS = 40;
+
+	private final static int NUM_BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final static long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final AtomicLongArray m_counts = new AtomicLongArray(NUM_BUCKETS);
+
+	private final AtomicLong m_total_count = new AtomicLong();
+	private final AtomicLong m_sum = new AtomicLong();
+	private final AtomicLong m_max = new AtomicLong();
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Adds a value.  Negative ones count as 0.
+	 */
+	public void record (long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		m_counts.incrementAndGet(bucket_of(value));
+		m_total_count.incrementAndGet();
+		m_sum.addAndGet(value);
+
+		long max = m_max.get();
+		while ((value > max) && (m_max.compareAndSet(max, value) == false)) {
+			max = m_max.get();
+		}
+	} // record (value)
+
+
+	/***************************
+	 * @return	How many values have been recorded.
+	 */
+	public long get_count() {
+		return m_total_count.get();
+	}
+
+	/***************************
+	 * @return	The biggest value recorded (exactly), 0 if none.
+	 */
+	public long get_max() {
+		return m_max.get();
+	}
+
+	/***************************
+	 * @return	The average value (exactly), 0 if none.
+	 */
+	public double get_mean() {
+		long count = m_total_count.get();
+		return (count == 0) ? 0 : ((double) m_sum.get() / count);
+	}
+
+
+	/***************************
+	 * Finds a percentile.  The answer is the top of the bucket it's
+	 * in, so it's never less than the real value (and no more than
+	 * a bucket's width over).
+	 *
+	 * @param percent	0 to 100.
+	 *
+	 * @return	0 if nothing's been recorded.
+	 */
+	public long get_percentile (double percent) {
+		long total = m_total_count.get();
+		if (total == 0) {
+			return 0;
+		}
+		long wanted = (long) Math.ceil(total * Math.min(Math.max(percent, 0.0), 100.0) / 100.0);
+		if (wanted < 1) {
+			wanted = 1;
+		}
+
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += m_counts.get(i);
+			if (seen >= wanted) {
+				return Math.min(bucket_top(i), get_max());
+			}
+		}
+		return get_max();		// (more were recorded while we looked)
+	} // get_percentile (percent)
+
+
+	/***************************
+	 * Forgets everything.  Values recorded at the same time may or
+	 * may not survive.
+	 */
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			m_counts.set(i, 0);
+		}
+		m_total_count.set(0);
+		m_sum.set(0);
+		m_max.set(0);
+	} // reset()
+
+
+	/***************************
+	 * @return	Which bucket a (non-negative) value goes in.
+	 */
+	static int bucket_of (long value) {
+		if (value > MAX_VALUE) {
+			return NUM_BUCKETS - 1;
+		}
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int shift = msb - SUB_BUCKET_BITS;
+		int sub = (int) (value >> shift) & (SUB_BUCKETS - 1);
+		return ((shift + 1) * SUB_BUCKETS) + sub;
+	} // bucket_of (value)
+
+
+	/***************************
+	 * @return	The smallest value that goes in the given bucket.
+	 */
+	static long bucket_bottom (int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket / SUB_BUCKETS) - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return (SUB_BUCKETS + sub) << shift;
+	} // bucket_bottom (bucket)
+
+
+	/***************************
+	 * @return	The biggest value that goes in the given bucket.
+	 */
+	static long bucket_top (int bucket) {
+		if (bucket >= NUM_BUCKETS - 1) {
+			return Long.MAX_VALUE;
+		}
+		return bucket_bottom(bucket + 1) - 1;
+	} // bucket_top (bucket)
+
+}
@@ -0,0 +1,249 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+
+/**
+ * Decides how often to ask the GPS for a fix.  There's no point
+ * getting one every second when the user is "freezing" 50 km away,
+ * and it eats the battery.  So the rate goes by which hot/cold band
+ * we're in (see TIER_*), sped up if the user is moving fast enough
+ * to reach the next band before the next fix.
+ *<p>
+ * The LocationManager is only re-registered when the tier actually
+ * changes.  Every change is logged along with how many fixes came in
+ * during the old tier, so we can see what this saves.
+ *<p>
+ * Speeding up happens right away.  Slowing down waits until the
+ * slower tier has been picked for SLOW_DOWN_DWELL_MS straight, so
+ * GPS jitter (at a band edge, or in the speed) doesn't flip the
+ * tier back and forth, re-registering each time.
+ *<p>
+ * Use it from the UI thread.
+ */
+public class LocationUpdateScheduler {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static String TAG = "LocationUpdateScheduler";
+
+	/** The tiers, fastest first.  These index the tables below. */
+	public final static int
+		TIER_CLOSE = 0,		// BURNING through HOT
+		TIER_NEAR = 1,		// WARMER and WARM
+		TIER_MID = 2,		// LUKE_WARM and COOL
+		TIER_FAR = 3;		// COLD and beyond
+
+	/** Minimum time between fixes for each tier (ms) */
+	private final static long[] TIER_INTERVAL_MS = { 1000, 5000, 15000, 45000 };
+
+	/** Minimum distance between fixes for each tier (meters) */
+	private final static float[] TIER_MIN_DISTANCE = { 1f, 5f, 25f, 100f };
+
+	/** Tier names, for the log */
+	private final static String[] TIER_NAMES = { "close", "near", "mid", "far" };
+
+	/**
+	 * Before slowing down, every update() has to pick a slower tier
+	 * for this long (ms).
+	 */
+	private final static long SLOW_DOWN_DWELL_MS = 20000;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final LocationManager m_location_mgr;
+	private final LocationListener m_listener;
+	private final String m_provider;
+
+	/** The tier we're registered with.  -1 when not running. */
+	private int m_tier = -1;
+
+	/** When the current tier started (elapsed millis) */
+	private long m_tier_start;
+
+	/** How many fixes have come in during the current tier */
+	private int m_tier_fixes;
+
+	/**
+	 * While waiting to slow down: the fastest of the slower tiers
+	 * that's been picked since m_slower_since (elapsed millis).
+	 * -1 when not waiting.
+	 */
+	private int m_slower_tier = -1;
+	private long m_slower_since;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor.  Doesn't start anything.
+	 *
+	 * @param provider	Which LocationManager provider to use
+	 * 					(probably GPS_PROVIDER).
+	 */
+	public LocationUpdateScheduler (LocationManager location_mgr,
+									String provider,
+									LocationListener listener) {
+		m_location_mgr = location_mgr;
+		m_provider = provider;
+		m_listener = listener;
+	} // constructor
+
+
+	/***************************
+	 * Starts the updates.  We don't know where we are yet, so this
+	 * starts out fast (TIER_CLOSE) to get a fix right away.
+	 */
+	public void start() {
+		set_tier(TIER_CLOSE);
+	}
+
+	/***************************
+	 * Stops the updates.
+	 */
+	public void stop() {
+		if (m_tier < 0) {
+			return;
+		}
+		log_tier_end();
+		m_location_mgr.removeUpdates(m_listener);
+		m_tier = -1;
+		m_slower_tier = -1;
+	} // stop()
+
+
+	/***************************
+	 * Call this whenever a fix comes in (just for the counting).
+	 */
+	public void on_fix() {
+		m_tier_fixes++;
+	}
+
+
+	/***************************
+	 * Picks the tier for where we are now, and re-registers iff it's
+	 * different: right away for a faster tier, after
+	 * SLOW_DOWN_DWELL_MS for a slower one.  Does nothing if we're
+	 * not running.
+	 *
+	 * @param bands	The target's hot/cold bands.
+	 *
+	 * @param band	Which of those bands we're in (HotColdBands.BAND_*).
+	 *
+	 * @param dist	How far we are from the target (meters).
+	 *
+	 * @param speed	How fast we're going (meters/sec), 0 if unknown.
+	 */
+	public void update (HotColdBands bands, int band, float dist, float speed) {
+		if (m_tier < 0) {
+			return;
+		}
+		int tier = choose_tier(bands, band, dist, speed);
+		if (tier <= m_tier) {
+			m_slower_tier = -1;
+			set_tier(tier);
+			return;
+		}
+
+		// Slower.  Only once it's stuck.
+		long now = SystemClock.elapsedRealtime();
+		if (m_slower_tier < 0) {
+			m_slower_tier = tier;
+			m_slower_since = now;
+			return;
+		}
+		m_slower_tier = Math.min(m_slower_tier, tier);
+		if (now - m_slower_since >= SLOW_DOWN_DWELL_MS) {
+			set_tier(m_slower_tier);
+		}
+	} // update (bands, band, dist, speed)
+
+
+	/***************************
+	 * Figures out which tier fits.  Starts with the one for our band,
+	 * then speeds up while we could get to the next band in before
+	 * the next fix.
+	 */
+	public static int choose_tier (HotColdBands bands, int band,
+									float dist, float speed) {
+		int tier;
+		if (band <= HotColdBands.BAND_HOT) {
+			tier = TIER_CLOSE;
+		}
+		else if (band <= HotColdBands.BAND_WARM) {
+			tier = TIER_NEAR;
+		}
+		else if (band <= HotColdBands.BAND_COOL) {
+			tier = TIER_MID;
+		}
+		else {
+			tier = TIER_FAR;
+		}
+
+		// (The BandTracker hangs on to a band a little past its
+		// edge, so this can come out negative.)
+		float to_next_band = Math.max(0f, dist - bands.get_inner_edge(band));
+		while ((tier > TIER_CLOSE) &&
+				(speed * TIER_INTERVAL_MS[tier] / 1000f > to_next_band)) {
+			tier--;
+		}
+		return tier;
+	} // choose_tier (bands, band, dist, speed)
+
+
+	/***************************
+	 * @return	The current tier (TIER_*), or -1 if not running.
+	 */
+	public int get_tier() {
+		return m_tier;
+	}
+
+
+	/***************************
+	 * Registers for the given tier, unless that's what we already
+	 * have.
+	 */
+	private void set_tier (int tier) {
+		if (tier == m_tier) {
+			return;
+		}
+		if (m_tier >= 0) {
+			log_tier_end();
+			m_location_mgr.removeUpdates(m_listener);
+		}
+
+		m_location_mgr.requestLocationUpdates(m_provider,
+				TIER_INTERVAL_MS[tier], TIER_MIN_DISTANCE[tier], m_listener);
+		Log.i(TAG, "tier " + ((m_tier < 0) ? "off" : TIER_NAMES[m_tier])
+				+ " -> " + TIER_NAMES[tier]
+				+ " (" + TIER_INTERVAL_MS[tier] + " ms, "
+				+ TIER_MIN_DISTANCE[tier] + " m)");
+
+		m_tier = tier;
+		m_tier_start = SystemClock.elapsedRealtime();
+		m_tier_fixes = 0;
+		m_slower_tier = -1;
+	} // set_tier (tier)
+
+
+	/***************************
+	 * Logs how the tier that's ending went.
+	 */
+	private void log_tier_end() {
+		long ms = SystemClock.elapsedRealtime() - m_tier_start;
+		float per_minute = (ms > 0) ? (m_tier_fixes * 60000f / ms) : 0f;
+		Log.i(TAG, "tier " + TIER_NAMES[m_tier] + " lasted " + (ms / 1000) + " s, "
+				+ m_tier_fixes + " fixes (" + per_minute + " per minute)");
+	}
+
+}
@@ -1,30 +1,26 @@
 package com.sleepfuriously.biggstourofaustin;
 
+import java.io.File;
+import java.io.IOException;
+
 import android.support.v7.app.ActionBarActivity;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
 import android.content.res.Configuration;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
-import android.hardware.SensorManager;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.location.LocationProvider;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
+import android.os.Debug;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.View.OnClickListener;
-import android.view.animation.Animation;
-import android.view.animation.RotateAnimation;
+import android.view.View.OnLongClickListener;
 import android.widget.Button;
-import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.ScrollView;
 import android.widget.TextView;
@@ -87,9 +83,12 @@ import android.widget.Toast;
  */
 public class MainActivity extends ActionBarActivity
 						implements
-							SensorEventListener,
+							HeadingProvider.HeadingListener,
 							OnClickListener,
-							LocationListener {
+							OnLongClickListener,
+							LocationListener,
+							UiFrameScheduler.FrameListener,
+							BandTracker.BandListener {
 
 	//-------------------------
 	//	Public Data
@@ -104,11 +103,8 @@ public class MainActivity extends ActionBarActivity
 			m_main_msg_title_tv, m_main_msg_subtitle_tv /*,
 			m_scroll_tv */;
 
-	/** The various images for the compass and arrow display */
-	private ImageView
-		m_compass_ring_iv,
-		m_direction_arrow_iv,
-		m_on_target_iv;
+	/** Draws the compass ring, the arrow, and the on-target image */
+	private CompassView m_compass_view;
 
 	/**
 	 * This is the LinearLayout inside our ScrollView.
@@ -120,6 +116,51 @@ public class MainActivity extends ActionBarActivity
 	private Button m_prev_butt, m_next_butt,
 		m_test_butt;
 
+	/** Shows call counts and such (hidden screen only). */
+	private TextView m_debug_tv;
+
+	/**
+	 * Tells about the other undiscovered destinations close by
+	 * (hidden screen only).  See update_nearby().
+	 */
+	private TextView m_nearby_tv;
+
+	/**
+	 * The per-fix text is built in these (instead of making new
+	 * Strings every fix).
+	 */
+	private final TextBuffer m_distance_text = new TextBuffer(),
+		m_debug_text = new TextBuffer(),
+		m_nearby_text = new TextBuffer();
+
+	/**
+	 * What the hidden screen is showing right now: the distance (as
+	 * TextBuffer.round() gives it) and the band.  If a new fix gives
+	 * the same ones, the TextViews are left alone.
+	 */
+	private long m_shown_distance = NOTHING_SHOWN;
+	private int m_shown_band = BandTracker.BAND_UNKNOWN;
+
+	/**
+	 * What m_nearby_tv is showing: how many, and the band of the
+	 * closest (NOTHING_NEARBY before anything's been shown).
+	 */
+	private int m_shown_nearby_count = NOTHING_NEARBY;
+	private int m_shown_nearby_band = BandTracker.BAND_UNKNOWN;
+
+	/**
+	 * For Metrics: when we started waiting for the first fix, and
+	 * when the latest fix came (0 once it's been drawn).
+	 */
+	private long m_fix_wait_start = 0, m_fix_time = 0;
+
+	/**
+	 * Inflates the hidden and discovered screens (once each) and
+	 * flips between them.  The widgets above point into whichever
+	 * one is showing.
+	 */
+	private ScreenController m_screens;
+
 
 	//-------------------------
 	//	Private Constants
@@ -134,33 +175,46 @@ public class MainActivity extends ActionBarActivity
 
 
 
+	/** Once we're this close (HotColdBands.BAND_*), the story is preloaded. */
+	private final static int STORY_PRELOAD_BAND = HotColdBands.BAND_WARM;
+
+	/** The distance is shown to this many decimal places, then this. */
+	private final static int DISTANCE_DECIMALS = 1;
+	private final static String DISTANCE_SUFFIX = " meters";
+
+	private final static String DEBUG_FIX_PREFIX = "onLocationChanged() call #";
+
 	/**
-	 * The various display states
-	 * <p>
-	 * STATE_WAITING_FOR_INPUT - Sensors haven't responded yet.
-	 * <p>
-	 * STATE_SEARCHING - Searching for the target.
-	 * <p>
-	 * STATE_FOUND_OFF_TARGET - Looking at a found Location,
-	 * 		but Position != Target.
-	 * <p>
-	 * STATE_FOUND_ON_TARGET - Looking at a found Location,
-	 * 		AND Position == Target.
+	 * Undiscovered destinations this close (meters) are "nearby".
+	 * At most MAX_NEARBY of them are looked at, which keeps
+	 * m_batch_evaluator on the UI thread (way under its
+	 * PARALLEL_THRESHOLD) and quick.
 	 */
-	private final static int
-		STATE_WAITING_FOR_INPUT = 0,
-		STATE_SEARCHING = 1,
-		STATE_FOUND_OFF_TARGET = 2,
-		STATE_FOUND_ON_TARGET = 3;
+	private final static double NEARBY_RADIUS = 500.0;
+	private final static int MAX_NEARBY = 64;
 
+	/** m_nearby_tv says "Also nearby: 3 (closest: Warm)". */
+	private final static String
+		NEARBY_PREFIX = "Also nearby: ",
+		NEARBY_CLOSEST = " (closest: ",
+		NEARBY_END = ")";
+
+	/** For m_shown_nearby_count when it hasn't been shown yet. */
+	private final static int NOTHING_NEARBY = -1;
+
+	/** How many fixes check_fix_allocations() runs through. */
+	private final static int ALLOC_CHECK_FIXES = 100;
 
 	/**
-	 * This needs to be appended with the number of the pref in question.
-	 *
-	 * The value associated with this key tells whether or not that
-	 * particular location has been discovered yet.
+	 * check_fix_allocations() walks from this much of the way to
+	 * ALLOC_CHECK_BAND's outer edge, out to the same distance past
+	 * it.  Far enough from the target that the state can't change.
 	 */
-	private final static String PREFS_DISCOVERED_PREFIX = "prefs_discovered_";
+	private final static float ALLOC_CHECK_SPREAD = 0.1f;
+	private final static int ALLOC_CHECK_BAND = HotColdBands.BAND_LUKE_WARM;
+
+	/** For m_shown_distance: nothing's been shown yet. */
+	private final static long NOTHING_SHOWN = Long.MAX_VALUE;
 
 
 	//-------------------------
@@ -168,10 +222,11 @@ public class MainActivity extends ActionBarActivity
 	//-------------------------
 
 	/**
-	 * This Activity can display several different states.  This
-	 * tells us which is currently being displayed.
+	 * This Activity can display several different states
+	 * (TargetStateMachine.STATE_*).  This tells us which is
+	 * currently being displayed.
 	 */
-	private int m_display_state = STATE_WAITING_FOR_INPUT;
+	private final TargetStateMachine m_target_state = new TargetStateMachine();
 
 	/**
 	 * The angle that the compass is turned.  Note that this is NOT
@@ -183,6 +238,30 @@ public class MainActivity extends ActionBarActivity
 	/** The direction that we need to head to reach the target */
 	private float m_bearing = 0f;
 
+	/** The latest heading from the compass sensor, in degrees. */
+	private float m_heading = 0f;
+
+	/**
+	 * The distance (meters) and absolute bearing (degrees) from
+	 * m_position to the target.  These only change when we get a
+	 * new fix, so they're worked out then (in update_snapshot())
+	 * and NOT on every compass event.
+	 */
+	private float m_target_distance = 0f;
+	private float m_target_bearing = 0f;
+
+	/**
+	 * The destdata that m_target_distance and m_target_bearing were
+	 * figured for.  If it's not m_target_destdata, they're stale.
+	 */
+	private DestinationData m_snapshot_destdata = null;
+
+	/** Makes sure we draw no more than once per display frame. */
+	private UiFrameScheduler m_frame_scheduler;
+
+	/** How many times on_frame() has drawn the UI. */
+	private long m_frames_rendered = 0;
+
 	/** Is FALSE iff this device cannot detect magnetic fields. */
 	private boolean m_can_detect_magnetic = false;
 
@@ -192,32 +271,98 @@ public class MainActivity extends ActionBarActivity
 	/** Manages GPS and other location/positioning */
 	private LocationManager m_location_mgr = null;
 
+	/** Picks how often we get GPS fixes (by how close we are) */
+	private LocationUpdateScheduler m_location_scheduler = null;
+
+	/** Knows which hot/cold band we're in, and when that changes. */
+	private final BandTracker m_band_tracker = new BandTracker(this);
+
+	/** Records discoveries and band changes (when, where, how accurate) */
+	private DiscoveryJournal m_journal;
+
+	/**
+	 * Shows the destinations' html stories (and preloads them).
+	 * Only one of these is used: the WebView one normally, or the
+	 * TextView one on low-memory phones.
+	 */
+	private StoryRenderer m_story_renderer = null;
+	private NativeStoryRenderer m_native_stories = null;
+
 	/** A flag that's True once the Location system starts working */
 	private boolean m_location_working = false;
 
-	/** Used for the compass */
-	private SensorManager m_sensor_mgr;
+	/** Used for the compass (shared with anything else that wants a heading) */
+	private HeadingProvider m_heading_provider;
 
 	/** Our current position, according to the sensors. */
 	private Location m_position;
 
+	/**
+	 * The same position, copied out of m_position on each fix.
+	 * This is what all the distance work uses.
+	 */
+	private final GeoPoint m_position_point = new GeoPoint();
+
 	/** The total number of DestinationData items this program knows. */
 	private int m_num_destdata;
 
+	/**
+	 * The numbers (coordinates, etc.) and found flags for ALL the
+	 * destinations.  m_target_destdata is a view into this.
+	 */
+	private DestinationRegistry m_registry;
+
+	/** For finding destinations near a position. */
+	private DestinationSpatialIndex m_spatial_index;
+
+	/**
+	 * Figures distance, bearing, and band to the nearby destinations
+	 * (the ones m_spatial_index finds, into m_nearby) on every fix.
+	 * The answers go in m_batch_results (which is reused from fix
+	 * to fix).  See update_nearby().
+	 */
+	private BatchEvaluator m_batch_evaluator;
+	private BatchEvaluator.Results m_batch_results = null;
+	private final int[] m_nearby = new int[MAX_NEARBY];
+
+	/**
+	 * Figures distance and bearing to the target without all
+	 * the work that Location.distanceTo() and bearingTo() do.
+	 */
+	private final GeoKernel m_geo = new GeoKernel();
+
 	/** Th LocationData that is currently displayed. */
 	private int m_currently_displayed_destdata;
 
 	/** Holds the LocationData that is currently displayed. */
 	private DestinationData m_target_destdata;
 
+	/**
+	 * The destinations on either side of the target, loaded ahead
+	 * of time for the next and prev buttons.
+	 */
+	private DestinationRing m_ring = null;
+
 	/** Tells if the current Location is discovered (true) or hidden (false). */
 	private boolean m_current_discovered = false;
 
 	/**
-	 * Used for debugging. Causes the onLocationChanged to always return
-	 * the current target when TRUE.
+	 * True while check_fix_allocations() runs.  Its made-up fixes
+	 * go through the same code, but aren't counted (fixes, frames,
+	 * the debug count), journaled, or used to re-register the
+	 * location updates.
+	 */
+	private boolean m_checking_allocations = false;
+
+	/**
+	 * False until there are destinations to show and on_source_ready()
+	 * has set everything up.  Until then onResume() and onPause()
+	 * leave the sensors alone.
 	 */
-	private boolean m_debug_on_target = false;
+	private boolean m_ready = false;
+
+	/** True between onResume() and onPause(). */
+	private boolean m_resumed = false;
 
 
 	//-------------------------
@@ -228,13 +373,60 @@ public class MainActivity extends ActionBarActivity
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
+		setContentView(R.layout.main_screens);
+
+		// If the destinations are coming from the json catalog, the
+		// first one may not be there yet.  Don't wait for it here,
+		// on the UI thread; the rest happens once it is.
+		DestinationData.when_source_ready(this, new Runnable() {
+			@Override
+			public void run() {
+				if (isFinishing() == false) {
+					on_source_ready();
+				}
+			}
+		});
+
+	} // onCreate(.)
+
 
+	/***************************
+	 * The rest of onCreate(), once get_source() has destinations
+	 * (or never will).  If we've already been resumed, this starts
+	 * the sensors too.
+	 */
+	private void on_source_ready() {
 		// Initialize the LocationData system and load up the
 		// data for the first location.  Test to make sure
 		// we have enough locations!
 		set_first_destdata();
 
-		// Initialize and display the correct UI
+		// WebViews are slow to make, so get one going early (unless
+		// this phone is better off without them).
+		if (NativeStoryRenderer.is_preferred(this)) {
+			m_native_stories = new NativeStoryRenderer(this, m_registry.get_source());
+		}
+		else {
+			m_story_renderer = new StoryRenderer(this, m_registry.get_source());
+			m_story_renderer.prewarm();
+		}
+
+		// The neighbors get their stories ready too (if they'd show
+		// them), so going next or prev is instant.
+		if (m_ring != null) {
+			m_ring.set_listener(new DestinationRing.RingListener() {
+				@Override
+				public void on_neighbor_ready (int offset, DestinationData destdata) {
+					if ((Math.abs(offset) == 1) && destdata.is_found()) {
+						preload_story(destdata.get_index());
+					}
+				}
+			});
+		}
+
+		// Initialize and display the correct UI.  Only the screen
+		// that's needed is inflated for now.
+		m_screens = new ScreenController(findViewById(R.id.screens_fl), this, this);
 		if (is_location_discovered(m_currently_displayed_destdata)) {
 			Log.d(TAG, "onCreate():  location " + m_currently_displayed_destdata + " Discovered!");
 			m_current_discovered = true;
@@ -249,6 +441,8 @@ public class MainActivity extends ActionBarActivity
 		// Instantiate.  The provider isn't important.
 		m_position = new Location("current location");
 
+		m_frame_scheduler = new UiFrameScheduler(this);
+
 		// Set up the sensors and their related mgrs and callbacks.
 		// Todo:
 		//	This may need to be moved to onResume() so that people may
@@ -256,7 +450,11 @@ public class MainActivity extends ActionBarActivity
 		//	I do all the time!).
 		test_sensors();
 
-	} // onCreate(.)
+		m_ready = true;
+		if (m_resumed) {
+			start_sensors();
+		}
+	} // on_source_ready()
 
 
 	//-------------------------
@@ -265,11 +463,26 @@ public class MainActivity extends ActionBarActivity
 		super.onResume();
 		Log.i(TAG, "onResume()");
 
-		// Setup the location manager
-		m_location_mgr.requestLocationUpdates(LocationManager.GPS_PROVIDER,
-				1000,	// 1 sec MINIMUM time interval
-				1,		// min distance, 1 meters
-				this);
+		m_resumed = true;
+		if (m_ready) {
+			start_sensors();
+		}
+	} // onResume()
+
+
+	/***************************
+	 * Gets the location updates and headings going.  Done in
+	 * onResume(), or once we're ready if that's later.
+	 */
+	private void start_sensors() {
+		// We're in front now, so we'll watch the rings ourselves.
+		ProximityRingReceiver.unregister_rings(this, m_location_mgr);
+
+		// Setup the location manager.  The scheduler starts out with
+		// fast updates and slows them down once it knows how far away
+		// we are.
+		m_location_scheduler.start();
+		m_fix_wait_start = Metrics.now();
 		Log.i(TAG, "   - location updates starting.");
 		m_location_working = false;		// Reset our flag.
 
@@ -280,17 +493,12 @@ public class MainActivity extends ActionBarActivity
 			return;		// Do nothing.
 		}
 		else {
-			// This example uses the deprecated TYPE_ORIENTATION instead of
-			// the better ROTATION.
-			// Hmmm, after some research, I'm not sure that ROTATION is any
-			// better.  This works, so I'm sticking with it.
-			m_sensor_mgr.registerListener(this,
-					m_sensor_mgr.getDefaultSensor(Sensor.TYPE_ORIENTATION),
-//					SensorManager.SENSOR_DELAY_GAME);
-					SensorManager.SENSOR_DELAY_UI);		// Seems slightly faster
+			// Rotation vector if we have it, otherwise accelerometer
+			// plus magnetometer.  The provider figures that out.
+			m_heading_provider.add_listener(this);
 		}
 
-	} // onResume()
+	} // start_sensors()
 
 
 	//-------------------------
@@ -299,10 +507,29 @@ public class MainActivity extends ActionBarActivity
 		super.onPause();
 		Log.i(TAG, "onPause()");
 
+		m_resumed = false;
+		if (m_ready == false) {
+			return;		// Nothing's been started.
+		}
+
+		// No drawing while we're in the background.
+		m_frame_scheduler.cancel();
+
 		// Turn off the location updates for battery's sake
 		if (m_can_detect_position) {
-			m_location_mgr.removeUpdates(this);
+			m_location_scheduler.stop();
 			Log.i(TAG, "   - location updates removed.");
+
+			// Let the platform tell us about ring crossings while
+			// we're in the background.
+			if (m_current_discovered == false) {
+				ProximityRingReceiver.register_rings(this, m_location_mgr,
+						m_target_destdata.m_loc.get_latitude(),
+						m_target_destdata.m_loc.get_longitude(),
+						m_target_destdata.get_hotcold().get_bands(),
+						m_location_working ? m_band_tracker.get_band()
+										: BandTracker.BAND_UNKNOWN);
+			}
 		}
 		else {
 			Log.i(TAG, "   - device doesn't do locations, so no updates removed.");
@@ -310,19 +537,60 @@ public class MainActivity extends ActionBarActivity
 
 		// Turn off the compass stuff to save the battery
 		if (m_can_detect_magnetic) {
-			m_sensor_mgr.unregisterListener(this);
+			m_heading_provider.remove_listener(this);
 			Log.i(TAG, "   - magnetic sensor unregistered.");
+			Log.i(TAG, "   - headings delivered: " + m_heading_provider.get_delivered_count()
+					+ ", passed filter: " + m_heading_provider.get_passed_count()
+					+ ", frames rendered: " + m_frames_rendered);
 		}
 		else {
 			Log.i(TAG, "   - no magnetic sensor, so nothing has been unregistered.");
 		}
 
+		Log.i(TAG, "   - screens inflated: " + m_screens.get_inflate_count()
+				+ ", taking " + (m_screens.get_inflate_nanos() / 1000) + " us total, for "
+				+ m_screens.get_switch_count() + " switches");
+		long old_way_nanos = m_screens.get_old_way_nanos();
+		if (old_way_nanos >= 0) {
+			Log.i(TAG, "   - the old way (setContentView() every switch) would've taken "
+					+ (old_way_nanos / 1000) + " us");
+		}
+
+		// Don't leave any discoveries waiting to be written.
+		DiscoveryStore.get_instance(this).flush();
+		if (m_journal != null) {
+			m_journal.flush();
+		}
+
 	} // onPause()
 
 
-	// todo
-	//	Don't we need an onDestroy() method to get rid of our managers when
-	//	the program is completely over?
+	//-------------------------
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		Log.i(TAG, "onDestroy()");
+
+		if (m_story_renderer != null) {
+			m_story_renderer.destroy();
+		}
+		if (m_native_stories != null) {
+			m_native_stories.destroy();
+		}
+		if (m_batch_evaluator != null) {
+			m_batch_evaluator.shutdown();
+		}
+		if (m_ring != null) {
+			m_ring.destroy();
+			m_ring = null;
+		}
+
+		// Leaving for good, so the rings go too (they'd otherwise
+		// keep the location hardware busy until they expire).
+		if (isFinishing() && m_can_detect_position) {
+			ProximityRingReceiver.unregister_rings(this, m_location_mgr);
+		}
+	} // onDestroy()
 
 
 	/************************
@@ -371,7 +639,7 @@ public class MainActivity extends ActionBarActivity
 				Log.d(TAG, "onClick(): test button");
 				// todo: just a debug statement
 				Log.d(TAG, " - setting debug to true.");
-				m_debug_on_target = true;
+				m_target_state.force_on_target();
 				update_display_state();
 
 //				// todo
@@ -383,10 +651,12 @@ public class MainActivity extends ActionBarActivity
 
 			case R.id.next_butt:
 				Log.d(TAG, "onClick(): next button");
+				change_destination(1);
 				break;
 
 			case R.id.prev_butt:
 				Log.d(TAG, "onClick(): prev button");
+				change_destination(-1);
 				break;
 
 			default:
@@ -396,6 +666,50 @@ public class MainActivity extends ActionBarActivity
 	}
 
 
+	/******************************
+	 * Long-pressing the test button checks that the per-fix path
+	 * doesn't allocate (see check_fix_allocations()), dumps the
+	 * Metrics to a file, then runs the benchmarks (see
+	 * DebugBenchmarks).  Results are in the log.
+	 */
+	@Override
+	public boolean onLongClick(View v) {
+		if (v.getId() != R.id.test_butt) {
+			return false;
+		}
+
+		if (check_fix_allocations() == false) {
+			Toast.makeText(this, "The per-fix path allocates (see log)",
+							Toast.LENGTH_LONG).show();
+		}
+
+		Toast.makeText(this, "Running benchmarks...", Toast.LENGTH_SHORT).show();
+		new Thread("benchmarks") {
+			@Override
+			public void run() {
+				if (Metrics.ENABLED) {
+					try {
+						File file = Metrics.dump(MainActivity.this);
+						Log.i(TAG, "Metrics written to " + file);
+					}
+					catch (IOException e) {
+						Log.e(TAG, "Unable to write the metrics", e);
+					}
+				}
+				DebugBenchmarks.run_all();
+				runOnUiThread(new Runnable() {
+					@Override
+					public void run() {
+						Toast.makeText(MainActivity.this, "Benchmarks done (see log)",
+								Toast.LENGTH_SHORT).show();
+					}
+				});
+			}
+		}.start();
+		return true;
+	} // onLongClick (v)
+
+
 	//-------------------------
 	@Override
 	public void onProviderEnabled(String provider) {
@@ -411,15 +725,6 @@ public class MainActivity extends ActionBarActivity
 
 
 
-	/******************************
-	 * Not used
-	 */
-	@Override
-	public void onAccuracyChanged(Sensor sensor, int accuracy) {
-		Log.d(TAG, "onAccuracyChanged() - (not used)");
-	}
-
-
 	/******************************
 	 * Looks like I'm not registering this status change.  That's
 	 * why I'm not getting any hits?
@@ -451,18 +756,18 @@ public class MainActivity extends ActionBarActivity
 
 
 	/******************************
-	 * Happens whenever the magnetic sensor changes (supposedly).
+	 * Happens whenever the HeadingProvider has a new heading.
 	 */
 	@Override
-	public void onSensorChanged(SensorEvent event) {
-		// Get the angle around the z-axis and display it.
-		float angle = (Math.round(event.values[0]));
-//		Log.d(TAG, "onSensorChanged(): angle = " + angle);
+	public void on_heading_changed (float heading) {
+//		Log.d(TAG, "on_heading_changed(): heading = " + heading);
 
-		update_ui(angle,
-				m_position,
-				m_target_destdata.m_loc);
-	} // onSensroChanged(event)
+		// Only the heading changes here.  The distance and bearing
+		// wait for the next fix, and the drawing waits for the
+		// next frame.
+		m_heading = heading;
+		m_frame_scheduler.request_frame();
+	} // on_heading_changed (heading)
 
 
 		/***************************
@@ -475,34 +780,226 @@ public class MainActivity extends ActionBarActivity
 		 * Also, this is where the display state is called and
 		 * updated (makes sense).
 		 */
-	private static int s_location_changed = 1;
 	@Override
 	public void onLocationChanged(Location pos) {
+		long start = Metrics.begin(Metrics.STAGE_FIX);
+		Metrics.count(Metrics.COUNT_FIXES);
+		Metrics.event(Metrics.EVENT_FIX, pos.hasAccuracy() ? (long) (pos.getAccuracy() * 100) : -1);
+		if ((m_location_working == false) && (m_fix_wait_start != 0)) {
+			Metrics.event(Metrics.EVENT_FIRST_FIX,
+						Metrics.record_since(Metrics.HIST_FIRST_FIX, m_fix_wait_start));
+			m_fix_wait_start = 0;
+		}
+		m_fix_time = Metrics.now();
+
+		handle_fix(pos);
+		Metrics.end(Metrics.STAGE_FIX, start);
+	} // onLocationChanged (pos)
+
+
+	/***************************
+	 * The work of onLocationChanged().
+	 */
+	private static int s_location_changed = 1;
+	private void handle_fix (Location pos) {
 		Log.d(TAG, "onLocationChanged()");
-		TextView debug_tv = (TextView) findViewById(R.id.debug_tv);
-		debug_tv.setText("onLocationChanged() call #" + s_location_changed++);
+		if (m_debug_tv != null) {
+			if (m_checking_allocations == false) {
+				s_location_changed++;
+			}
+			m_debug_text.clear().append(DEBUG_FIX_PREFIX).append(s_location_changed - 1);
+			m_debug_tv.setText(m_debug_text.get_chars(), 0, m_debug_text.length());
+		}
 
 		m_location_working = true;
 
 		// Are we testing???
-		if (m_debug_on_target) {
+		if (m_target_state.is_forced()) {
 			Log.d(TAG, "  - setting current to target.");
-			m_position.set(m_target_destdata.m_loc);
-			update_ui(m_compass_angle, m_position, m_target_destdata.m_loc);
+			m_position_point.set(m_target_destdata.m_loc);
+			update_snapshot();
+			m_frame_scheduler.request_frame();
 			return;
 		}
 
 		Log.d(TAG, "  - Normal functioning.");
 
-		// Now we have a new position.  Change it and update our state.
+		if (m_checking_allocations == false) {
+			m_location_scheduler.on_fix();
+		}
+		show_fix(pos);
+
+		// And how we're doing with everything else.
+		update_nearby();
+	} // handle_fix (pos)
+
+
+	/***************************
+	 * Works out where the other undiscovered destinations near our
+	 * position are (m_spatial_index finds them, m_batch_evaluator
+	 * does the distances and bands), and shows how many there are
+	 * and how hot the closest one is in m_nearby_tv.  Hidden when
+	 * there aren't any.
+	 *
+	 * This happens every fix, so nothing is allocated, and
+	 * m_nearby_tv is only touched if what it shows would change.
+	 */
+	private void update_nearby() {
+		if ((m_nearby_tv == null) || (m_spatial_index == null)) {
+			return;		// Nowhere to show it.
+		}
+		double lat = m_position_point.get_latitude();
+		double lon = m_position_point.get_longitude();
+		int count = Math.min(MAX_NEARBY, m_spatial_index.find_within(lat, lon,
+												NEARBY_RADIUS, true, m_nearby));
+		m_batch_results = m_batch_evaluator.evaluate(lat, lon, m_nearby, count,
+												m_batch_results);
+
+		// The target doesn't count.
+		int target = m_target_destdata.get_index();
+		int others = 0;
+		int closest_band = BandTracker.BAND_UNKNOWN;
+		float closest_dist = Float.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			if (m_batch_results.get_index(i) == target) {
+				continue;
+			}
+			others++;
+			if (m_batch_results.get_distance(i) < closest_dist) {
+				closest_dist = m_batch_results.get_distance(i);
+				closest_band = m_batch_results.get_band(i);
+			}
+		}
+
+		if ((others == m_shown_nearby_count) && (closest_band == m_shown_nearby_band)) {
+			return;
+		}
+		m_shown_nearby_count = others;
+		m_shown_nearby_band = closest_band;
+		if (others == 0) {
+			m_nearby_tv.setVisibility(View.GONE);
+			return;
+		}
+		m_nearby_text.clear().append(NEARBY_PREFIX).append(others)
+			.append(NEARBY_CLOSEST).append(BandMessages.get(this, closest_band))
+			.append(NEARBY_END);
+		m_nearby_tv.setText(m_nearby_text.get_chars(), 0, m_nearby_text.length());
+		m_nearby_tv.setVisibility(View.VISIBLE);
+	} // update_nearby()
+
+
+	/***************************
+	 * The part of a fix that ends up on the screen: we have a new
+	 * position, so our state is updated and a frame is asked for.
+	 * check_fix_allocations() puts the real fix back with this.
+	 */
+	private void show_fix (Location pos) {
 		m_position = pos;
+		m_position_point.set(pos.getLatitude(), pos.getLongitude());
 		update_display_state();
 
-		// The complement of the compass_angle is the heading of the device.
-		update_ui(-m_compass_angle,
-				m_position,
-				m_target_destdata.m_loc);
-	} // onLocationChanged (loc)
+		update_snapshot();
+		m_frame_scheduler.request_frame();
+	} // show_fix (pos)
+
+
+	/***************************
+	 * Called (at most) once per display frame, after something
+	 * asked m_frame_scheduler for a frame.  This is where the UI
+	 * actually gets drawn.
+	 */
+	@Override
+	public void on_frame (long frame_time_nanos) {
+		Metrics.count(Metrics.COUNT_FRAMES);
+		if (m_fix_time != 0) {
+			Metrics.record_since(Metrics.HIST_FIX_TO_RENDER, m_fix_time);
+			m_fix_time = 0;
+		}
+		if (m_snapshot_destdata != m_target_destdata) {
+			// The target changed since the last fix.
+			update_snapshot();
+		}
+		update_ui(m_heading);
+		if (m_checking_allocations == false) {
+			m_frames_rendered++;
+		}
+	} // on_frame (frame_time_nanos)
+
+
+	/***************************
+	 * The BandTracker says we've crossed into a different hot/cold
+	 * band.
+	 */
+	@Override
+	public void on_band_changed (int old_band, int new_band) {
+		// (Not logged here; this happens on fixes, so it mustn't
+		// allocate.  The Metrics and the journal have it.)
+		Metrics.event(Metrics.EVENT_BAND, new_band);
+
+		// Getting close, so have the story ready for when they get there.
+		if (new_band <= STORY_PRELOAD_BAND) {
+			preload_story(m_target_destdata.get_index());
+		}
+
+		if ((m_journal != null) && (m_checking_allocations == false)) {
+			m_journal.log_band_change(m_target_destdata.get_index(),
+									old_band, new_band, m_position);
+		}
+	}
+
+
+	/***************************
+	 * Gets a destination's story ready in whichever renderer we're
+	 * using.
+	 */
+	private void preload_story (int index) {
+		if (m_story_renderer != null) {
+			m_story_renderer.preload(index);
+		}
+		else if (m_native_stories != null) {
+			m_native_stories.preload(index);
+		}
+	} // preload_story (index)
+
+
+	/***************************
+	 * Makes the next (step 1) or previous (step -1) destination the
+	 * target.  It comes out of m_ring, already loaded.
+	 *
+	 * Side Effects:
+	 * 	m_target_destdata, m_currently_displayed_destdata,
+	 * 	m_current_discovered, m_target_state
+	 */
+	private void change_destination (int step) {
+		if (m_ring == null) {
+			return;		// No destinations at all.
+		}
+
+		m_target_destdata = m_ring.move(step);
+		m_currently_displayed_destdata = m_target_destdata.get_index();
+		Log.d(TAG, "change_destination():  now " + m_currently_displayed_destdata);
+		Metrics.event(Metrics.EVENT_TARGET, m_currently_displayed_destdata);
+
+		boolean discovered = is_location_discovered(m_currently_displayed_destdata);
+
+		// Start over at searching (unless we're still waiting for a
+		// fix).  The new target's distance and band are worked out
+		// on the next frame (see on_frame()).
+		m_target_state.retarget(discovered);
+
+		// Both screens stay inflated, so this is just a rebind (and
+		// maybe a visibility flip).
+		m_current_discovered = discovered;
+		if (discovered) {
+			display_discovered_layout();
+		}
+		else {
+			display_hidden_layout();
+			setup_moving_to_target();
+		}
+
+		m_frame_scheduler.request_frame();
+	} // change_destination (step)
 
 
 	/***************************
@@ -515,16 +1012,12 @@ public class MainActivity extends ActionBarActivity
 	 * @return
 	 */
 	private boolean is_location_discovered (int loc) {
-		// This works by accessing the preferences, which stores
-		// the information about what's discovered and what's
-		// hidden.
-		SharedPreferences prefs =
-			PreferenceManager.getDefaultSharedPreferences(this);
-
-		// Construct the key
-		String key = PREFS_DISCOVERED_PREFIX + loc;
-
-		return prefs.getBoolean(key, false);
+		// The registry's found flags came from the DiscoveryStore
+		// (see set_first_destdata()), so this is just a lookup.
+		if (m_registry != null) {
+			return m_registry.is_found(loc);
+		}
+		return DiscoveryStore.get_instance(this).is_discovered(loc);
 	} // is_location_discovered (loc)
 
 
@@ -535,26 +1028,32 @@ public class MainActivity extends ActionBarActivity
 	 * Also does some initializations for the LocationDatas.
 	 *<p>
 	 * <b><u>side effects</u></b>:</br>
+	 * 	<b>m_registry</b>		Loaded up with all the destinations.
+	 *<p>
 	 * 	<b>m_num_destdata</b>		Will be set to hold how many LocationDatas
 	 * 							are available for this program.
 	 *<p>
-	 *	<b>m_currently_displayed_loc</b>	This is set here!  Right
-	 *									now I'm just using 0.
+	 *	<b>m_spatial_index</b>		Built over m_registry.
+	 *<p>
+	 *	<b>m_currently_displayed_loc</b>	This is set here!  It's the
+	 *									closest one that hasn't been
+	 *									found yet.
 	 *<p>
 	 *	<b>m_target_destdata</b>	This is loaded up with the LocationData
 	 *							as indicted by m_currently_displayed_destdata.
+	 *<p>
+	 *	<b>m_ring</b>			Started around m_target_destdata.
 	 *
 	 */
 	private void set_first_destdata() {
-		// How many LocationDatas does this program have now?  Grab one
-		// of our arrays (they all should be the same length) and
-		// use its length.
-		CharSequence[] titles = getResources().getTextArray(R.array.titles);
-		if (titles == null) {
-			Log.e(TAG, "Unable to get resource array in set_first_destdata()! Aborting!");
-			return;
-		}
-		m_num_destdata = titles.length;
+		// Load up the registry with all the destinations. That'll
+		// tell us how many LocationDatas this program has.
+		m_registry = new DestinationRegistry(DestinationData.get_source(this));
+		DestinationData.load_found_flags(this, m_registry);
+		m_num_destdata = m_registry.get_count();
+
+		m_journal = DiscoveryJournal.get_instance(this);
+		apply_journal();
 
 		if (m_num_destdata == 0) {
 			Log.e(TAG, "No LocationDatas. Aborting!!!");
@@ -563,29 +1062,167 @@ public class MainActivity extends ActionBarActivity
 			return;
 		}
 
-		// todo
-		//	Do something more elegant than starting with the first one.
-		//	How about starting with the first one that hasn't been found?
-		m_currently_displayed_destdata = 0;
-		m_target_destdata = new DestinationData();
-		m_target_destdata.load(this, m_currently_displayed_destdata);
+		// Start with the closest one that hasn't been found (as of the
+		// last position we know about).  If we don't know where we are,
+		// the first one that hasn't been found will do.
+		m_spatial_index = new DestinationSpatialIndex(m_registry);
+		m_batch_evaluator = new BatchEvaluator(m_registry);
+
+		int first = -1;
+		Location last_pos = get_last_known_position();
+		if (last_pos != null) {
+			first = m_spatial_index.find_nearest_unfound(last_pos.getLatitude(),
+														last_pos.getLongitude());
+		}
+		if (first < 0) {
+			first = m_registry.get_first_unfound();
+		}
+		if (first < 0) {
+			first = 0;		// They've found everything!
+		}
+
+		m_currently_displayed_destdata = first;
+		m_ring = new DestinationRing(m_registry, m_currently_displayed_destdata);
+		m_target_destdata = m_ring.get_current();
+
+		// The source may still be loading (the json catalog shows
+		// its first destinations before it's done).
+		DestinationData.when_source_loaded(new Runnable() {
+			@Override
+			public void run() {
+				on_destinations_loaded();
+			}
+		});
 
 	} // set_first_destdata()
 
 
+	/*******************
+	 * The journal has the final say on what's been found (the
+	 * store's last write may not have made it), so everything it
+	 * says was discovered goes into the DiscoveryStore, with the
+	 * time it was discovered, and from there into m_registry.
+	 *
+	 * The journal is read on its own thread, so this happens a
+	 * little after startup.  The store keeps it, so registries
+	 * attached later (see on_destinations_loaded(), or the next
+	 * onCreate()) get it too, and it's only read once.
+	 */
+	private static boolean s_journal_applied = false;
+	private void apply_journal() {
+		if (s_journal_applied) {
+			return;
+		}
+		s_journal_applied = true;
+
+		final DiscoveryStore store = DiscoveryStore.get_instance(this);
+		m_journal.replay(new DiscoveryJournal.ReplayListener() {
+			@Override
+			public void on_record (DiscoveryJournal.Record record) {
+				if (record.get_type() != DiscoveryJournal.TYPE_DISCOVERY) {
+					return;
+				}
+				int index = record.get_index();
+				if (store.merge_discovery(index, record.get_time()) &&
+					(m_ring != null) && (index < m_registry.get_count())) {
+					m_registry.set_found(index, true);
+					if (index == m_currently_displayed_destdata) {
+						on_target_found_elsewhere();
+					}
+				}
+			}
+		});
+	} // apply_journal()
+
+
+	/*******************
+	 * The current target turned out to be discovered already (the
+	 * journal had it), so switch to the discovered screen, just as
+	 * if we'd moved to it.
+	 */
+	private void on_target_found_elsewhere() {
+		if (m_current_discovered) {
+			return;
+		}
+		m_target_state.retarget(true);
+		m_current_discovered = true;
+		display_discovered_layout();
+		m_frame_scheduler.request_frame();
+	} // on_target_found_elsewhere()
+
+
+	/*******************
+	 * The rest of the destinations have loaded (see
+	 * DestinationData.when_source_loaded()).  They get their found
+	 * flags, and everything that works over all the destinations
+	 * is redone.  The target stays the same.
+	 */
+	private void on_destinations_loaded() {
+		if ((m_ring == null) || (m_registry.update_from_source() == 0)) {
+			return;		// Gone, or nothing new.
+		}
+		m_num_destdata = m_registry.get_count();
+		Log.d(TAG, "on_destinations_loaded():  now " + m_num_destdata + " destinations");
+
+		// (The store has the journal's discoveries by now, or will
+		// put them in when it does.)
+		DiscoveryStore.get_instance(this).detach(m_registry);
+		DestinationData.load_found_flags(this, m_registry);
+
+		// (The cell size depends on how many there are, so it's a
+		// new index rather than a rebuild().)
+		m_spatial_index.detach();
+		m_spatial_index = new DestinationSpatialIndex(m_registry);
+		m_batch_evaluator.shutdown();
+		m_batch_evaluator = new BatchEvaluator(m_registry);
+
+		// The neighbors wrap around differently now.
+		m_ring.jump_to(m_currently_displayed_destdata);
+		m_target_destdata = m_ring.get_current();
+	} // on_destinations_loaded()
+
+
+	/*******************
+	 * Asks the location system where we were last time it knew.
+	 *
+	 * @return	The last known position, or null if there isn't one.
+	 */
+	private Location get_last_known_position() {
+		LocationManager location_mgr = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
+		if (location_mgr == null) {
+			return null;
+		}
+
+		Location pos = null;
+		try {
+			pos = location_mgr.getLastKnownLocation(LocationManager.GPS_PROVIDER);
+			if (pos == null) {
+				pos = location_mgr.getLastKnownLocation(LocationManager.NETWORK_PROVIDER);
+			}
+		}
+		catch (IllegalArgumentException e) {
+			Log.w(TAG, "get_last_known_position(): no such provider.");
+		}
+		catch (SecurityException e) {
+			Log.w(TAG, "get_last_known_position(): not allowed.");
+		}
+		return pos;
+	} // get_last_known_position()
+
+
 	/*******************
 	 * Checks the conditions to see if the state has changed.
 	 * If the state DOES change, all the side effects are done
 	 * HERE.
 	 *
 	 * preconditions:
-	 * 	m_position		Should have the device's correct
-	 * 					coordinates (our position).
+	 * 	m_position_point	Should have the device's correct
+	 * 						coordinates (our position).
 	 *
 	 * 	m_target_destdata	Properly loaded with our target.
 	 *
 	 * side effects:
-	 * 	m_display_state		Changed to reflect the correct state.
+	 * 	m_target_state		Changed to reflect the correct state.
 	 *
 	 *	Some UI stuff may be changed to prepare for appropriate
 	 *		use later.
@@ -594,79 +1231,63 @@ public class MainActivity extends ActionBarActivity
 	 * 				the appropriate actions).  FALSE if no change.
 	 */
 	private boolean update_display_state() {
-		boolean return_val = false;
+		long start = Metrics.begin(Metrics.STAGE_STATE);
 
-		if (m_debug_on_target) {
-			// This supercedes all state changes.
-			if (m_display_state == STATE_SEARCHING) {
-				setup_location_discovered();
-				m_current_discovered = true;
-				m_display_state = STATE_FOUND_ON_TARGET;
-				return true;
-			}
-			return false;
+		boolean return_val = check_state();
+
+		if (return_val) {
+			Metrics.count(Metrics.COUNT_STATE_CHANGES);
+			Metrics.event(Metrics.EVENT_STATE, m_target_state.get_state());
 		}
+		Metrics.end(Metrics.STAGE_STATE, start);
+		return return_val;
+	} // update_display_state()
 
-		switch (m_display_state) {
-			case STATE_WAITING_FOR_INPUT:
-				if (m_location_working) {
-					m_display_state = STATE_SEARCHING;
-					Log.d(TAG, "Moved from STATE_WAITING_FOR_LOCATION to STATE_MOVING_TO_TARGET.");
-					return_val = true;
-				}
-				break;
 
-			case STATE_SEARCHING:
-				if (is_on_target(m_position, m_target_destdata.m_loc,
-								m_target_destdata.get_slop()) == true) {
-					Log.d(TAG, "Changing from moving_to_target to found_on_target");
-					setup_location_discovered();
-					m_display_state = STATE_FOUND_ON_TARGET;
-					return_val = true;
-				}
-				break;
+	/*******************
+	 * The work of update_display_state().  m_target_state decides
+	 * if anything changed; this does what goes with it.
+	 */
+	private boolean check_state() {
+		float dist = 0f;
+		if (m_location_working) {
+			dist = compute_geo(m_position_point, m_target_destdata.m_loc);
+		}
 
-			case STATE_FOUND_ON_TARGET:
-				// Did the user move away from their target?
-				if (is_on_target(m_position, m_target_destdata.m_loc,
-								m_target_destdata.get_slop()) == false) {
-					Log.d(TAG, "Changing from found_on_target to found_off_target");
-					setup_moving_to_target();
-					m_display_state = STATE_FOUND_OFF_TARGET;
-					return_val = true;
-				}
-				break;
+		switch (m_target_state.update(m_location_working, dist,
+									m_target_destdata.get_slop())) {
+			case TargetStateMachine.TRANSITION_NONE:
+				return false;
 
-			case STATE_FOUND_OFF_TARGET:
-				// User may have gotten to the target again.
-				if (is_on_target(m_position, m_target_destdata.m_loc,
-								m_target_destdata.get_slop()) == true) {
-					Log.d(TAG, "Changing from found_off_target to found_on_target");
-					setup_location_discovered();
-					m_display_state = STATE_FOUND_ON_TARGET;
-				}
+			case TargetStateMachine.TRANSITION_STARTED:
+				Log.d(TAG, "Moved from STATE_WAITING_FOR_LOCATION to STATE_MOVING_TO_TARGET.");
 				break;
 
-			default:
-				Log.e(TAG, "Illegal state in update_ui()!");
+			case TargetStateMachine.TRANSITION_DISCOVERED:
+				Log.d(TAG, "Changing from moving_to_target to found_on_target");
+				m_target_destdata.set_found(true);		// saved by the DiscoveryStore
+				m_journal.log_discovery(m_target_destdata.get_index(), m_position);
+				setup_location_discovered();
 				break;
 
-		} // switch (m_display_state)
+			case TargetStateMachine.TRANSITION_LEFT:
+				Log.d(TAG, "Changing from found_on_target to found_off_target");
+				setup_moving_to_target();
+				break;
 
-		return return_val;
-	} // check_state()
+			case TargetStateMachine.TRANSITION_RETURNED:
+				Log.d(TAG, "Changing from found_off_target to found_on_target");
+				setup_location_discovered();
+				break;
 
+			case TargetStateMachine.TRANSITION_FORCED:
+				setup_location_discovered();
+				m_current_discovered = true;
+				break;
 
-	/*******************
-	 * Are these two coords close enough to be considered
-	 * the same place.
-	 */
-	private boolean is_on_target (Location a, Location b, float slop) {
-		if (a.distanceTo(b) <= slop) {
-			return true;
 		}
-		return false;
-	}
+		return true;
+	} // check_state()
 
 
 	/*******************
@@ -678,9 +1299,10 @@ public class MainActivity extends ActionBarActivity
 	 *
 	 * Side Effects:
 	 * 	m_location_mgr				Started
+	 * 	m_location_scheduler		Made (not started)
 	 * 	m_can_detect_position		Set
 	 *
-	 *  m_sensor_mgr					Started
+	 *  m_heading_provider			Set
 	 *  m_can_detect_magnetic		Set
 	 */
 	private void test_sensors() {
@@ -694,11 +1316,11 @@ public class MainActivity extends ActionBarActivity
 		//
 
 		// Test to see if this device detects magnetic fields.
-		Log.d(TAG, "About to get a sensor manager...");
-		m_sensor_mgr = (SensorManager) getSystemService(SENSOR_SERVICE);
+		Log.d(TAG, "About to get a heading provider...");
+		m_heading_provider = HeadingProvider.get_instance(this);
 		Log.d(TAG, "Got it!");
 
-		if (m_sensor_mgr.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR) == null) {
+		if (m_heading_provider.has_sensors() == false) {
 			// No magnetic detection possible on this device
 //			m_heading_tv.setText(R.string.no_mag_sensor_msg);
 			m_can_detect_magnetic = false;
@@ -726,6 +1348,8 @@ public class MainActivity extends ActionBarActivity
 			Toast.makeText(this, "This device does not support location detecting. Sorry.", Toast.LENGTH_LONG).show();
 			return;
 		}
+		m_location_scheduler = new LocationUpdateScheduler(m_location_mgr,
+										LocationManager.GPS_PROVIDER, this);
 
 		try {
 			m_can_detect_position = m_location_mgr.
@@ -760,24 +1384,23 @@ public class MainActivity extends ActionBarActivity
 	 * The general form for updating the UI.  Simply a stub before
 	 * determining if we're showing the hidden or discovered ui.
 	 *
+	 * The distance and bearing come from the snapshot made by
+	 * update_snapshot(), so this is cheap enough for every frame.
+	 *
 	 * @param heading	The direction the phone is actually pointing
 	 * 					to (in degrees, of course).  So if the top of
 	 * 					the phone is pointing East, this number is 90.
-	 *
-	 * @param current_loc	The current coords of this device.
-	 *
-	 * @param target_loc		The coords of our target.
 	 */
-	private void update_ui (float heading,
-							Location current_loc,
-							Location target_loc) {
+	private void update_ui (float heading) {
+		long start = Metrics.begin(Metrics.STAGE_UI);
 		if (m_current_discovered) {
-			update_discovered_ui (heading, current_loc, target_loc);
+			update_discovered_ui (heading);
 		}
 		else {
-			update_hidden_ui(heading, current_loc, target_loc);
+			update_hidden_ui(heading);
 		}
-	} // update_ui (heading, current_loc, target_loc)
+		Metrics.end(Metrics.STAGE_UI, start);
+	} // update_ui (heading)
 
 
 	/***************************
@@ -792,17 +1415,14 @@ public class MainActivity extends ActionBarActivity
 	 * 		Warmer/Colder message
 	 * 		Any state change (are we on target, etc.)
 	 *
+	 * The distance and bearing come from the snapshot made by
+	 * update_snapshot(), so this is cheap enough for every frame.
+	 *
 	 * @param heading	The direction the phone is actually pointing
 	 * 					to (in degrees, of course).  So if the top of
 	 * 					the phone is pointing East, this number is 90.
-	 *
-	 * @param current_loc	The current coords of this device.
-	 *
-	 * @param target_loc		The coords of our target.
 	 */
-	private void update_hidden_ui (float heading,
-								Location current_loc,
-								Location target_loc) {
+	private void update_hidden_ui (float heading) {
 		// Strategy:
 		//	- calculate all our variables
 		//	- update the compass
@@ -811,7 +1431,7 @@ public class MainActivity extends ActionBarActivity
 
 		// Calculate the distance we are to the target and whether
 		// we are "on target".
-		float dist = current_loc.distanceTo(target_loc);
+		float dist = m_target_distance;
 
 		// Calculate our bearing.  After finding the absolute
 		// direction, subtract the compass_direction to get
@@ -819,25 +1439,25 @@ public class MainActivity extends ActionBarActivity
 		// the device.
 		//	Note that when we're on target, this won't be used
 		//	(it could fluctuate wildly).
-		float bearing = current_loc.bearingTo(target_loc);
+		float bearing = m_target_bearing;
 		bearing -= heading;
 
 		// Always update our compass.
 		animate_compass (heading);
 
-		switch (m_display_state) {
-			case STATE_WAITING_FOR_INPUT:
+		switch (m_target_state.get_state()) {
+			case TargetStateMachine.STATE_WAITING_FOR_INPUT:
 				// todo
 				//	Might give an update on the status?
 				break;
 
-			case STATE_SEARCHING:
-			case STATE_FOUND_OFF_TARGET:
+			case TargetStateMachine.STATE_SEARCHING:
+			case TargetStateMachine.STATE_FOUND_OFF_TARGET:
 				display_distance (dist);
 				animate_direction(bearing);
 				break;
 
-			case STATE_FOUND_ON_TARGET:
+			case TargetStateMachine.STATE_FOUND_ON_TARGET:
 				Log.e(TAG, "Encountered the STATE_FOUND_ON_TARGET in update_hidden_ui()!");
 				break;
 
@@ -846,7 +1466,7 @@ public class MainActivity extends ActionBarActivity
 				break;
 		}
 
-	} // update_hidden_ui (compass_dir, current_loc, target_loc)
+	} // update_hidden_ui (heading)
 
 
 	/***************************
@@ -860,27 +1480,24 @@ public class MainActivity extends ActionBarActivity
 	 * 		Warmer/Colder message
 	 * 		Any state change (are we on target, etc.)
 	 *
+	 * The distance and bearing come from the snapshot made by
+	 * update_snapshot(), so this is cheap enough for every frame.
+	 *
 	 * @param heading	The direction the phone is actually pointing
 	 * 					to (in degrees, of course).  So if the top of
 	 * 					the phone is pointing East, this number is 90.
-	 *
-	 * @param current_loc	The current coords of this device.
-	 *
-	 * @param target_loc		The coords of our target.
 	 */
-	private void update_discovered_ui (float heading,
-									Location current_loc,
-									Location target_loc) {
+	private void update_discovered_ui (float heading) {
 		// Strategy:
 		//	- calculate all our variables
 		//	- update the compass
 		//	- depending on the state, update the arrow
 
 		// Distance form Position to Target.
-		float dist = current_loc.distanceTo(target_loc);
+		float dist = m_target_distance;
 
 		// Calculate our bearing.  Not used when "on target".
-		float bearing = current_loc.bearingTo(target_loc);
+		float bearing = m_target_bearing;
 		bearing -= heading;
 
 		// Always update our compass.
@@ -890,79 +1507,139 @@ public class MainActivity extends ActionBarActivity
 
 
 
-	} // update_discovered_ui (heading, current_loc, target_loc)
+	} // update_discovered_ui (heading)
 
 
 	/***************************
-	 * Sets the current layout to the DISCOVERED layout.
-	 * Then all the appropriate widgets are initialized.
+	 * Works out the distance and bearing from m_position to the
+	 * current target and saves them for the UI to use.  Call this
+	 * when we get a new fix.
+	 *
+	 * Also lets the location scheduler know how far away we are,
+	 * so it can speed up or slow down the fixes.
+	 *
+	 * Side Effects:
+	 * 	m_target_distance, m_target_bearing, m_snapshot_destdata
+	 */
+	private void update_snapshot() {
+		m_target_distance = compute_geo(m_position_point, m_target_destdata.m_loc);
+		m_target_bearing = m_geo.get_bearing();
+		m_snapshot_destdata = m_target_destdata;
+
+		// (Until there's a real fix, m_position is meaningless.)
+		if ((m_location_scheduler != null) && m_location_working) {
+			HotColdBands bands = m_target_destdata.get_hotcold().get_bands();
+			m_band_tracker.set_bands(bands);
+			m_band_tracker.update(m_target_distance);
+
+			float speed = m_position.hasSpeed() ? m_position.getSpeed() : 0f;
+			if (m_checking_allocations) {
+				// Decide, but don't re-register.
+				LocationUpdateScheduler.choose_tier(bands, m_band_tracker.get_band(),
+													m_target_distance, speed);
+				return;
+			}
+			m_location_scheduler.update(bands, m_band_tracker.get_band(),
+										m_target_distance, speed);
+		}
+	} // update_snapshot()
+
+
+	/***************************
+	 * Runs m_geo for the given locations.  Afterwards the bearing
+	 * is in m_geo.get_bearing().
+	 *
+	 * @return	The distance from current_loc to target_loc (meters).
+	 */
+	private float compute_geo (GeoPoint current_loc, GeoPoint target_loc) {
+		m_geo.set_target(target_loc.get_latitude(), target_loc.get_longitude(),
+						m_target_destdata.get_slop());
+		return m_geo.compute(current_loc.get_latitude(), current_loc.get_longitude());
+	} // compute_geo (current_loc, target_loc)
+
+
+	/***************************
+	 * Shows the DISCOVERED screen (inflated the first time only)
+	 * and fills it in for the target.
 	 *
 	 * preconditions:
 	 * 	m_currently_displayed_destdata	Appropriately set.
 	 *
 	 */
 	private void display_discovered_layout() {
-		setContentView(R.layout.main_discovered);
+		ScreenController.DiscoveredScreen screen = m_screens.show_discovered();
 		deactivate_all_widgets();
 
-		// todo
-		//	Load up the widgets for this display
+		m_title_tv = screen.m_title_tv;
+		m_prev_butt = screen.m_prev_butt;
+		m_next_butt = screen.m_next_butt;
+
+		m_title_tv.setText(m_target_destdata.get_title());
+		screen.m_subtitle_tv.setText(m_target_destdata.get_subtitle());
 
+		if (m_native_stories != null) {
+			screen.m_story_fl.setVisibility(View.GONE);
+			screen.m_story_sv.setVisibility(View.VISIBLE);
+			m_native_stories.render(m_currently_displayed_destdata, screen.m_story_tv);
+		}
+		else {
+			m_story_renderer.show(m_currently_displayed_destdata, screen.m_story_fl);
+		}
 	} // display_discovered_layout()
 
 
 	/***************************
-	 * Sets the current layout to the HIDDEN layout.
-	 * Then all the appropriate widgets are initialized.
+	 * Shows the HIDDEN screen (inflated the first time only) and
+	 * fills it in for the target.
 	 *
 	 * preconditions:
 	 * 	m_currently_displayed_destdata	Appropriately set.
 	 *
 	 */
 	private void display_hidden_layout() {
-		setContentView(R.layout.main_hidden);
+		ScreenController.HiddenScreen screen = m_screens.show_hidden();
 		deactivate_all_widgets();
 
-		// Load up our widgets
-		m_title_tv = (TextView) findViewById(R.id.top_tv);
-		m_main_msg_title_tv = (TextView) findViewById(R.id.main_msg_title_tv);
-		m_main_msg_subtitle_tv = (TextView) findViewById(R.id.main_msg_details_tv);
-//		m_scroll_tv = (TextView) findViewById(R.id.scroll_tv);
-
-//		m_scrolling_ll = (LinearLayout) findViewById(R.id.scroller_ll);
-
-		m_compass_ring_iv = (ImageView) findViewById(R.id.compass_iv);
-		m_direction_arrow_iv = (ImageView) findViewById(R.id.direction_iv);
-		m_on_target_iv = (ImageView) findViewById(R.id.on_target_iv);
+		// Point our widgets at this screen's (the listeners were set
+		// when it was inflated).
+		m_title_tv = screen.m_title_tv;
+		m_main_msg_title_tv = screen.m_main_msg_title_tv;
+		m_main_msg_subtitle_tv = screen.m_main_msg_subtitle_tv;
+		m_debug_tv = screen.m_debug_tv;
+		m_nearby_tv = screen.m_nearby_tv;
+		m_compass_view = screen.m_compass_view;
 
-		m_prev_butt = (Button) findViewById(R.id.prev_butt);
-		m_next_butt = (Button) findViewById(R.id.next_butt);
-		m_test_butt = (Button) findViewById(R.id.test_butt);
-
-		// Set the button listeners
-		m_prev_butt.setOnClickListener(this);
-		m_next_butt.setOnClickListener(this);
-		m_test_butt.setOnClickListener(this);
+		m_prev_butt = screen.m_prev_butt;
+		m_next_butt = screen.m_next_butt;
+		m_test_butt = screen.m_test_butt;
+		forget_shown_distance();
 
 		// Fill in the title for this Activity (the Hint for now).
-		m_title_tv.setText(m_target_destdata.m_hint);
-	} // display_discovered_layout()
+		m_title_tv.setText(m_target_destdata.get_hint());
+
+		// The target may have been one of the nearby ones.
+		m_shown_nearby_count = NOTHING_NEARBY;
+		if (m_location_working) {
+			update_nearby();
+		}
+	} // display_hidden_layout()
 
 
 	/***************************
-	 * Turns off all the widgets and sets them to null.  This is
-	 * to prevent accidental usage of a widget that is not active
-	 * in the current layout (because this Activity uses two different
-	 * layouts).
+	 * Sets all the widgets to null.  This is to prevent accidental
+	 * usage of a widget that is not on the screen that's showing
+	 * (because this Activity uses two different layouts).  Nothing
+	 * is thrown away; the screens keep their widgets.
 	 */
 	private void deactivate_all_widgets() {
 		m_title_tv = null;
 		m_main_msg_title_tv = null;
+		m_main_msg_subtitle_tv = null;
+		m_debug_tv = null;
+		m_nearby_tv = null;
 //		m_scroll_tv = null;
 //		m_scrolling_ll = null;
-		m_compass_ring_iv = null;
-		m_direction_arrow_iv = null;
-		m_on_target_iv = null;
+		m_compass_view = null;
 		m_prev_butt = null;
 		m_next_butt = null;
 		m_test_butt = null;
@@ -982,9 +1659,12 @@ public class MainActivity extends ActionBarActivity
 	 * 	various widgets changed
 	 */
 	private void setup_location_discovered() {
-		m_direction_arrow_iv.setVisibility(View.INVISIBLE);
-		m_on_target_iv.setVisibility(View.VISIBLE);
+		if (m_compass_view == null) {
+			return;		// The discovered layout doesn't have these.
+		}
+		m_compass_view.set_on_target(true);
 		m_main_msg_title_tv.setText(R.string.on_target);
+		forget_shown_distance();
 	} // setup_on_target()
 
 
@@ -1002,8 +1682,10 @@ public class MainActivity extends ActionBarActivity
 	 * 	target.
 	 */
 	private void setup_moving_to_target() {
-		m_direction_arrow_iv.setVisibility(View.VISIBLE);
-		m_on_target_iv.setVisibility(View.INVISIBLE);
+		if (m_compass_view == null) {
+			return;
+		}
+		m_compass_view.set_on_target(false);
 	} // setup_moving_to_target()
 
 
@@ -1017,15 +1699,118 @@ public class MainActivity extends ActionBarActivity
 	 * @param dist	The current distance we are from our target.
 	 */
 	private void display_distance (float dist) {
-		String str = String.format("%.1f meters", dist);
-		m_main_msg_subtitle_tv.setText(str);
-//		m_scroll_tv.setText(str);
+		// This happens every frame, so nothing is allocated, and the
+		// TextViews are only touched if what they show would change.
+		long shown = TextBuffer.round(dist, DISTANCE_DECIMALS);
+		if (shown != m_shown_distance) {
+			m_shown_distance = shown;
+			m_distance_text.clear().append_decimal(dist, DISTANCE_DECIMALS)
+				.append(DISTANCE_SUFFIX);
+			m_main_msg_subtitle_tv.setText(m_distance_text.get_chars(), 0,
+											m_distance_text.length());
+//			m_scroll_tv.setText(str);
+		}
 
-		String hot_cold_str = m_target_destdata.m_hotcold.get_msg(this, m_position);
-		m_main_msg_title_tv.setText(hot_cold_str);
+		int band = m_band_tracker.get_band();
+		if (band == BandTracker.BAND_UNKNOWN) {
+			band = m_target_destdata.get_hotcold().get_band(dist);
+		}
+		if (band != m_shown_band) {
+			m_shown_band = band;
+			m_main_msg_title_tv.setText(BandMessages.get(this, band));
+		}
 	} // display_distance (dist)
 
 
+	/***************************
+	 * Makes display_distance() set the text next time no matter
+	 * what (because something else wrote over it, or it's a
+	 * different screen or target).
+	 */
+	private void forget_shown_distance() {
+		m_shown_distance = NOTHING_SHOWN;
+		m_shown_band = BandTracker.BAND_UNKNOWN;
+	}
+
+
+	/***************************
+	 * Runs the per-fix path (handle_fix() and on_frame()) through
+	 * ALLOC_CHECK_FIXES made-up fixes, counting allocations on this
+	 * thread.  There shouldn't be any; if there are, it's logged as
+	 * an error.  This is a debugging check, done when the test
+	 * button is long-pressed.  (The benchmarks build has the
+	 * failing version of this: FixAllocationCheck.)
+	 *
+	 * The fixes walk straight out from the target across the outer
+	 * edge of ALLOC_CHECK_BAND, so the distance shown changes on
+	 * every one and the band changes too.  The walk is done once
+	 * before counting (so anything lazy is done), and afterwards
+	 * the real position is put back.
+	 *
+	 * Needs a real fix first, and we mustn't be on the target (the
+	 * walk would take us off it, which changes screens).
+	 *
+	 * @return	True iff nothing was allocated (or it couldn't be
+	 * 			checked).
+	 */
+	private boolean check_fix_allocations() {
+		if ((m_location_working == false) || (m_position == null)) {
+			Log.w(TAG, "check_fix_allocations(): no fix yet, so not checked.");
+			return true;
+		}
+		if ((m_target_state.get_state() == TargetStateMachine.STATE_FOUND_ON_TARGET) ||
+			m_target_state.is_forced()) {
+			Log.w(TAG, "check_fix_allocations(): on the target, so not checked.");
+			return true;
+		}
+
+		// Due south of the target, so the distance is just the
+		// difference in latitude.
+		float edge = m_target_destdata.get_hotcold().get_bands().get_outer_edge(ALLOC_CHECK_BAND);
+		Location[] walk = new Location[ALLOC_CHECK_FIXES];
+		for (int i = 0; i < ALLOC_CHECK_FIXES; i++) {
+			float t = (float) i / (ALLOC_CHECK_FIXES - 1);
+			double dist = edge * (1f - ALLOC_CHECK_SPREAD + (2f * ALLOC_CHECK_SPREAD * t));
+			walk[i] = new Location(m_position);
+			walk[i].setLatitude(m_target_destdata.m_loc.get_latitude()
+								- (dist / GeoMath.METERS_PER_DEGREE));
+			walk[i].setLongitude(m_target_destdata.m_loc.get_longitude());
+		}
+
+		Location real_position = m_position;
+		m_checking_allocations = true;
+		Metrics.set_paused(true);
+
+		for (int i = 0; i < ALLOC_CHECK_FIXES; i++) {
+			handle_fix(walk[i]);
+			on_frame(0);
+		}
+
+		Debug.resetThreadAllocCount();
+		Debug.startAllocCounting();
+		for (int i = 0; i < ALLOC_CHECK_FIXES; i++) {
+			handle_fix(walk[i]);
+			on_frame(0);
+		}
+		Debug.stopAllocCounting();
+		int count = Debug.getThreadAllocCount();
+
+		// Back to where we really are.
+		show_fix(real_position);
+		on_frame(0);
+		Metrics.set_paused(false);
+		m_checking_allocations = false;
+
+		if (count > 0) {
+			Log.e(TAG, "check_fix_allocations(): FAILED, " + count + " allocations in "
+					+ ALLOC_CHECK_FIXES + " fixes");
+			return false;
+		}
+		Log.i(TAG, "check_fix_allocations(): passed (" + ALLOC_CHECK_FIXES + " fixes)");
+		return true;
+	} // check_fix_allocations()
+
+
 	/***************************
 	 * Displays all the information we have about a LocationData.
 	 * Generally called once the user gets on-target, this inflates
@@ -1042,19 +1827,19 @@ public class MainActivity extends ActionBarActivity
 //		m_scroll_tv.setVisibility(View.GONE);
 //
 //		TextView title = (TextView) destdata_view.findViewById(R.id.location_title_tv);
-//		title.setText(loc.m_title);
+//		title.setText(loc.get_title());
 //
 //		TextView lat_long = (TextView) destdata_view.findViewById(R.id.location_lat_long_tv);
 //		lat_long.setText(loc.get_latitude_str() + ", " + loc.get_longitude_str());
 //
 //		TextView loc_addr = (TextView) destdata_view.findViewById(R.id.location_address_tv);
-//		loc_addr.setText(loc.m_address);
+//		loc_addr.setText(loc.get_address());
 //
 //		TextView subtitle = (TextView) destdata_view.findViewById(R.id.location_sub_title_tv);
-//		subtitle.setText(loc.m_subtitle);
+//		subtitle.setText(loc.get_subtitle());
 //
 //		TextView story = (TextView) destdata_view.findViewById(R.id.location_story_tv);
-//		story.setText(loc.m_story);
+//		story.setText(loc.get_story());
 //
 //		//		todo: images
 //
@@ -1063,65 +1848,38 @@ public class MainActivity extends ActionBarActivity
 
 
 	/***************************
-	 * Causes the compass ring to rotate with an animation
-	 * based on the given angle.  The old angle is remembered
-	 * and used as the base of the animation.
+	 * Turns the compass ring to match the given heading.  The
+	 * CompassView takes care of gliding there (the short way
+	 * around).
 	 *
 	 * @param heading	The angle of direction that the
 	 *                  phone is turned towards.
 	 *<p>
 	 * side effects:
-	 *	m_current_degree		Modified to remember the angle
-	 *                  		for next time.
+	 *	m_compass_angle		Modified to remember the angle.
 	 */
 	private void animate_compass (float heading) {
-		// create a rotation animation (reverse turn degree degrees)
-		RotateAnimation ra = new RotateAnimation(
-				m_compass_angle,
-				-heading,
-				Animation.RELATIVE_TO_SELF, 0.5f,
-				Animation.RELATIVE_TO_SELF,
-				0.5f);
-
-		// how long the animation will take place
-//		ra.setDuration(210);
-		ra.setDuration(0);		// Eliminates the weirdness when going past 0
-
-		// set the animation after the end of the reservation status
-		ra.setFillAfter(true);
-
-		// Start the animation
-		m_compass_ring_iv.startAnimation(ra);
 		m_compass_angle = -heading;
+		if (m_compass_view == null) {
+			return;		// The discovered layout doesn't have one (yet).
+		}
+		m_compass_view.set_heading(heading);
 	} // animate_compass (angle)
 
 
 	/***************************
-	 * Causes the direction arrow to rotate (with animation)
-	 * based on the given angle.  The old angle is remembered
-	 * and used as the base for the animation.
-	 * @param bearing
+	 * Turns the direction arrow to the given angle.
+	 *
+	 * @param bearing	Where the arrow should point, in degrees
+	 * 					clockwise from the top of the phone.
 	 */
 	private void animate_direction (float bearing) {
 //		Log.d(TAG, "animate_direction ( " + bearing + " )");
-
-		// create a rotation animation (reverse turn degree degrees)
-		RotateAnimation ra = new RotateAnimation(
-				m_bearing,
-				bearing,
-				Animation.RELATIVE_TO_SELF, 0.5f,
-				Animation.RELATIVE_TO_SELF,
-				0.5f);
-
-		// how long the animation will take place
-		ra.setDuration(0);		// Eliminates the weirdness when going past 0
-
-		// set the animation after the end of the reservation status
-		ra.setFillAfter(true);
-
-		// Start the animation
-		m_direction_arrow_iv.startAnimation(ra);
 		m_bearing = bearing;
+		if (m_compass_view == null) {
+			return;
+		}
+		m_compass_view.set_arrow_angle(bearing);
 	} // animate_direction (bearing)
 
 }
@@ -0,0 +1,330 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.os.Trace;
+
+
+/**
+ * Timing and counting for the sensor/location/UI pipeline.
+ *<p>
+ * Each stage (STAGE_*) is wrapped in begin() and end(), which make a
+ * systrace section (on JB MR2 and up) and record how long it took
+ * in that stage's LatencyHistogram.  There are also counters
+ * (COUNT_*), a couple of other latencies (HIST_FIRST_FIX and
+ * HIST_FIX_TO_RENDER), and an EventRing of the latest fixes, state
+ * changes, and such.  dump() writes it all to a file.
+ *<p>
+ * All of it is only there when ENABLED (debug builds).  Otherwise
+ * every method returns right away (the compiler drops their bodies,
+ * since ENABLED is a constant), so leaving the calls in costs next
+ * to nothing.
+ *<p>
+ * Everything here is fine to call from any thread.
+ */
+public class Metrics {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** Turns it all on or off. */
+	public final static boolean ENABLED = BuildConfig.DEBUG;
+
+	/**
+	 * The stages we time.  Each has its own histogram (with the
+	 * same number).
+	 */
+	public final static int
+		STAGE_SENSOR = 0,
+		STAGE_FIX = 1,
+		STAGE_STATE = 2,
+		STAGE_UI = 3;
+
+	/** Also the systrace section names. */
+	private final static String[] STAGE_NAMES = {
+		"onSensorChanged",
+		"onLocationChanged",
+		"update_display_state",
+		"update_ui"
+	};
+
+	/** The other histograms (all in microseconds). */
+	public final static int
+		HIST_FIRST_FIX = 4,			// From asking for fixes to getting one
+		HIST_FIX_TO_RENDER = 5;		// From a fix to the frame that shows it
+
+	private final static String[] HIST_NAMES = {
+		STAGE_NAMES[0], STAGE_NAMES[1], STAGE_NAMES[2], STAGE_NAMES[3],
+		"time_to_first_fix",
+		"fix_to_render"
+	};
+
+	/** The counters */
+	public final static int
+		COUNT_SENSOR_EVENTS = 0,
+		COUNT_HEADINGS = 1,
+		COUNT_FIXES = 2,
+		COUNT_FRAMES = 3,
+		COUNT_STATE_CHANGES = 4;
+
+	private final static String[] COUNT_NAMES = {
+		"sensor_events",
+		"headings",
+		"fixes",
+		"frames",
+		"state_changes"
+	};
+
+	/** The kinds of events in the ring (the value is in parentheses). */
+	public final static int
+		EVENT_FIX = 0,				// (accuracy, cm)
+		EVENT_FIRST_FIX = 1,		// (time to first fix, us)
+		EVENT_STATE = 2,			// (the new display state)
+		EVENT_BAND = 3,				// (the new band)
+		EVENT_TARGET = 4;			// (the new target's index)
+
+	private final static String[] EVENT_NAMES = {
+		"fix",
+		"first_fix",
+		"state",
+		"band",
+		"target"
+	};
+
+	private final static int EVENT_CAPACITY = 1024;
+
+	private final static String DUMP_PREFIX = "metrics-";
+	private final static String DUMP_SUFFIX = ".txt";
+
+
+	//-------------------------
+	//	Classes
+	//-------------------------
+
+	/**
+	 * Keeps android.os.Trace out of the way of older phones.
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+	private static class Tracer {
+		static void begin (String name) {
+			Trace.beginSection(name);
+		}
+		static void end() {
+			Trace.endSection();
+		}
+	} // class Tracer
+
+
+	//-------------------------
+	//	Class Data
+	//-------------------------
+
+	private final static boolean s_can_trace =
+			Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+	private final static LatencyHistogram[] s_histograms =
+			new LatencyHistogram[ENABLED ? HIST_NAMES.length : 0];
+
+	private final static AtomicLongArray s_counters =
+			new AtomicLongArray(ENABLED ? COUNT_NAMES.length : 0);
+
+	private final static EventRing s_events = new EventRing(ENABLED ? EVENT_CAPACITY : 2);
+
+	/** While true, nothing is recorded (see set_paused()). */
+	private static volatile boolean s_paused = false;
+
+	/** When the counting started (System.nanoTime()), for the rates. */
+	private static volatile long s_start_nanos = System.nanoTime();
+
+	static {
+		for (int i = 0; i < s_histograms.length; i++) {
+			s_histograms[i] = new LatencyHistogram();
+		}
+	}
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Starts timing a stage.
+	 *
+	 * @param stage		One of the STAGE_*.
+	 *
+	 * @return	The start time, for end().
+	 */
+	public static long begin (int stage) {
+		if ((ENABLED == false) || s_paused) {
+			return 0;
+		}
+		if (s_can_trace) {
+			Tracer.begin(STAGE_NAMES[stage]);
+		}
+		return System.nanoTime();
+	} // begin (stage)
+
+
+	/***************************
+	 * Finishes timing a stage.  Must be on the same thread as its
+	 * begin(), and stages must nest.
+	 *
+	 * @param start		What begin() gave.  0 (paused) does nothing.
+	 */
+	public static void end (int stage, long start) {
+		if ((ENABLED == false) || (start == 0)) {
+			return;
+		}
+		s_histograms[stage].record((System.nanoTime() - start) / 1000);
+		if (s_can_trace) {
+			Tracer.end();
+		}
+	} // end (stage, start)
+
+
+	/***************************
+	 * @return	The time now (System.nanoTime()), or 0 if we're not
+	 * 			enabled.  For record_since().
+	 */
+	public static long now() {
+		if (ENABLED == false) {
+			return 0;
+		}
+		return System.nanoTime();
+	}
+
+
+	/***************************
+	 * Records how long it's been since start in a histogram.
+	 *
+	 * @param hist		One of the HIST_* (or STAGE_*).
+	 *
+	 * @param start		From now().
+	 *
+	 * @return	How long that was (us), 0 if we're not enabled.
+	 */
+	public static long record_since (int hist, long start) {
+		if ((ENABLED == false) || s_paused) {
+			return 0;
+		}
+		long micros = (System.nanoTime() - start) / 1000;
+		s_histograms[hist].record(micros);
+		return micros;
+	} // record_since (hist, start)
+
+
+	/***************************
+	 * Adds one to a counter (COUNT_*).
+	 */
+	public static void count (int counter) {
+		if ((ENABLED == false) || s_paused) {
+			return;
+		}
+		s_counters.incrementAndGet(counter);
+	}
+
+
+	/***************************
+	 * Adds to the event ring.
+	 *
+	 * @param type	One of the EVENT_*.
+	 */
+	public static void event (int type, long value) {
+		if ((ENABLED == false) || s_paused) {
+			return;
+		}
+		s_events.add(type, value, System.nanoTime());
+	}
+
+
+	/***************************
+	 * Stops (or restarts) recording, for when what's happening
+	 * isn't real (see MainActivity.check_fix_allocations()).  A
+	 * stage that was begun while paused is ignored by end(), so
+	 * only change this between stages.
+	 */
+	public static void set_paused (boolean paused) {
+		s_paused = paused;
+	}
+
+
+	/***************************
+	 * Starts all the counting over.
+	 */
+	public static void reset() {
+		if (ENABLED == false) {
+			return;
+		}
+		for (int i = 0; i < s_histograms.length; i++) {
+			s_histograms[i].reset();
+		}
+		for (int i = 0; i < s_counters.length(); i++) {
+			s_counters.set(i, 0);
+		}
+		s_events.clear();
+		s_start_nanos = System.nanoTime();
+	} // reset()
+
+
+	/***************************
+	 * Writes everything to a new file in our files directory:
+	 * the counters (and their rates), each histogram's percentiles,
+	 * and the events in the ring (times are ms before the dump).
+	 * Takes a little while, so it's best not done on the UI thread.
+	 *
+	 * @return	The file, or null if we're not enabled.
+	 */
+	public static File dump (Context ctx) throws IOException {
+		if (ENABLED == false) {
+			return null;
+		}
+		final long now = System.nanoTime();
+		double seconds = (now - s_start_nanos) / 1e9;
+
+		File file = new File(ctx.getFilesDir(),
+							DUMP_PREFIX + System.currentTimeMillis() + DUMP_SUFFIX);
+		final PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.printf("# %.1f seconds%n", seconds);
+
+			out.println("# counter  count  per_second");
+			for (int i = 0; i < COUNT_NAMES.length; i++) {
+				long count = s_counters.get(i);
+				out.printf("%s  %d  %.2f%n", COUNT_NAMES[i], count,
+							(seconds > 0) ? (count / seconds) : 0.0);
+			}
+
+			out.println("# histogram (us)  count  mean  p50  p90  p99  max");
+			for (int i = 0; i < HIST_NAMES.length; i++) {
+				LatencyHistogram hist = s_histograms[i];
+				out.printf("%s  %d  %.1f  %d  %d  %d  %d%n", HIST_NAMES[i],
+							hist.get_count(), hist.get_mean(),
+							hist.get_percentile(50), hist.get_percentile(90),
+							hist.get_percentile(99), hist.get_max());
+			}
+
+			out.println("# event (of " + s_events.get_total() + ")  value  ms_ago");
+			s_events.read(new EventRing.EventVisitor() {
+				@Override
+				public void on_event (long seq, int type, long value, long time) {
+					String name = ((type >= 0) && (type < EVENT_NAMES.length))
+									? EVENT_NAMES[type] : Integer.toString(type);
+					out.printf("%d %s  %d  %.1f%n", seq, name, value, (now - time) / 1e6);
+				}
+			});
+		}
+		finally {
+			out.close();
+		}
+		return file;
+	} // dump (ctx)
+
+}
@@ -0,0 +1,446 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Typeface;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.v4.util.AtomicFile;
+import android.support.v4.util.LruCache;
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.method.LinkMovementMethod;
+import android.text.style.ImageSpan;
+import android.text.style.StyleSpan;
+import android.text.style.URLSpan;
+import android.util.Log;
+import android.widget.TextView;
+
+
+/**
+ * The light-weight way to show a story: the html is parsed once into
+ * a StorySpans and shown in a plain TextView.  No WebView at all, so
+ * it's the one to use on low-memory phones (see is_preferred()).
+ *<p>
+ * The StorySpans are kept in an LruCache (by destination) of at most
+ * CACHE_CHARS, and also saved to CACHE_FILENAME so they don't have
+ * to be parsed again next time.  The file is thrown out whenever the
+ * app is updated (the stories may have changed).
+ *<p>
+ * Images (in the assets or on the web) come through the
+ * ImagePipeline, so they're fetched and decoded in the background,
+ * downsampled to the TextView's width, and cached.  They show up in
+ * the TextView once they're in.
+ *<p>
+ * Use it from the UI thread.
+ */
+public class NativeStoryRenderer {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static String TAG = "NativeStoryRenderer";
+
+	/** In our cache directory */
+	public final static String CACHE_FILENAME = "story_spans.cache";
+
+	/** "SPAN" */
+	private final static int MAGIC = 0x5350414e;
+
+	private final static int VERSION = 1;
+
+	/** How big the in-memory cache can get (StorySpans.get_size()). */
+	private final static int CACHE_CHARS = 64 * 1024;
+
+	/** Where the stories (and their images) are in the assets */
+	private final static String ASSET_DIR = "locations/";
+
+	/** Wait this long for more stories to be parsed before saving (ms). */
+	private final static long SAVE_DELAY_MS = 1000;
+
+	/** Phones with this much memory per app (MB) or less use us. */
+	private final static int LOW_MEMORY_CLASS = 32;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final Context m_ctx;
+
+	private final DestinationSource m_source;
+
+	private final LruCache<Integer, StorySpans> m_cache =
+			new LruCache<Integer, StorySpans>(CACHE_CHARS) {
+		@Override
+		protected int sizeOf (Integer index, StorySpans spans) {
+			return spans.get_size();
+		}
+	};
+
+	private final AtomicFile m_file;
+
+	/** Identifies this build of the app; saved with the cache. */
+	private final long m_stamp;
+
+	/** Reads and parses stories, and saves the cache. */
+	private HandlerThread m_io_thread = null;
+	private Handler m_io_handler = null;
+
+	private boolean m_save_pending = false;
+
+	private final Runnable m_save_runnable = new Runnable() {
+		@Override
+		public void run() {
+			save();
+		}
+	};
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Should we use this instead of a StoryRenderer (WebViews)?
+	 *
+	 * @return	True on low-memory phones.
+	 */
+	public static boolean is_preferred (Context ctx) {
+		ActivityManager am = (ActivityManager) ctx.getSystemService(Context.ACTIVITY_SERVICE);
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			return is_low_ram(am);
+		}
+		return am.getMemoryClass() <= LOW_MEMORY_CLASS;
+	} // is_preferred (ctx)
+
+	/***************************/
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	private static boolean is_low_ram (ActivityManager am) {
+		return am.isLowRamDevice();
+	}
+
+
+	/***************************
+	 * Constructor.  Reads the saved cache.
+	 */
+	public NativeStoryRenderer (Context ctx, DestinationSource source) {
+		m_ctx = ctx;
+		m_source = source;
+		m_file = new AtomicFile(new File(ctx.getCacheDir(), CACHE_FILENAME));
+		m_stamp = new File(ctx.getApplicationInfo().sourceDir).lastModified();
+		load();
+	} // constructor
+
+
+	/***************************
+	 * Parses a story in the background (if it isn't already), so
+	 * render() won't have to.
+	 */
+	public void preload (final int index) {
+		if (m_cache.get(index) != null) {
+			return;
+		}
+		get_io_handler().post(new Runnable() {
+			@Override
+			public void run() {
+				get_spans(index);
+			}
+		});
+	} // preload (index)
+
+
+	/***************************
+	 * Puts a story into a TextView.
+	 *
+	 * @param index	Which destination.
+	 */
+	public void render (int index, TextView tv) {
+		StorySpans spans = get_spans(index);
+		tv.setTag(spans);		// (so late images know if it's still this story)
+		if (spans == null) {
+			tv.setText("");
+			return;
+		}
+		tv.setText(to_spanned(spans), TextView.BufferType.SPANNABLE);
+		tv.setMovementMethod(LinkMovementMethod.getInstance());
+		load_images(spans, tv);
+	} // render (index, tv)
+
+
+	/***************************
+	 * Gets rid of the io thread (after it's saved anything it
+	 * needs to).
+	 */
+	public void destroy() {
+		if (m_io_thread != null) {
+			m_io_handler.removeCallbacks(m_save_runnable);
+			m_io_handler.post(m_save_runnable);
+			m_io_handler.post(new Runnable() {
+				@Override
+				public void run() {
+					m_io_thread.quit();
+				}
+			});
+		}
+	} // destroy()
+
+
+	/***************************
+	 * Gets the StorySpans for a destination, parsing it if it's
+	 * not in the cache.
+	 *
+	 * @return	Null if the story couldn't be read.
+	 */
+	private StorySpans get_spans (int index) {
+		StorySpans spans = m_cache.get(index);
+		if (spans != null) {
+			return spans;
+		}
+
+		String filename = m_source.get_string(index, DestinationSource.FIELD_FILENAME);
+		if (filename == null) {
+			return null;
+		}
+		String html = StoryRenderer.read_asset(m_ctx, ASSET_DIR + filename);
+		if (html == null) {
+			return null;
+		}
+
+		long start = System.nanoTime();
+		spans = StorySpans.parse(html);
+		Log.d(TAG, "parsed story " + index + " in "
+				+ ((System.nanoTime() - start) / 1000) + " us");
+		m_cache.put(index, spans);
+		schedule_save();
+		return spans;
+	} // get_spans (index)
+
+
+	/***************************
+	 * Turns a StorySpans into something a TextView can show.
+	 */
+	private CharSequence to_spanned (StorySpans spans) {
+		SpannableString str = new SpannableString(spans.get_text());
+		for (int i = 0; i < spans.get_span_count(); i++) {
+			Object what = null;
+			switch (spans.get_span_type(i)) {
+				case StorySpans.SPAN_BOLD:
+					what = new StyleSpan(Typeface.BOLD);
+					break;
+				case StorySpans.SPAN_ITALIC:
+					what = new StyleSpan(Typeface.ITALIC);
+					break;
+				case StorySpans.SPAN_LINK:
+					what = new URLSpan(spans.get_span_arg(i));
+					break;
+				case StorySpans.SPAN_IMAGE:
+					break;		// (see load_images())
+			}
+			if ((what != null) && (spans.get_span_end(i) > spans.get_span_start(i))) {
+				str.setSpan(what, spans.get_span_start(i), spans.get_span_end(i),
+							Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+			}
+		}
+		return str;
+	} // to_spanned (spans)
+
+
+	/***************************
+	 * Starts loading the story's images.  Each one is put into the
+	 * TextView when it arrives (right away if it's already in
+	 * memory), as long as the TextView is still showing this story.
+	 */
+	private void load_images (final StorySpans spans, final TextView tv) {
+		final int width = get_image_width(tv);
+		for (int i = 0; i < spans.get_span_count(); i++) {
+			if (spans.get_span_type(i) != StorySpans.SPAN_IMAGE) {
+				continue;
+			}
+			final int start = spans.get_span_start(i);
+			final int end = spans.get_span_end(i);
+			// (Only the width matters, so the height is 1.)
+			ImagePipeline.get_instance(m_ctx).load(get_image_url(spans.get_span_arg(i)), width, 1,
+					new ImagePipeline.ImageListener() {
+				@Override
+				public void on_image_loaded (String url, Bitmap bm) {
+					if ((bm == null) || (tv.getTag() != spans)) {
+						return;		// No image, or a different story now.
+					}
+					((Spannable) tv.getText()).setSpan(make_image_span(bm, width),
+							start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+				}
+			});
+		}
+	} // load_images (spans, tv)
+
+
+	/***************************
+	 * @return	The ImagePipeline URL for an img src: the same if it's
+	 * 			on the web, otherwise it's in the story's directory
+	 * 			in the assets.
+	 */
+	private static String get_image_url (String src) {
+		if (src.indexOf("://") >= 0) {
+			return src;
+		}
+		return ImagePipeline.ASSET_PREFIX + ASSET_DIR + src;
+	} // get_image_url (src)
+
+
+	/***************************
+	 * @return	How wide (pixels) an image in the TextView can be.
+	 * 			If it hasn't been laid out yet, the screen's width.
+	 */
+	private int get_image_width (TextView tv) {
+		int width = tv.getWidth() - tv.getTotalPaddingLeft() - tv.getTotalPaddingRight();
+		if (width <= 0) {
+			width = m_ctx.getResources().getDisplayMetrics().widthPixels;
+		}
+		return width;
+	} // get_image_width (tv)
+
+
+	/***************************
+	 * Makes an ImageSpan for a Bitmap, shrunk (if need be) to fit
+	 * the given width.
+	 */
+	private ImageSpan make_image_span (Bitmap bm, int max_width) {
+		int width = bm.getWidth();
+		int height = bm.getHeight();
+		if (width > max_width) {
+			height = height * max_width / width;
+			width = max_width;
+		}
+		BitmapDrawable drawable = new BitmapDrawable(m_ctx.getResources(), bm);
+		drawable.setBounds(0, 0, width, height);
+		return new ImageSpan(drawable);
+	} // make_image_span (bm, max_width)
+
+
+	/***************************/
+	private synchronized Handler get_io_handler() {
+		if (m_io_handler == null) {
+			m_io_thread = new HandlerThread(TAG);
+			m_io_thread.start();
+			m_io_handler = new Handler(m_io_thread.getLooper());
+		}
+		return m_io_handler;
+	}
+
+	/***************************/
+	private void schedule_save() {
+		synchronized (this) {
+			if (m_save_pending) {
+				return;
+			}
+			m_save_pending = true;
+		}
+		get_io_handler().postDelayed(m_save_runnable, SAVE_DELAY_MS);
+	}
+
+
+	/***************************
+	 * Reads the saved StorySpans into the cache, unless they're
+	 * from a different build of the app.
+	 */
+	private void load() {
+		DataInputStream in;
+		try {
+			in = new DataInputStream(new BufferedInputStream(m_file.openRead()));
+		}
+		catch (FileNotFoundException e) {
+			return;
+		}
+
+		try {
+			if ((in.readInt() != MAGIC) || (in.readInt() != VERSION) ||
+				(in.readLong() != m_stamp)) {
+				Log.d(TAG, "Story cache is out of date.");
+				m_file.delete();
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				int index = in.readInt();
+				m_cache.put(index, StorySpans.read(in));
+			}
+			Log.d(TAG, "Read " + count + " stories from the cache.");
+		}
+		catch (IOException e) {
+			Log.e(TAG, "Unable to read the story cache, starting over.", e);
+			m_cache.evictAll();
+			m_file.delete();
+		}
+		finally {
+			close_quietly(in);
+		}
+	} // load()
+
+
+	/***************************
+	 * Writes the cache out.  Runs on the io thread.
+	 */
+	private void save() {
+		synchronized (this) {
+			if (m_save_pending == false) {
+				return;
+			}
+			m_save_pending = false;
+		}
+		Map<Integer, StorySpans> snapshot = m_cache.snapshot();
+
+		FileOutputStream fos = null;
+		try {
+			fos = m_file.startWrite();
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(m_stamp);
+			out.writeInt(snapshot.size());
+			for (Map.Entry<Integer, StorySpans> entry : snapshot.entrySet()) {
+				out.writeInt(entry.getKey());
+				entry.getValue().write(out);
+			}
+			out.flush();
+			m_file.finishWrite(fos);
+		}
+		catch (IOException e) {
+			Log.e(TAG, "Unable to write the story cache.", e);
+			if (fos != null) {
+				m_file.failWrite(fos);
+			}
+		}
+	} // save()
+
+
+	/***************************/
+	private static void close_quietly (Closeable c) {
+		if (c != null) {
+			try {
+				c.close();
+			}
+			catch (IOException e) {
+				// Nothing more to do.
+			}
+		}
+	}
+
+}
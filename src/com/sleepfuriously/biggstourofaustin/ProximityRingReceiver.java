@@ -0,0 +1,164 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.location.LocationManager;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+
+/**
+ * Lets the platform watch the hot/cold rings while we're in the
+ * background.  register_rings() sets up a LocationManager proximity
+ * alert on the outer edge of a few of the bands (RING_BANDS); when
+ * the user crosses one, this receiver gets woken up and posts a
+ * notification saying how warm they are now.
+ *<p>
+ * Only a few rings are used because every proximity alert keeps
+ * the location hardware busy.  In the foreground MainActivity does
+ * the tracking itself (see BandTracker) and these are removed.  They
+ * also expire after RING_EXPIRATION_MS, in case the app is never
+ * opened again to remove them.
+ *<p>
+ * The platform says "entered" right away for any ring we're already
+ * inside when it's registered.  That's not news, so which rings we
+ * were inside is saved (in RING_PREFS) and those first "entered"s
+ * don't make a notification.
+ */
+public class ProximityRingReceiver extends BroadcastReceiver {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static String TAG = "ProximityRingReceiver";
+
+	/** The action of our proximity alert Intents */
+	public final static String ACTION_RING_CROSSED =
+			"com.sleepfuriously.biggstourofaustin.RING_CROSSED";
+
+	/** Extra: which band's outer edge was crossed (HotColdBands.BAND_*) */
+	public final static String EXTRA_RING_BAND = "ring_band";
+
+	/** The bands whose outer edges get proximity alerts */
+	private final static int[] RING_BANDS = {
+		HotColdBands.BAND_HOT,
+		HotColdBands.BAND_WARM,
+		HotColdBands.BAND_COOL
+	};
+
+	/** There's only ever one of our notifications showing. */
+	private final static int NOTIFICATION_ID = 1;
+
+	/** How long the alerts last (ms) if nobody removes them. */
+	private final static long RING_EXPIRATION_MS = 4 * 60 * 60 * 1000L;
+
+	/** Where we remember which rings we're inside. */
+	private final static String RING_PREFS = "proximity_rings";
+	private final static String INSIDE_KEY_PREFIX = "inside_";
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Sets up proximity alerts around a target.  Any old ones are
+	 * replaced (they use the same PendingIntents).
+	 *
+	 * @param bands	The target's hot/cold bands (for the radii).
+	 *
+	 * @param current_band	The band we're in now (HotColdBands.BAND_*),
+	 * 						or BandTracker.BAND_UNKNOWN.
+	 */
+	public static void register_rings (Context ctx, LocationManager location_mgr,
+									double lat, double lon, HotColdBands bands,
+									int current_band) {
+		SharedPreferences.Editor editor =
+				ctx.getSharedPreferences(RING_PREFS, Context.MODE_PRIVATE).edit();
+		for (int band : RING_BANDS) {
+			boolean inside = (current_band >= 0) && (current_band <= band);
+			editor.putBoolean(INSIDE_KEY_PREFIX + band, inside);
+		}
+		editor.commit();	// (before the platform can fire any)
+
+		for (int band : RING_BANDS) {
+			location_mgr.addProximityAlert(lat, lon, bands.get_outer_edge(band),
+										RING_EXPIRATION_MS,
+										make_pending_intent(ctx, band));
+		}
+		Log.d(TAG, "Registered " + RING_BANDS.length + " proximity rings.");
+	} // register_rings (ctx, location_mgr, lat, lon, bands, current_band)
+
+
+	/***************************
+	 * Removes the alerts set up by register_rings().  Fine to call
+	 * even if there aren't any.
+	 */
+	public static void unregister_rings (Context ctx, LocationManager location_mgr) {
+		for (int band : RING_BANDS) {
+			PendingIntent pi = make_pending_intent(ctx, band);
+			location_mgr.removeProximityAlert(pi);
+			pi.cancel();
+		}
+	} // unregister_rings (ctx, location_mgr)
+
+
+	/***************************/
+	private static PendingIntent make_pending_intent (Context ctx, int band) {
+		Intent intent = new Intent(ctx, ProximityRingReceiver.class);
+		intent.setAction(ACTION_RING_CROSSED);
+		intent.putExtra(EXTRA_RING_BAND, band);
+		return PendingIntent.getBroadcast(ctx, band, intent,
+										PendingIntent.FLAG_UPDATE_CURRENT);
+	}
+
+
+	/***************************
+	 * A ring was crossed.  Going in means we're in that band now;
+	 * coming out means we're in the next one out.
+	 */
+	@Override
+	public void onReceive (Context ctx, Intent intent) {
+		if (ACTION_RING_CROSSED.equals(intent.getAction()) == false) {
+			return;
+		}
+		int ring = intent.getIntExtra(EXTRA_RING_BAND, -1);
+		if (ring < 0) {
+			return;
+		}
+		boolean entering = intent.getBooleanExtra(LocationManager.KEY_PROXIMITY_ENTERING, false);
+		int band = entering ? ring : ring + 1;
+		Log.d(TAG, (entering ? "entered" : "left") + " ring " + ring + ", now in band " + band);
+
+		// Already inside?  Then this is just the platform catching up.
+		SharedPreferences prefs = ctx.getSharedPreferences(RING_PREFS, Context.MODE_PRIVATE);
+		String key = INSIDE_KEY_PREFIX + ring;
+		boolean was_inside = prefs.getBoolean(key, false);
+		prefs.edit().putBoolean(key, entering).commit();
+		if (entering == was_inside) {
+			Log.d(TAG, "   - no change, so no notification.");
+			return;
+		}
+
+		Intent open = new Intent(ctx, MainActivity.class);
+		PendingIntent content = PendingIntent.getActivity(ctx, 0, open,
+												PendingIntent.FLAG_UPDATE_CURRENT);
+
+		NotificationCompat.Builder builder = new NotificationCompat.Builder(ctx)
+				.setSmallIcon(R.drawable.ic_launcher)
+				.setContentTitle(ctx.getString(R.string.app_name))
+				.setContentText(BandMessages.get(ctx, band))
+				.setContentIntent(content)
+				.setAutoCancel(true);
+
+		NotificationManager mgr = (NotificationManager)
+								ctx.getSystemService(Context.NOTIFICATION_SERVICE);
+		mgr.notify(NOTIFICATION_ID, builder.build());
+	} // onReceive (ctx, intent)
+
+}
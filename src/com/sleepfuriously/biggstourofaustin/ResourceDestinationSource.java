@@ -0,0 +1,138 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import android.content.res.Resources;
+
+
+/**
+ * The destinations as described by the string-arrays in
+ * res/values/arrays.xml.  This is the fallback for when the packed
+ * catalog can't be opened.
+ *<p>
+ * Each array is read (and each number parsed) only once, the first
+ * time that it's needed.
+ */
+public class ResourceDestinationSource implements DestinationSource {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** The string-array for each of the FIELD_* strings, in FIELD_* order. */
+	private final static int[] FIELD_ARRAYS = {
+		R.array.titles,
+		R.array.addresses,
+		R.array.subtitles,
+		R.array.stories,
+		R.array.hints,
+		R.array.location_filenames
+	};
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final Resources m_res;
+
+	/** The titles decide how many destinations there are. */
+	private final int m_count;
+
+	private double[] m_latitudes = null;
+	private double[] m_longitudes = null;
+	private float[] m_slops = null;
+	private float[] m_ratings = null;
+
+	/** Indexed by [field][index].  Filled in as needed. */
+	private final String[][] m_strings = new String[NUM_STRING_FIELDS][];
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor
+	 */
+	public ResourceDestinationSource (Resources res) {
+		m_res = res;
+		m_strings[FIELD_TITLE] = res.getStringArray(R.array.titles);
+		m_count = (m_strings[FIELD_TITLE] == null) ? 0 : m_strings[FIELD_TITLE].length;
+	}
+
+
+	/***************************/
+	@Override
+	public int get_count() {
+		return m_count;
+	}
+
+	/***************************/
+	@Override
+	public synchronized double get_latitude (int index) {
+		if (m_latitudes == null) {
+			m_latitudes = parse_doubles(R.array.latitudes);
+		}
+		return m_latitudes[index];
+	}
+
+	/***************************/
+	@Override
+	public synchronized double get_longitude (int index) {
+		if (m_longitudes == null) {
+			m_longitudes = parse_doubles(R.array.longitudes);
+		}
+		return m_longitudes[index];
+	}
+
+	/***************************/
+	@Override
+	public synchronized float get_slop (int index) {
+		if (m_slops == null) {
+			m_slops = parse_floats(R.array.distances);
+		}
+		return m_slops[index];
+	}
+
+	/***************************/
+	@Override
+	public synchronized float get_rating (int index) {
+		if (m_ratings == null) {
+			m_ratings = parse_floats(R.array.ratings);
+		}
+		return m_ratings[index];
+	}
+
+	/***************************/
+	@Override
+	public synchronized String get_string (int index, int field) {
+		if (m_strings[field] == null) {
+			m_strings[field] = m_res.getStringArray(FIELD_ARRAYS[field]);
+		}
+		if (index >= m_strings[field].length) {
+			return null;
+		}
+		return m_strings[field][index];
+	}
+
+
+	/***************************/
+	private double[] parse_doubles (int array_id) {
+		String[] strs = m_res.getStringArray(array_id);
+		double[] vals = new double[strs.length];
+		for (int i = 0; i < strs.length; i++) {
+			vals[i] = Double.parseDouble(strs[i]);
+		}
+		return vals;
+	}
+
+	/***************************/
+	private float[] parse_floats (int array_id) {
+		String[] strs = m_res.getStringArray(array_id);
+		float[] vals = new float[strs.length];
+		for (int i = 0; i < strs.length; i++) {
+			vals[i] = Float.parseFloat(strs[i]);
+		}
+		return vals;
+	}
+
+}
@@ -0,0 +1,326 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.View.OnClickListener;
+import android.view.View.OnLongClickListener;
+import android.view.ViewGroup;
+import android.view.ViewStub;
+import android.widget.Button;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+
+/**
+ * Takes care of MainActivity's two screens: the hidden one (a
+ * destination that hasn't been found yet) and the discovered one.
+ *<p>
+ * Both live in main_screens as ViewStubs.  Each is inflated the
+ * first time it's shown, its widgets are found once and kept in a
+ * holder (HiddenScreen or DiscoveredScreen), and after that
+ * switching is just a matter of which one is visible.  Nothing is
+ * ever inflated twice.
+ *<p>
+ * The two layouts use the same ids for some things (like the
+ * buttons), so widgets must always be found through the holders,
+ * never through the Activity.
+ *<p>
+ * So that what this saves can be seen (in debug builds),
+ * get_old_way_nanos() times the old way once: inflating a whole
+ * layout and finding its widgets, which is what every switch used
+ * to cost (setContentView() and findViewById()).
+ *<p>
+ * Use it from the UI thread.
+ */
+public class ScreenController {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static String TAG = "ScreenController";
+
+	/** Index s_old_way_nanos and m_switches. */
+	private final static int
+		SCREEN_HIDDEN = 0,
+		SCREEN_DISCOVERED = 1;
+
+
+	//-------------------------
+	//	Classes
+	//-------------------------
+
+	/**
+	 * The widgets of the hidden screen (main_hidden).
+	 */
+	public static class HiddenScreen {
+		public final View m_root;
+		public final TextView m_title_tv, m_main_msg_title_tv,
+			m_main_msg_subtitle_tv, m_nearby_tv, m_debug_tv;
+		public final CompassView m_compass_view;
+		public final Button m_prev_butt, m_next_butt, m_test_butt;
+
+		HiddenScreen (View root) {
+			m_root = root;
+			m_title_tv = (TextView) root.findViewById(R.id.top_tv);
+			m_main_msg_title_tv = (TextView) root.findViewById(R.id.main_msg_title_tv);
+			m_main_msg_subtitle_tv = (TextView) root.findViewById(R.id.main_msg_details_tv);
+			m_nearby_tv = (TextView) root.findViewById(R.id.nearby_tv);
+			m_debug_tv = (TextView) root.findViewById(R.id.debug_tv);
+			m_compass_view = (CompassView) root.findViewById(R.id.compass_view);
+			m_prev_butt = (Button) root.findViewById(R.id.prev_butt);
+			m_next_butt = (Button) root.findViewById(R.id.next_butt);
+			m_test_butt = (Button) root.findViewById(R.id.test_butt);
+		}
+	} // class HiddenScreen
+
+
+	/**
+	 * The widgets of the discovered screen (main_discovered).
+	 */
+	public static class DiscoveredScreen {
+		public final View m_root;
+		public final TextView m_title_tv, m_subtitle_tv;
+		public final Button m_prev_butt, m_next_butt;
+
+		/** The WebView story goes in here... */
+		public final ViewGroup m_story_fl;
+
+		/** ...or the TextView one goes in here. */
+		public final ScrollView m_story_sv;
+		public final TextView m_story_tv;
+
+		DiscoveredScreen (View root) {
+			m_root = root;
+			m_title_tv = (TextView) root.findViewById(R.id.top_tv);
+			m_subtitle_tv = (TextView) root.findViewById(R.id.discovered_subtitle_tv);
+			m_prev_butt = (Button) root.findViewById(R.id.prev_butt);
+			m_next_butt = (Button) root.findViewById(R.id.next_butt);
+			m_story_fl = (ViewGroup) root.findViewById(R.id.story_fl);
+			m_story_sv = (ScrollView) root.findViewById(R.id.story_sv);
+			m_story_tv = (TextView) root.findViewById(R.id.story_tv);
+		}
+	} // class DiscoveredScreen
+
+
+	//-------------------------
+	//	Class Data
+	//-------------------------
+
+	/**
+	 * How long inflating each screen's layout from scratch and
+	 * finding its widgets took (nanoseconds), the one time we
+	 * tried.  0 until get_old_way_nanos() has tried.
+	 */
+	private static long[] s_old_way_nanos = new long[2];
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	/** The main_screens FrameLayout. */
+	private final View m_container;
+
+	/** Hooked up to the buttons of both screens. */
+	private final OnClickListener m_click_listener;
+	private final OnLongClickListener m_long_click_listener;
+
+	/** Null until they've been inflated. */
+	private HiddenScreen m_hidden = null;
+	private DiscoveredScreen m_discovered = null;
+
+	/** SCREEN_HIDDEN or SCREEN_DISCOVERED; -1 until one's shown. */
+	private int m_showing = -1;
+
+	/**
+	 * How many times each screen has been switched to (shown when
+	 * it wasn't the one showing, including the first time).  Each
+	 * of these used to be a setContentView().
+	 */
+	private final int[] m_switches = new int[2];
+
+	/** How many times a screen's been inflated, and how long that took (total). */
+	private int m_inflate_count = 0;
+	private long m_inflate_nanos = 0;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor.  Nothing's inflated yet.
+	 *
+	 * @param container		The screens_fl of main_screens (already
+	 * 						set as the content view).
+	 *
+	 * @param click_listener	Gets the button clicks.
+	 *
+	 * @param long_click_listener	Gets long clicks of the test button.
+	 */
+	public ScreenController (View container, OnClickListener click_listener,
+							OnLongClickListener long_click_listener) {
+		m_container = container;
+		m_click_listener = click_listener;
+		m_long_click_listener = long_click_listener;
+	} // constructor
+
+
+	/***************************
+	 * Makes the hidden screen the visible one (inflating it if this
+	 * is the first time).
+	 */
+	public HiddenScreen show_hidden() {
+		HiddenScreen hidden = get_hidden();
+		if (m_discovered != null) {
+			m_discovered.m_root.setVisibility(View.GONE);
+		}
+		hidden.m_root.setVisibility(View.VISIBLE);
+		switched_to(SCREEN_HIDDEN);
+		return hidden;
+	} // show_hidden()
+
+
+	/***************************
+	 * Makes the discovered screen the visible one (inflating it if
+	 * this is the first time).
+	 */
+	public DiscoveredScreen show_discovered() {
+		DiscoveredScreen discovered = get_discovered();
+		if (m_hidden != null) {
+			m_hidden.m_root.setVisibility(View.GONE);
+		}
+		discovered.m_root.setVisibility(View.VISIBLE);
+		switched_to(SCREEN_DISCOVERED);
+		return discovered;
+	} // show_discovered()
+
+
+	/***************************
+	 * @return	True iff the discovered screen is the one showing.
+	 */
+	public boolean is_showing_discovered() {
+		return m_showing == SCREEN_DISCOVERED;
+	}
+
+
+	/***************************
+	 * @return	The hidden screen's widgets (inflating it if need be,
+	 * 			but NOT showing it).
+	 */
+	public HiddenScreen get_hidden() {
+		if (m_hidden == null) {
+			long start = System.nanoTime();
+			View root = ((ViewStub) m_container.findViewById(R.id.hidden_stub)).inflate();
+			m_hidden = new HiddenScreen(root);
+
+			m_hidden.m_prev_butt.setOnClickListener(m_click_listener);
+			m_hidden.m_next_butt.setOnClickListener(m_click_listener);
+			m_hidden.m_test_butt.setOnClickListener(m_click_listener);
+			m_hidden.m_test_butt.setOnLongClickListener(m_long_click_listener);
+			inflated("hidden", start);
+		}
+		return m_hidden;
+	} // get_hidden()
+
+
+	/***************************
+	 * @return	The discovered screen's widgets (inflating it if need
+	 * 			be, but NOT showing it).
+	 */
+	public DiscoveredScreen get_discovered() {
+		if (m_discovered == null) {
+			long start = System.nanoTime();
+			View root = ((ViewStub) m_container.findViewById(R.id.discovered_stub)).inflate();
+			m_discovered = new DiscoveredScreen(root);
+
+			m_discovered.m_prev_butt.setOnClickListener(m_click_listener);
+			m_discovered.m_next_butt.setOnClickListener(m_click_listener);
+			inflated("discovered", start);
+		}
+		return m_discovered;
+	} // get_discovered()
+
+
+	/***************************
+	 * @return	How many screens have been inflated (never more than
+	 * 			2).
+	 */
+	public int get_inflate_count() {
+		return m_inflate_count;
+	}
+
+	/***************************
+	 * @return	The total time spent inflating screens and finding
+	 * 			their widgets (nanoseconds).
+	 */
+	public long get_inflate_nanos() {
+		return m_inflate_nanos;
+	}
+
+
+	/***************************
+	 * @return	How many times a different screen has been shown
+	 * 			(counting the first one).
+	 */
+	public int get_switch_count() {
+		return m_switches[SCREEN_HIDDEN] + m_switches[SCREEN_DISCOVERED];
+	}
+
+
+	/***************************
+	 * What the switches so far would have cost the old way, with a
+	 * setContentView() and all the findViewById()s each time.  The
+	 * first call times that once for each screen (inflating its
+	 * layout without attaching it, then finding its widgets).
+	 * That's a fair bit of work, so this is only for debug builds.
+	 * It leaves out the layout pass setContentView() also caused,
+	 * so the real cost was a little more.
+	 *
+	 * @return	The time (nanoseconds), or -1 if this isn't a debug
+	 * 			build.
+	 */
+	public long get_old_way_nanos() {
+		if (Metrics.ENABLED == false) {
+			return -1;
+		}
+		if (s_old_way_nanos[SCREEN_HIDDEN] == 0) {
+			LayoutInflater inflater = LayoutInflater.from(m_container.getContext());
+			ViewGroup parent = (ViewGroup) m_container;
+
+			long start = System.nanoTime();
+			new HiddenScreen(inflater.inflate(R.layout.main_hidden, parent, false));
+			s_old_way_nanos[SCREEN_HIDDEN] = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			new DiscoveredScreen(inflater.inflate(R.layout.main_discovered, parent, false));
+			s_old_way_nanos[SCREEN_DISCOVERED] = System.nanoTime() - start;
+
+			Log.d(TAG, "the old way: hidden screen " + (s_old_way_nanos[SCREEN_HIDDEN] / 1000)
+					+ " us, discovered screen " + (s_old_way_nanos[SCREEN_DISCOVERED] / 1000)
+					+ " us, per switch");
+		}
+		return (s_old_way_nanos[SCREEN_HIDDEN] * m_switches[SCREEN_HIDDEN])
+				+ (s_old_way_nanos[SCREEN_DISCOVERED] * m_switches[SCREEN_DISCOVERED]);
+	} // get_old_way_nanos()
+
+
+	/***************************/
+	private void switched_to (int screen) {
+		if (screen != m_showing) {
+			m_switches[screen]++;
+			m_showing = screen;
+		}
+	}
+
+	/***************************/
+	private void inflated (String which, long start) {
+		long nanos = System.nanoTime() - start;
+		m_inflate_count++;
+		m_inflate_nanos += nanos;
+		Log.d(TAG, "inflated the " + which + " screen in " + (nanos / 1000) + " us");
+	}
+
+}
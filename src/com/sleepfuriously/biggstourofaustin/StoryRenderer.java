@@ -0,0 +1,326 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.webkit.WebView;
+
+
+/**
+ * Shows the html stories (assets/locations/*.html) of the
+ * destinations.
+ *<p>
+ * Making a WebView is really slow, so there are never more than
+ * POOL_SIZE of them and they're reused.  prewarm() makes the first
+ * one while the UI thread has nothing better to do.  preload() reads
+ * a story in the background and loads it into a WebView that isn't
+ * on the screen, so when show() is called it's already there.  When
+ * we run out of WebViews, the story shown (or preloaded) longest ago
+ * gives its WebView up.
+ *<p>
+ * Use it from the UI thread, and call destroy() when done.
+ */
+public class StoryRenderer {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static String TAG = "StoryRenderer";
+
+	/** The most WebViews we'll ever have. */
+	public final static int POOL_SIZE = 3;
+
+	/** How many WebViews prewarm() makes. */
+	private final static int PREWARM_COUNT = 1;
+
+	/** Where the stories are in the assets */
+	private final static String ASSET_DIR = "locations/";
+
+	/** So the stories can use relative links (for images and such). */
+	private final static String BASE_URL = "file:///android_asset/" + ASSET_DIR;
+
+	private final static String BLANK_URL = "about:blank";
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	/** WebViews need an Activity, not the Application. */
+	private final Context m_ctx;
+
+	/** For the story filenames (DestinationSource.FIELD_FILENAME). */
+	private final DestinationSource m_source;
+
+	/**
+	 * The stories that are loaded, by destination index, least
+	 * recently used first.
+	 */
+	private final LinkedHashMap<Integer, WebView> m_stories =
+			new LinkedHashMap<Integer, WebView>(POOL_SIZE * 2, 0.75f, true);
+
+	/** WebViews with nothing in them. */
+	private final ArrayList<WebView> m_free = new ArrayList<WebView>(POOL_SIZE);
+
+	/** Destinations being read by preload() right now. */
+	private final HashSet<Integer> m_loading = new HashSet<Integer>();
+
+	/** The destination on the screen (never evicted), or -1. */
+	private int m_showing = -1;
+
+	private final Handler m_ui_handler;
+
+	/** Reads the html files. Made on the first preload(). */
+	private HandlerThread m_io_thread = null;
+	private Handler m_io_handler = null;
+
+	private boolean m_destroyed = false;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor.  No WebViews are made yet.
+	 *
+	 * @param ctx	The Activity that'll show the stories.
+	 */
+	public StoryRenderer (Context ctx, DestinationSource source) {
+		m_ctx = ctx;
+		m_source = source;
+		m_ui_handler = new Handler(Looper.getMainLooper());
+	} // constructor
+
+
+	/***************************
+	 * Makes a WebView (or PREWARM_COUNT of them) the next time the
+	 * UI thread is idle, so the first show() doesn't have to.
+	 */
+	public void prewarm() {
+		Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+			@Override
+			public boolean queueIdle() {
+				if (m_destroyed) {
+					return false;
+				}
+				if ((m_free.size() < PREWARM_COUNT) && (get_total() < POOL_SIZE)) {
+					long start = System.nanoTime();
+					m_free.add(new WebView(m_ctx));
+					Log.d(TAG, "prewarmed a WebView in "
+							+ ((System.nanoTime() - start) / 1000000) + " ms");
+				}
+				// Keep going (one per idle) until there are enough.
+				return (m_free.size() < PREWARM_COUNT) && (get_total() < POOL_SIZE);
+			}
+		});
+	} // prewarm()
+
+
+	/***************************
+	 * Gets a story ready to show: its file is read in the
+	 * background, then loaded into a spare WebView.  Does nothing
+	 * if it's already loaded (or on the way).
+	 *
+	 * @param index	Which destination.
+	 */
+	public void preload (final int index) {
+		if (m_destroyed || m_stories.containsKey(index) || m_loading.contains(index)) {
+			return;
+		}
+		final String filename = m_source.get_string(index, DestinationSource.FIELD_FILENAME);
+		if (filename == null) {
+			return;
+		}
+		m_loading.add(index);
+
+		if (m_io_handler == null) {
+			m_io_thread = new HandlerThread(TAG);
+			m_io_thread.start();
+			m_io_handler = new Handler(m_io_thread.getLooper());
+		}
+
+		m_io_handler.post(new Runnable() {
+			@Override
+			public void run() {
+				final String html = read_asset(m_ctx, ASSET_DIR + filename);
+				m_ui_handler.post(new Runnable() {
+					@Override
+					public void run() {
+						m_loading.remove(index);
+						if (m_destroyed || (html == null) || m_stories.containsKey(index)) {
+							return;		// Too late, or show() beat us to it.
+						}
+						WebView view = obtain();
+						view.loadDataWithBaseURL(BASE_URL, html, "text/html", "utf-8", null);
+						m_stories.put(index, view);
+						Log.d(TAG, "preloaded story " + index);
+					}
+				});
+			}
+		});
+	} // preload (index)
+
+
+	/***************************
+	 * Puts a destination's story on the screen.  Instant if it was
+	 * preloaded; otherwise it's loaded now.
+	 *
+	 * @param index		Which destination.
+	 *
+	 * @param container	Where to put it.  Anything already in there
+	 * 					is removed.
+	 */
+	public void show (int index, ViewGroup container) {
+		WebView view = m_stories.get(index);		// (makes it most recent)
+		if (view == null) {
+			String filename = m_source.get_string(index, DestinationSource.FIELD_FILENAME);
+			if (filename == null) {
+				Log.e(TAG, "No story for destination " + index);
+				return;
+			}
+			view = obtain();
+			view.loadUrl(BASE_URL + filename);
+			m_stories.put(index, view);
+			Log.d(TAG, "story " + index + " wasn't preloaded");
+		}
+		m_showing = index;
+
+		detach(view);
+		container.removeAllViews();
+		container.addView(view, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.FILL_PARENT,
+														ViewGroup.LayoutParams.FILL_PARENT));
+	} // show (index, container)
+
+
+	/***************************
+	 * @return	True iff the story is loaded (or loading) in a
+	 * 			WebView.
+	 */
+	public boolean is_loaded (int index) {
+		return m_stories.containsKey(index);
+	}
+
+
+	/***************************
+	 * Gets rid of all the WebViews.  Don't use this afterwards.
+	 */
+	public void destroy() {
+		m_destroyed = true;
+		for (WebView view : m_stories.values()) {
+			detach(view);
+			view.destroy();
+		}
+		m_stories.clear();
+		for (int i = 0; i < m_free.size(); i++) {
+			m_free.get(i).destroy();
+		}
+		m_free.clear();
+		if (m_io_thread != null) {
+			m_io_thread.quit();
+			m_io_thread = null;
+			m_io_handler = null;
+		}
+	} // destroy()
+
+
+	/***************************
+	 * Gets an empty WebView: a free one, a new one if we're under
+	 * POOL_SIZE, or else the least recently used story's.
+	 */
+	private WebView obtain() {
+		if (m_free.isEmpty() == false) {
+			return m_free.remove(m_free.size() - 1);
+		}
+		if (get_total() < POOL_SIZE) {
+			return new WebView(m_ctx);
+		}
+
+		Iterator<Map.Entry<Integer, WebView>> it = m_stories.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Integer, WebView> entry = it.next();
+			if (entry.getKey() == m_showing) {
+				continue;
+			}
+			it.remove();
+			WebView view = entry.getValue();
+			detach(view);
+			view.loadUrl(BLANK_URL);
+			view.clearHistory();
+			Log.d(TAG, "evicted story " + entry.getKey());
+			return view;
+		}
+
+		// Can't happen unless POOL_SIZE < 2.
+		return new WebView(m_ctx);
+	} // obtain()
+
+
+	/***************************/
+	private int get_total() {
+		return m_stories.size() + m_free.size();
+	}
+
+
+	/***************************
+	 * Takes a WebView out of whatever it's in.
+	 */
+	private static void detach (WebView view) {
+		ViewParent parent = view.getParent();
+		if (parent instanceof ViewGroup) {
+			((ViewGroup) parent).removeView(view);
+		}
+	}
+
+
+	/***************************
+	 * Reads an asset file into a String.  Slow, so not on the UI
+	 * thread.
+	 *
+	 * @return	The contents, or null if it couldn't be read.
+	 */
+	static String read_asset (Context ctx, String path) {
+		InputStream in = null;
+		try {
+			in = ctx.getAssets().open(path);
+			InputStreamReader reader = new InputStreamReader(in, "UTF-8");
+			StringBuilder sb = new StringBuilder(4096);
+			char[] buf = new char[4096];
+			int n;
+			while ((n = reader.read(buf)) > 0) {
+				sb.append(buf, 0, n);
+			}
+			return sb.toString();
+		}
+		catch (IOException e) {
+			Log.e(TAG, "Unable to read " + path, e);
+			return null;
+		}
+		finally {
+			if (in != null) {
+				try {
+					in.close();
+				}
+				catch (IOException e) {
+					// Nothing more to do.
+				}
+			}
+		}
+	} // read_asset (path)
+
+}
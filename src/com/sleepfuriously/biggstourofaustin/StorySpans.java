@@ -0,0 +1,491 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+
+/**
+ * A story (one of the assets/locations/*.html files) boiled down to
+ * plain text plus a list of styled ranges, so it can be shown in a
+ * TextView instead of a WebView.
+ *<p>
+ * parse() only understands what the stories use: paragraphs (and
+ * the other block tags, which just become paragraphs), line breaks,
+ * bold, italic, links, and images.  Headings are bold.  Everything
+ * else is dropped and its text kept.  An image is the object
+ * replacement character (IMAGE_CHAR) with a SPAN_IMAGE over it.
+ *<p>
+ * These can be written and read back (write(), read()), so parsing
+ * only ever has to happen once.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class StorySpans {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** The kinds of span */
+	public final static int
+		SPAN_BOLD = 0,
+		SPAN_ITALIC = 1,
+		SPAN_LINK = 2,		// the arg is the href
+		SPAN_IMAGE = 3;		// the arg is the src
+
+	/** Stands in for an image in the text. */
+	public final static char IMAGE_CHAR = '\uFFFC';
+
+	/** Tags whose contents are skipped entirely. */
+	private final static String[] SKIPPED_TAGS = { "head", "script", "style", "title" };
+
+	/** Tags that make a paragraph. */
+	private final static String[] BLOCK_TAGS = {
+		"p", "div", "h1", "h2", "h3", "h4", "h5", "h6",
+		"ul", "ol", "li", "blockquote", "tr", "table", "hr"
+	};
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final String m_text;
+
+	/** Three ints per span: type, start, end. */
+	private final int[] m_spans;
+
+	/** One per span: the href or src, or null. */
+	private final String[] m_args;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor.  See parse() and read() for the usual ways to
+	 * get one.
+	 */
+	public StorySpans (String text, int[] spans, String[] args) {
+		m_text = text;
+		m_spans = spans;
+		m_args = args;
+	}
+
+
+	/***************************
+	 * @return	The plain text.
+	 */
+	public String get_text() {
+		return m_text;
+	}
+
+	/***************************
+	 * @return	How many spans there are.
+	 */
+	public int get_span_count() {
+		return m_args.length;
+	}
+
+	/** @return	The SPAN_* of span i. */
+	public int get_span_type (int i) {
+		return m_spans[i * 3];
+	}
+
+	/** @return	Where span i starts in the text. */
+	public int get_span_start (int i) {
+		return m_spans[i * 3 + 1];
+	}
+
+	/** @return	Where span i ends (exclusive). */
+	public int get_span_end (int i) {
+		return m_spans[i * 3 + 2];
+	}
+
+	/** @return	The href (links) or src (images) of span i, or null. */
+	public String get_span_arg (int i) {
+		return m_args[i];
+	}
+
+
+	/***************************
+	 * Roughly how much memory this takes, in chars.  For sizing
+	 * caches.
+	 */
+	public int get_size() {
+		int size = m_text.length() + m_spans.length * 2;
+		for (int i = 0; i < m_args.length; i++) {
+			if (m_args[i] != null) {
+				size += m_args[i].length();
+			}
+		}
+		return size;
+	} // get_size()
+
+
+	/***************************
+	 * Writes this out (read() reads it back).
+	 */
+	public void write (DataOutputStream out) throws IOException {
+		out.writeUTF(m_text);
+		out.writeInt(m_args.length);
+		for (int i = 0; i < m_args.length; i++) {
+			out.writeByte(m_spans[i * 3]);
+			out.writeInt(m_spans[i * 3 + 1]);
+			out.writeInt(m_spans[i * 3 + 2]);
+			out.writeBoolean(m_args[i] != null);
+			if (m_args[i] != null) {
+				out.writeUTF(m_args[i]);
+			}
+		}
+	} // write (out)
+
+
+	/***************************
+	 * Reads what write() wrote.
+	 */
+	public static StorySpans read (DataInputStream in) throws IOException {
+		String text = in.readUTF();
+		int count = in.readInt();
+		if ((count < 0) || (count > text.length() * 2 + 16)) {
+			throw new IOException("Bad span count " + count);
+		}
+		int[] spans = new int[count * 3];
+		String[] args = new String[count];
+		for (int i = 0; i < count; i++) {
+			spans[i * 3] = in.readByte();
+			spans[i * 3 + 1] = in.readInt();
+			spans[i * 3 + 2] = in.readInt();
+			if (in.readBoolean()) {
+				args[i] = in.readUTF();
+			}
+		}
+		return new StorySpans(text, spans, args);
+	} // read (in)
+
+
+	/***************************
+	 * Turns a story's html into a StorySpans.  It's forgiving:
+	 * unknown tags are ignored and unclosed ones end at the end.
+	 */
+	public static StorySpans parse (String html) {
+		StringBuilder text = new StringBuilder(html.length());
+		ArrayList<int[]> spans = new ArrayList<int[]>();
+		ArrayList<String> args = new ArrayList<String>();
+
+		// The open spans: { type, start, index into args }
+		ArrayList<int[]> open = new ArrayList<int[]>();
+
+		String skipping = null;		// the tag we're skipping the inside of
+		int len = html.length();
+		int i = 0;
+		while (i < len) {
+			char c = html.charAt(i);
+
+			if (c == '<') {
+				if (html.startsWith("<!--", i)) {
+					int end = html.indexOf("-->", i + 4);
+					i = (end < 0) ? len : end + 3;
+					continue;
+				}
+				int end = html.indexOf('>', i + 1);
+				if (end < 0) {
+					break;		// a broken tag at the end
+				}
+				String tag = html.substring(i + 1, end);
+				i = end + 1;
+
+				boolean closing = tag.startsWith("/");
+				String name = tag_name(tag, closing ? 1 : 0);
+
+				if (skipping != null) {
+					if (closing && name.equals(skipping)) {
+						skipping = null;
+					}
+					continue;
+				}
+				if ((closing == false) && contains(SKIPPED_TAGS, name) &&
+					(tag.endsWith("/") == false)) {
+					skipping = name;
+					continue;
+				}
+
+				if (name.equals("br")) {
+					trim_trailing_space(text);
+					text.append('\n');
+				}
+				else if (contains(BLOCK_TAGS, name)) {
+					boolean heading = (name.length() == 2) && (name.charAt(0) == 'h') &&
+										Character.isDigit(name.charAt(1));
+					if (closing && heading) {
+						style_tag(SPAN_BOLD, true, null, text, open, spans, args);
+					}
+					paragraph_break(text);
+					if ((closing == false) && heading) {
+						style_tag(SPAN_BOLD, false, null, text, open, spans, args);
+					}
+				}
+				else if (name.equals("b") || name.equals("strong")) {
+					style_tag(SPAN_BOLD, closing, null, text, open, spans, args);
+				}
+				else if (name.equals("i") || name.equals("em")) {
+					style_tag(SPAN_ITALIC, closing, null, text, open, spans, args);
+				}
+				else if (name.equals("a")) {
+					String href = closing ? null : get_attribute(tag, "href");
+					if (closing || (href != null)) {
+						style_tag(SPAN_LINK, closing, href, text, open, spans, args);
+					}
+				}
+				else if (name.equals("img") && (closing == false)) {
+					String src = get_attribute(tag, "src");
+					if (src != null) {
+						int start = text.length();
+						text.append(IMAGE_CHAR);
+						spans.add(new int[] { SPAN_IMAGE, start, start + 1 });
+						args.add(src);
+					}
+				}
+				continue;
+			}
+
+			// Just text.
+			int next = html.indexOf('<', i);
+			if (next < 0) {
+				next = len;
+			}
+			if (skipping == null) {
+				append_text(text, html, i, next);
+			}
+			i = next;
+		} // while (i < len)
+
+		// Tidy up the end.
+		while ((text.length() > 0) && Character.isWhitespace(text.charAt(text.length() - 1))) {
+			text.setLength(text.length() - 1);
+		}
+		int text_len = text.length();
+		for (int j = open.size() - 1; j >= 0; j--) {
+			int[] o = open.get(j);
+			if (o[2] >= 0) {
+				spans.set(o[2], new int[] { o[0], o[1], text_len });
+			}
+			else if (text_len > o[1]) {
+				spans.add(new int[] { o[0], o[1], text_len });
+				args.add(null);
+			}
+		}
+
+		// Pack it up.  Spans may now run past the trimmed end.
+		int count = spans.size();
+		int[] packed = new int[count * 3];
+		String[] packed_args = new String[count];
+		for (int j = 0; j < count; j++) {
+			int[] s = spans.get(j);
+			packed[j * 3] = s[0];
+			packed[j * 3 + 1] = Math.min(s[1], text_len);
+			packed[j * 3 + 2] = Math.min(s[2], text_len);
+			packed_args[j] = args.get(j);
+		}
+		return new StorySpans(text.toString(), packed, packed_args);
+	} // parse (html)
+
+
+	/***************************
+	 * Opens or closes a styled range.
+	 */
+	private static void style_tag (int type, boolean closing, String arg,
+									StringBuilder text, ArrayList<int[]> open,
+									ArrayList<int[]> spans, ArrayList<String> args) {
+		if (closing == false) {
+			int arg_index = -1;
+			if (arg != null) {
+				// Stash it in args for now; the span that owns it
+				// is added when it closes.
+				arg_index = args.size();
+				args.add(arg);
+				spans.add(null);
+			}
+			open.add(new int[] { type, text.length(), arg_index });
+			return;
+		}
+
+		// Close the most recent one of this type (if there is one).
+		for (int j = open.size() - 1; j >= 0; j--) {
+			int[] o = open.get(j);
+			if (o[0] == type) {
+				open.remove(j);
+				if (o[2] >= 0) {
+					// Fill in the placeholder.
+					spans.set(o[2], new int[] { type, o[1], text.length() });
+				}
+				else if (text.length() > o[1]) {
+					spans.add(new int[] { type, o[1], text.length() });
+					args.add(null);
+				}
+				return;
+			}
+		}
+	} // style_tag (...)
+
+
+	/***************************
+	 * Adds text, squashing whitespace the way a browser does and
+	 * turning entities into chars.
+	 */
+	private static void append_text (StringBuilder text, String html, int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = html.charAt(i);
+			if (Character.isWhitespace(c)) {
+				int len = text.length();
+				if ((len > 0) && (Character.isWhitespace(text.charAt(len - 1)) == false)) {
+					text.append(' ');
+				}
+				continue;
+			}
+			if (c == '&') {
+				int semi = html.indexOf(';', i);
+				if ((semi > i) && (semi < end) && (semi - i <= 10)) {
+					int decoded = decode_entity(html.substring(i + 1, semi));
+					if (decoded >= 0) {
+						text.append((decoded == 0xa0) ? ' ' : (char) decoded);
+						i = semi;
+						continue;
+					}
+				}
+			}
+			text.append(c);
+		}
+	} // append_text (text, html, start, end)
+
+
+	/***************************
+	 * @return	The char for an entity name (without the & and ;),
+	 * 			or -1 if we don't know it.
+	 */
+	private static int decode_entity (String name) {
+		if (name.startsWith("#")) {
+			try {
+				if (name.startsWith("#x") || name.startsWith("#X")) {
+					return Integer.parseInt(name.substring(2), 16);
+				}
+				return Integer.parseInt(name.substring(1));
+			}
+			catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+		if (name.equals("amp"))		return '&';
+		if (name.equals("lt"))		return '<';
+		if (name.equals("gt"))		return '>';
+		if (name.equals("quot"))	return '"';
+		if (name.equals("apos"))	return '\'';
+		if (name.equals("nbsp"))	return 0xa0;
+		return -1;
+	} // decode_entity (name)
+
+
+	/***************************
+	 * Makes sure the text ends with a blank line (unless it's
+	 * empty).
+	 */
+	private static void paragraph_break (StringBuilder text) {
+		trim_trailing_space(text);
+		int len = text.length();
+		if (len == 0) {
+			return;
+		}
+		if (text.charAt(len - 1) != '\n') {
+			text.append("\n\n");
+		}
+		else if ((len < 2) || (text.charAt(len - 2) != '\n')) {
+			text.append('\n');
+		}
+	} // paragraph_break (text)
+
+
+	/***************************/
+	private static void trim_trailing_space (StringBuilder text) {
+		int len = text.length();
+		while ((len > 0) && (text.charAt(len - 1) == ' ')) {
+			len--;
+		}
+		text.setLength(len);
+	}
+
+
+	/***************************
+	 * @return	The lower-case name of the tag starting at start
+	 * 			in the tag's contents.
+	 */
+	private static String tag_name (String tag, int start) {
+		int end = start;
+		while ((end < tag.length()) && Character.isLetterOrDigit(tag.charAt(end))) {
+			end++;
+		}
+		return tag.substring(start, end).toLowerCase();
+	}
+
+
+	/***************************
+	 * @return	The value of an attribute in a tag's contents (quoted
+	 * 			or not), or null if it isn't there.
+	 */
+	static String get_attribute (String tag, String attr) {
+		String lower = tag.toLowerCase();
+		int from = 0;
+		while (true) {
+			int i = lower.indexOf(attr, from);
+			if (i < 0) {
+				return null;
+			}
+			from = i + attr.length();
+
+			// Make sure it's the whole attribute name.
+			if ((i > 0) && Character.isLetterOrDigit(lower.charAt(i - 1))) {
+				continue;
+			}
+			int j = from;
+			while ((j < tag.length()) && (tag.charAt(j) == ' ')) {
+				j++;
+			}
+			if ((j >= tag.length()) || (tag.charAt(j) != '=')) {
+				continue;
+			}
+			j++;
+			while ((j < tag.length()) && (tag.charAt(j) == ' ')) {
+				j++;
+			}
+			if (j >= tag.length()) {
+				return null;
+			}
+
+			char quote = tag.charAt(j);
+			if ((quote == '"') || (quote == '\'')) {
+				int end = tag.indexOf(quote, j + 1);
+				return (end < 0) ? tag.substring(j + 1) : tag.substring(j + 1, end);
+			}
+			int end = j;
+			while ((end < tag.length()) && (Character.isWhitespace(tag.charAt(end)) == false)
+					&& (tag.charAt(end) != '>') && (tag.charAt(end) != '/')) {
+				end++;
+			}
+			return tag.substring(j, end);
+		}
+	} // get_attribute (tag, attr)
+
+
+	/***************************/
+	private static boolean contains (String[] array, String s) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i].equals(s)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
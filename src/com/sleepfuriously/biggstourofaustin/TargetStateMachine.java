@@ -0,0 +1,172 @@
+package com.sleepfuriously.biggstourofaustin;
+
+
+/**
+ * Keeps track of where we are in looking for a target: waiting for
+ * the first fix, searching, or found (and whether we're standing on
+ * it right now).
+ *<p>
+ * Give it each new distance with update() and it says what changed
+ * (one of the TRANSITION_*).  It doesn't do anything about it; the
+ * caller takes care of the screens, saving discoveries, and so on.
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class TargetStateMachine {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/**
+	 * The various states
+	 * <p>
+	 * STATE_WAITING_FOR_INPUT - Sensors haven't responded yet.
+	 * <p>
+	 * STATE_SEARCHING - Searching for the target.
+	 * <p>
+	 * STATE_FOUND_OFF_TARGET - Looking at a found Location,
+	 * 		but Position != Target.
+	 * <p>
+	 * STATE_FOUND_ON_TARGET - Looking at a found Location,
+	 * 		AND Position == Target.
+	 */
+	public final static int
+		STATE_WAITING_FOR_INPUT = 0,
+		STATE_SEARCHING = 1,
+		STATE_FOUND_OFF_TARGET = 2,
+		STATE_FOUND_ON_TARGET = 3;
+
+	/**
+	 * What update() can say happened.
+	 * <p>
+	 * TRANSITION_NONE - Same state as before.
+	 * <p>
+	 * TRANSITION_STARTED - Got our first fix, so now we're searching.
+	 * <p>
+	 * TRANSITION_DISCOVERED - Just found the target for the first time.
+	 * <p>
+	 * TRANSITION_LEFT - Walked away from a found target.
+	 * <p>
+	 * TRANSITION_RETURNED - Came back to a found target.
+	 * <p>
+	 * TRANSITION_FORCED - Put on the target by force_on_target()
+	 * 		(for debugging).
+	 */
+	public final static int
+		TRANSITION_NONE = 0,
+		TRANSITION_STARTED = 1,
+		TRANSITION_DISCOVERED = 2,
+		TRANSITION_LEFT = 3,
+		TRANSITION_RETURNED = 4,
+		TRANSITION_FORCED = 5;
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private int m_state = STATE_WAITING_FOR_INPUT;
+
+	/** When set, we act like we're on the target no matter what. */
+	private boolean m_forced = false;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Checks the conditions to see if the state has changed.
+	 *
+	 * @param have_fix	True once the location is working (we've
+	 * 					had a real fix).
+	 *
+	 * @param dist		Meters from our Position to the Target.
+	 * 					Ignored until have_fix.
+	 *
+	 * @param slop		How close counts as on the target (meters).
+	 *
+	 * @return	One of the TRANSITION_*.
+	 */
+	public int update (boolean have_fix, float dist, float slop) {
+		if (m_forced) {
+			// This supercedes all state changes.
+			if (m_state == STATE_SEARCHING) {
+				m_state = STATE_FOUND_ON_TARGET;
+				return TRANSITION_FORCED;
+			}
+			return TRANSITION_NONE;
+		}
+
+		switch (m_state) {
+			case STATE_WAITING_FOR_INPUT:
+				if (have_fix) {
+					m_state = STATE_SEARCHING;
+					return TRANSITION_STARTED;
+				}
+				break;
+
+			case STATE_SEARCHING:
+				if (dist <= slop) {
+					m_state = STATE_FOUND_ON_TARGET;
+					return TRANSITION_DISCOVERED;
+				}
+				break;
+
+			case STATE_FOUND_ON_TARGET:
+				// Did the user move away from their target?
+				if (dist > slop) {
+					m_state = STATE_FOUND_OFF_TARGET;
+					return TRANSITION_LEFT;
+				}
+				break;
+
+			case STATE_FOUND_OFF_TARGET:
+				// User may have gotten to the target again.
+				if (dist <= slop) {
+					m_state = STATE_FOUND_ON_TARGET;
+					return TRANSITION_RETURNED;
+				}
+				break;
+
+		} // switch (m_state)
+
+		return TRANSITION_NONE;
+	} // update (have_fix, dist, slop)
+
+
+	/***************************
+	 * There's a new target.  Starts over at searching (or found,
+	 * if it's been discovered before), unless we're still waiting
+	 * for a fix.  Also undoes force_on_target().
+	 */
+	public void retarget (boolean discovered) {
+		m_forced = false;
+		if (m_state != STATE_WAITING_FOR_INPUT) {
+			m_state = discovered ? STATE_FOUND_OFF_TARGET : STATE_SEARCHING;
+		}
+	} // retarget (discovered)
+
+
+	/***************************
+	 * For debugging: from now on (until retarget()), we're on the
+	 * target no matter where we really are.
+	 */
+	public void force_on_target() {
+		m_forced = true;
+	}
+
+	/***************************/
+	public boolean is_forced() {
+		return m_forced;
+	}
+
+	/***************************
+	 * @return	One of the STATE_*.
+	 */
+	public int get_state() {
+		return m_state;
+	}
+
+}
@@ -0,0 +1,195 @@
+package com.sleepfuriously.biggstourofaustin;
+
+
+/**
+ * A reusable char[] for building the text of things that change on
+ * every fix (like the distance), without making a new String each
+ * time.  Hand get_chars() and length() to TextView.setText(char[],
+ * int, int).
+ *<p>
+ * Nothing is allocated unless the text gets longer than it's ever
+ * been (then the array grows).
+ *<p>
+ * This class has no Android dependencies.
+ */
+public class TextBuffer {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	private final static int DEFAULT_CAPACITY = 32;
+
+	/** 10^n, for append_decimal(). */
+	private final static long[] POWERS_OF_TEN = {
+		1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L
+	};
+
+	/** What NaNs and infinities come out as. */
+	private final static String NOT_A_NUMBER = "--";
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private char[] m_chars;
+
+	private int m_length = 0;
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor
+	 */
+	public TextBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/***************************
+	 * Constructor
+	 *
+	 * @param capacity	How many chars to start with.
+	 */
+	public TextBuffer (int capacity) {
+		m_chars = new char[Math.max(capacity, 1)];
+	}
+
+
+	/***************************
+	 * Empties it (keeping the array).
+	 */
+	public TextBuffer clear() {
+		m_length = 0;
+		return this;
+	}
+
+
+	/***************************/
+	public TextBuffer append (char c) {
+		ensure(m_length + 1);
+		m_chars[m_length++] = c;
+		return this;
+	}
+
+
+	/***************************/
+	public TextBuffer append (CharSequence str) {
+		int len = str.length();
+		ensure(m_length + len);
+		for (int i = 0; i < len; i++) {
+			m_chars[m_length++] = str.charAt(i);
+		}
+		return this;
+	} // append (str)
+
+
+	/***************************
+	 * Appends a whole number, in decimal.
+	 */
+	public TextBuffer append (long n) {
+		if (n == Long.MIN_VALUE) {
+			return append(String.valueOf(n));		// (can't be negated)
+		}
+		if (n < 0) {
+			append('-');
+			n = -n;
+		}
+
+		int digits = 1;
+		for (long rest = n / 10; rest != 0; rest /= 10) {
+			digits++;
+		}
+		ensure(m_length + digits);
+		for (int i = m_length + digits - 1; i >= m_length; i--) {
+			m_chars[i] = (char) ('0' + (n % 10));
+			n /= 10;
+		}
+		m_length += digits;
+		return this;
+	} // append (n)
+
+
+	/***************************
+	 * Appends a number with a fixed number of decimal places,
+	 * rounded (like String.format("%.1f") does, but without the
+	 * locale).
+	 *
+	 * @param decimals	How many places after the point, 0 to 6.
+	 */
+	public TextBuffer append_decimal (float value, int decimals) {
+		if (Float.isNaN(value) || Float.isInfinite(value)) {
+			return append(NOT_A_NUMBER);
+		}
+		long scale = POWERS_OF_TEN[decimals];
+		long scaled = round(value, decimals);
+		if (scaled < 0) {
+			append('-');
+			scaled = -scaled;
+		}
+
+		append(scaled / scale);
+		if (decimals > 0) {
+			append('.');
+			long frac = scaled % scale;
+			ensure(m_length + decimals);
+			for (int i = m_length + decimals - 1; i >= m_length; i--) {
+				m_chars[i] = (char) ('0' + (frac % 10));
+				frac /= 10;
+			}
+			m_length += decimals;
+		}
+		return this;
+	} // append_decimal (value, decimals)
+
+
+	/***************************
+	 * @return	value times 10^decimals, rounded.  If two numbers
+	 * 			give the same answer here, append_decimal() shows
+	 * 			them the same, which is handy for telling if the
+	 * 			text needs to change at all.
+	 */
+	public static long round (float value, int decimals) {
+		if (Float.isNaN(value)) {
+			return Long.MIN_VALUE;
+		}
+		double scaled = (double) value * POWERS_OF_TEN[decimals];
+		return (scaled < 0) ? -Math.round(-scaled) : Math.round(scaled);
+	} // round (value, decimals)
+
+
+	/***************************
+	 * @return	The array the text is in (it's the first length()
+	 * 			chars).  Don't hang on to it; it's reused.
+	 */
+	public char[] get_chars() {
+		return m_chars;
+	}
+
+	public int length() {
+		return m_length;
+	}
+
+
+	/***************************
+	 * Makes a String of it (which allocates, so not for every fix).
+	 */
+	@Override
+	public String toString() {
+		return new String(m_chars, 0, m_length);
+	}
+
+
+	/***************************/
+	private void ensure (int capacity) {
+		if (capacity > m_chars.length) {
+			char[] bigger = new char[Math.max(capacity, m_chars.length * 2)];
+			System.arraycopy(m_chars, 0, bigger, 0, m_length);
+			m_chars = bigger;
+		}
+	} // ensure (capacity)
+
+}
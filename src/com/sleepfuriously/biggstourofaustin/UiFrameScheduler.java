@@ -0,0 +1,170 @@
+package com.sleepfuriously.biggstourofaustin;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+
+/**
+ * Squashes lots of "please redraw" requests into at most one
+ * redraw per display frame.  Call request_frame() as often as you
+ * like (every sensor event, say); the FrameListener gets called
+ * once, on the next vsync.
+ *<p>
+ * Uses Choreographer on Jelly Bean and up.  Older devices don't
+ * have it, so there we post to a Handler, spaced out by
+ * FALLBACK_FRAME_MS.
+ *<p>
+ * Everything here happens on the UI thread.
+ */
+public class UiFrameScheduler {
+
+	//-------------------------
+	//	Constants
+	//-------------------------
+
+	/** Time between frames when there's no Choreographer (about 60 fps) */
+	private final static long FALLBACK_FRAME_MS = 16;
+
+
+	//-------------------------
+	//	Interfaces
+	//-------------------------
+
+	/**
+	 * Does the actual drawing.
+	 */
+	public interface FrameListener {
+		/**
+		 * @param frame_time_nanos	When the frame started, in the
+		 * 							System.nanoTime() timebase.
+		 */
+		public void on_frame (long frame_time_nanos);
+	}
+
+
+	//-------------------------
+	//	Data
+	//-------------------------
+
+	private final FrameListener m_listener;
+
+	/** True while a frame has been asked for but hasn't happened yet. */
+	private boolean m_pending = false;
+
+	/** Only one of these is used, depending on the API level. */
+	private final ChoreographerFrames m_choreographer_frames;
+	private final Handler m_handler;
+
+	/** When the last fallback frame ran (uptime millis). */
+	private long m_last_fallback_frame = 0;
+
+	/** The fallback frame, for the Handler. */
+	private final Runnable m_fallback_runnable = new Runnable() {
+		@Override
+		public void run() {
+			m_last_fallback_frame = SystemClock.uptimeMillis();
+			do_frame(System.nanoTime());
+		}
+	};
+
+
+	//-------------------------
+	//	Classes
+	//-------------------------
+
+	/**
+	 * Keeps all the Choreographer stuff in its own class so that
+	 * older devices never have to load it.
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	private class ChoreographerFrames implements Choreographer.FrameCallback {
+		private final Choreographer m_choreographer = Choreographer.getInstance();
+
+		void post() {
+			m_choreographer.postFrameCallback(this);
+		}
+
+		void remove() {
+			m_choreographer.removeFrameCallback(this);
+		}
+
+		@Override
+		public void doFrame (long frame_time_nanos) {
+			do_frame(frame_time_nanos);
+		}
+	} // class ChoreographerFrames
+
+
+	//-------------------------
+	//	Methods
+	//-------------------------
+
+	/***************************
+	 * Constructor.  MUST be called on the UI thread.
+	 */
+	public UiFrameScheduler (FrameListener listener) {
+		m_listener = listener;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			m_choreographer_frames = new ChoreographerFrames();
+			m_handler = null;
+		}
+		else {
+			m_choreographer_frames = null;
+			m_handler = new Handler();
+		}
+	} // constructor
+
+
+	/***************************
+	 * Asks for a frame.  Does nothing if one is already on the way.
+	 */
+	public void request_frame() {
+		if (m_pending) {
+			return;
+		}
+		m_pending = true;
+
+		if (m_choreographer_frames != null) {
+			m_choreographer_frames.post();
+		}
+		else {
+			long wait = m_last_fallback_frame + FALLBACK_FRAME_MS - SystemClock.uptimeMillis();
+			if (wait > 0) {
+				m_handler.postDelayed(m_fallback_runnable, wait);
+			}
+			else {
+				m_handler.post(m_fallback_runnable);
+			}
+		}
+	} // request_frame()
+
+
+	/***************************
+	 * Forgets any frame that's on the way.  Call this in onPause()
+	 * so nothing gets drawn while we're in the background.
+	 */
+	public void cancel() {
+		if (m_pending == false) {
+			return;
+		}
+		m_pending = false;
+
+		if (m_choreographer_frames != null) {
+			m_choreographer_frames.remove();
+		}
+		else {
+			m_handler.removeCallbacks(m_fallback_runnable);
+		}
+	} // cancel()
+
+
+	/***************************/
+	private void do_frame (long frame_time_nanos) {
+		m_pending = false;
+		m_listener.on_frame(frame_time_nanos);
+	}
+
+}